@@ -0,0 +1,153 @@
+package com.augustnagro.vertx.repo.tests.load;
+
+import com.augustnagro.vertx.repo.tests.pg.CarBlockingRepo;
+import com.augustnagro.vertx.repo.tests.pg.TestPerson;
+import com.augustnagro.vertx.repo.tests.pg.TestPersonBlockingRepo;
+import com.augustnagro.vertx.repo.tests.pg.repos.CarRepo;
+import com.augustnagro.vertx.repo.tests.pg.repos.TestPersonRepo;
+import io.vertx.core.Vertx;
+import io.vertx.pgclient.PgPool;
+import io.vertx.sqlclient.PoolOptions;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives the configured operation mix through XxxBlockingRepos, with one
+ * thread per in-flight operation, like a thread-per-request server. The
+ * threads are virtual when the JVM has them (21+), and platform threads
+ * otherwise. Run with the same options as the async verticles to compare
+ * the two APIs at the same concurrency or arrival rate.
+ */
+class BlockingLoad {
+
+  private final LoadOptions options;
+  private final LoadStats stats;
+  private final ExecutorService executor;
+  private final boolean virtualThreads;
+  private final ArrayList<PgPool> pools = new ArrayList<>();
+  private final ArrayList<TestPersonBlockingRepo> personRepos = new ArrayList<>();
+  private final ArrayList<CarBlockingRepo> carRepos = new ArrayList<>();
+  private volatile boolean running = true;
+  private Thread scheduler;
+
+  BlockingLoad(Vertx vertx, LoadOptions options, LoadStats stats) {
+    this.options = options;
+    this.stats = stats;
+    ExecutorService virtualExecutor = virtualThreadPerTaskExecutor();
+    virtualThreads = virtualExecutor != null;
+    executor = virtualThreads ? virtualExecutor : Executors.newCachedThreadPool();
+    PoolOptions poolOptions = new PoolOptions().setMaxSize(options.poolSize);
+    for (int i = 0; i < options.verticles; ++i) {
+      PgPool pool = PgPool.pool(vertx, LoadGenerator.connectOptions(options), poolOptions);
+      pools.add(pool);
+      personRepos.add(new TestPersonBlockingRepo(new TestPersonRepo(pool, LoadVerticle.repoOptions(options))));
+      carRepos.add(new CarBlockingRepo(new CarRepo(pool, LoadVerticle.repoOptions(options))));
+    }
+  }
+
+  /**
+   * Looked up reflectively, since this module is compiled for an older release. Null if the JVM has no virtual threads.
+   */
+  private static ExecutorService virtualThreadPerTaskExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException e) {
+      return null;
+    }
+  }
+
+  void start() {
+    System.out.println("blocking callers on " + (virtualThreads ? "virtual" : "platform") + " threads");
+    if (options.rate > 0) {
+      scheduler = new Thread(this::fixedRate, "blocking-load-scheduler");
+      scheduler.start();
+    } else {
+      for (int i = 0; i < options.concurrency; ++i) {
+        int index = i;
+        executor.execute(() -> closedLoop(index));
+      }
+    }
+  }
+
+  void stop() throws InterruptedException {
+    running = false;
+    if (scheduler != null) scheduler.join();
+    executor.shutdown();
+    executor.awaitTermination(30, TimeUnit.SECONDS);
+    for (PgPool pool : pools) pool.close();
+  }
+
+  /*
+   * Closed loop: each thread starts its next operation when the last completes.
+   */
+  private void closedLoop(int index) {
+    while (running) {
+      Operation op = options.pickOperation();
+      long start = System.nanoTime();
+      stats.record(op, start, execute(op, index));
+    }
+  }
+
+  /*
+   * Open loop: a platform thread hands every operation to a new thread when it
+   * is due, and latency is measured from the scheduled start, as in LoadVerticle.
+   */
+  private void fixedRate() {
+    long startNanos = System.nanoTime();
+    double nanosPerOp = 1e9 / options.rate;
+    long issued = 0;
+    while (running) {
+      long due = (long) ((System.nanoTime() - startNanos) / nanosPerOp);
+      for (; issued < due && running; ++issued) {
+        Operation op = options.pickOperation();
+        long scheduledStart = startNanos + (long) (issued * nanosPerOp);
+        int index = (int) (issued % pools.size());
+        executor.execute(() -> stats.record(op, scheduledStart, execute(op, index)));
+      }
+      LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+    }
+  }
+
+  /**
+   * Runs the Operation on the repos at index % pools, returning true if it succeeded.
+   */
+  private boolean execute(Operation op, int index) {
+    TestPersonBlockingRepo personRepo = personRepos.get(index % personRepos.size());
+    CarBlockingRepo carRepo = carRepos.get(index % carRepos.size());
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    try {
+      switch (op) {
+        case FIND_BY_ID:
+          personRepo.findById(random.nextLong(1, options.seedRows + 1));
+          break;
+        case FIND_ALL:
+          personRepo.findAll(LoadVerticle.PERSON_PAGE.bind(random.nextLong(0, options.seedRows)));
+          break;
+        case SAVE:
+          personRepo.save(LoadVerticle.newPerson());
+          break;
+        case SAVE_ALL:
+          ArrayList<TestPerson> people = new ArrayList<>(options.saveAllSize);
+          for (int i = 0; i < options.saveAllSize; ++i) people.add(LoadVerticle.newPerson());
+          personRepo.saveAll(people);
+          break;
+        case CAR_FIND_BY_ID:
+          carRepo.findById(random.nextLong(1, 4));
+          break;
+        case CAR_FIND_ALL:
+          carRepo.findAll(LoadVerticle.FAST_CARS.bind(random.nextInt(200, 212)));
+          break;
+        default:
+          throw new IllegalArgumentException("Unsupported operation " + op);
+      }
+      return true;
+    } catch (RuntimeException e) {
+      return false;
+    }
+  }
+}
@@ -0,0 +1,129 @@
+package com.augustnagro.vertx.repo.tests.load;
+
+import com.augustnagro.vertx.repo.tests.pg.TestPerson;
+import com.augustnagro.vertx.repo.tests.pg.repos.TestPersonRepo;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.pgclient.PgConnectOptions;
+import io.vertx.pgclient.PgPool;
+import io.vertx.sqlclient.PoolOptions;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Load generator for the test repos. Resets and seeds the test_person and
+ * car tables, deploys LoadVerticles, and after warmup records throughput
+ * and latency percentiles for the configured duration. See
+ * {@link LoadOptions#USAGE} for arguments, for example:
+ * <pre>
+ * mvn -q exec:java -Dexec.args="--verticles=8 --poolSize=2 --rate=20000"
+ * </pre>
+ * With --api=blocking, the same mix runs through {@link BlockingLoad} instead,
+ * so running both with equal options compares the blocking and async APIs:
+ * <pre>
+ * mvn -q exec:java -Dexec.args="--api=blocking --concurrency=2000"
+ * mvn -q exec:java -Dexec.args="--api=async --concurrency=2000"
+ * </pre>
+ */
+public class LoadGenerator {
+
+  private static final int SEED_BATCH_SIZE = 1000;
+
+  public static void main(String[] args) throws Exception {
+    LoadOptions options;
+    try {
+      options = LoadOptions.parse(args);
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.err.println(LoadOptions.USAGE);
+      System.exit(1);
+      return;
+    }
+    System.out.println(options);
+
+    Vertx vertx = Vertx.vertx();
+    try {
+      seed(vertx, options);
+      run(vertx, options);
+    } finally {
+      await(vertx.close());
+    }
+  }
+
+  static PgConnectOptions connectOptions(LoadOptions options) {
+    return new PgConnectOptions()
+        .setHost(options.host)
+        .setPort(options.port)
+        .setDatabase(options.database)
+        .setUser(options.user)
+        .setPassword(options.password)
+        .setPipeliningLimit(options.pipeliningLimit)
+        .setCachePreparedStatements(true);
+  }
+
+  private static void seed(Vertx vertx, LoadOptions options) throws Exception {
+    PgPool pool = PgPool.pool(vertx, connectOptions(options), new PoolOptions().setMaxSize(1));
+    try {
+      await(pool.query(resource("/test_person.sql")).execute());
+      await(pool.query(resource("/car.sql")).execute());
+      TestPersonRepo repo = new TestPersonRepo(pool);
+      // the table starts with 8 rows
+      for (int seeded = 8; seeded < options.seedRows; seeded += SEED_BATCH_SIZE) {
+        int batchSize = Math.min(SEED_BATCH_SIZE, options.seedRows - seeded);
+        ArrayList<TestPerson> people = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; ++i) people.add(new TestPerson("Seed", "Person " + (seeded + i), null, false, null));
+        await(repo.saveAll(people));
+      }
+    } finally {
+      await(pool.close());
+    }
+  }
+
+  private static void run(Vertx vertx, LoadOptions options) throws Exception {
+    LoadStats stats = new LoadStats();
+    BlockingLoad blockingLoad = null;
+    String deploymentId = null;
+    if (options.blocking) {
+      blockingLoad = new BlockingLoad(vertx, options, stats);
+      blockingLoad.start();
+    } else {
+      AtomicInteger verticleIndex = new AtomicInteger();
+      deploymentId = await(vertx.deployVerticle(() -> {
+        // spread the remainder of concurrency over the first verticles
+        int i = verticleIndex.getAndIncrement();
+        int concurrency = options.concurrency / options.verticles + (i < options.concurrency % options.verticles ? 1 : 0);
+        return new LoadVerticle(options, stats, concurrency, options.rate / options.verticles);
+      }, new DeploymentOptions().setInstances(options.verticles)));
+    }
+
+    long progressTimer = vertx.setPeriodic(1000, id ->
+        System.out.println(stats.completedSinceTick() + " ops/s"));
+
+    TimeUnit.SECONDS.sleep(options.warmup);
+    stats.reset();
+    System.out.println("warmup complete, recording for " + options.duration + "s");
+    TimeUnit.SECONDS.sleep(options.duration);
+
+    vertx.cancelTimer(progressTimer);
+    stats.report(System.out);
+    if (blockingLoad != null) blockingLoad.stop();
+    else await(vertx.undeploy(deploymentId));
+  }
+
+  private static String resource(String name) throws IOException {
+    try (InputStream in = LoadGenerator.class.getResourceAsStream(name)) {
+      if (in == null) throw new IOException("Missing resource " + name);
+      return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+  }
+
+  private static <T> T await(Future<T> future) throws Exception {
+    return future.toCompletionStage().toCompletableFuture().get();
+  }
+}
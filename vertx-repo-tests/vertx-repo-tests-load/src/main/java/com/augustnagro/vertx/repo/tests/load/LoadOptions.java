@@ -0,0 +1,149 @@
+package com.augustnagro.vertx.repo.tests.load;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Load generator options, parsed from arguments like --verticles=4.
+ */
+class LoadOptions {
+
+  static final String USAGE = String.join("\n",
+      "Options, with defaults:",
+      "  --api=async             async: Repos driven from verticles; blocking: XxxBlockingRepos called",
+      "                          from one thread per in-flight operation, virtual if the JVM has them",
+      "  --verticles=4           verticle instances, each with its own pool; for blocking, just the pools",
+      "  --poolSize=4            connections per verticle",
+      "  --pipeliningLimit=256   pipelined queries per connection",
+      "  --concurrency=64        total in-flight operations, when --rate is 0",
+      "  --rate=0                total operations per second at fixed arrival rate, or 0 for fixed concurrency",
+      "  --warmup=10             seconds before latencies are recorded",
+      "  --duration=30           seconds of recording",
+      "  --mix=findById:60,findAll:20,carFindById:10,save:8,saveAll:2",
+      "                          operation weights; also carFindAll",
+      "  --saveAllSize=20        entities per saveAll",
+      "  --seedRows=10000        test_person rows inserted before the run",
+      "  --cacheSize=0           LruEntityCache size per repo, or 0 for none",
+      "  --batchFindById=false   coalesce findById calls per event loop tick",
+      "  --host=localhost --port=5432 --database=test --user=$USER --password=");
+
+  boolean blocking = false;
+  int verticles = 4;
+  int poolSize = 4;
+  int pipeliningLimit = 256;
+  int concurrency = 64;
+  double rate = 0;
+  int warmup = 10;
+  int duration = 30;
+  EnumMap<Operation, Integer> mix = parseMix("findById:60,findAll:20,carFindById:10,save:8,saveAll:2");
+  int saveAllSize = 20;
+  int seedRows = 10_000;
+  int cacheSize = 0;
+  boolean batchFindById = false;
+  String host = "localhost";
+  int port = 5432;
+  String database = "test";
+  String user = System.getProperty("user.name");
+  String password = "";
+
+  private Operation[] opsByCumulativeWeight;
+  private int[] cumulativeWeights;
+
+  static LoadOptions parse(String[] args) {
+    LoadOptions options = new LoadOptions();
+    for (String arg : args) {
+      int eq = arg.indexOf('=');
+      if (!arg.startsWith("--") || eq == -1) throw new IllegalArgumentException("Expected --name=value but got " + arg);
+      String name = arg.substring(2, eq);
+      String value = arg.substring(eq + 1);
+      switch (name) {
+        case "api":
+          if (!value.equals("async") && !value.equals("blocking")) {
+            throw new IllegalArgumentException("api must be async or blocking");
+          }
+          options.blocking = value.equals("blocking");
+          break;
+        case "verticles": options.verticles = Integer.parseInt(value); break;
+        case "poolSize": options.poolSize = Integer.parseInt(value); break;
+        case "pipeliningLimit": options.pipeliningLimit = Integer.parseInt(value); break;
+        case "concurrency": options.concurrency = Integer.parseInt(value); break;
+        case "rate": options.rate = Double.parseDouble(value); break;
+        case "warmup": options.warmup = Integer.parseInt(value); break;
+        case "duration": options.duration = Integer.parseInt(value); break;
+        case "mix": options.mix = parseMix(value); break;
+        case "saveAllSize": options.saveAllSize = Integer.parseInt(value); break;
+        case "seedRows": options.seedRows = Integer.parseInt(value); break;
+        case "cacheSize": options.cacheSize = Integer.parseInt(value); break;
+        case "batchFindById": options.batchFindById = Boolean.parseBoolean(value); break;
+        case "host": options.host = value; break;
+        case "port": options.port = Integer.parseInt(value); break;
+        case "database": options.database = value; break;
+        case "user": options.user = value; break;
+        case "password": options.password = value; break;
+        default: throw new IllegalArgumentException("Unknown option " + name);
+      }
+    }
+    if (options.verticles <= 0 || options.seedRows <= 0 || options.saveAllSize <= 0) {
+      throw new IllegalArgumentException("verticles, seedRows and saveAllSize must be positive");
+    }
+    if (options.rate <= 0 && options.concurrency < options.verticles) {
+      throw new IllegalArgumentException("concurrency must be at least the number of verticles");
+    }
+    options.indexMix();
+    return options;
+  }
+
+  private static EnumMap<Operation, Integer> parseMix(String mix) {
+    EnumMap<Operation, Integer> weights = new EnumMap<>(Operation.class);
+    for (String entry : mix.split(",")) {
+      String[] keyAndWeight = entry.split(":");
+      if (keyAndWeight.length != 2) throw new IllegalArgumentException("Expected operation:weight but got " + entry);
+      int weight = Integer.parseInt(keyAndWeight[1]);
+      if (weight < 0) throw new IllegalArgumentException("Negative weight for " + keyAndWeight[0]);
+      if (weight > 0) weights.put(Operation.ofKey(keyAndWeight[0]), weight);
+    }
+    if (weights.isEmpty()) throw new IllegalArgumentException("Mix has no operations");
+    return weights;
+  }
+
+  private void indexMix() {
+    opsByCumulativeWeight = new Operation[mix.size()];
+    cumulativeWeights = new int[mix.size()];
+    int i = 0;
+    int total = 0;
+    for (Map.Entry<Operation, Integer> entry : mix.entrySet()) {
+      total += entry.getValue();
+      opsByCumulativeWeight[i] = entry.getKey();
+      cumulativeWeights[i] = total;
+      ++i;
+    }
+  }
+
+  /**
+   * A random Operation, according to the mix weights.
+   */
+  Operation pickOperation() {
+    int r = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+    for (int i = 0; i < cumulativeWeights.length; ++i) {
+      if (r < cumulativeWeights[i]) return opsByCumulativeWeight[i];
+    }
+    throw new IllegalStateException();
+  }
+
+  @Override
+  public String toString() {
+    return "api=" + (blocking ? "blocking" : "async") +
+        ", verticles=" + verticles +
+        ", poolSize=" + poolSize +
+        ", pipeliningLimit=" + pipeliningLimit +
+        (rate > 0 ? ", rate=" + rate : ", concurrency=" + concurrency) +
+        ", warmup=" + warmup +
+        ", duration=" + duration +
+        ", mix=" + mix +
+        ", saveAllSize=" + saveAllSize +
+        ", seedRows=" + seedRows +
+        ", cacheSize=" + cacheSize +
+        ", batchFindById=" + batchFindById;
+  }
+}
@@ -0,0 +1,82 @@
+package com.augustnagro.vertx.repo.tests.load;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.PrintStream;
+import java.util.EnumMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies and error counts per Operation, shared by every verticle.
+ */
+class LoadStats {
+
+  private final EnumMap<Operation, Recorder> recorders = new EnumMap<>(Operation.class);
+  private final EnumMap<Operation, LongAdder> errors = new EnumMap<>(Operation.class);
+  private final LongAdder completedSinceTick = new LongAdder();
+  private volatile long startNanos = System.nanoTime();
+
+  LoadStats() {
+    for (Operation op : Operation.values()) {
+      recorders.put(op, new Recorder(3));
+      errors.put(op, new LongAdder());
+    }
+  }
+
+  /**
+   * Record an Operation that was due to start at startNanos.
+   */
+  void record(Operation op, long startNanos, boolean succeeded) {
+    if (succeeded) recorders.get(op).recordValue(System.nanoTime() - startNanos);
+    else errors.get(op).increment();
+    completedSinceTick.increment();
+  }
+
+  /**
+   * Discard everything recorded so far, at the end of warmup.
+   */
+  void reset() {
+    for (Operation op : Operation.values()) {
+      recorders.get(op).reset();
+      errors.get(op).reset();
+    }
+    startNanos = System.nanoTime();
+  }
+
+  /**
+   * Operations completed since the last call.
+   */
+  long completedSinceTick() {
+    return completedSinceTick.sumThenReset();
+  }
+
+  void report(PrintStream out) {
+    double seconds = (System.nanoTime() - startNanos) / 1e9;
+    Histogram total = new Histogram(3);
+    long totalErrors = 0;
+    out.printf("%-12s %10s %10s %8s %10s %10s %10s %10s%n",
+        "operation", "count", "ops/s", "errors", "p50 (us)", "p99 (us)", "p999 (us)", "max (us)");
+    for (Operation op : Operation.values()) {
+      Histogram histogram = recorders.get(op).getIntervalHistogram();
+      long opErrors = errors.get(op).sum();
+      if (histogram.getTotalCount() == 0 && opErrors == 0) continue;
+      total.add(histogram);
+      totalErrors += opErrors;
+      printRow(out, op.key, histogram, opErrors, seconds);
+    }
+    printRow(out, "total", total, totalErrors, seconds);
+  }
+
+  private static void printRow(PrintStream out, String name, Histogram histogram, long errors, double seconds) {
+    out.printf("%-12s %10d %10.0f %8d %10.0f %10.0f %10.0f %10.0f%n",
+        name,
+        histogram.getTotalCount(),
+        histogram.getTotalCount() / seconds,
+        errors,
+        histogram.getValueAtPercentile(50) / 1000.0,
+        histogram.getValueAtPercentile(99) / 1000.0,
+        histogram.getValueAtPercentile(99.9) / 1000.0,
+        histogram.getMaxValue() / 1000.0);
+  }
+}
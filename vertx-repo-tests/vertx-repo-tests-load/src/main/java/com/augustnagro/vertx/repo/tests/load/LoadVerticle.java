@@ -0,0 +1,142 @@
+package com.augustnagro.vertx.repo.tests.load;
+
+import com.augustnagro.vertx.repo.LruEntityCache;
+import com.augustnagro.vertx.repo.RepoOptions;
+import com.augustnagro.vertx.repo.Spec;
+import com.augustnagro.vertx.repo.pg.SpecBuilder;
+import com.augustnagro.vertx.repo.pg.SpecTemplate;
+import com.augustnagro.vertx.repo.tests.pg.Car;
+import com.augustnagro.vertx.repo.tests.pg.TestPerson;
+import com.augustnagro.vertx.repo.tests.pg.repos.CarRepo;
+import com.augustnagro.vertx.repo.tests.pg.repos.TestPersonRepo;
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Future;
+import io.vertx.pgclient.PgPool;
+import io.vertx.sqlclient.PoolOptions;
+
+import java.util.ArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Drives the configured operation mix through its own pool and repos,
+ * at a fixed concurrency or a fixed arrival rate.
+ */
+class LoadVerticle extends AbstractVerticle {
+
+  static final SpecTemplate<TestPerson> PERSON_PAGE = new SpecBuilder<TestPerson>()
+      .where(TestPersonRepo.ID.greaterThan(SpecTemplate.param("after")))
+      .orderBy(TestPersonRepo.ID.asc())
+      .limit(20)
+      .buildTemplate();
+
+  static final SpecTemplate<Car> FAST_CARS = new SpecBuilder<Car>()
+      .where(CarRepo.TOP_SPEED.greaterThan(SpecTemplate.param("topSpeed")))
+      .buildTemplate();
+
+  private final LoadOptions options;
+  private final LoadStats stats;
+  private final int concurrency;
+  private final double ratePerSecond;
+
+  private PgPool pool;
+  private TestPersonRepo personRepo;
+  private CarRepo carRepo;
+  private boolean running = true;
+  private long rateTimerId;
+
+  LoadVerticle(LoadOptions options, LoadStats stats, int concurrency, double ratePerSecond) {
+    this.options = options;
+    this.stats = stats;
+    this.concurrency = concurrency;
+    this.ratePerSecond = ratePerSecond;
+  }
+
+  @Override
+  public void start() {
+    PoolOptions poolOptions = new PoolOptions().setMaxSize(options.poolSize);
+    pool = PgPool.pool(vertx, LoadGenerator.connectOptions(options), poolOptions);
+
+    personRepo = new TestPersonRepo(pool, repoOptions(options));
+    carRepo = new CarRepo(pool, repoOptions(options));
+
+    if (ratePerSecond > 0) {
+      startFixedRate();
+    } else {
+      for (int i = 0; i < concurrency; ++i) next();
+    }
+  }
+
+  static <E> RepoOptions<E, Long> repoOptions(LoadOptions options) {
+    RepoOptions<E, Long> repoOptions = new RepoOptions<E, Long>()
+        .setBatchFindById(options.batchFindById);
+    if (options.cacheSize > 0) repoOptions.setEntityCache(new LruEntityCache<>(options.cacheSize));
+    return repoOptions;
+  }
+
+  @Override
+  public void stop() {
+    running = false;
+    vertx.cancelTimer(rateTimerId);
+    pool.close();
+  }
+
+  /*
+   * Closed loop: every completed operation starts the next one.
+   */
+  private void next() {
+    if (!running) return;
+    Operation op = options.pickOperation();
+    long start = System.nanoTime();
+    execute(op).onComplete(ar -> {
+      stats.record(op, start, ar.succeeded());
+      // run on the next tick, since cached results complete synchronously
+      context.runOnContext(v -> next());
+    });
+  }
+
+  /*
+   * Open loop: operations start on schedule regardless of completions,
+   * and latency is measured from the scheduled start, so queueing
+   * delay is not hidden (coordinated omission).
+   */
+  private void startFixedRate() {
+    long startNanos = System.nanoTime();
+    double nanosPerOp = 1e9 / ratePerSecond;
+    long[] issued = {0};
+    rateTimerId = vertx.setPeriodic(1, timerId -> {
+      long due = (long) ((System.nanoTime() - startNanos) / nanosPerOp);
+      for (; issued[0] < due && running; ++issued[0]) {
+        Operation op = options.pickOperation();
+        long scheduledStart = startNanos + (long) (issued[0] * nanosPerOp);
+        execute(op).onComplete(ar -> stats.record(op, scheduledStart, ar.succeeded()));
+      }
+    });
+  }
+
+  private Future<?> execute(Operation op) {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    switch (op) {
+      case FIND_BY_ID:
+        return personRepo.findById(random.nextLong(1, options.seedRows + 1));
+      case FIND_ALL:
+        Spec<TestPerson> page = PERSON_PAGE.bind(random.nextLong(0, options.seedRows));
+        return personRepo.findAll(page);
+      case SAVE:
+        return personRepo.save(newPerson());
+      case SAVE_ALL:
+        ArrayList<TestPerson> people = new ArrayList<>(options.saveAllSize);
+        for (int i = 0; i < options.saveAllSize; ++i) people.add(newPerson());
+        return personRepo.saveAll(people);
+      case CAR_FIND_BY_ID:
+        return carRepo.findById(random.nextLong(1, 4));
+      case CAR_FIND_ALL:
+        return carRepo.findAll(FAST_CARS.bind(random.nextInt(200, 212)));
+      default:
+        throw new IllegalArgumentException("Unsupported operation " + op);
+    }
+  }
+
+  static TestPerson newPerson() {
+    return new TestPerson("Load", "Generator", null, false, null);
+  }
+}
@@ -0,0 +1,26 @@
+package com.augustnagro.vertx.repo.tests.load;
+
+/**
+ * Repo operations the load generator can mix.
+ */
+enum Operation {
+  FIND_BY_ID("findById"),
+  FIND_ALL("findAll"),
+  SAVE("save"),
+  SAVE_ALL("saveAll"),
+  CAR_FIND_BY_ID("carFindById"),
+  CAR_FIND_ALL("carFindAll");
+
+  final String key;
+
+  Operation(String key) {
+    this.key = key;
+  }
+
+  static Operation ofKey(String key) {
+    for (Operation op : values()) {
+      if (op.key.equals(key)) return op;
+    }
+    throw new IllegalArgumentException("Unknown operation " + key);
+  }
+}
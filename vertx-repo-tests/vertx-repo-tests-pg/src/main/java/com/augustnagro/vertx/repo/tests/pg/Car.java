@@ -3,7 +3,7 @@ package com.augustnagro.vertx.repo.tests.pg;
 import com.augustnagro.vertx.repo.Id;
 import com.augustnagro.vertx.repo.ImmutableEntity;
 
-@ImmutableEntity
+@ImmutableEntity(blockingRepo = true)
 public record Car(@Id Long id, String model, Integer topSpeed) {
 
 }
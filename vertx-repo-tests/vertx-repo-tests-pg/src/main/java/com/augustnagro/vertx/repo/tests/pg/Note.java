@@ -0,0 +1,10 @@
+package com.augustnagro.vertx.repo.tests.pg;
+
+import com.augustnagro.vertx.repo.Entity;
+import com.augustnagro.vertx.repo.Id;
+import com.augustnagro.vertx.repo.Version;
+
+@Entity(sharded = true, cacheInvalidation = true)
+public record Note(@Id Long id, String body, @Version Long version) {
+
+}
@@ -0,0 +1,9 @@
+package com.augustnagro.vertx.repo.tests.pg;
+
+import com.augustnagro.vertx.repo.Entity;
+import com.augustnagro.vertx.repo.Id;
+
+@Entity(counterTable = true)
+public record PageView(@Id Long id, String path) {
+
+}
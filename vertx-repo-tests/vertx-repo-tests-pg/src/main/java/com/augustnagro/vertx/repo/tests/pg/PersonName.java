@@ -0,0 +1,7 @@
+package com.augustnagro.vertx.repo.tests.pg;
+
+import com.augustnagro.vertx.repo.Projection;
+
+@Projection
+public record PersonName(Long id, String lastName) {
+}
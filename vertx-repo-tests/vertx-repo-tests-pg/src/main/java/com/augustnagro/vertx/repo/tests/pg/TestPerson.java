@@ -5,6 +5,6 @@ import com.augustnagro.vertx.repo.Id;
 
 import java.time.OffsetDateTime;
 
-@Entity
+@Entity(blockingRepo = true)
 public record TestPerson(String firstName, String lastName, @Id Long id, Boolean isAdmin, OffsetDateTime created) {
 }
\ No newline at end of file
@@ -1,5 +1,7 @@
 package com.augustnagro.vertx.repo.tests.pg.repos;
 
+import com.augustnagro.vertx.repo.RepoOptions;
+import com.augustnagro.vertx.repo.tests.pg.Car;
 import com.augustnagro.vertx.repo.tests.pg.CarRepoBase;
 import io.vertx.pgclient.PgPool;
 
@@ -8,4 +10,8 @@ public class CarRepo extends CarRepoBase {
   public CarRepo(PgPool sql) {
     super(sql);
   }
+
+  public CarRepo(PgPool sql, RepoOptions<Car, Long> options) {
+    super(sql, options);
+  }
 }
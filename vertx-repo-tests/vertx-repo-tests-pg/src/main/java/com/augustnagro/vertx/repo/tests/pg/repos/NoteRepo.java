@@ -0,0 +1,17 @@
+package com.augustnagro.vertx.repo.tests.pg.repos;
+
+import com.augustnagro.vertx.repo.RepoOptions;
+import com.augustnagro.vertx.repo.tests.pg.Note;
+import com.augustnagro.vertx.repo.tests.pg.NoteRepoBase;
+import io.vertx.pgclient.PgPool;
+
+public class NoteRepo extends NoteRepoBase {
+
+  public NoteRepo(PgPool sql) {
+    super(sql);
+  }
+
+  public NoteRepo(PgPool sql, RepoOptions<Note, Long> options) {
+    super(sql, options);
+  }
+}
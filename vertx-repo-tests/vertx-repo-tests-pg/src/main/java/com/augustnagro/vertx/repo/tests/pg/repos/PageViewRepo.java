@@ -0,0 +1,11 @@
+package com.augustnagro.vertx.repo.tests.pg.repos;
+
+import com.augustnagro.vertx.repo.tests.pg.PageViewRepoBase;
+import io.vertx.pgclient.PgPool;
+
+public class PageViewRepo extends PageViewRepoBase {
+
+  public PageViewRepo(PgPool sql) {
+    super(sql);
+  }
+}
@@ -1,5 +1,8 @@
 package com.augustnagro.vertx.repo.tests.pg.repos;
 
+import com.augustnagro.vertx.repo.EntityCache;
+import com.augustnagro.vertx.repo.RepoOptions;
+import com.augustnagro.vertx.repo.tests.pg.TestPerson;
 import com.augustnagro.vertx.repo.tests.pg.TestPersonRepoBase;
 import io.vertx.core.Future;
 import io.vertx.pgclient.PgPool;
@@ -12,6 +15,14 @@ public class TestPersonRepo extends TestPersonRepoBase {
     super(sql);
   }
 
+  public TestPersonRepo(PgPool sql, EntityCache<TestPerson, Long> cache) {
+    super(sql, cache);
+  }
+
+  public TestPersonRepo(PgPool sql, RepoOptions<TestPerson, Long> options) {
+    super(sql, options);
+  }
+
   public Future<Long> countAfterDeletingGeorge() {
     return sql.withTransaction(con -> con
         .preparedQuery("DELETE FROM test_person WHERE id = $1")
@@ -0,0 +1,11 @@
+drop table if exists note;
+
+create table note (
+    id bigserial primary key,
+    body text not null,
+    version bigint not null
+);
+
+insert into note (body, version) values
+('first draft', 0),
+('second draft', 3);
@@ -0,0 +1,11 @@
+drop table if exists page_view;
+
+create table page_view (
+    id bigserial primary key,
+    path text not null
+);
+
+insert into page_view (path) values
+('/'),
+('/pricing'),
+('/');
@@ -0,0 +1,141 @@
+package com.augustnagro.vertx.repo.tests.pg;
+
+import com.augustnagro.vertx.repo.BlockingImmutableRepo;
+import com.augustnagro.vertx.repo.Spec;
+import com.augustnagro.vertx.repo.pg.SpecBuilder;
+import com.augustnagro.vertx.repo.tests.pg.repos.CarRepo;
+import com.augustnagro.vertx.repo.tests.pg.repos.TestPersonRepo;
+import io.vertx.core.Vertx;
+import io.vertx.pgclient.PgConnectOptions;
+import io.vertx.pgclient.PgPool;
+import io.vertx.sqlclient.PoolOptions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BlockingRepoTests {
+
+  private Vertx vertx;
+  private PgPool pool;
+  private TestPersonRepo personRepo;
+  private TestPersonBlockingRepo people;
+  private CarBlockingRepo cars;
+
+  @BeforeEach
+  void setup() throws URISyntaxException, ExecutionException, InterruptedException, IOException {
+    PgConnectOptions pgConnectOptions = new PgConnectOptions()
+        .setUser(System.getProperty("user.name"))
+        .setDatabase("test");
+    vertx = Vertx.vertx();
+    pool = PgPool.pool(vertx, pgConnectOptions, new PoolOptions().setMaxSize(1));
+    personRepo = new TestPersonRepo(pool);
+    people = new TestPersonBlockingRepo(personRepo);
+    cars = new CarBlockingRepo(new CarRepo(pool));
+
+    String testSql = Files.readString(Path.of(getClass().getResource("/test_person.sql").toURI())) +
+        ";" + Files.readString(Path.of(getClass().getResource("/car.sql").toURI()));
+    pool.query(testSql).execute().toCompletionStage().toCompletableFuture().get();
+  }
+
+  @AfterEach
+  void teardown() throws ExecutionException, InterruptedException {
+    vertx.close().toCompletionStage().toCompletableFuture().get();
+  }
+
+  @Test
+  void crud() {
+    TestPerson saved = people.save(new TestPerson("Jane", "Doe", null, false, null));
+    assertEquals(9L, saved.id());
+    assertEquals(9L, people.count());
+
+    TestPerson renamed = new TestPerson("Jane", "Roe", saved.id(), false, saved.created());
+    people.update(saved, renamed);
+    assertEquals("Roe", people.findById(9L).orElseThrow().lastName());
+
+    people.delete(renamed);
+    assertFalse(people.existsById(9L));
+    assertEquals(7L, BlockingImmutableRepo.await(personRepo.countAfterDeletingGeorge()));
+  }
+
+  @Test
+  void failuresAreRethrown() {
+    TestPerson missing = new TestPerson("No", "Body", 99L, false, null);
+    TestPerson renamed = new TestPerson("Some", "Body", 99L, false, null);
+    assertThrows(NoSuchElementException.class, () -> people.update(missing, renamed));
+  }
+
+  @Test
+  void stream() {
+    Spec<Car> spec = new SpecBuilder<Car>()
+        .orderBy(CarRepo.TOP_SPEED.desc())
+        .build();
+
+    try (Stream<Car> stream = cars.stream(spec, 1)) {
+      assertEquals(List.of(212, 211, 208), stream.map(Car::topSpeed).collect(Collectors.toList()));
+    }
+    // the pool has one connection, so count only returns if the stream released it
+    assertEquals(3L, cars.count());
+  }
+
+  @Test
+  void streamClosedEarly() {
+    Spec<TestPerson> spec = new SpecBuilder<TestPerson>()
+        .orderBy(TestPersonRepo.ID.asc())
+        .build();
+
+    try (Stream<TestPerson> stream = people.stream(spec, 2)) {
+      assertEquals("Washington", stream.findFirst().orElseThrow().lastName());
+    }
+    assertEquals(8L, people.count());
+  }
+
+  @Test
+  void eventLoopCallsAreRejected() throws InterruptedException, ExecutionException {
+    CompletableFuture<Throwable> failure = new CompletableFuture<>();
+    vertx.runOnContext(v -> {
+      try {
+        cars.count();
+        failure.complete(null);
+      } catch (Throwable t) {
+        failure.complete(t);
+      }
+    });
+    assertTrue(failure.get() instanceof IllegalStateException);
+  }
+
+  @Test
+  void manyBlockingCallers() throws InterruptedException, ExecutionException {
+    ExecutorService executor = Executors.newFixedThreadPool(64);
+    try {
+      List<Future<String>> lastNames = new ArrayList<>();
+      for (int i = 0; i < 256; ++i) {
+        long id = i % 8 + 1;
+        lastNames.add(executor.submit(() -> people.findById(id).orElseThrow().lastName()));
+      }
+      List<String> expected = List.of(
+          "Washington", "Hamilton", "Adams", "Franklin", "Jay", "Jefferson", "Madison", "Nagro");
+      for (int i = 0; i < lastNames.size(); ++i) {
+        assertEquals(expected.get(i % 8), lastNames.get(i).get());
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
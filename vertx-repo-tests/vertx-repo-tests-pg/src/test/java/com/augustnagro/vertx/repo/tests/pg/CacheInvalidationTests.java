@@ -0,0 +1,149 @@
+package com.augustnagro.vertx.repo.tests.pg;
+
+import com.augustnagro.vertx.repo.LruEntityCache;
+import com.augustnagro.vertx.repo.RepoOptions;
+import com.augustnagro.vertx.repo.pg.CacheInvalidationListener;
+import com.augustnagro.vertx.repo.tests.pg.repos.NoteRepo;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import io.vertx.pgclient.PgConnectOptions;
+import io.vertx.pgclient.PgPool;
+import io.vertx.pgclient.pubsub.PgSubscriber;
+import io.vertx.sqlclient.PoolOptions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(VertxExtension.class)
+class CacheInvalidationTests {
+
+  private Vertx vertx;
+  private PgPool pool;
+  private LruEntityCache<Note, Long> cache;
+  private NoteRepo noteRepo;
+  private volatile Promise<List<String>> notified;
+  private volatile int expectedNotifications;
+  private final List<String> payloads = new ArrayList<>();
+
+  @BeforeEach
+  void setup() throws URISyntaxException, ExecutionException, InterruptedException, IOException {
+    PgConnectOptions pgConnectOptions = new PgConnectOptions()
+        .setUser(System.getProperty("user.name"))
+        .setDatabase("test");
+    vertx = Vertx.vertx();
+    pool = PgPool.pool(vertx, pgConnectOptions, new PoolOptions().setMaxSize(1));
+    cache = new LruEntityCache<>(1000);
+    noteRepo = new NoteRepo(pool, new RepoOptions<Note, Long>().setEntityCache(cache));
+
+    String testSql = Files.readString(Path.of(getClass().getResource("/note.sql").toURI()));
+    pool.query(testSql).execute().toCompletionStage().toCompletableFuture().get();
+    pool.query(NoteRepoBase.INVALIDATION_DDL).execute().toCompletionStage().toCompletableFuture().get();
+
+    PgSubscriber subscriber = PgSubscriber.subscriber(vertx, pgConnectOptions);
+    new CacheInvalidationListener(subscriber)
+        .listen(NoteRepoBase.INVALIDATION_CHANNEL, cache, NoteRepoBase::idFromText);
+    // registered after the listener, so it sees each notification once the cache has evicted
+    subscriber.channel(NoteRepoBase.INVALIDATION_CHANNEL).handler(payload -> {
+      payloads.add(payload);
+      if (payloads.size() == expectedNotifications) notified.complete(List.copyOf(payloads));
+    });
+    subscriber.connect().toCompletionStage().toCompletableFuture().get();
+  }
+
+  @AfterEach
+  void teardown() throws ExecutionException, InterruptedException {
+    vertx.close().toCompletionStage().toCompletableFuture().get();
+  }
+
+  private Future<List<String>> notifications(int count) {
+    expectedNotifications = count;
+    notified = Promise.promise();
+    return notified.future();
+  }
+
+  @Test
+  void updateElsewhereEvicts(VertxTestContext ctx) {
+    Future<List<String>> notifications = notifications(1);
+    noteRepo.findById(1L)
+        .flatMap(note -> {
+          assertEquals(1, cache.size());
+          return pool.query("UPDATE note SET body = 'edited elsewhere' WHERE id = 1").execute();
+        })
+        .flatMap(rs -> notifications)
+        .flatMap(payloads -> {
+          assertEquals(List.of("[\"1\"]"), payloads);
+          assertEquals(0, cache.size());
+          return noteRepo.findById(1L);
+        })
+        .onComplete(ctx.succeeding(note -> ctx.verify(() -> {
+          assertEquals("edited elsewhere", note.orElseThrow().body());
+          ctx.completeNow();
+        })));
+  }
+
+  @Test
+  void bulkDeleteIsBatched(VertxTestContext ctx) {
+    List<Long> ids = LongStream.rangeClosed(1, 252).boxed().collect(Collectors.toList());
+    Future<List<String>> notifications = notifications(3);
+    pool.query("INSERT INTO note (body, version) SELECT 'bulk', 0 FROM generate_series(3, 252)").execute()
+        .flatMap(rs -> noteRepo.findAllById(ids))
+        .flatMap(notes -> {
+          assertEquals(252, cache.size());
+          return pool.query("DELETE FROM note").execute();
+        })
+        .flatMap(rs -> notifications)
+        .onComplete(ctx.succeeding(payloads -> ctx.verify(() -> {
+          int notifiedIds = 0;
+          for (String payload : payloads) notifiedIds += new JsonArray(payload).size();
+          assertEquals(252, notifiedIds);
+          assertEquals(0, cache.size());
+          ctx.completeNow();
+        })));
+  }
+
+  @Test
+  void rolledBackWritesDoNotNotify(VertxTestContext ctx) {
+    Future<List<String>> notifications = notifications(1);
+    pool.withTransaction(con -> con.query("DELETE FROM note WHERE id = 1").execute()
+            .flatMap(rs -> Future.<Void>failedFuture("rollback")))
+        .otherwiseEmpty()
+        .flatMap(v -> noteRepo.findAllById(List.of(1L, 2L)))
+        .flatMap(notes -> pool.query("UPDATE note SET body = 'edited' WHERE id = 2").execute())
+        .flatMap(rs -> notifications)
+        .onComplete(ctx.succeeding(payloads -> ctx.verify(() -> {
+          assertEquals(List.of("[\"2\"]"), payloads);
+          assertEquals(1, cache.size());
+          ctx.completeNow();
+        })));
+  }
+
+  @Test
+  void truncateEvictsAll(VertxTestContext ctx) {
+    Future<List<String>> notifications = notifications(1);
+    noteRepo.findAllById(List.of(1L, 2L))
+        .flatMap(notes -> pool.query("TRUNCATE note").execute())
+        .flatMap(rs -> notifications)
+        .onComplete(ctx.succeeding(payloads -> ctx.verify(() -> {
+          assertEquals(List.of(CacheInvalidationListener.INVALIDATE_ALL), payloads);
+          assertEquals(0, cache.size());
+          ctx.completeNow();
+        })));
+  }
+}
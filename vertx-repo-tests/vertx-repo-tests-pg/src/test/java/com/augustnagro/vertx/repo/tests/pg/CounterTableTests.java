@@ -0,0 +1,112 @@
+package com.augustnagro.vertx.repo.tests.pg;
+
+import com.augustnagro.vertx.repo.tests.pg.repos.PageViewRepo;
+import io.vertx.core.Vertx;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import io.vertx.pgclient.PgConnectOptions;
+import io.vertx.pgclient.PgPool;
+import io.vertx.sqlclient.PoolOptions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(VertxExtension.class)
+class CounterTableTests {
+
+  private Vertx vertx;
+  private PgPool pool;
+  private PageViewRepo pageViewRepo;
+
+  @BeforeEach
+  void setup() throws URISyntaxException, ExecutionException, InterruptedException, IOException {
+    PgConnectOptions pgConnectOptions = new PgConnectOptions()
+        .setUser(System.getProperty("user.name"))
+        .setDatabase("test");
+    vertx = Vertx.vertx();
+    pool = PgPool.pool(vertx, pgConnectOptions, new PoolOptions().setMaxSize(2));
+    pageViewRepo = new PageViewRepo(pool);
+
+    String testSql = Files.readString(Path.of(getClass().getResource("/page_view.sql").toURI()));
+    pool.query(testSql).execute().toCompletionStage().toCompletableFuture().get();
+    pool.query(PageViewRepoBase.COUNTER_DDL).execute().toCompletionStage().toCompletableFuture().get();
+  }
+
+  @AfterEach
+  void teardown() throws ExecutionException, InterruptedException {
+    vertx.close().toCompletionStage().toCompletableFuture().get();
+  }
+
+  @Test
+  void counterFollowsWrites(VertxTestContext ctx) {
+    List<PageView> newViews = List.of(new PageView(null, "/about"), new PageView(null, "/"));
+    pageViewRepo.saveAll(newViews)
+        .flatMap(saved -> pageViewRepo.count())
+        .flatMap(count -> {
+          assertEquals(5L, count);
+          return pageViewRepo.deleteAllById(List.of(1L, 2L));
+        })
+        .flatMap(v -> pageViewRepo.count())
+        .flatMap(count -> {
+          assertEquals(3L, count);
+          return pool.query("TRUNCATE page_view").execute();
+        })
+        .flatMap(v -> pageViewRepo.count())
+        .onComplete(ctx.succeeding(count -> ctx.verify(() -> {
+          assertEquals(0L, count);
+          ctx.completeNow();
+        })));
+  }
+
+  @Test
+  void concurrentWritersDoNotWait(VertxTestContext ctx) {
+    pool.getConnection().flatMap(con -> con.begin().flatMap(tx -> pageViewRepo.save(con, new PageView(null, "/a"))
+            // the first transaction is still open, so this fails if both update one counter row
+            .flatMap(saved -> pool.withTransaction(other -> other.query("SET LOCAL lock_timeout = '2s'").execute()
+                .flatMap(rs -> pageViewRepo.save(other, new PageView(null, "/b")))))
+            .flatMap(saved -> tx.commit()))
+        .eventually(v -> con.close()))
+        .flatMap(v -> pageViewRepo.count())
+        .onComplete(ctx.succeeding(count -> ctx.verify(() -> {
+          assertEquals(5L, count);
+          ctx.completeNow();
+        })));
+  }
+
+  @Test
+  void compactCounter(VertxTestContext ctx) {
+    pageViewRepo.save(new PageView(null, "/about"))
+        .flatMap(saved -> pageViewRepo.deleteAllById(List.of(1L)))
+        .flatMap(v -> pageViewRepo.compactCounter())
+        .flatMap(v -> pool.query("SELECT n FROM page_view_count").execute())
+        .flatMap(rows -> {
+          assertEquals(1, rows.size());
+          assertEquals(3L, rows.iterator().next().getLong(0));
+          return pageViewRepo.count();
+        })
+        .flatMap(count -> {
+          assertEquals(3L, count);
+          return pageViewRepo.deleteAll();
+        })
+        .flatMap(v -> pageViewRepo.compactCounter())
+        .flatMap(v -> pool.query("SELECT n FROM page_view_count").execute())
+        .flatMap(rows -> {
+          assertEquals(0, rows.size());
+          return pageViewRepo.count();
+        })
+        .onComplete(ctx.succeeding(count -> ctx.verify(() -> {
+          assertEquals(0L, count);
+          ctx.completeNow();
+        })));
+  }
+}
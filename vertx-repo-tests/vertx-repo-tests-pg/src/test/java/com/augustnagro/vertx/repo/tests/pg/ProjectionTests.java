@@ -47,4 +47,30 @@ class ProjectionTests {
           ctx.completeNow();
         })));
   }
+
+  @Test
+  void testBuildPositional(VertxTestContext ctx) {
+    pool.preparedQuery("SELECT " + WindsurfTypeCdProjection.SELECT_COLUMNS + " FROM windsurf_type_cd ORDER BY cd")
+        .execute()
+        .map(WindsurfTypeCdProjection::build)
+        .onComplete(ctx.succeeding(windsurfTypes -> ctx.verify(() -> {
+          assertEquals(5, windsurfTypes.size());
+          assertEquals("COURSE", windsurfTypes.get(0).cd());
+          assertEquals("Course; upwind course racing", windsurfTypes.get(0).descr());
+          ctx.completeNow();
+        })));
+  }
+
+  @Test
+  void testBuildOtherColumnOrder(VertxTestContext ctx) {
+    pool.preparedQuery("SELECT descr, cd FROM windsurf_type_cd ORDER BY cd")
+        .collecting(WindsurfTypeCdProjection.listCollector())
+        .execute()
+        .onComplete(ctx.succeeding(rs -> ctx.verify(() -> {
+          assertEquals(5, rs.value().size());
+          assertEquals("COURSE", rs.value().get(0).cd());
+          assertEquals("Course; upwind course racing", rs.value().get(0).descr());
+          ctx.completeNow();
+        })));
+  }
 }
@@ -1,13 +1,29 @@
 package com.augustnagro.vertx.repo.tests.pg;
 
+import com.augustnagro.vertx.repo.CacheStats;
+import com.augustnagro.vertx.repo.LruEntityCache;
+import com.augustnagro.vertx.repo.OnConflict;
+import com.augustnagro.vertx.repo.ReadReplicas;
+import com.augustnagro.vertx.repo.RepoBatch;
+import com.augustnagro.vertx.repo.RepoMetrics;
+import com.augustnagro.vertx.repo.RepoOptions;
+import com.augustnagro.vertx.repo.SingleFlight;
+import com.augustnagro.vertx.repo.SlowSpecLog;
 import com.augustnagro.vertx.repo.Spec;
 import com.augustnagro.vertx.repo.pg.Functions;
 import com.augustnagro.vertx.repo.pg.Functions.ExtractField;
 import com.augustnagro.vertx.repo.pg.Functions.TrimType;
 import com.augustnagro.vertx.repo.pg.Functions.TruncField;
+import com.augustnagro.vertx.repo.pg.Pager;
+import com.augustnagro.vertx.repo.pg.Predicate;
 import com.augustnagro.vertx.repo.pg.Sort;
 import com.augustnagro.vertx.repo.pg.SpecBuilder;
+import com.augustnagro.vertx.repo.pg.SpecTemplate;
 import com.augustnagro.vertx.repo.tests.pg.repos.TestPersonRepo;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
 import io.vertx.junit5.VertxExtension;
 import io.vertx.junit5.VertxTestContext;
@@ -15,6 +31,7 @@ import io.vertx.pgclient.PgConnectOptions;
 import io.vertx.pgclient.PgPool;
 import io.vertx.sqlclient.PoolOptions;
 import io.vertx.sqlclient.Tuple;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -23,17 +40,24 @@ import java.io.IOException;
 import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.time.OffsetDateTime;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 @ExtendWith(VertxExtension.class)
 class RepoTests {
 
+  private Vertx vertx;
   private PgPool pool;
   private TestPersonRepo testPersonRepo;
 
@@ -42,7 +66,8 @@ class RepoTests {
     PgConnectOptions pgConnectOptions = new PgConnectOptions()
         .setUser(System.getProperty("user.name"))
         .setDatabase("test");
-    pool = PgPool.pool(Vertx.vertx(), pgConnectOptions, new PoolOptions().setMaxSize(1));
+    vertx = Vertx.vertx();
+    pool = PgPool.pool(vertx, pgConnectOptions, new PoolOptions().setMaxSize(1));
     testPersonRepo = new TestPersonRepo(pool);
 
     String testSql = Files.readString(Path.of(getClass().getResource("/test_person.sql").toURI()));
@@ -50,6 +75,11 @@ class RepoTests {
     pool.query(testSql).execute().toCompletionStage().toCompletableFuture().get();
   }
 
+  @AfterEach
+  void teardown() throws ExecutionException, InterruptedException {
+    vertx.close().toCompletionStage().toCompletableFuture().get();
+  }
+
   @Test
   void count(VertxTestContext ctx) throws Throwable {
     testPersonRepo.count().onComplete(ctx.succeeding(count -> ctx.verify(() -> {
@@ -58,6 +88,68 @@ class RepoTests {
     })));
   }
 
+  @Test
+  void countSpec(VertxTestContext ctx) {
+    Spec<TestPerson> admins = new SpecBuilder<TestPerson>()
+        .where(TestPersonRepo.IS_ADMIN)
+        .build();
+    Spec<TestPerson> limited = new SpecBuilder<TestPerson>()
+        .where(TestPersonRepo.IS_ADMIN)
+        .orderBy(TestPersonRepo.ID.asc())
+        .limit(3)
+        .build();
+    CompositeFuture.all(testPersonRepo.count(admins), testPersonRepo.count(limited))
+        .onComplete(ctx.succeeding(counts -> ctx.verify(() -> {
+          assertEquals(7L, (long) counts.<Long>resultAt(0));
+          assertEquals(3L, (long) counts.<Long>resultAt(1));
+          ctx.completeNow();
+        })));
+  }
+
+  @Test
+  void existsSpec(VertxTestContext ctx) {
+    Spec<TestPerson> nagro = new SpecBuilder<TestPerson>()
+        .where(TestPersonRepo.LAST_NAME.eq("Nagro"))
+        .limit(5)
+        .build();
+    Spec<TestPerson> nobody = new SpecBuilder<TestPerson>()
+        .where(TestPersonRepo.LAST_NAME.eq("Nobody"))
+        .build();
+    CompositeFuture.all(testPersonRepo.exists(nagro), testPersonRepo.exists(nobody))
+        .onComplete(ctx.succeeding(exists -> ctx.verify(() -> {
+          assertTrue(exists.<Boolean>resultAt(0));
+          assertFalse(exists.<Boolean>resultAt(1));
+          ctx.completeNow();
+        })));
+  }
+
+  @Test
+  void estimatedCount(VertxTestContext ctx) {
+    Spec<TestPerson> spec = new SpecBuilder<TestPerson>()
+        .where(TestPersonRepo.ID.greaterThan(0L))
+        .build();
+    // small tables are estimated exactly once analyzed
+    pool.query("ANALYZE test_person").execute()
+        .flatMap(v -> CompositeFuture.all(testPersonRepo.estimatedCount(), testPersonRepo.estimatedCount(spec)))
+        .onComplete(ctx.succeeding(estimates -> ctx.verify(() -> {
+          assertEquals(8L, (long) estimates.<Long>resultAt(0));
+          assertEquals(8L, (long) estimates.<Long>resultAt(1));
+          ctx.completeNow();
+        })));
+  }
+
+  @Test
+  void withIdReadsIdColumnByName(VertxTestContext ctx) {
+    TestPerson unsaved = new TestPerson("Martha", "Washington", null, false, null);
+    pool.query("SELECT last_name, id FROM test_person WHERE id = 1").execute()
+        .onComplete(ctx.succeeding(rs -> ctx.verify(() -> {
+          TestPerson saved = TestPersonRepoBase.withId(rs.iterator().next(), unsaved);
+          assertEquals(1L, saved.id());
+          assertEquals("Martha", saved.firstName());
+          ctx.completeNow();
+        })));
+  }
+
   @Test
   void existsById(VertxTestContext ctx) {
     testPersonRepo.existsById(2L).onComplete(ctx.succeeding(exists -> ctx.verify(() -> {
@@ -107,6 +199,160 @@ class RepoTests {
     })));
   }
 
+  @Test
+  void cachedFindById(VertxTestContext ctx) {
+    LruEntityCache<TestPerson, Long> cache = new LruEntityCache<>(10);
+    TestPersonRepo cachedRepo = new TestPersonRepo(pool, cache);
+    cachedRepo.findById(1L)
+        .flatMap(v -> pool.preparedQuery("UPDATE test_person SET last_name = 'Changed' WHERE id = 1").execute())
+        .flatMap(v -> cachedRepo.findById(1L))
+        .onComplete(ctx.succeeding(person -> ctx.verify(() -> {
+          assertEquals("Washington", person.get().lastName());
+          CacheStats stats = cache.stats();
+          assertEquals(1L, stats.hitCount());
+          assertEquals(1L, stats.missCount());
+          ctx.completeNow();
+        })));
+  }
+
+  @Test
+  void cachedFindAllByIdQueriesMissingIds(VertxTestContext ctx) {
+    LruEntityCache<TestPerson, Long> cache = new LruEntityCache<>(2);
+    TestPersonRepo cachedRepo = new TestPersonRepo(pool, cache);
+    cachedRepo.findById(1L)
+        .flatMap(v -> cachedRepo.findAllById(List.of(1L, 2L, 3L, 999L)))
+        .onComplete(ctx.succeeding(people -> ctx.verify(() -> {
+          assertEquals(3, people.size());
+          CacheStats stats = cache.stats();
+          assertEquals(1L, stats.hitCount());
+          assertEquals(4L, stats.missCount());
+          assertEquals(1L, stats.evictionCount());
+          assertEquals(2, cache.size());
+          ctx.completeNow();
+        })));
+  }
+
+  @Test
+  void cacheKeepsFrequentlyReadEntities(VertxTestContext ctx) {
+    LruEntityCache<TestPerson, Long> cache = new LruEntityCache<>(2);
+    TestPersonRepo cachedRepo = new TestPersonRepo(pool, cache);
+    cachedRepo.findById(1L)
+        .flatMap(v -> cachedRepo.findById(1L))
+        .flatMap(v -> cachedRepo.findById(1L))
+        .flatMap(v -> cachedRepo.findAllById(List.of(2L, 3L, 4L)))
+        .onComplete(ctx.succeeding(people -> ctx.verify(() -> {
+          assertEquals(3, people.size());
+          assertEquals(2, cache.size());
+          assertEquals(2L, cache.stats().evictionCount());
+          assertEquals("Washington", cache.get(1L).lastName());
+          ctx.completeNow();
+        })));
+  }
+
+  @Test
+  void cacheNotPopulatedByCallerTransactions(VertxTestContext ctx) {
+    LruEntityCache<TestPerson, Long> cache = new LruEntityCache<>(10);
+    TestPersonRepo cachedRepo = new TestPersonRepo(pool, cache);
+    pool.withTransaction(con -> con.query("UPDATE test_person SET last_name = 'Uncommitted'").execute()
+            .flatMap(rs -> cachedRepo.findById(con, 1L))
+            .flatMap(george -> cachedRepo.findAllById(con, List.of(2L, 3L)))
+            .flatMap(people -> {
+              assertEquals(0, cache.size());
+              return Future.<Void>failedFuture("rollback");
+            }))
+        .otherwiseEmpty()
+        .flatMap(v -> cachedRepo.findAllById(List.of(1L, 2L)))
+        .onComplete(ctx.succeeding(people -> ctx.verify(() -> {
+          assertEquals(List.of("Hamilton", "Washington"),
+              people.stream().map(TestPerson::lastName).sorted().collect(Collectors.toList()));
+          assertEquals(2, cache.size());
+          ctx.completeNow();
+        })));
+  }
+
+  @Test
+  void callerTransactionsBypassCache(VertxTestContext ctx) {
+    LruEntityCache<TestPerson, Long> cache = new LruEntityCache<>(10);
+    TestPersonRepo cachedRepo = new TestPersonRepo(pool, cache);
+    TestPerson geo = new TestPerson("Geo", "Washington", 1L, true, null);
+    cachedRepo.findById(1L)
+        .flatMap(george -> pool.withTransaction(con -> cachedRepo.save(con, geo)
+            .flatMap(saved -> {
+              // as if a concurrent read re-cached the last committed George
+              cache.put(1L, george.orElseThrow());
+              return cachedRepo.findById(con, 1L);
+            })
+            .flatMap(found -> {
+              assertEquals("Geo", found.orElseThrow().firstName());
+              return cachedRepo.findAllById(con, List.of(1L));
+            })))
+        .onComplete(ctx.succeeding(found -> ctx.verify(() -> {
+          assertEquals("Geo", found.get(0).firstName());
+          ctx.completeNow();
+        })));
+  }
+
+  @Test
+  void cacheInvalidatedByWrites(VertxTestContext ctx) {
+    LruEntityCache<TestPerson, Long> cache = new LruEntityCache<>(10);
+    TestPersonRepo cachedRepo = new TestPersonRepo(pool, cache);
+    cachedRepo.findAllById(List.of(1L, 2L, 3L))
+        .flatMap(people -> cachedRepo.save(new TestPerson("Geo", "Washington", 1L, true, null)))
+        .flatMap(v -> cachedRepo.findById(1L))
+        .flatMap(george -> {
+          assertEquals("Geo", george.get().firstName());
+          return cachedRepo.deleteAllById(List.of(2L));
+        })
+        .flatMap(v -> cachedRepo.findById(2L))
+        .flatMap(hamilton -> {
+          assertTrue(hamilton.isEmpty());
+          return cachedRepo.deleteAll();
+        })
+        .onComplete(ctx.succeeding(v -> ctx.verify(() -> {
+          assertEquals(0, cache.size());
+          ctx.completeNow();
+        })));
+  }
+
+  @Test
+  void batchedFindById(VertxTestContext ctx) {
+    TestPersonRepo batchingRepo = new TestPersonRepo(pool, new RepoOptions<TestPerson, Long>()
+        .setBatchFindById(true));
+    vertx.runOnContext(v -> CompositeFuture.all(
+        batchingRepo.findById(1L),
+        batchingRepo.findById(2L),
+        batchingRepo.findById(1L),
+        batchingRepo.findById(999L)
+    ).onComplete(ctx.succeeding(cf -> ctx.verify(() -> {
+      List<Optional<TestPerson>> people = cf.list();
+      assertEquals("Washington", people.get(0).get().lastName());
+      assertEquals("Hamilton", people.get(1).get().lastName());
+      assertEquals("Washington", people.get(2).get().lastName());
+      assertTrue(people.get(3).isEmpty());
+      ctx.completeNow();
+    }))));
+  }
+
+  @Test
+  void batchedFindByIdWithWindowAndMaxSize(VertxTestContext ctx) {
+    LruEntityCache<TestPerson, Long> cache = new LruEntityCache<>(10);
+    TestPersonRepo batchingRepo = new TestPersonRepo(pool, new RepoOptions<TestPerson, Long>()
+        .setEntityCache(cache)
+        .setBatchFindById(true)
+        .setBatchWindowMillis(10)
+        .setMaxBatchSize(2));
+    vertx.runOnContext(v -> CompositeFuture.all(
+        batchingRepo.findById(1L),
+        batchingRepo.findById(2L),
+        batchingRepo.findById(3L)
+    ).flatMap(cf -> batchingRepo.findById(3L)).onComplete(ctx.succeeding(adams -> ctx.verify(() -> {
+      assertEquals("Adams", adams.get().lastName());
+      assertEquals(3, cache.size());
+      assertEquals(1L, cache.stats().hitCount());
+      ctx.completeNow();
+    }))));
+  }
+
   @Test
   void delete(VertxTestContext ctx) {
     testPersonRepo.countAfterDeletingGeorge().onComplete(ctx.succeeding(count -> ctx.verify(() -> {
@@ -160,6 +406,84 @@ class RepoTests {
         })));
   }
 
+  @Test
+  void updateWritesOnlyChangedColumns(VertxTestContext ctx) {
+    testPersonRepo.findById(1L).map(Optional::get)
+        .flatMap(person -> pool.query("UPDATE test_person SET first_name = 'G.' WHERE id = 1").execute()
+            .flatMap(v -> testPersonRepo.update(person,
+                new TestPerson(person.firstName(), "Washington II", person.id(), person.isAdmin(), person.created()))))
+        .flatMap(updated -> testPersonRepo.findById(1L))
+        .onComplete(ctx.succeeding(person -> ctx.verify(() -> {
+          // the concurrent change to first_name was not overwritten
+          assertEquals("G.", person.get().firstName());
+          assertEquals("Washington II", person.get().lastName());
+          ctx.completeNow();
+        })));
+  }
+
+  @Test
+  void updateUnchangedSkipsDatabase(VertxTestContext ctx) {
+    List<String> operations = Collections.synchronizedList(new ArrayList<>());
+    TestPersonRepo meteredRepo = new TestPersonRepo(pool, new RepoOptions<TestPerson, Long>()
+        .setMetrics(new RepoMetrics() {
+          @Override
+          public void executed(String entity, String operation, long nanos, long rows, boolean succeeded) {
+            operations.add(operation);
+          }
+        }));
+    testPersonRepo.findAllById(List.of(1L, 2L))
+        .flatMap(people -> meteredRepo.update(people.get(0), people.get(0))
+            .flatMap(v -> meteredRepo.updateAll(people, people)))
+        .onComplete(ctx.succeeding(people -> ctx.verify(() -> {
+          assertEquals(2, people.size());
+          assertEquals(List.of(), operations);
+          ctx.completeNow();
+        })));
+  }
+
+  @Test
+  void updateAll(VertxTestContext ctx) {
+    testPersonRepo.findAllById(List.of(1L, 2L, 3L, 4L))
+        .flatMap(before -> {
+          before = new ArrayList<>(before);
+          before.sort((a, b) -> Long.compare(a.id(), b.id()));
+          List<TestPerson> after = new ArrayList<>(before);
+          for (int i = 0; i < 2; ++i) {
+            TestPerson p = before.get(i);
+            after.set(i, new TestPerson(p.firstName(), p.lastName().toUpperCase(), p.id(), p.isAdmin(), p.created()));
+          }
+          TestPerson p = before.get(2);
+          after.set(2, new TestPerson("Johnny", p.lastName(), p.id(), false, p.created()));
+          return testPersonRepo.updateAll(before, after);
+        })
+        .flatMap(updated -> testPersonRepo.findAll(new SpecBuilder<TestPerson>()
+            .where(TestPersonRepo.ID.lessThan(5L))
+            .orderBy(TestPersonRepo.ID.asc())
+            .build()))
+        .onComplete(ctx.succeeding(people -> ctx.verify(() -> {
+          assertEquals("WASHINGTON", people.get(0).lastName());
+          assertEquals("HAMILTON", people.get(1).lastName());
+          assertEquals("Johnny", people.get(2).firstName());
+          assertFalse(people.get(2).isAdmin());
+          assertEquals("Franklin", people.get(3).lastName());
+          ctx.completeNow();
+        })));
+  }
+
+  @Test
+  void updateMissingOrMismatchedEntity(VertxTestContext ctx) {
+    TestPerson missing = new TestPerson("No", "Body", 999L, false, null);
+    TestPerson renamed = new TestPerson("Some", "Body", 999L, false, null);
+    TestPerson otherId = new TestPerson("Some", "Body", 998L, false, null);
+    testPersonRepo.update(missing, renamed)
+        .onComplete(ctx.failing(missingError -> testPersonRepo.update(missing, otherId)
+            .onComplete(ctx.failing(idError -> ctx.verify(() -> {
+              assertTrue(missingError instanceof NoSuchElementException);
+              assertTrue(idError instanceof IllegalArgumentException);
+              ctx.completeNow();
+            })))));
+  }
+
   @Test
   void failingSave(VertxTestContext ctx) {
     TestPerson badData = new TestPerson(null, null, null, null, null);
@@ -185,6 +509,114 @@ class RepoTests {
         }))));
   }
 
+  @Test
+  void saveAllKeepsInputOrder(VertxTestContext ctx) {
+    List<TestPerson> toSave = new ArrayList<>();
+    for (int i = 0; i < 1000; ++i) {
+      toSave.add(new TestPerson("First" + i, "Last" + i, null, i % 2 == 0, null));
+    }
+    toSave.set(500, new TestPerson("Geo", "Washington", 1L, true, OffsetDateTime.now()));
+
+    testPersonRepo.saveAll(toSave)
+        .flatMap(savedPeople -> testPersonRepo.findById(savedPeople.get(999).id())
+            .onComplete(ctx.succeeding(lastPerson -> ctx.verify(() -> {
+              assertEquals(1000, savedPeople.size());
+              assertEquals(1L, savedPeople.get(500).id());
+              for (int i = 0; i < savedPeople.size(); ++i) {
+                if (i == 500) continue;
+                assertEquals("Last" + i, savedPeople.get(i).lastName());
+                assertNotNull(savedPeople.get(i).id());
+              }
+              assertEquals("Last999", lastPerson.get().lastName());
+              ctx.completeNow();
+            }))));
+  }
+
+  @Test
+  void saveAllWritesLastOfEqualIds(VertxTestContext ctx) {
+    List<TestPerson> toSave = List.of(
+        new TestPerson("Geo", "Washington", 1L, true, null),
+        new TestPerson("Kanye", "West", null, false, null),
+        new TestPerson("G.", "Washington", 1L, true, null)
+    );
+
+    testPersonRepo.saveAll(toSave)
+        .flatMap(savedPeople -> {
+          assertEquals(3, savedPeople.size());
+          assertEquals(toSave.get(0), savedPeople.get(0));
+          assertEquals("West", savedPeople.get(1).lastName());
+          assertNotNull(savedPeople.get(1).id());
+          assertEquals(toSave.get(2), savedPeople.get(2));
+          return testPersonRepo.findById(1L);
+        })
+        .onComplete(ctx.succeeding(george -> ctx.verify(() -> {
+          assertEquals("G.", george.orElseThrow().firstName());
+          ctx.completeNow();
+        })));
+  }
+
+  @Test
+  void saveInsertsMissingId(VertxTestContext ctx) {
+    TestPerson person = new TestPerson("Abigail", "Adams", 100L, false, null);
+    testPersonRepo.save(person)
+        .flatMap(saved -> testPersonRepo.findById(100L))
+        .onComplete(ctx.succeeding(found -> ctx.verify(() -> {
+          assertEquals("Abigail", found.get().firstName());
+          ctx.completeNow();
+        })));
+  }
+
+  @Test
+  void upsertDoNothing(VertxTestContext ctx) {
+    TestPerson person = new TestPerson("Geo", "Washington", 1L, true, null);
+    testPersonRepo.upsert(person, OnConflict.DO_NOTHING)
+        .flatMap(saved -> testPersonRepo.findById(1L))
+        .onComplete(ctx.succeeding(found -> ctx.verify(() -> {
+          assertEquals("George", found.get().firstName());
+          ctx.completeNow();
+        })));
+  }
+
+  @Test
+  void upsertAllExcludingColumns(VertxTestContext ctx) {
+    List<TestPerson> toUpsert = List.of(
+        new TestPerson("Geo", "Wash", 1L, false, null),
+        new TestPerson("Kanye", "West", null, false, null),
+        new TestPerson("Abigail", "Adams", 100L, false, null)
+    );
+
+    testPersonRepo.upsertAll(toUpsert, OnConflict.doUpdateExcept("last_name", "created"))
+        .flatMap(upserted -> testPersonRepo.findAllById(List.of(1L, 100L, upserted.get(1).id()))
+            .onComplete(ctx.succeeding(people -> ctx.verify(() -> {
+              assertEquals(3, people.size());
+              TestPerson george = people.stream().filter(p -> p.id() == 1L).findFirst().get();
+              assertEquals("Geo", george.firstName());
+              assertEquals("Washington", george.lastName());
+              assertFalse(george.isAdmin());
+              assertNotNull(george.created());
+              assertEquals("West", upserted.get(1).lastName());
+              ctx.completeNow();
+            }))));
+  }
+
+  @Test
+  void upsertExcludingUnknownColumnFails(VertxTestContext ctx) {
+    TestPerson george = new TestPerson("Geo", "Wash", 1L, false, null);
+    OnConflict typo = OnConflict.doUpdateExcept("lastname");
+
+    testPersonRepo.upsert(george, typo)
+        .onSuccess(v -> ctx.failNow("expected an unknown column"))
+        .<List<TestPerson>>transform(ar -> {
+          assertTrue(ar.cause() instanceof IllegalArgumentException, String.valueOf(ar.cause()));
+          return testPersonRepo.upsertAll(List.of(george), typo);
+        })
+        .onComplete(ctx.failing(t -> ctx.verify(() -> {
+          assertTrue(t instanceof IllegalArgumentException, t.toString());
+          assertTrue(t.getMessage().contains("lastname"));
+          ctx.completeNow();
+        })));
+  }
+
   @Test
   void failingSaveAll(VertxTestContext ctx) {
     // 1 update, 2 inserts, 1 bad save
@@ -216,6 +648,241 @@ class RepoTests {
     })));
   }
 
+  @Test
+  void specSingleFlight(VertxTestContext ctx) {
+    SingleFlight<List<TestPerson>> singleFlight = new SingleFlight<>();
+    TestPersonRepo dedupRepo = new TestPersonRepo(pool, new RepoOptions<TestPerson, Long>()
+        .setSpecSingleFlight(singleFlight));
+    Spec<TestPerson> johns = new SpecBuilder<TestPerson>()
+        .where(TestPersonRepo.FIRST_NAME.eq("John"))
+        .build();
+    Spec<TestPerson> johnsAgain = new SpecBuilder<TestPerson>()
+        .where(TestPersonRepo.FIRST_NAME.eq("John"))
+        .build();
+    Spec<TestPerson> georges = new SpecBuilder<TestPerson>()
+        .where(TestPersonRepo.FIRST_NAME.eq("George"))
+        .build();
+
+    CompositeFuture.all(dedupRepo.findAll(johns), dedupRepo.findAll(johnsAgain), dedupRepo.findAll(georges))
+        .flatMap(cf -> {
+          List<TestPerson> first = cf.resultAt(0);
+          List<TestPerson> second = cf.resultAt(1);
+          assertEquals(2, first.size());
+          assertEquals(first, second);
+          assertNotSame(first, second);
+          assertEquals(1, cf.<List<TestPerson>>resultAt(2).size());
+          assertEquals(0, singleFlight.inFlightCount());
+          return dedupRepo.findAll(johns);
+        })
+        .onComplete(ctx.succeeding(people -> ctx.verify(() -> {
+          assertEquals(2, people.size());
+          assertEquals(3L, singleFlight.executedCount());
+          assertEquals(1L, singleFlight.deduplicatedCount());
+          ctx.completeNow();
+        })));
+  }
+
+  @Test
+  void singleFlightCompletesJoinersOnTheirContext(VertxTestContext ctx) {
+    SingleFlight<String> singleFlight = new SingleFlight<>();
+    Promise<String> query = Promise.promise();
+    Context leaderContext = vertx.getOrCreateContext();
+    Context joinerContext = vertx.getOrCreateContext();
+    leaderContext.runOnContext(v -> {
+      singleFlight.execute("key", query::future);
+      joinerContext.runOnContext(w -> {
+        singleFlight.execute("key", () -> Future.failedFuture("not deduplicated"))
+            .onComplete(ctx.succeeding(result -> ctx.verify(() -> {
+              assertEquals("result", result);
+              assertSame(joinerContext, Vertx.currentContext());
+              ctx.completeNow();
+            })));
+        leaderContext.runOnContext(x -> query.complete("result"));
+      });
+    });
+  }
+
+  @Test
+  void slowSpecLog(VertxTestContext ctx) {
+    List<SlowSpecLog.SlowSpec> slowSpecs = Collections.synchronizedList(new ArrayList<>());
+    Promise<Void> bothReported = Promise.promise();
+    SlowSpecLog slowSpecLog = new SlowSpecLog(Duration.ZERO)
+        .setExplain(true)
+        .setHandler(slowSpec -> {
+          slowSpecs.add(slowSpec);
+          if (slowSpecs.size() == 2) bothReported.complete();
+        });
+    TestPersonRepo loggingRepo = new TestPersonRepo(pool, new RepoOptions<TestPerson, Long>()
+        .setSlowSpecLog(slowSpecLog));
+    Spec<TestPerson> spec = new SpecBuilder<TestPerson>()
+        .where(TestPersonRepo.FIRST_NAME.eq("John"))
+        .where(TestPersonRepo.ID.lessThan(100L))
+        .build();
+
+    loggingRepo.findAll(spec)
+        .flatMap(people -> loggingRepo.findAll(spec))
+        .flatMap(people -> bothReported.future())
+        .onComplete(ctx.succeeding(v -> ctx.verify(() -> {
+          // plans are rate limited, so only one of the two is explained
+          SlowSpecLog.SlowSpec explained = slowSpecs.stream()
+              .filter(slowSpec -> slowSpec.plan() != null)
+              .findFirst().orElseThrow();
+          assertEquals(1, slowSpecs.stream().filter(slowSpec -> slowSpec.plan() == null).count());
+          assertEquals("TestPerson", explained.entity());
+          assertTrue(explained.sql().endsWith(spec.sql()));
+          assertEquals(List.of("String", "Long"), explained.parameterTypes());
+          assertTrue(explained.plan().contains("\"Plan\""), explained.plan());
+          assertFalse(new SlowSpecLog(Duration.ofDays(1)).isSlow(explained.latency().toNanos()));
+          ctx.completeNow();
+        })));
+  }
+
+  @Test
+  void slowSpecLogReportsFailures(VertxTestContext ctx) {
+    Promise<SlowSpecLog.SlowSpec> reported = Promise.promise();
+    SlowSpecLog slowSpecLog = new SlowSpecLog(Duration.ZERO)
+        .setHandler(reported::complete);
+    TestPersonRepo loggingRepo = new TestPersonRepo(pool, new RepoOptions<TestPerson, Long>()
+        .setSlowSpecLog(slowSpecLog));
+    Spec<TestPerson> failing = new Spec<>() {
+      @Override
+      public String sql() {
+        return "WHERE id / 0 = 1";
+      }
+
+      @Override
+      public Tuple tuple() {
+        return Tuple.tuple();
+      }
+    };
+
+    loggingRepo.findAll(failing)
+        .onSuccess(people -> ctx.failNow("expected division by zero"))
+        .recover(t -> reported.future().map(slowSpec -> {
+          assertSame(t, slowSpec.failure());
+          assertTrue(slowSpec.toString().contains("division by zero"), slowSpec.toString());
+          return List.of();
+        }))
+        .onComplete(ctx.succeeding(v -> ctx.completeNow()));
+  }
+
+  @Test
+  void metrics(VertxTestContext ctx) {
+    List<String> events = Collections.synchronizedList(new ArrayList<>());
+    RepoMetrics metrics = new RepoMetrics() {
+      @Override
+      public void poolWait(String entity, String operation, long nanos) {
+        assertTrue(nanos >= 0);
+        events.add(entity + " " + operation + " poolWait");
+      }
+
+      @Override
+      public void executed(String entity, String operation, long nanos, long rows, boolean succeeded) {
+        assertTrue(nanos >= 0);
+        events.add(entity + " " + operation + " executed " + rows + " " + succeeded);
+      }
+
+      @Override
+      public void decoded(String entity, String operation, long nanos, long rows) {
+        assertTrue(nanos >= 0);
+        events.add(entity + " " + operation + " decoded " + rows);
+      }
+
+      @Override
+      public void batchSize(String entity, String operation, int size) {
+        events.add(entity + " " + operation + " batchSize " + size);
+      }
+    };
+    TestPersonRepo meteredRepo = new TestPersonRepo(pool, new RepoOptions<TestPerson, Long>()
+        .setMetrics(metrics));
+    Spec<TestPerson> johns = new SpecBuilder<TestPerson>()
+        .where(TestPersonRepo.FIRST_NAME.eq("John"))
+        .build();
+    List<TestPerson> newPeople = List.of(
+        new TestPerson("Jane", "Doe", null, false, null),
+        new TestPerson("Jim", "Doe", null, false, null)
+    );
+
+    meteredRepo.findById(1L)
+        .flatMap(person -> meteredRepo.findAll(johns))
+        .flatMap(people -> meteredRepo.saveAll(newPeople))
+        .flatMap(saved -> meteredRepo.deleteAllById(List.of(saved.get(0).id(), saved.get(1).id(), 999L)))
+        .flatMap(v -> testPersonRepo.count())
+        .onComplete(ctx.succeeding(count -> ctx.verify(() -> {
+          assertEquals(8L, count);
+          assertEquals(List.of(
+              "TestPerson findById poolWait",
+              "TestPerson findById executed 1 true",
+              "TestPerson findById decoded 1",
+              "TestPerson findAllSpec poolWait",
+              "TestPerson findAllSpec executed 2 true",
+              "TestPerson findAllSpec decoded 2",
+              "TestPerson saveAll poolWait",
+              "TestPerson upsertAll batchSize 2",
+              "TestPerson upsertAll executed 2 true",
+              "TestPerson deleteAllById poolWait",
+              "TestPerson deleteAllById batchSize 3",
+              "TestPerson deleteAllById executed 2 true"
+          ), events);
+          ctx.completeNow();
+        })));
+  }
+
+  @Test
+  void meteredCacheHitsDoNotBorrowConnections(VertxTestContext ctx) {
+    List<String> poolWaits = Collections.synchronizedList(new ArrayList<>());
+    TestPersonRepo cachedRepo = new TestPersonRepo(pool, new RepoOptions<TestPerson, Long>()
+        .setEntityCache(new LruEntityCache<>(10))
+        .setMetrics(new RepoMetrics() {
+          @Override
+          public void poolWait(String entity, String operation, long nanos) {
+            poolWaits.add(operation);
+          }
+        }));
+    cachedRepo.findAllById(List.of(1L, 2L))
+        // holds the pool's only connection, so only cache hits can complete
+        .flatMap(people -> pool.getConnection())
+        .flatMap(con -> cachedRepo.findById(1L)
+            .flatMap(george -> cachedRepo.findAllById(List.of(1L, 2L)))
+            .eventually(v -> con.close()))
+        .onComplete(ctx.succeeding(people -> ctx.verify(() -> {
+          assertEquals(2, people.size());
+          assertEquals(List.of("findAllById"), poolWaits);
+          ctx.completeNow();
+        })));
+  }
+
+  @Test
+  void specTemplate(VertxTestContext ctx) {
+    SpecTemplate<TestPerson> template = new SpecBuilder<TestPerson>()
+        .where(TestPersonRepo.FIRST_NAME.eq(SpecTemplate.param("firstName")))
+        .where(TestPersonRepo.ID.greaterThan(1L))
+        .where(TestPersonRepo.ID.lessThan(SpecTemplate.param("maxId")))
+        .orderBy(TestPersonRepo.ID.asc())
+        .limit(5)
+        .buildTemplate();
+    assertEquals(List.of("firstName", "maxId"), template.paramNames());
+
+    Spec<TestPerson> johns = template.bind("John", 100L);
+    Spec<TestPerson> firstJohn = template.bind(Map.of("firstName", "John", "maxId", 4L));
+    assertSame(johns.sql(), firstJohn.sql());
+    assertThrows(IllegalArgumentException.class, () -> template.bind("John"));
+    assertThrows(IllegalStateException.class, () -> new SpecBuilder<TestPerson>()
+        .where(TestPersonRepo.FIRST_NAME.eq(SpecTemplate.param("firstName")))
+        .build());
+
+    testPersonRepo.findAll(johns)
+        .flatMap(people -> {
+          assertEquals(2, people.size());
+          return testPersonRepo.findAll(firstJohn);
+        })
+        .onComplete(ctx.succeeding(people -> ctx.verify(() -> {
+          assertEquals(1, people.size());
+          assertEquals("Adams", people.get(0).lastName());
+          ctx.completeNow();
+        })));
+  }
+
   @Test
   void specFindGreaterThanCount(VertxTestContext ctx) {
     Spec<TestPerson> spec = new SpecBuilder<TestPerson>()
@@ -376,6 +1043,31 @@ class RepoTests {
     })));
   }
 
+  @Test
+  void specNestedSqlAndParams(VertxTestContext ctx) {
+    Spec<TestPerson> spec = new SpecBuilder<TestPerson>()
+        .where(Functions.lower(TestPersonRepo.FIRST_NAME).notEq("raymond"))
+        .where(TestPersonRepo.ID.between(2L).and(5L))
+        .where(Functions.<TestPerson>concat(TestPersonRepo.FIRST_NAME, " ", TestPersonRepo.LAST_NAME).eq("John Adams"))
+        .orderBy(TestPersonRepo.LAST_NAME.asc().nullsFirst())
+        .orderBy(TestPersonRepo.ID.desc().seekLessThan(7L))
+        .limit(3)
+        .build();
+
+    assertEquals("WHERE (LOWER(first_name) <> $1) AND (id BETWEEN $2 AND $3) " +
+                 "AND (CONCAT(first_name, $4, last_name) = $5) AND (id < $6) " +
+                 "ORDER BY last_name ASC NULLS FIRST, id DESC LIMIT 3", spec.sql());
+    assertEquals(6, spec.tuple().size());
+    assertEquals(" ", spec.tuple().getValue(3));
+    assertEquals(7L, spec.tuple().getValue(5));
+
+    testPersonRepo.findAll(spec).onComplete(ctx.succeeding(people -> ctx.verify(() -> {
+      assertEquals(1, people.size());
+      assertEquals(3L, people.get(0).id());
+      ctx.completeNow();
+    })));
+  }
+
   @Test
   void specOffset(VertxTestContext ctx) {
     Spec<TestPerson> spec = new SpecBuilder<TestPerson>()
@@ -407,6 +1099,281 @@ class RepoTests {
     })));
   }
 
+  @Test
+  void specRowValueSeek(VertxTestContext ctx) {
+    Spec<TestPerson> spec = new SpecBuilder<TestPerson>()
+        .where(TestPersonRepo.ID.lessThan(100L))
+        .orderBy(TestPersonRepo.LAST_NAME.asc().seekGreaterThan("Hamilton"))
+        .orderBy(TestPersonRepo.ID.asc().seekGreaterThan(2L))
+        .build();
+    assertEquals("WHERE (id < $1) AND ((last_name, id) > ($2, $3)) ORDER BY last_name ASC, id ASC", spec.sql());
+
+    testPersonRepo.findAll(spec).onComplete(ctx.succeeding(people -> ctx.verify(() -> {
+      // Washington has a lower id, but sorts after Hamilton
+      assertEquals(List.of("Jay", "Jefferson", "Madison", "Nagro", "Washington"),
+          people.stream().map(TestPerson::lastName).collect(Collectors.toList()));
+      ctx.completeNow();
+    })));
+  }
+
+  @Test
+  void specMixedDirectionSeek(VertxTestContext ctx) {
+    Spec<TestPerson> spec = new SpecBuilder<TestPerson>()
+        .orderBy(TestPersonRepo.IS_ADMIN.desc().seekLessThan(true))
+        .orderBy(TestPersonRepo.ID.asc().seekGreaterThan(5L))
+        .build();
+    assertEquals("WHERE (is_admin <= $1 AND ((is_admin < $2) OR (is_admin = $3 AND id > $4))) " +
+                 "ORDER BY is_admin DESC, id ASC", spec.sql());
+
+    testPersonRepo.findAll(spec).onComplete(ctx.succeeding(people -> ctx.verify(() -> {
+      assertEquals(List.of(6L, 7L, 8L), people.stream().map(TestPerson::id).collect(Collectors.toList()));
+      ctx.completeNow();
+    })));
+  }
+
+  @Test
+  void pagerWithNullSortKeys(VertxTestContext ctx) {
+    Pager<TestPerson> pager = Pager.builder(testPersonRepo)
+        .orderBy(TestPersonRepo.FIRST_NAME.asc().nullsFirst(), TestPerson::firstName)
+        .orderBy(TestPersonRepo.ID.asc(), TestPerson::id)
+        .pageSize(1)
+        .build();
+    List<Long> ids = new ArrayList<>();
+
+    collectIds(pager.first(), ids).onComplete(ctx.succeeding(v -> ctx.verify(() -> {
+      // Nagro has no first name, and the Johns tie
+      assertEquals(List.of(8L, 2L, 4L, 1L, 7L, 3L, 5L, 6L), ids);
+      ctx.completeNow();
+    })));
+  }
+
+  @Test
+  void pagerTokensAreBoundToWhereValues(VertxTestContext ctx) {
+    Pager<TestPerson> johns = Pager.builder(testPersonRepo)
+        .where(TestPersonRepo.FIRST_NAME.eq("John"))
+        .orderBy(TestPersonRepo.ID.asc(), TestPerson::id)
+        .pageSize(1)
+        .build();
+    Pager<TestPerson> georges = Pager.builder(testPersonRepo)
+        .where(TestPersonRepo.FIRST_NAME.eq("George"))
+        .orderBy(TestPersonRepo.ID.asc(), TestPerson::id)
+        .pageSize(1)
+        .build();
+
+    johns.first()
+        .flatMap(first -> georges.page(first.nextToken()))
+        .onComplete(ctx.failing(t -> ctx.verify(() -> {
+          assertTrue(t instanceof IllegalArgumentException);
+          ctx.completeNow();
+        })));
+  }
+
+  private static Future<Void> collectIds(Future<Pager.Page<TestPerson>> page, List<Long> ids) {
+    return page.flatMap(p -> {
+      p.items().forEach(person -> ids.add(person.id()));
+      return p.hasNext() ? collectIds(p.next(), ids) : Future.succeededFuture();
+    });
+  }
+
+  @Test
+  void pager(VertxTestContext ctx) {
+    Pager<TestPerson> pager = Pager.builder(testPersonRepo)
+        .where(TestPersonRepo.ID.lessThan(100L))
+        .orderBy(TestPersonRepo.IS_ADMIN.desc(), TestPerson::isAdmin)
+        .orderBy(TestPersonRepo.ID.asc(), TestPerson::id)
+        .pageSize(3)
+        .prefetch(10)
+        .build();
+    List<Long> ids = new ArrayList<>();
+
+    pager.first()
+        .flatMap(first -> {
+          assertTrue(first.hasNext());
+          first.items().forEach(person -> ids.add(person.id()));
+          // as an HTTP client would, continuing from the token
+          return pager.page(first.nextToken());
+        })
+        .flatMap(second -> {
+          second.items().forEach(person -> ids.add(person.id()));
+          return second.next();
+        })
+        .flatMap(third -> {
+          assertFalse(third.hasNext());
+          assertNull(third.nextToken());
+          third.items().forEach(person -> ids.add(person.id()));
+          return pager.page("bm90IGEgdG9rZW4");
+        })
+        .onComplete(ctx.failing(t -> ctx.verify(() -> {
+          assertTrue(t instanceof IllegalArgumentException);
+          assertEquals(List.of(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L), ids);
+          ctx.completeNow();
+        })));
+  }
+
+  /*
+   * A Sort implemented outside vertx-repo-pg.
+   */
+  private static final class IdSort implements Sort<TestPerson, Long> {
+    private final Predicate<TestPerson> seekPredicate;
+
+    IdSort(Predicate<TestPerson> seekPredicate) {
+      this.seekPredicate = seekPredicate;
+    }
+
+    @Override
+    public String sql() {
+      return TestPersonRepo.ID.sql() + " ASC";
+    }
+
+    @Override
+    public Object[] params() {
+      return new Object[0];
+    }
+
+    @Override
+    public int paramCount() {
+      return 0;
+    }
+
+    @Override
+    public Predicate<TestPerson> seekPredicate() {
+      return seekPredicate;
+    }
+
+    @Override
+    public Sort<TestPerson, Long> seekGreaterThan(Long value) {
+      return new IdSort(TestPersonRepo.ID.greaterThan(value));
+    }
+
+    @Override
+    public Sort<TestPerson, Long> seekLessThan(Long value) {
+      return new IdSort(TestPersonRepo.ID.lessThan(value));
+    }
+  }
+
+  @Test
+  void foreignSortSeeks(VertxTestContext ctx) {
+    Spec<TestPerson> spec = new SpecBuilder<TestPerson>()
+        .where(TestPersonRepo.IS_ADMIN.isTrue())
+        .orderBy(TestPersonRepo.LAST_NAME.asc().seekGreaterThan("B"))
+        .orderBy(new IdSort(null).seekLessThan(7L))
+        .build();
+    testPersonRepo.findAll(spec).onComplete(ctx.succeeding(people -> ctx.verify(() -> {
+      assertEquals(List.of("Franklin", "Hamilton", "Jay", "Jefferson", "Washington"),
+          people.stream().map(TestPerson::lastName).collect(Collectors.toList()));
+      ctx.completeNow();
+    })));
+  }
+
+  @Test
+  void pagerRejectsForeignSorts() {
+    assertThrows(IllegalArgumentException.class,
+        () -> Pager.builder(testPersonRepo).orderBy(new IdSort(null), TestPerson::id));
+  }
+
+  @Test
+  void findAllProjection(VertxTestContext ctx) {
+    Spec<TestPerson> spec = new SpecBuilder<TestPerson>()
+        .where(TestPersonRepo.IS_ADMIN.isFalse())
+        .build();
+    testPersonRepo.findAll(spec, PersonNameProjection.TYPE).onComplete(ctx.succeeding(names -> ctx.verify(() -> {
+      assertEquals(List.of(new PersonName(8L, "Nagro")), names);
+      ctx.completeNow();
+    })));
+  }
+
+  @Test
+  void selectColumns(VertxTestContext ctx) {
+    Spec<TestPerson> spec = new SpecBuilder<TestPerson>()
+        .where(TestPersonRepo.ID.lessThan(4L))
+        .orderBy(TestPersonRepo.ID.asc())
+        .build();
+    testPersonRepo.select(spec, TestPersonRepo.ID.times(10L), Functions.upper(TestPersonRepo.LAST_NAME))
+        .onComplete(ctx.succeeding(rows -> ctx.verify(() -> {
+          assertEquals(3, rows.size());
+          assertEquals(2, rows.get(0).size());
+          assertEquals(10L, rows.get(0).getLong(0));
+          assertEquals("WASHINGTON", rows.get(0).getString(1));
+          assertEquals(30L, rows.get(2).getLong(0));
+          assertEquals("ADAMS", rows.get(2).getString(1));
+          ctx.completeNow();
+        })));
+  }
+
+  @Test
+  void streamSpec(VertxTestContext ctx) {
+    Spec<TestPerson> spec = new SpecBuilder<TestPerson>()
+        .orderBy(TestPersonRepo.ID.asc())
+        .build();
+
+    List<TestPerson> people = new ArrayList<>();
+    testPersonRepo.stream(spec, 3).onComplete(ctx.succeeding(stream -> stream
+        .exceptionHandler(ctx::failNow)
+        .endHandler(v -> testPersonRepo.count().onComplete(ctx.succeeding(count -> ctx.verify(() -> {
+          // the pool has one connection, so count only runs if the stream released it
+          assertEquals(8L, count);
+          assertEquals(8, people.size());
+          assertEquals("Washington", people.get(0).lastName());
+          assertEquals("Nagro", people.get(7).lastName());
+          ctx.completeNow();
+        }))))
+        .handler(person -> {
+          people.add(person);
+          if (people.size() == 4) {
+            stream.pause();
+            Vertx.currentContext().owner().setTimer(10, id -> stream.resume());
+          }
+        })));
+  }
+
+  @Test
+  void streamSpecRepeatedly(VertxTestContext ctx) {
+    Spec<TestPerson> spec = new SpecBuilder<TestPerson>()
+        .where(TestPersonRepo.ID.greaterThan(4))
+        .build();
+
+    Future<Integer> streamed = Future.succeededFuture(0);
+    for (int i = 0; i < 20; ++i) {
+      streamed = streamed.flatMap(total -> testPersonRepo.stream(spec, 2).flatMap(stream -> {
+        Promise<Integer> rowCount = Promise.promise();
+        int[] seen = {total};
+        stream.exceptionHandler(rowCount::fail)
+            .endHandler(v -> rowCount.complete(seen[0]))
+            .handler(person -> ++seen[0]);
+        return rowCount.future();
+      }));
+    }
+    streamed
+        .flatMap(total -> {
+          assertEquals(80, total);
+          // the pool has one connection, so every stream ran in this session
+          return pool.query("SELECT COUNT(*) FROM pg_prepared_statements").execute();
+        })
+        .onComplete(ctx.succeeding(rs -> ctx.verify(() -> {
+          assertEquals(0L, rs.iterator().next().getLong(0));
+          ctx.completeNow();
+        })));
+  }
+
+  @Test
+  void streamSpecInTransaction(VertxTestContext ctx) {
+    Spec<TestPerson> spec = new SpecBuilder<TestPerson>()
+        .where(TestPersonRepo.ID.greaterThan(4))
+        .build();
+
+    pool.withTransaction(con -> testPersonRepo.stream(con, spec, 2).flatMap(stream -> {
+      Promise<Integer> rowCount = Promise.promise();
+      int[] seen = {0};
+      stream.exceptionHandler(rowCount::fail)
+          .endHandler(v -> rowCount.complete(seen[0]))
+          .handler(person -> ++seen[0]);
+      return rowCount.future();
+    })).onComplete(ctx.succeeding(rowCount -> ctx.verify(() -> {
+      assertEquals(4, rowCount);
+      ctx.completeNow();
+    })));
+  }
+
   // for https://github.com/eclipse-vertx/vertx-sql-client/issues/699
   @Test
   void concatOrderBug(VertxTestContext ctx) {
@@ -446,5 +1413,84 @@ class RepoTests {
   // coalesce
   //
 
+  @Test
+  void repoBatch(VertxTestContext ctx) {
+    Spec<TestPerson> johns = new SpecBuilder<TestPerson>()
+        .where(TestPersonRepo.FIRST_NAME.eq("John"))
+        .orderBy(TestPersonRepo.ID.asc())
+        .build();
+    RepoBatch batch = new RepoBatch();
+    Future<Optional<TestPerson>> george = batch.findById(testPersonRepo, 1L);
+    Future<List<TestPerson>> foundJohns = batch.findAll(testPersonRepo, johns);
+    Future<Long> count = batch.count(testPersonRepo);
+    Future<Boolean> exists = batch.existsById(testPersonRepo, 100L);
+    assertEquals(4, batch.size());
+    assertFalse(george.isComplete());
+
+    batch.execute(pool).onComplete(ctx.succeeding(results -> ctx.verify(() -> {
+      assertEquals("Washington", george.result().orElseThrow().lastName());
+      assertEquals(List.of("Adams", "Jay"),
+          foundJohns.result().stream().map(TestPerson::lastName).collect(Collectors.toList()));
+      assertEquals(8L, (long) count.result());
+      assertFalse(exists.result());
+      assertEquals(8L, (long) results.<Long>resultAt(2));
+      ctx.completeNow();
+    })));
+  }
+
+  @Test
+  void repoBatchFailure(VertxTestContext ctx) {
+    RepoBatch batch = new RepoBatch();
+    Future<Long> bad = batch.add(sql -> sql.query("SELECT nonexistent FROM test_person").execute().map(rs -> 0L));
+    Future<Long> count = batch.count(testPersonRepo);
+    batch.execute(pool).onComplete(ctx.failing(t -> ctx.verify(() -> {
+      assertTrue(bad.failed());
+      // other queries still complete
+      assertEquals(8L, (long) count.result());
+      ctx.completeNow();
+    })));
+  }
 
+  @Test
+  void readReplicas(VertxTestContext ctx) {
+    PgPool replica = PgPool.pool(vertx, new PgConnectOptions()
+        .setUser(System.getProperty("user.name"))
+        .setDatabase("test"), new PoolOptions().setMaxSize(1));
+    ReadReplicas replicas = new ReadReplicas(List.of(replica)).setReadYourWritesMillis(60_000);
+    TestPersonRepo repo = new TestPersonRepo(pool, new RepoOptions<TestPerson, Long>().setReadReplicas(replicas));
+    assertSame(replica, replicas.reader(pool));
+
+    repo.findAll()
+        .flatMap(people -> repo.save(new TestPerson("Jane", "Doe", null, false, null)))
+        .onComplete(ctx.succeeding(saved -> ctx.verify(() -> {
+          // read your writes
+          assertSame(pool, replicas.reader(pool));
+          ctx.completeNow();
+        })));
+  }
+
+  @Test
+  void readReplicaLagCheck(VertxTestContext ctx) {
+    PgPool unreachable = PgPool.pool(vertx, new PgConnectOptions()
+        .setUser(System.getProperty("user.name"))
+        .setDatabase("no_such_replica"), new PoolOptions().setMaxSize(1));
+    PgPool upToDate = PgPool.pool(vertx, new PgConnectOptions()
+        .setUser(System.getProperty("user.name"))
+        .setDatabase("test"), new PoolOptions().setMaxSize(1));
+    ReadReplicas replicas = new ReadReplicas(List.of(unreachable, upToDate));
+    TestPersonRepo repo = new TestPersonRepo(pool, new RepoOptions<TestPerson, Long>().setReadReplicas(replicas));
+
+    replicas.checkLag()
+        .flatMap(v -> {
+          assertFalse(replicas.isHealthy(0));
+          assertTrue(replicas.isHealthy(1));
+          assertSame(upToDate, replicas.reader(pool));
+          assertSame(upToDate, replicas.reader(pool));
+          return repo.count();
+        })
+        .onComplete(ctx.succeeding(count -> ctx.verify(() -> {
+          assertEquals(8L, (long) count);
+          ctx.completeNow();
+        })));
+  }
 }
@@ -0,0 +1,148 @@
+package com.augustnagro.vertx.repo.tests.pg;
+
+import com.augustnagro.vertx.repo.Spec;
+import com.augustnagro.vertx.repo.pg.SpecBuilder;
+import com.augustnagro.vertx.repo.tests.pg.repos.NoteRepo;
+import io.vertx.core.Vertx;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import io.vertx.pgclient.PgConnectOptions;
+import io.vertx.pgclient.PgPool;
+import io.vertx.sqlclient.PoolOptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Shards are schemas of the test database.
+ */
+@ExtendWith(VertxExtension.class)
+class ShardingTests {
+
+  private static final int SHARDS = 3;
+
+  private final List<PgPool> pools = new ArrayList<>();
+  private NoteShardedRepo noteRepo;
+  private List<Note> notes;
+
+  @BeforeEach
+  void setup() throws URISyntaxException, ExecutionException, InterruptedException, IOException {
+    Vertx vertx = Vertx.vertx();
+    String testSql = Files.readString(Path.of(getClass().getResource("/note.sql").toURI()));
+    ArrayList<NoteRepo> shards = new ArrayList<>();
+    for (int i = 0; i < SHARDS; ++i) {
+      String schema = "note_shard_" + i;
+      PgConnectOptions pgConnectOptions = new PgConnectOptions()
+          .setUser(System.getProperty("user.name"))
+          .setDatabase("test")
+          .addProperty("search_path", schema);
+      PgPool pool = PgPool.pool(vertx, pgConnectOptions, new PoolOptions().setMaxSize(1));
+      pool.query("CREATE SCHEMA IF NOT EXISTS " + schema + ";" + testSql + ";DELETE FROM note")
+          .execute().toCompletionStage().toCompletableFuture().get();
+      pools.add(pool);
+      shards.add(new NoteRepo(pool));
+    }
+    noteRepo = new NoteShardedRepo(shards);
+
+    notes = new ArrayList<>();
+    for (long id = 1; id <= 30; ++id) notes.add(new Note(id, "note " + (char) ('a' + id % 26), null));
+    notes = noteRepo.upsertAll(notes).toCompletionStage().toCompletableFuture().get();
+  }
+
+  @Test
+  void writesAreRoutedById(VertxTestContext ctx) {
+    noteRepo.shard(noteRepo.shardOf(7L)).findById(7L)
+        .flatMap(onShard -> {
+          assertEquals(notes.get(6), onShard.orElseThrow());
+          return noteRepo.shard((noteRepo.shardOf(7L) + 1) % SHARDS).existsById(7L);
+        })
+        .flatMap(onOtherShard -> {
+          assertFalse(onOtherShard);
+          return noteRepo.findById(7L);
+        })
+        .onComplete(ctx.succeeding(found -> ctx.verify(() -> {
+          assertEquals(notes.get(6), found.orElseThrow());
+          ctx.completeNow();
+        })));
+  }
+
+  @Test
+  void everyShardIsUsed(VertxTestContext ctx) {
+    noteRepo.shard(0).count()
+        .flatMap(count0 -> {
+          assertTrue(count0 > 0 && count0 < 30);
+          return noteRepo.count();
+        })
+        .onComplete(ctx.succeeding(count -> ctx.verify(() -> {
+          assertEquals(30L, count);
+          ctx.completeNow();
+        })));
+  }
+
+  @Test
+  void findAllMergesInOrder(VertxTestContext ctx) {
+    Spec<Note> spec = new SpecBuilder<Note>()
+        .where(NoteRepo.ID.greaterThan(3L))
+        .orderBy(NoteRepo.BODY.desc())
+        .orderBy(NoteRepo.ID.asc())
+        .limit(10)
+        .offset(4)
+        .build();
+    List<Note> expected = notes.stream()
+        .filter(note -> note.id() > 3)
+        .sorted(Comparator.comparing(Note::body).reversed().thenComparing(Note::id))
+        .skip(4)
+        .limit(10)
+        .collect(Collectors.toList());
+    noteRepo.findAll(spec)
+        .flatMap(found -> {
+          assertEquals(expected, found);
+          return noteRepo.count(spec);
+        })
+        .onComplete(ctx.succeeding(count -> ctx.verify(() -> {
+          assertEquals(10L, count);
+          ctx.completeNow();
+        })));
+  }
+
+  @Test
+  void saveNeedsId(VertxTestContext ctx) {
+    noteRepo.save(new Note(null, "new", null)).onComplete(ctx.failing(t -> ctx.verify(() -> {
+      assertTrue(t instanceof IllegalArgumentException);
+      ctx.completeNow();
+    })));
+  }
+
+  @Test
+  void saveAllAndDeleteAllById(VertxTestContext ctx) {
+    List<Note> edited = notes.stream()
+        .map(note -> new Note(note.id(), note.body() + "!", note.version()))
+        .collect(Collectors.toList());
+    noteRepo.saveAll(edited)
+        .flatMap(saved -> {
+          for (int i = 0; i < saved.size(); ++i) {
+            assertEquals(edited.get(i).id(), saved.get(i).id());
+            assertEquals(1L, saved.get(i).version());
+          }
+          return noteRepo.deleteAllById(List.of(1L, 2L, 3L, 4L));
+        })
+        .flatMap(v -> noteRepo.findAll())
+        .onComplete(ctx.succeeding(remaining -> ctx.verify(() -> {
+          assertEquals(26, remaining.size());
+          assertTrue(remaining.stream().allMatch(note -> note.body().endsWith("!")));
+          ctx.completeNow();
+        })));
+  }
+}
@@ -0,0 +1,153 @@
+package com.augustnagro.vertx.repo.tests.pg;
+
+import com.augustnagro.vertx.repo.VersionConflictException;
+import com.augustnagro.vertx.repo.tests.pg.repos.NoteRepo;
+import io.vertx.core.Vertx;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import io.vertx.pgclient.PgConnectOptions;
+import io.vertx.pgclient.PgPool;
+import io.vertx.sqlclient.PoolOptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(VertxExtension.class)
+class VersionTests {
+
+  private PgPool pool;
+  private NoteRepo noteRepo;
+
+  @BeforeEach
+  void setup() throws URISyntaxException, ExecutionException, InterruptedException, IOException {
+    PgConnectOptions pgConnectOptions = new PgConnectOptions()
+        .setUser(System.getProperty("user.name"))
+        .setDatabase("test");
+    pool = PgPool.pool(Vertx.vertx(), pgConnectOptions, new PoolOptions().setMaxSize(1));
+    noteRepo = new NoteRepo(pool);
+
+    String testSql = Files.readString(Path.of(getClass().getResource("/note.sql").toURI()));
+    // since there's no injectable VertxTestContext, need to wait until this future completes..
+    pool.query(testSql).execute().toCompletionStage().toCompletableFuture().get();
+  }
+
+  @Test
+  void saveIncrementsVersion(VertxTestContext ctx) {
+    noteRepo.save(new Note(null, "new", null))
+        .flatMap(inserted -> {
+          assertEquals(0L, inserted.version());
+          return noteRepo.save(new Note(1L, "edited", 0L));
+        })
+        .flatMap(saved -> {
+          assertEquals(1L, saved.version());
+          return noteRepo.findById(1L);
+        })
+        .onComplete(ctx.succeeding(note -> ctx.verify(() -> {
+          assertEquals(new Note(1L, "edited", 1L), note.orElseThrow());
+          ctx.completeNow();
+        })));
+  }
+
+  @Test
+  void staleSaveConflicts(VertxTestContext ctx) {
+    Note stale = new Note(2L, "stale edit", 2L);
+    noteRepo.save(stale)
+        .onComplete(ctx.failing(t -> noteRepo.findById(2L)
+            .onComplete(ctx.succeeding(note -> ctx.verify(() -> {
+              assertTrue(t instanceof VersionConflictException);
+              assertEquals(List.of(stale), ((VersionConflictException) t).conflicts());
+              assertEquals(new Note(2L, "second draft", 3L), note.orElseThrow());
+              ctx.completeNow();
+            })))));
+  }
+
+  @Test
+  void saveAllReportsEveryConflict(VertxTestContext ctx) {
+    Note fresh = new Note(1L, "fresh edit", 0L);
+    Note stale = new Note(2L, "stale edit", 2L);
+    Note deleted = new Note(99L, "deleted", 0L);
+    noteRepo.saveAll(List.of(fresh, stale, new Note(null, "new", null), deleted))
+        .onComplete(ctx.failing(t -> noteRepo.findAll()
+            .onComplete(ctx.succeeding(notes -> ctx.verify(() -> {
+              assertEquals(List.of(stale, deleted), ((VersionConflictException) t).conflicts());
+              // saveAll is transactional, so the fresh edit and insert are rolled back
+              assertEquals(2, notes.size());
+              assertTrue(notes.contains(new Note(1L, "first draft", 0L)));
+              ctx.completeNow();
+            })))));
+  }
+
+  @Test
+  void saveAllIncrementsVersions(VertxTestContext ctx) {
+    noteRepo.saveAll(List.of(new Note(2L, "edited", 3L), new Note(null, "new", null), new Note(1L, "edited", 0L)))
+        .onComplete(ctx.succeeding(saved -> ctx.verify(() -> {
+          assertEquals(new Note(2L, "edited", 4L), saved.get(0));
+          assertEquals("new", saved.get(1).body());
+          assertEquals(0L, saved.get(1).version());
+          assertEquals(new Note(1L, "edited", 1L), saved.get(2));
+          ctx.completeNow();
+        })));
+  }
+
+  @Test
+  void updateChecksVersion(VertxTestContext ctx) {
+    Note before = new Note(2L, "second draft", 3L);
+    Note after = new Note(2L, "third draft", 3L);
+    noteRepo.update(before, after)
+        .flatMap(updated -> {
+          assertEquals(new Note(2L, "third draft", 4L), updated);
+          // before is now stale
+          return noteRepo.update(before, new Note(2L, "lost edit", 3L));
+        })
+        .onComplete(ctx.failing(t -> ctx.verify(() -> {
+          assertTrue(t instanceof VersionConflictException);
+          ctx.completeNow();
+        })));
+  }
+
+  @Test
+  void updateAllReportsEveryConflict(VertxTestContext ctx) {
+    List<Note> befores = List.of(new Note(1L, "first draft", 0L), new Note(2L, "second draft", 2L));
+    List<Note> afters = List.of(new Note(1L, "edited", 0L), new Note(2L, "edited", 2L));
+    noteRepo.updateAll(befores, afters)
+        .onComplete(ctx.failing(t -> noteRepo.findById(1L)
+            .onComplete(ctx.succeeding(note -> ctx.verify(() -> {
+              assertEquals(List.of(afters.get(1)), ((VersionConflictException) t).conflicts());
+              assertEquals(new Note(1L, "first draft", 0L), note.orElseThrow());
+              ctx.completeNow();
+            })))));
+  }
+
+  @Test
+  void upsertIncrementsVersion(VertxTestContext ctx) {
+    noteRepo.upsert(new Note(2L, "upserted", 0L))
+        .flatMap(upserted -> {
+          assertEquals(new Note(2L, "upserted", 4L), upserted);
+          // the returned version is current, so saving it does not conflict
+          return noteRepo.save(new Note(2L, "saved", upserted.version()));
+        })
+        .flatMap(saved -> noteRepo.findById(2L))
+        .onComplete(ctx.succeeding(note -> ctx.verify(() -> {
+          assertEquals(new Note(2L, "saved", 5L), note.orElseThrow());
+          ctx.completeNow();
+        })));
+  }
+
+  @Test
+  void upsertAllReturnsVersions(VertxTestContext ctx) {
+    noteRepo.upsertAll(List.of(new Note(2L, "upserted", 0L), new Note(5L, "inserted", null)))
+        .onComplete(ctx.succeeding(upserted -> ctx.verify(() -> {
+          assertEquals(List.of(new Note(2L, "upserted", 4L), new Note(5L, "inserted", 0L)), upserted);
+          ctx.completeNow();
+        })));
+  }
+}
@@ -0,0 +1,110 @@
+package com.augustnagro.vertx.repo.benchmarks;
+
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.RowSet;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collector;
+
+/**
+ * Per-row cost of the decoders generated by PgProcessor, for Entities
+ * with 5, 20 and 50 components. Scores are per row, so with the gc
+ * profiler gc.alloc.rate.norm is bytes per row.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DecoderBenchmark {
+
+  static final int ROWS = 100;
+
+  @Param({"5", "20", "50"})
+  public int width;
+
+  private RowSet<Row> rowSet;
+  private RowSet<Row> reversedRowSet;
+  private List<Row> rows;
+  private Function<Row, ?> buildSingle;
+  private Function<RowSet<Row>, List<?>> build;
+  private Collector<Row, ?, ?> listCollector;
+
+  @Setup
+  public void setup() {
+    String selectColumns;
+    switch (width) {
+      case 5:
+        selectColumns = Wide5RepoBase.SELECT_COLUMNS;
+        buildSingle = Wide5RepoBase::buildSingle;
+        build = Wide5RepoBase::build;
+        listCollector = Wide5RepoBase.listCollector();
+        break;
+      case 20:
+        selectColumns = Wide20RepoBase.SELECT_COLUMNS;
+        buildSingle = Wide20RepoBase::buildSingle;
+        build = Wide20RepoBase::build;
+        listCollector = Wide20RepoBase.listCollector();
+        break;
+      case 50:
+        selectColumns = Wide50RepoBase.SELECT_COLUMNS;
+        buildSingle = Wide50RepoBase::buildSingle;
+        build = Wide50RepoBase::build;
+        listCollector = Wide50RepoBase.listCollector();
+        break;
+      default:
+        throw new IllegalArgumentException("No Entity with " + width + " components");
+    }
+    rowSet = FakeRows.rowSet(selectColumns, ROWS);
+    reversedRowSet = FakeRows.reversedRowSet(selectColumns, ROWS);
+    rows = ((FakeRows.FakeRowSet) rowSet).rows();
+  }
+
+  /**
+   * buildSingle(Row), which checks the column layout of every row.
+   */
+  @Benchmark
+  @OperationsPerInvocation(ROWS)
+  public void buildSingleRow(Blackhole bh) {
+    for (Row row : rows) bh.consume(buildSingle.apply(row));
+  }
+
+  /**
+   * build(RowSet), which checks the column layout once.
+   */
+  @Benchmark
+  @OperationsPerInvocation(ROWS)
+  public List<?> buildRowSet() {
+    return build.apply(rowSet);
+  }
+
+  /**
+   * build(RowSet) for a column order other than SELECT_COLUMNS,
+   * falling back to lookups by name.
+   */
+  @Benchmark
+  @OperationsPerInvocation(ROWS)
+  public List<?> buildRowSetByName() {
+    return build.apply(reversedRowSet);
+  }
+
+  /**
+   * listCollector(), driven the way the sql client drives a Collector.
+   */
+  @Benchmark
+  @OperationsPerInvocation(ROWS)
+  public Object listCollector() {
+    return collect(listCollector, rows);
+  }
+
+  private static <A, R> R collect(Collector<Row, A, R> collector, List<Row> rows) {
+    A container = collector.supplier().get();
+    for (Row row : rows) collector.accumulator().accept(container, row);
+    return collector.finisher().apply(container);
+  }
+}
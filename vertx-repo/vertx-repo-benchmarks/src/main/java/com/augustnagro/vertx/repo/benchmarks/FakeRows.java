@@ -0,0 +1,185 @@
+package com.augustnagro.vertx.repo.benchmarks;
+
+import io.vertx.sqlclient.PropertyKind;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.RowIterator;
+import io.vertx.sqlclient.RowSet;
+import io.vertx.sqlclient.Tuple;
+import io.vertx.sqlclient.desc.ColumnDescriptor;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * In-memory Row and RowSet stand-ins, so generated decoders can be
+ * measured without a database.
+ */
+final class FakeRows {
+
+  private static final OffsetDateTime TIME = OffsetDateTime.of(2021, 3, 1, 12, 0, 0, 0, ZoneOffset.UTC);
+
+  private FakeRows() {}
+
+  /**
+   * RowSet of rowCount rows, with the columns of a generated SELECT_COLUMNS.
+   * Values are derived from the column name prefixes used by the Wide entities.
+   */
+  static RowSet<Row> rowSet(String selectColumns, int rowCount) {
+    return rowSet(Arrays.asList(selectColumns.split(", ")), rowCount);
+  }
+
+  /**
+   * Like {@link #rowSet(String, int)}, with the columns in reverse order, so
+   * decoders take their by-name path.
+   */
+  static RowSet<Row> reversedRowSet(String selectColumns, int rowCount) {
+    List<String> columns = new ArrayList<>(Arrays.asList(selectColumns.split(", ")));
+    Collections.reverse(columns);
+    return rowSet(columns, rowCount);
+  }
+
+  static RowSet<Row> rowSet(List<String> columns, int rowCount) {
+    String[] columnNames = columns.toArray(new String[0]);
+    ArrayList<Row> rows = new ArrayList<>(rowCount);
+    for (int r = 0; r < rowCount; ++r) {
+      Object[] values = new Object[columnNames.length];
+      for (int c = 0; c < columnNames.length; ++c) values[c] = value(columnNames[c], r);
+      rows.add(new FakeRow(columnNames, values));
+    }
+    return new FakeRowSet(columns, rows);
+  }
+
+  /**
+   * RowSet with a single "id" column, like the result of INSERT ... RETURNING id.
+   */
+  static RowSet<Row> idRowSet(long firstId, int rowCount) {
+    String[] columnNames = {"id"};
+    ArrayList<Row> rows = new ArrayList<>(rowCount);
+    for (int r = 0; r < rowCount; ++r) rows.add(new FakeRow(columnNames, new Object[] { firstId + r }));
+    return new FakeRowSet(List.of("id"), rows);
+  }
+
+  private static Object value(String column, int row) {
+    if (column.equals("id")) return row + 1L;
+    if (column.startsWith("str")) return "value " + row;
+    if (column.startsWith("long")) return (long) row;
+    if (column.startsWith("int")) return row;
+    if (column.startsWith("bool")) return row % 2 == 0;
+    if (column.startsWith("time")) return TIME.plusSeconds(row);
+    if (column.startsWith("dbl")) return row * 1.5;
+    throw new IllegalArgumentException("No sample value for column " + column);
+  }
+
+  static final class FakeRow implements Row {
+    private final String[] columnNames;
+    private final Object[] values;
+
+    FakeRow(String[] columnNames, Object[] values) {
+      this.columnNames = columnNames;
+      this.values = values;
+    }
+
+    @Override
+    public String getColumnName(int pos) {
+      return pos < columnNames.length ? columnNames[pos] : null;
+    }
+
+    @Override
+    public int getColumnIndex(String column) {
+      for (int i = 0; i < columnNames.length; ++i) {
+        if (columnNames[i].equals(column)) return i;
+      }
+      return -1;
+    }
+
+    @Override
+    public Object getValue(int pos) {
+      return values[pos];
+    }
+
+    @Override
+    public Tuple addValue(Object value) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int size() {
+      return values.length;
+    }
+
+    @Override
+    public void clear() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  static final class FakeRowSet implements RowSet<Row> {
+    private final List<String> columnsNames;
+    private final List<Row> rows;
+
+    FakeRowSet(List<String> columnsNames, List<Row> rows) {
+      this.columnsNames = columnsNames;
+      this.rows = rows;
+    }
+
+    List<Row> rows() {
+      return rows;
+    }
+
+    @Override
+    public RowIterator<Row> iterator() {
+      return new RowIterator<>() {
+        private int i = 0;
+
+        @Override
+        public boolean hasNext() {
+          return i < rows.size();
+        }
+
+        @Override
+        public Row next() {
+          return rows.get(i++);
+        }
+      };
+    }
+
+    @Override
+    public int rowCount() {
+      return rows.size();
+    }
+
+    @Override
+    public List<String> columnsNames() {
+      return columnsNames;
+    }
+
+    @Override
+    public List<ColumnDescriptor> columnDescriptors() {
+      return List.of();
+    }
+
+    @Override
+    public int size() {
+      return rows.size();
+    }
+
+    @Override
+    public <V> V property(PropertyKind<V> propertyKind) {
+      return null;
+    }
+
+    @Override
+    public RowSet<Row> value() {
+      return this;
+    }
+
+    @Override
+    public RowSet<Row> next() {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,112 @@
+package com.augustnagro.vertx.repo.benchmarks;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.sqlclient.PreparedQuery;
+import io.vertx.sqlclient.Query;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.RowSet;
+import io.vertx.sqlclient.SqlClient;
+import io.vertx.sqlclient.SqlResult;
+import io.vertx.sqlclient.Tuple;
+
+import java.lang.reflect.Array;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collector;
+
+/**
+ * SqlClient that completes every prepared query immediately, so the
+ * generated write methods can be measured without a database.
+ * <br>
+ * <br>
+ * Queries with RETURNING get one id row per entity, counting the length of
+ * the first array parameter for UNNEST inserts. Other queries get no rows.
+ * The last Tuple is kept, so its construction can't be optimized away.
+ */
+final class FakeSqlClient implements SqlClient {
+
+  private static final RowSet<Row> EMPTY = FakeRows.rowSet(List.of(), 0);
+
+  Tuple lastTuple;
+  private long nextId = 1;
+
+  @Override
+  public PreparedQuery<RowSet<Row>> preparedQuery(String sql) {
+    return new FakePreparedQuery(sql);
+  }
+
+  @Override
+  public Query<RowSet<Row>> query(String sql) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void close(Handler<AsyncResult<Void>> handler) {
+    handler.handle(close());
+  }
+
+  @Override
+  public Future<Void> close() {
+    return Future.succeededFuture();
+  }
+
+  private RowSet<Row> result(String sql, Tuple tuple) {
+    lastTuple = tuple;
+    if (!sql.contains("RETURNING")) return EMPTY;
+    Object first = tuple.getValue(0);
+    int rowCount = first != null && first.getClass().isArray() ? Array.getLength(first) : 1;
+    RowSet<Row> ids = FakeRows.idRowSet(nextId, rowCount);
+    nextId += rowCount;
+    return ids;
+  }
+
+  private class FakePreparedQuery implements PreparedQuery<RowSet<Row>> {
+    private final String sql;
+
+    FakePreparedQuery(String sql) {
+      this.sql = sql;
+    }
+
+    @Override
+    public Future<RowSet<Row>> execute(Tuple tuple) {
+      return Future.succeededFuture(result(sql, tuple));
+    }
+
+    @Override
+    public void execute(Tuple tuple, Handler<AsyncResult<RowSet<Row>>> handler) {
+      handler.handle(execute(tuple));
+    }
+
+    @Override
+    public Future<RowSet<Row>> execute() {
+      return execute(Tuple.tuple());
+    }
+
+    @Override
+    public void execute(Handler<AsyncResult<RowSet<Row>>> handler) {
+      handler.handle(execute());
+    }
+
+    @Override
+    public Future<RowSet<Row>> executeBatch(List<Tuple> batch) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void executeBatch(List<Tuple> batch, Handler<AsyncResult<RowSet<Row>>> handler) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <R> PreparedQuery<SqlResult<R>> collecting(Collector<Row, ?, R> collector) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <U> PreparedQuery<RowSet<U>> mapping(Function<Row, U> mapper) {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
@@ -0,0 +1,24 @@
+package com.augustnagro.vertx.repo.benchmarks;
+
+import com.augustnagro.vertx.repo.pg.Expression;
+import com.augustnagro.vertx.repo.pg.NumberExpression;
+import com.augustnagro.vertx.repo.pg.Predicate;
+import com.augustnagro.vertx.repo.pg.StringExpression;
+
+import java.time.OffsetDateTime;
+
+/**
+ * Column expressions like those of a generated RepoBase.
+ */
+final class Person {
+
+  static final NumberExpression<Person> ID = NumberExpression.of("id");
+  static final StringExpression<Person> FIRST_NAME = StringExpression.of("first_name");
+  static final StringExpression<Person> LAST_NAME = StringExpression.of("last_name");
+  static final StringExpression<Person> NICKNAME = StringExpression.of("nickname");
+  static final NumberExpression<Person> AGE = NumberExpression.of("age");
+  static final Predicate<Person> IS_ADMIN = Predicate.of("is_admin");
+  static final Expression<Person, OffsetDateTime> CREATED = Expression.of("created");
+
+  private Person() {}
+}
@@ -0,0 +1,122 @@
+package com.augustnagro.vertx.repo.benchmarks;
+
+import com.augustnagro.vertx.repo.Spec;
+import com.augustnagro.vertx.repo.pg.Functions;
+import com.augustnagro.vertx.repo.pg.NumberExpression;
+import com.augustnagro.vertx.repo.pg.Predicate;
+import com.augustnagro.vertx.repo.pg.SpecBuilder;
+import com.augustnagro.vertx.repo.pg.SpecTemplate;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.augustnagro.vertx.repo.benchmarks.Person.*;
+import static com.augustnagro.vertx.repo.pg.Functions.*;
+
+/**
+ * Cost of building Specs, from the column expressions to the final SQL and Tuple.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SpecBuilderBenchmark {
+
+  @Param({"4", "16", "64"})
+  public int depth;
+
+  private String lastName;
+  private long lastId;
+  private SpecTemplate<Person> template;
+
+  @Setup
+  public void setup() {
+    lastName = "Washington";
+    lastId = 125L;
+    template = new SpecBuilder<Person>()
+        .where(lower(FIRST_NAME).notEq(SpecTemplate.param("firstName")))
+        .where(IS_ADMIN.isTrue())
+        .orderBy(LAST_NAME.asc())
+        .orderBy(ID.asc())
+        .limit(10)
+        .buildTemplate();
+  }
+
+  /**
+   * A where clause, a couple of sorts and a limit.
+   */
+  @Benchmark
+  public Spec<Person> typical() {
+    return new SpecBuilder<Person>()
+        .where(lower(FIRST_NAME).notEq("raymond"))
+        .where(IS_ADMIN.isTrue())
+        .orderBy(LAST_NAME.asc())
+        .orderBy(ID.asc())
+        .limit(10)
+        .build();
+  }
+
+  /**
+   * Same as {@link #typical()}, bound from a precompiled template.
+   */
+  @Benchmark
+  public Spec<Person> typicalFromTemplate() {
+    return template.bind("raymond");
+  }
+
+  /**
+   * Arithmetic nested depth levels deep, compared in one predicate.
+   */
+  @Benchmark
+  public Spec<Person> nestedArithmetic() {
+    NumberExpression<Person> expr = AGE;
+    for (int i = 0; i < depth; ++i) {
+      expr = expr.plus(i);
+    }
+    return new SpecBuilder<Person>()
+        .where(expr.greaterThan(100))
+        .build();
+  }
+
+  /**
+   * depth predicates, each with its own parameter.
+   */
+  @Benchmark
+  public Spec<Person> manyPredicates() {
+    SpecBuilder<Person> builder = new SpecBuilder<>();
+    for (int i = 0; i < depth; ++i) {
+      builder.where(AGE.notEq(i));
+    }
+    return builder.build();
+  }
+
+  /**
+   * Seek pagination over two sort columns.
+   */
+  @Benchmark
+  public Spec<Person> seekSorts() {
+    return new SpecBuilder<Person>()
+        .where(FIRST_NAME.isNotNull())
+        .orderBy(LAST_NAME.asc().seekGreaterThan(lastName))
+        .orderBy(ID.desc().nullsLast().seekLessThan(lastId))
+        .limit(20)
+        .build();
+  }
+
+  /**
+   * COALESCE, CONCAT and DATE_TRUNC in one Spec.
+   */
+  @Benchmark
+  public Spec<Person> functions() {
+    Predicate<Person> nameMatches = coalesce(NICKNAME, FIRST_NAME, "unknown").eq("George");
+    Predicate<Person> fullNameMatches = Functions.<Person>concat(FIRST_NAME, " ", LAST_NAME).notEq("John Adams");
+    return new SpecBuilder<Person>()
+        .where(nameMatches)
+        .where(fullNameMatches)
+        .orderBy(dateTrunc(TruncField.DAY, CREATED).desc())
+        .limit(10)
+        .build();
+  }
+}
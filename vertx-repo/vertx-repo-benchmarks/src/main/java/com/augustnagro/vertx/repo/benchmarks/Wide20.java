@@ -0,0 +1,17 @@
+package com.augustnagro.vertx.repo.benchmarks;
+
+import com.augustnagro.vertx.repo.Entity;
+import com.augustnagro.vertx.repo.Id;
+
+import java.time.OffsetDateTime;
+
+/**
+ * Sample Entity with 20 components, see {@link FakeRows}.
+ */
+@Entity
+public record Wide20(
+    @Id Long id, String str1, Long long2, Integer int3, Boolean bool4, OffsetDateTime time5,
+    Double dbl6, String str7, Long long8, Integer int9, Boolean bool10, OffsetDateTime time11,
+    Double dbl12, String str13, Long long14, Integer int15, Boolean bool16, OffsetDateTime time17,
+    Double dbl18, String str19
+) {}
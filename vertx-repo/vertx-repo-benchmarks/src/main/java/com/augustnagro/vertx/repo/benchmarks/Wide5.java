@@ -0,0 +1,12 @@
+package com.augustnagro.vertx.repo.benchmarks;
+
+import com.augustnagro.vertx.repo.Entity;
+import com.augustnagro.vertx.repo.Id;
+
+/**
+ * Sample Entity with 5 components, see {@link FakeRows}.
+ */
+@Entity
+public record Wide5(
+    @Id Long id, String str1, Long long2, Integer int3, Boolean bool4
+) {}
@@ -0,0 +1,22 @@
+package com.augustnagro.vertx.repo.benchmarks;
+
+import com.augustnagro.vertx.repo.Entity;
+import com.augustnagro.vertx.repo.Id;
+
+import java.time.OffsetDateTime;
+
+/**
+ * Sample Entity with 50 components, see {@link FakeRows}.
+ */
+@Entity
+public record Wide50(
+    @Id Long id, String str1, Long long2, Integer int3, Boolean bool4, OffsetDateTime time5,
+    Double dbl6, String str7, Long long8, Integer int9, Boolean bool10, OffsetDateTime time11,
+    Double dbl12, String str13, Long long14, Integer int15, Boolean bool16, OffsetDateTime time17,
+    Double dbl18, String str19, Long long20, Integer int21, Boolean bool22, OffsetDateTime time23,
+    Double dbl24, String str25, Long long26, Integer int27, Boolean bool28, OffsetDateTime time29,
+    Double dbl30, String str31, Long long32, Integer int33, Boolean bool34, OffsetDateTime time35,
+    Double dbl36, String str37, Long long38, Integer int39, Boolean bool40, OffsetDateTime time41,
+    Double dbl42, String str43, Long long44, Integer int45, Boolean bool46, OffsetDateTime time47,
+    Double dbl48, String str49
+) {}
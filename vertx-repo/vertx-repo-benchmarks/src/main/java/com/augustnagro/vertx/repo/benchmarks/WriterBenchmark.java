@@ -0,0 +1,124 @@
+package com.augustnagro.vertx.repo.benchmarks;
+
+import io.vertx.core.Future;
+import io.vertx.pgclient.PgPool;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * Per-entity cost of the write methods generated by PgProcessor, against
+ * a {@link FakeSqlClient}. This covers the Tuple and array construction,
+ * and the splitting and merging in saveAll, but no database work.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WriterBenchmark {
+
+  static final int BATCH = 100;
+
+  @Param({"5", "20", "50"})
+  public int width;
+
+  private final FakeSqlClient client = new FakeSqlClient();
+  private Object existingEntity;
+  private Object newEntity;
+  private List<Object> mixedEntities;
+  private Function<Object, Future<?>> save;
+  private Function<List<Object>, Future<?>> saveAll;
+
+  @Setup
+  @SuppressWarnings("unchecked")
+  public void setup() {
+    List<?> entities;
+    UnaryOperator<Object> withoutId;
+    switch (width) {
+      case 5:
+        Wide5Repo wide5Repo = new Wide5Repo();
+        entities = Wide5RepoBase.build(FakeRows.rowSet(Wide5RepoBase.SELECT_COLUMNS, BATCH));
+        withoutId = e -> Wide5RepoBase.withId((Long) null, (Wide5) e);
+        save = e -> wide5Repo.save(client, (Wide5) e);
+        saveAll = list -> wide5Repo.saveAll(client, (List<Wide5>) (List<?>) list);
+        break;
+      case 20:
+        Wide20Repo wide20Repo = new Wide20Repo();
+        entities = Wide20RepoBase.build(FakeRows.rowSet(Wide20RepoBase.SELECT_COLUMNS, BATCH));
+        withoutId = e -> Wide20RepoBase.withId((Long) null, (Wide20) e);
+        save = e -> wide20Repo.save(client, (Wide20) e);
+        saveAll = list -> wide20Repo.saveAll(client, (List<Wide20>) (List<?>) list);
+        break;
+      case 50:
+        Wide50Repo wide50Repo = new Wide50Repo();
+        entities = Wide50RepoBase.build(FakeRows.rowSet(Wide50RepoBase.SELECT_COLUMNS, BATCH));
+        withoutId = e -> Wide50RepoBase.withId((Long) null, (Wide50) e);
+        save = e -> wide50Repo.save(client, (Wide50) e);
+        saveAll = list -> wide50Repo.saveAll(client, (List<Wide50>) (List<?>) list);
+        break;
+      default:
+        throw new IllegalArgumentException("No Entity with " + width + " components");
+    }
+
+    existingEntity = entities.get(0);
+    newEntity = withoutId.apply(entities.get(0));
+    // half new, half existing, interleaved
+    mixedEntities = new ArrayList<>(BATCH);
+    for (int i = 0; i < BATCH; ++i) {
+      Object entity = entities.get(i);
+      mixedEntities.add(i % 2 == 0 ? withoutId.apply(entity) : entity);
+    }
+
+    Future<?> sanityCheck = saveAll.apply(mixedEntities);
+    if (sanityCheck.failed()) throw new IllegalStateException(sanityCheck.cause());
+  }
+
+  /**
+   * save of an Entity with an Id, an upsert.
+   */
+  @Benchmark
+  public Future<?> saveExisting() {
+    return save.apply(existingEntity);
+  }
+
+  /**
+   * save of an Entity without an Id, an insert returning the Id.
+   */
+  @Benchmark
+  public Future<?> saveNew() {
+    return save.apply(newEntity);
+  }
+
+  /**
+   * saveAll of half new and half existing Entities.
+   */
+  @Benchmark
+  @OperationsPerInvocation(BATCH)
+  public Future<?> saveAllMixed() {
+    return saveAll.apply(mixedEntities);
+  }
+
+  static class Wide5Repo extends Wide5RepoBase {
+    Wide5Repo() {
+      super((PgPool) null);
+    }
+  }
+
+  static class Wide20Repo extends Wide20RepoBase {
+    Wide20Repo() {
+      super((PgPool) null);
+    }
+  }
+
+  static class Wide50Repo extends Wide50RepoBase {
+    Wide50Repo() {
+      super((PgPool) null);
+    }
+  }
+}
@@ -5,6 +5,7 @@ import com.augustnagro.vertx.repo.Entity;
 import com.augustnagro.vertx.repo.Id;
 import com.augustnagro.vertx.repo.ImmutableEntity;
 import com.augustnagro.vertx.repo.Projection;
+import com.augustnagro.vertx.repo.Version;
 
 import javax.annotation.processing.AbstractProcessor;
 import javax.annotation.processing.RoundEnvironment;
@@ -77,7 +78,11 @@ public class PgProcessor extends AbstractProcessor {
       String idParamName = null;
       String idColumnName = null;
       String idType = null;
+      String versionParamName = null;
+      String versionColumnName = null;
+      String versionType = null;
       StringJoiner newInstanceWithIdParams = new StringJoiner(", ", "(", ")");
+      StringJoiner newInstanceWithVersionParams = new StringJoiner(", ", "(", ")");
       List<? extends VariableElement> parameters = constructor.getParameters();
       int numParameters = parameters.size();
       String[] paramNames = new String[numParameters];
@@ -109,8 +114,26 @@ public class PgProcessor extends AbstractProcessor {
               throw new IllegalArgumentException("@Id params can only be of type Long, Integer, or String");
           }
           newInstanceWithIdParams.add("id");
+          newInstanceWithVersionParams.add("entity." + paramName + "()");
+        } else if (param.getAnnotation(Version.class) != null && !buildImmutable) {
+          if (versionParamName != null) throw new RuntimeException("Only one @Version parameter is allowed");
+          versionParamName = paramName;
+          versionColumnName = columnName;
+          switch (paramType) {
+            case "java.lang.Long":
+              versionType = "Long";
+              break;
+            case "java.lang.Integer":
+              versionType = "Integer";
+              break;
+            default:
+              throw new IllegalArgumentException("@Version params can only be of type Long or Integer");
+          }
+          newInstanceWithIdParams.add("versionOf(entity)");
+          newInstanceWithVersionParams.add("version");
         } else {
           newInstanceWithIdParams.add("entity." + paramName + "()");
+          newInstanceWithVersionParams.add("entity." + paramName + "()");
         }
       }
       if (idParamName == null) throw new RuntimeException("@Repo requires @Id on a constructor parameter");
@@ -127,13 +150,17 @@ public class PgProcessor extends AbstractProcessor {
       }
 
       out.println("import java.util.*;");
+      out.println("import java.util.concurrent.ConcurrentHashMap;");
+      out.println("import java.util.function.Function;");
       out.println("import java.util.stream.Collector;");
       out.println("import java.util.stream.Collectors;");
       out.println();
       out.println("import io.vertx.core.CompositeFuture;");
       out.println("import io.vertx.core.Future;");
       out.println("import io.vertx.sqlclient.SqlClient;");
+      out.println("import io.vertx.sqlclient.SqlConnection;");
       out.println("import io.vertx.pgclient.PgPool;");
+      out.println("import io.vertx.sqlclient.Pool;");
       out.println("import io.vertx.sqlclient.SqlResult;");
       out.println("import io.vertx.sqlclient.Tuple;");
       out.println("import io.vertx.sqlclient.Row;");
@@ -159,10 +186,22 @@ public class PgProcessor extends AbstractProcessor {
       out.println();
       out.println(repoInterfaceImport);
       out.println("import com.augustnagro.vertx.repo.CollectorUtil;");
+      out.println("import com.augustnagro.vertx.repo.BatchLoader;");
+      out.println("import com.augustnagro.vertx.repo.EntityCache;");
+      out.println("import com.augustnagro.vertx.repo.EntityMetrics;");
+      out.println("import com.augustnagro.vertx.repo.EntityStream;");
+      out.println("import com.augustnagro.vertx.repo.OnConflict;");
+      out.println("import com.augustnagro.vertx.repo.ProjectionType;");
+      out.println("import com.augustnagro.vertx.repo.ReadReplicas;");
+      out.println("import com.augustnagro.vertx.repo.RepoOptions;");
+      out.println("import com.augustnagro.vertx.repo.SingleFlight;");
+      out.println("import com.augustnagro.vertx.repo.SlowSpecLog;");
+      out.println("import com.augustnagro.vertx.repo.VersionConflictException;");
       out.println("import com.augustnagro.vertx.repo.pg.Expression;");
       out.println("import com.augustnagro.vertx.repo.pg.NumberExpression;");
       out.println("import com.augustnagro.vertx.repo.pg.StringExpression;");
       out.println("import com.augustnagro.vertx.repo.pg.Predicate;");
+      out.println("import com.augustnagro.vertx.repo.pg.SelectList;");
       out.println("import com.augustnagro.vertx.repo.Spec;");
       out.println("import com.augustnagro.vertx.repo.pg.SpecBuilder;");
       out.println("import " + className + ";");
@@ -199,13 +238,112 @@ public class PgProcessor extends AbstractProcessor {
       }
       out.println();
 
+      Entity entityAnnotation = projectionType.getAnnotation(Entity.class);
+      boolean counterTable = !buildImmutable && entityAnnotation != null && entityAnnotation.counterTable();
+      ImmutableEntity immutableEntityAnnotation = projectionType.getAnnotation(ImmutableEntity.class);
+      boolean blockingRepo = buildImmutable
+          ? immutableEntityAnnotation != null && immutableEntityAnnotation.blockingRepo()
+          : entityAnnotation != null && entityAnnotation.blockingRepo();
+      boolean cacheInvalidation = !buildImmutable && entityAnnotation != null && entityAnnotation.cacheInvalidation();
+      String counterTableName = tableName + "_count";
+      if (counterTable) {
+        out.println("  /**");
+        out.println("   * Creates " + counterTableName + " and the triggers that record the row count changes");
+        out.println("   * of " + tableName + ". Running it again resets the count.");
+        out.println("   */");
+        out.println("  public static final String COUNTER_DDL =");
+        String[] ddl = counterDdl(tableName, counterTableName).split("\n");
+        for (int i = 0; i < ddl.length; ++i) {
+          out.println("      \"" + ddl[i] + "\\n\"" + (i == ddl.length - 1 ? ";" : " +"));
+        }
+        out.println();
+      }
+      if (cacheInvalidation) {
+        String channel = tableName + "_invalidate";
+        out.println("  /**");
+        out.println("   * Channel notified with the Ids of updated and deleted rows, see CacheInvalidationListener.");
+        out.println("   */");
+        out.println("  public static final String INVALIDATION_CHANNEL = \"" + channel + "\";");
+        out.println();
+        out.println("  /**");
+        out.println("   * Creates the triggers that notify INVALIDATION_CHANNEL after every UPDATE, DELETE");
+        out.println("   * and TRUNCATE of " + tableName + ". Running it again replaces them.");
+        out.println("   */");
+        out.println("  public static final String INVALIDATION_DDL =");
+        String[] ddl = invalidationDdl(tableName, idColumnName, channel).split("\n");
+        for (int i = 0; i < ddl.length; ++i) {
+          out.println("      \"" + ddl[i] + "\\n\"" + (i == ddl.length - 1 ? ";" : " +"));
+        }
+        out.println();
+        out.println("  /**");
+        out.println("   * Parses an Id notified on INVALIDATION_CHANNEL.");
+        out.println("   */");
+        out.println("  public static " + idType + " idFromText(String text) {");
+        if (idType.equals("String")) out.println("    return text;");
+        else out.println("    return " + idType + ".valueOf(text);");
+        out.println("  }");
+        out.println();
+      }
+
 
       out.println("  protected final PgPool sql;");
+      out.println("  protected final EntityCache<" + simpleClassName + ", " + idType + "> cache;");
+      out.println("  private final BatchLoader<" + simpleClassName + ", " + idType + "> findByIdLoader;");
+      out.println("  private final SingleFlight<List<" + simpleClassName + ">> specSingleFlight;");
+      out.println("  protected final EntityMetrics metrics;");
+      out.println("  private final SlowSpecLog slowSpecLog;");
+      out.println("  protected final ReadReplicas replicas;");
       out.println();
       out.println("  public " + repoSimpleClassName + "(PgPool sql) {");
+      out.println("    this(sql, new RepoOptions<>());");
+      out.println("  }");
+      out.println();
+      out.println("  /**");
+      out.println("   * @param cache read-through cache for findById and findAllById, or null for none");
+      out.println("   */");
+      out.println("  public " + repoSimpleClassName + "(PgPool sql, EntityCache<" + simpleClassName + ", " + idType +
+                  "> cache) {");
+      out.println("    this(sql, new RepoOptions<" + simpleClassName + ", " + idType + ">().setEntityCache(cache));");
+      out.println("  }");
+      out.println();
+      out.println("  /**");
+      out.println("   * @param readers read replicas for the methods that only read; see {@link ReadReplicas}");
+      out.println("   */");
+      out.println("  public " + repoSimpleClassName + "(PgPool sql, List<PgPool> readers) {");
+      out.println("    this(sql, new RepoOptions<" + simpleClassName + ", " + idType +
+                  ">().setReadReplicas(new ReadReplicas(readers)));");
+      out.println("  }");
+      out.println();
+      out.println("  public " + repoSimpleClassName + "(PgPool sql, RepoOptions<" + simpleClassName + ", " + idType +
+                  "> options) {");
       out.println("    this.sql = sql;");
+      out.println("    this.cache = options.getEntityCache();");
+      out.println("    this.findByIdLoader = options.isBatchFindById()");
+      out.println("        ? new BatchLoader<>(this::selectBatchById, entity -> " + getId + ",");
+      out.println("            options.getBatchWindowMillis(), options.getMaxBatchSize())");
+      out.println("        : null;");
+      out.println("    this.specSingleFlight = options.getSpecSingleFlight();");
+      out.println("    this.metrics = EntityMetrics.of(options.getMetrics(), \"" + simpleClassName + "\");");
+      out.println("    this.slowSpecLog = options.getSlowSpecLog();");
+      out.println("    this.replicas = options.getReadReplicas();");
       out.println("  }");
       out.println();
+      out.println("  /**");
+      out.println("   * The pool for methods that only read: a read replica if there are any, otherwise sql.");
+      out.println("   */");
+      out.println("  protected final Pool reader() {");
+      out.println("    return replicas == null ? sql : replicas.reader(sql);");
+      out.println("  }");
+      out.println();
+      if (!buildImmutable) {
+        out.println("  /**");
+        out.println("   * Starts the read-your-writes window of the read replicas when the write completes.");
+        out.println("   */");
+        out.println("  private <T> Future<T> wrote(Future<T> write) {");
+        out.println("    return replicas == null ? write : replicas.wrote(write);");
+        out.println("  }");
+        out.println();
+      }
 
       out.println(builderMethods(constructor, simpleClassName, repoSimpleClassName));
 
@@ -220,125 +358,421 @@ public class PgProcessor extends AbstractProcessor {
       out.println("  }");
       out.println();
 
+      out.println("  /*");
+      out.println("   * For rows of RETURNING " + idColumnName + ", read by position to skip the column name lookup.");
+      out.println("   */");
+      out.println("  private static " + simpleClassName + " withReturnedId(Row row, " + simpleClassName + " entity) {");
+      out.println("    return withId(row.get" + idType + "(0), entity);");
+      out.println("  }");
+      out.println();
+
+      if (versionParamName != null) {
+        out.println("  /**");
+        out.println("   * The entity's version, or 0 if it is new.");
+        out.println("   */");
+        out.println("  private static " + versionType.toLowerCase().replace("integer", "int") + " versionOf(" +
+                    simpleClassName + " entity) {");
+        out.println("    return entity." + versionParamName + "() == null ? 0 : entity." + versionParamName + "();");
+        out.println("  }");
+        out.println();
+        out.println("  private static " + simpleClassName + " withVersion(" + simpleClassName + " entity, " +
+                    versionType + " version) {");
+        out.println("    return new " + simpleClassName + newInstanceWithVersionParams + ";");
+        out.println("  }");
+        out.println();
+      }
+
       out.println("  @Override");
       out.println("  public final Future<Long> count() {");
-      out.println("    return count(sql);");
+      out.println("    if (metrics.isNoop()) return count(reader());");
+      out.println("    return metrics.withConnection(reader(), \"count\", con -> count(con));");
       out.println("  }");
       out.println();
+      String countQuery = counterTable
+          ? "SELECT COALESCE(SUM(n), 0)::bigint FROM " + counterTableName
+          : "SELECT COUNT(*) FROM " + tableName;
       out.println("  @Override");
       out.println("  public Future<Long> count(SqlClient sql) {");
-      out.println("    return sql.preparedQuery(\"SELECT COUNT(*) FROM " + tableName + "\")");
-      out.println("        .execute()");
+      out.println("    return metrics.start(\"count\")");
+      out.println("        .end(sql.preparedQuery(\"" + countQuery + "\").execute())");
       out.println("        .map(rowSet -> rowSet.iterator().next().getLong(0));");
       out.println("  }");
       out.println();
 
-      String existsByIdQuery = "SELECT * FROM " + tableName + " WHERE " + idColumnName + " = $1";
+      if (counterTable) {
+        String compactionQuery = "WITH deltas AS (DELETE FROM " + counterTableName + " RETURNING n) " +
+            "INSERT INTO " + counterTableName + " (n) SELECT SUM(n) FROM deltas HAVING SUM(n) <> 0";
+        out.println("  /**");
+        out.println("   * Replaces the committed rows of " + counterTableName + " with their sum. Every write");
+        out.println("   * adds a row, so call this periodically to keep count() fast.");
+        out.println("   */");
+        out.println("  public final Future<Void> compactCounter() {");
+        out.println("    return metrics.start(\"compactCounter\")");
+        out.println("        .end(sql.query(\"" + compactionQuery + "\").execute())");
+        out.println("        .mapEmpty();");
+        out.println("  }");
+        out.println();
+      }
+
+      out.println("  @Override");
+      out.println("  public final Future<Long> count(Spec<" + simpleClassName + "> spec) {");
+      out.println("    if (metrics.isNoop()) return count(reader(), spec);");
+      out.println("    return metrics.withConnection(reader(), \"countSpec\", con -> count(con, spec));");
+      out.println("  }");
+      out.println();
+      out.println("  @Override");
+      out.println("  public Future<Long> count(SqlClient sql, Spec<" + simpleClassName + "> spec) {");
+      out.println("    return metrics.start(\"countSpec\")");
+      out.println("        .end(sql.preparedQuery(\"SELECT COUNT(*) FROM (SELECT 1 FROM " + tableName +
+                  " \" + spec.sql() + \") s\")");
+      out.println("            .execute(spec.tuple()))");
+      out.println("        .map(rowSet -> rowSet.iterator().next().getLong(0));");
+      out.println("  }");
+      out.println();
+
+      out.println("  @Override");
+      out.println("  public final Future<Boolean> exists(Spec<" + simpleClassName + "> spec) {");
+      out.println("    if (metrics.isNoop()) return exists(reader(), spec);");
+      out.println("    return metrics.withConnection(reader(), \"exists\", con -> exists(con, spec));");
+      out.println("  }");
+      out.println();
+      out.println("  @Override");
+      out.println("  public Future<Boolean> exists(SqlClient sql, Spec<" + simpleClassName + "> spec) {");
+      out.println("    return metrics.start(\"exists\")");
+      out.println("        .end(sql.preparedQuery(\"SELECT 1 FROM (SELECT 1 FROM " + tableName +
+                  " \" + spec.sql() + \") s LIMIT 1\")");
+      out.println("            .execute(spec.tuple()))");
+      out.println("        .map(rowSet -> rowSet.iterator().hasNext());");
+      out.println("  }");
+      out.println();
+
+      // Scale reltuples by the table's current size, like the planner does.
+      // Without statistics, reltuples is -1 (or 0 before Postgres 14), so fall back to EXPLAIN.
+      String estimatedCountQuery = "SELECT CASE WHEN c.reltuples <= 0 OR c.relpages = 0 THEN NULL " +
+          "ELSE (c.reltuples / c.relpages * (pg_relation_size(c.oid) / current_setting('block_size')::int))::bigint " +
+          "END FROM pg_class c WHERE c.oid = '" + tableName + "'::regclass";
+      out.println("  @Override");
+      out.println("  public final Future<Long> estimatedCount() {");
+      out.println("    return estimatedCount(reader());");
+      out.println("  }");
+      out.println();
+      out.println("  @Override");
+      out.println("  public Future<Long> estimatedCount(SqlClient sql) {");
+      out.println("    return metrics.start(\"estimatedCount\")");
+      out.println("        .end(sql.preparedQuery(\"" + estimatedCountQuery + "\").execute())");
+      out.println("        .flatMap(rowSet -> {");
+      out.println("          Long estimate = rowSet.iterator().next().getLong(0);");
+      out.println("          if (estimate != null) return Future.succeededFuture(estimate);");
+      out.println("          return planRows(sql, \"SELECT 1 FROM " + tableName + "\", Tuple.tuple());");
+      out.println("        });");
+      out.println("  }");
+      out.println();
+      out.println("  @Override");
+      out.println("  public final Future<Long> estimatedCount(Spec<" + simpleClassName + "> spec) {");
+      out.println("    return estimatedCount(reader(), spec);");
+      out.println("  }");
+      out.println();
+      out.println("  @Override");
+      out.println("  public Future<Long> estimatedCount(SqlClient sql, Spec<" + simpleClassName + "> spec) {");
+      out.println("    return planRows(sql, \"SELECT 1 FROM " + tableName + " \" + spec.sql(), spec.tuple());");
+      out.println("  }");
+      out.println();
+      out.println("  private Future<Long> planRows(SqlClient sql, String query, Tuple tuple) {");
+      out.println("    return metrics.start(\"estimatedCount\")");
+      out.println("        .end(sql.preparedQuery(\"EXPLAIN (FORMAT JSON) \" + query).execute(tuple))");
+      out.println("        .map(rowSet -> ((JsonArray) rowSet.iterator().next().getValue(0))");
+      out.println("            .getJsonObject(0).getJsonObject(\"Plan\").getLong(\"Plan Rows\"));");
+      out.println("  }");
+      out.println();
+
+      String existsByIdQuery = "SELECT 1 FROM " + tableName + " WHERE " + idColumnName + " = $1";
       out.println("  @Override");
       out.println("  public final Future<Boolean> existsById(" + idType + " id) {");
-      out.println("    return existsById(sql, id);");
+      out.println("    if (metrics.isNoop()) return existsById(reader(), id);");
+      out.println("    return metrics.withConnection(reader(), \"existsById\", con -> existsById(con, id));");
       out.println("  }");
       out.println();
       out.println("  @Override");
       out.println("  public Future<Boolean> existsById(SqlClient sql, " + idType + " id) {");
-      out.println("    return sql.preparedQuery(\"" + existsByIdQuery + "\")");
-      out.println("        .execute(Tuple.of(id))");
+      out.println("    return metrics.start(\"existsById\")");
+      out.println("        .end(sql.preparedQuery(\"" + existsByIdQuery + "\").execute(Tuple.of(id)))");
       out.println("        .map(rowSet -> rowSet.iterator().hasNext());");
       out.println("  }");
       out.println();
 
-      String findAllQuery = "SELECT * FROM " + tableName;
+      String selectColumns = selectColumns(constructor);
+      String findAllQuery = "SELECT " + selectColumns + " FROM " + tableName;
       out.println("  @Override");
       out.println("  public final Future<List<" + simpleClassName + ">> findAll() {");
-      out.println("    return findAll(sql);");
+      out.println("    if (metrics.isNoop()) return findAll(reader());");
+      out.println("    return metrics.withConnection(reader(), \"findAll\", con -> findAll(con));");
       out.println("  }");
       out.println();
       out.println("  @Override");
       out.println("  public Future<List<" + simpleClassName + ">> findAll(SqlClient sql) {");
-      out.println("    return sql.preparedQuery(\"" + findAllQuery + "\")");
-      out.println("        .collecting(listCollector())");
-      out.println("        .execute()");
+      out.println("    EntityMetrics.Sample sample = metrics.start(\"findAll\");");
+      out.println("    return sample.end(sql.preparedQuery(\"" + findAllQuery + "\")");
+      out.println("            .collecting(sample.timed(listCollector()))");
+      out.println("            .execute())");
       out.println("        .map(SqlResult::value);");
       out.println("  }");
       out.println();
 
       out.println("  @Override");
       out.println("  public final Future<List<" + simpleClassName + ">> findAll(Spec<" + simpleClassName + "> spec) {");
-      out.println("    return findAll(sql, spec);");
+      out.println("    if (specSingleFlight == null) return findAllWithMetrics(spec);");
+      out.println("    return specSingleFlight.execute(SingleFlight.key(spec.sql(), spec.tuple()), () -> findAllWithMetrics(spec))");
+      out.println("        .<List<" + simpleClassName + ">>map(ArrayList::new);");
+      out.println("  }");
+      out.println();
+      out.println("  private Future<List<" + simpleClassName + ">> findAllWithMetrics(Spec<" + simpleClassName +
+                  "> spec) {");
+      out.println("    if (metrics.isNoop()) return findAll(reader(), spec);");
+      out.println("    return metrics.withConnection(reader(), \"findAllSpec\", con -> findAll(con, spec));");
       out.println("  }");
       out.println();
       out.println("  @Override");
       out.println("  public Future<List<" + simpleClassName + ">> findAll(SqlClient sql, " +
                   "Spec<" + simpleClassName + "> spec) {");
-      out.println("    return sql.preparedQuery(\"" + findAllQuery + " \" + spec.sql())");
-      out.println("        .collecting(listCollector())");
-      out.println("        .execute(spec.tuple())");
+      out.println("    long start = slowSpecLog == null ? 0 : System.nanoTime();");
+      out.println("    String query = \"" + findAllQuery + " \" + spec.sql();");
+      out.println("    EntityMetrics.Sample sample = metrics.start(\"findAllSpec\");");
+      out.println("    Future<List<" + simpleClassName + ">> res = sample.end(sql.preparedQuery(query)");
+      out.println("            .collecting(sample.timed(listCollector()))");
+      out.println("            .execute(spec.tuple()))");
       out.println("        .map(SqlResult::value);");
+      out.println("    if (slowSpecLog == null) return res;");
+      out.println("    return res.onComplete(ar -> slowSpecLog.record(this.sql, \"" + simpleClassName +
+                  "\", query, spec.tuple(), System.nanoTime() - start, ar.cause()));");
       out.println("  }");
       out.println();
 
-      String findByIdQuery = "SELECT * FROM " + tableName + " WHERE " + idColumnName + " = $1";
+      out.println("  @Override");
+      out.println("  public final <P> Future<List<P>> findAll(Spec<" + simpleClassName +
+                  "> spec, ProjectionType<P> projection) {");
+      out.println("    if (metrics.isNoop()) return findAll(reader(), spec, projection);");
+      out.println("    return metrics.withConnection(reader(), \"findAllProjection\", con -> findAll(con, spec, projection));");
+      out.println("  }");
+      out.println();
+      out.println("  @Override");
+      out.println("  public <P> Future<List<P>> findAll(SqlClient sql, Spec<" + simpleClassName +
+                  "> spec, ProjectionType<P> projection) {");
+      out.println("    EntityMetrics.Sample sample = metrics.start(\"findAllProjection\");");
+      out.println("    return sample.end(sql.preparedQuery(\"SELECT \" + projection.selectColumns() + \" FROM " +
+                  tableName + " \" + spec.sql())");
+      out.println("            .collecting(sample.timed(projection.listCollector()))");
+      out.println("            .execute(spec.tuple()))");
+      out.println("        .map(SqlResult::value);");
+      out.println("  }");
+      out.println();
+
+      out.println("  /**");
+      out.println("   * Select only the columns of all Entities conforming the Spec.");
+      out.println("   * Each Row holds the columns' values, in order.");
+      out.println("   */");
+      out.println("  @SafeVarargs");
+      out.println("  public final Future<List<Row>> select(Spec<" + simpleClassName + "> spec, Expression<" +
+                  simpleClassName + ", ?>... columns) {");
+      out.println("    return select(spec, SelectList.of(columns));");
+      out.println("  }");
+      out.println();
+      out.println("  /**");
+      out.println("   * Select only the columns of all Entities conforming the Spec.");
+      out.println("   * Each Row holds the columns' values, in order.");
+      out.println("   */");
+      out.println("  public final Future<List<Row>> select(Spec<" + simpleClassName + "> spec, SelectList<" +
+                  simpleClassName + "> columns) {");
+      out.println("    if (metrics.isNoop()) return select(reader(), spec, columns);");
+      out.println("    return metrics.withConnection(reader(), \"select\", con -> select(con, spec, columns));");
+      out.println("  }");
+      out.println();
+      out.println("  /**");
+      out.println("   * Select only the columns of all Entities conforming the Spec.");
+      out.println("   * Each Row holds the columns' values, in order.");
+      out.println("   */");
+      out.println("  public Future<List<Row>> select(SqlClient sql, Spec<" + simpleClassName + "> spec, SelectList<" +
+                  simpleClassName + "> columns) {");
+      out.println("    Tuple tuple = spec.tuple();");
+      out.println("    EntityMetrics.Sample sample = metrics.start(\"select\");");
+      out.println("    return sample.end(sql.preparedQuery(\"SELECT \" + columns.sql(tuple.size()) + \" FROM " +
+                  tableName + " \" + spec.sql())");
+      out.println("            .collecting(sample.timed(Collectors.<Row>toList()))");
+      out.println("            .execute(columns.tuple(tuple)))");
+      out.println("        .map(SqlResult::value);");
+      out.println("  }");
+      out.println();
+
+      out.println("  @Override");
+      out.println("  public final Future<EntityStream<" + simpleClassName + ">> stream(Spec<" + simpleClassName +
+                  "> spec) {");
+      out.println("    return stream(spec, EntityStream.DEFAULT_FETCH_SIZE);");
+      out.println("  }");
+      out.println();
+      out.println("  @Override");
+      out.println("  public final Future<EntityStream<" + simpleClassName + ">> stream(Spec<" + simpleClassName +
+                  "> spec, int fetchSize) {");
+      out.println("    return metrics.getConnection(reader(), \"stream\").flatMap(con -> con.begin()");
+      out.println("        .flatMap(tx -> con.prepare(\"" + findAllQuery + " \" + spec.sql())");
+      out.println("            .map(ps -> new EntityStream<>(ps.createStream(fetchSize, spec.tuple()),");
+      out.println("                " + repoSimpleClassName + "::buildPositional,");
+      out.println("                () -> ps.close().eventually(v -> tx.commit()).eventually(v -> con.close()))))");
+      out.println("        .onFailure(t -> con.close()));");
+      out.println("  }");
+      out.println();
+      out.println("  @Override");
+      out.println("  public final Future<EntityStream<" + simpleClassName + ">> stream(SqlConnection sql, Spec<" +
+                  simpleClassName + "> spec) {");
+      out.println("    return stream(sql, spec, EntityStream.DEFAULT_FETCH_SIZE);");
+      out.println("  }");
+      out.println();
+      out.println("  @Override");
+      out.println("  public Future<EntityStream<" + simpleClassName + ">> stream(SqlConnection sql, Spec<" +
+                  simpleClassName + "> spec, int fetchSize) {");
+      out.println("    return sql.prepare(\"" + findAllQuery + " \" + spec.sql())");
+      out.println("        .map(ps -> new EntityStream<>(ps.createStream(fetchSize, spec.tuple()),");
+      out.println("            " + repoSimpleClassName + "::buildPositional, ps::close));");
+      out.println("  }");
+      out.println();
+
+      String findByIdQuery = "SELECT " + selectColumns + " FROM " + tableName + " WHERE " + idColumnName + " = $1";
       out.println("  @Override");
       out.println("  public final Future<Optional<" + simpleClassName + ">> findById(" + idType + " id) {");
-      out.println("    return findById(sql, id);");
+      out.println("    // checked before a connection is borrowed, so that hits never wait for the pool");
+      out.println("    if (cache != null) {");
+      out.println("      " + simpleClassName + " cached = cache.get(id);");
+      out.println("      if (cached != null) return Future.succeededFuture(Optional.of(cached));");
+      out.println("    }");
+      out.println("    if (findByIdLoader != null) return findByIdLoader.load(id);");
+      out.println("    if (metrics.isNoop()) return selectById(reader(), id, true);");
+      out.println("    return metrics.withConnection(reader(), \"findById\", con -> selectById(con, id, true));");
       out.println("  }");
       out.println();
+      out.println("  /*");
+      out.println("   * Only the repo's own connections use the cache, since a caller's SqlClient");
+      out.println("   * may be in a transaction that never commits, or that has written Entities");
+      out.println("   * which the cache still holds as last committed.");
+      out.println("   */");
       out.println("  @Override");
       out.println("  public Future<Optional<" + simpleClassName + ">> findById(SqlClient sql, " + idType + " id) {");
-      out.println("    return sql.preparedQuery(\"" + findByIdQuery + "\")");
-      out.println("        .execute(Tuple.of(id))");
-      out.println("        .map(rowSet -> rowSet.iterator().hasNext()");
-      out.println("            ? Optional.of(buildSingle(rowSet))");
-      out.println("            : Optional.<" + simpleClassName + ">empty());");
+      out.println("    return selectById(sql, id, false);");
+      out.println("  }");
+      out.println();
+      out.println("  /*");
+      out.println("   * Selects the Entity without consulting the cache, caching it if populateCache.");
+      out.println("   */");
+      out.println("  private Future<Optional<" + simpleClassName + ">> selectById(SqlClient sql, " + idType +
+                  " id, boolean populateCache) {");
+      out.println("    EntityMetrics.Sample sample = metrics.start(\"findById\");");
+      out.println("    return sample.end(sql.preparedQuery(\"" + findByIdQuery + "\").execute(Tuple.of(id)))");
+      out.println("        .map(rowSet -> {");
+      out.println("          RowIterator<Row> rows = rowSet.iterator();");
+      out.println("          if (!rows.hasNext()) return Optional.<" + simpleClassName + ">empty();");
+      out.println("          long decodeStart = sample.decodeStart();");
+      out.println("          // the query selects SELECT_COLUMNS, so the layout needs no check");
+      out.println("          " + simpleClassName + " entity = buildPositional(rows.next());");
+      out.println("          sample.decodeEnd(decodeStart, 1);");
+      out.println("          if (populateCache && cache != null) cache.put(id, entity);");
+      out.println("          return Optional.of(entity);");
+      out.println("        });");
       out.println("  }");
       out.println();
 
-      String findAllByIdQuery = "SELECT * FROM " + tableName + " WHERE " + idColumnName + " = ANY($1)";
+      String findAllByIdQuery = "SELECT " + selectColumns + " FROM " + tableName + " WHERE " + idColumnName + " = ANY($1)";
       out.println("  @Override");
       out.println("  public final Future<List<" + simpleClassName + ">> findAllById(Collection<" + idType + "> ids) {");
-      out.println("    return findAllById(sql, ids);");
+      out.println("    if (cache == null) {");
+      out.println("      if (metrics.isNoop()) return selectAllById(reader(), ids, \"findAllById\", false);");
+      out.println("      return metrics.withConnection(reader(), \"findAllById\",");
+      out.println("          con -> selectAllById(con, ids, \"findAllById\", false));");
+      out.println("    }");
+      out.println();
+      out.println("    ArrayList<" + simpleClassName + "> res = new ArrayList<>(ids.size());");
+      out.println("    ArrayList<" + idType + "> missingIds = new ArrayList<>();");
+      out.println("    for (" + idType + " id : ids) {");
+      out.println("      " + simpleClassName + " cached = cache.get(id);");
+      out.println("      if (cached != null) res.add(cached);");
+      out.println("      else missingIds.add(id);");
+      out.println("    }");
+      out.println("    if (missingIds.isEmpty()) return Future.succeededFuture(res);");
+      out.println();
+      out.println("    Future<List<" + simpleClassName + ">> missing = metrics.isNoop()");
+      out.println("        ? selectAllById(reader(), missingIds, \"findAllById\", true)");
+      out.println("        : metrics.withConnection(reader(), \"findAllById\",");
+      out.println("            con -> selectAllById(con, missingIds, \"findAllById\", true));");
+      out.println("    return missing.map(entities -> {");
+      out.println("      res.addAll(entities);");
+      out.println("      return res;");
+      out.println("    });");
       out.println("  }");
       out.println();
       out.println("  @Override");
       out.println("  public Future<List<" + simpleClassName + ">> findAllById(SqlClient sql, Collection<" + idType +
                   "> ids) {");
-      out.println("    return sql.preparedQuery(\"" + findAllByIdQuery + "\")");
-      out.println("        .collecting(listCollector())");
-      out.println("        .execute(Tuple.of(ids.toArray(new " + idType + "[0])))");
-      out.println("        .map(SqlResult::value);");
+      out.println("    return selectAllById(sql, ids, \"findAllById\", false);");
+      out.println("  }");
+      out.println();
+      out.println("  /*");
+      out.println("   * Selects the Entities without consulting the cache, caching them if populateCache.");
+      out.println("   */");
+      out.println("  private Future<List<" + simpleClassName + ">> selectAllById(SqlClient sql, Collection<" + idType +
+                  "> ids, String operation, boolean populateCache) {");
+      out.println("    EntityMetrics.Sample sample = metrics.start(operation).batchSize(ids.size());");
+      out.println("    return sample.end(sql.preparedQuery(\"" + findAllByIdQuery + "\")");
+      out.println("            .collecting(sample.timed(listCollector(ids.size())))");
+      out.println("            .execute(Tuple.of(ids.toArray(new " + idType + "[0]))))");
+      out.println("        .map(rs -> {");
+      out.println("          List<" + simpleClassName + "> entities = rs.value();");
+      out.println("          if (populateCache && cache != null) {");
+      out.println("            for (" + simpleClassName + " entity : entities) cache.put(" + getId + ", entity);");
+      out.println("          }");
+      out.println("          return entities;");
+      out.println("        });");
+      out.println("  }");
+      out.println();
+      out.println("  private Future<List<" + simpleClassName + ">> selectBatchById(List<" + idType + "> ids) {");
+      out.println("    if (metrics.isNoop()) return selectAllById(reader(), ids, \"findById\", true);");
+      out.println("    return metrics.withConnection(reader(), \"findById\",");
+      out.println("        con -> selectAllById(con, ids, \"findById\", true));");
       out.println("  }");
       out.println();
 
       if (buildImmutable) {
         out.println("}");
+        if (blockingRepo) buildBlockingRepo(packageName, simpleClassName, idType, true);
         return;
       }
 
       String deleteQuery = "DELETE FROM " + tableName + " WHERE " + idColumnName + " = $1";
       out.println("  @Override");
       out.println("  public final Future<Void> delete(" + simpleClassName + " entity) {");
-      out.println("    return delete(sql, entity);");
+      out.println("    if (metrics.isNoop()) return wrote(delete(sql, entity));");
+      out.println("    return wrote(metrics.withConnection(sql, \"delete\", con -> delete(con, entity)));");
       out.println("  }");
       out.println();
       out.println("  @Override");
       out.println("  public Future<Void> delete(SqlClient sql, " + simpleClassName + " entity) {");
-      out.println("    return sql.preparedQuery(\"" + deleteQuery + "\")");
-      out.println("        .execute(Tuple.of(" + getId + "))");
-      out.println("        .mapEmpty();");
+      out.println("    return metrics.start(\"delete\")");
+      out.println("        .end(sql.preparedQuery(\"" + deleteQuery + "\").execute(Tuple.of(" + getId + ")))");
+      out.println("        .<Void>mapEmpty()");
+      out.println("        .onSuccess(v -> invalidate(" + getId + "));");
       out.println("  }");
       out.println();
 
       String deleteAllQuery = "DELETE FROM " + tableName;
       out.println("  @Override");
       out.println("  public final Future<Void> deleteAll() {");
-      out.println("    return deleteAll(sql);");
+      out.println("    if (metrics.isNoop()) return wrote(deleteAll(sql));");
+      out.println("    return wrote(metrics.withConnection(sql, \"deleteAll\", con -> deleteAll(con)));");
       out.println("  }");
       out.println();
       out.println("  @Override");
       out.println("  public Future<Void> deleteAll(SqlClient sql) {");
-      out.println("    return sql.preparedQuery(\"" + deleteAllQuery + "\")");
-      out.println("        .execute()");
-      out.println("        .mapEmpty();");
+      out.println("    return metrics.start(\"deleteAll\")");
+      out.println("        .end(sql.preparedQuery(\"" + deleteAllQuery + "\").execute())");
+      out.println("        .<Void>mapEmpty()");
+      out.println("        .onSuccess(v -> {");
+      out.println("          if (cache != null) cache.invalidateAll();");
+      out.println("        });");
       out.println("  }");
       out.println();
 
@@ -346,7 +780,8 @@ public class PgProcessor extends AbstractProcessor {
       String idArray = idType + "[] ids = new " + idType + "[entities.size()];";
       out.println("  @Override");
       out.println("  public final Future<Void> deleteAll(Collection<" + simpleClassName + "> entities) {");
-      out.println("    return deleteAll(sql, entities);");
+      out.println("    if (metrics.isNoop()) return wrote(deleteAll(sql, entities));");
+      out.println("    return wrote(metrics.withConnection(sql, \"deleteAll\", con -> deleteAll(con, entities)));");
       out.println("  }");
       out.println();
       out.println("  @Override");
@@ -357,129 +792,796 @@ public class PgProcessor extends AbstractProcessor {
       out.println("      ids[i] = " + getId + ";");
       out.println("      ++i;");
       out.println("    }");
-      out.println("    return sql.preparedQuery(\"" + deleteAllOfQuery + "\")");
-      out.println("        .execute(Tuple.of(ids))");
-      out.println("        .mapEmpty();");
+      out.println("    return metrics.start(\"deleteAll\").batchSize(ids.length)");
+      out.println("        .end(sql.preparedQuery(\"" + deleteAllOfQuery + "\").execute(Tuple.of(ids)))");
+      out.println("        .<Void>mapEmpty()");
+      out.println("        .onSuccess(v -> invalidateAll(Arrays.asList(ids)));");
       out.println("  }");
       out.println();
 
       out.println("  @Override");
       out.println("  public final Future<Void> deleteAllById(Collection<" + idType + "> ids) {");
-      out.println("    return deleteAllById(sql, ids);");
+      out.println("    if (metrics.isNoop()) return wrote(deleteAllById(sql, ids));");
+      out.println("    return wrote(metrics.withConnection(sql, \"deleteAllById\", con -> deleteAllById(con, ids)));");
       out.println("  }");
       out.println();
       out.println("  @Override");
       out.println("  public Future<Void> deleteAllById(SqlClient sql, Collection<" + idType + "> ids) {");
-      out.println("    return sql.preparedQuery(\"" + deleteAllOfQuery + "\")");
-      out.println("        .execute(Tuple.of(ids.toArray(new " + idType + "[0])))");
-      out.println("        .mapEmpty();");
+      out.println("    return metrics.start(\"deleteAllById\").batchSize(ids.size())");
+      out.println("        .end(sql.preparedQuery(\"" + deleteAllOfQuery + "\")");
+      out.println("            .execute(Tuple.of(ids.toArray(new " + idType + "[0]))))");
+      out.println("        .<Void>mapEmpty()");
+      out.println("        .onSuccess(v -> invalidateAll(ids));");
       out.println("  }");
       out.println();
 
       StringJoiner insertKeys = new StringJoiner(", ");
       StringJoiner insertValues = new StringJoiner(", ");
       StringJoiner insertTupleSj = new StringJoiner(", ", "Tuple.of(", ")");
-      int updateIdPosition = 1;
+      StringJoiner unnestParams = new StringJoiner(", ", "UNNEST(", ")");
+      StringJoiner upsertKeys = new StringJoiner(", ");
+      StringJoiner upsertValues = new StringJoiner(", ");
+      StringJoiner upsertTupleSj = new StringJoiner(", ", "Tuple.of(", ")");
+      StringJoiner upsertUnnestParams = new StringJoiner(", ", "UNNEST(", ")");
+      StringJoiner upsertColumns = new StringJoiner(", ", "{", "}");
       StringJoiner updateAssignmentSj = new StringJoiner(", ");
-      StringJoiner updateTupleSj = new StringJoiner(", ", "Tuple.of(", ")");
+      // the non-id, non-version columns, which update and updateAll write when changed
+      StringJoiner updateColumns = new StringJoiner(", ", "{", "}");
+      StringJoiner versionedUpdateAssignments = new StringJoiner(", ");
+      StringJoiner versionedUpdateTupleSj = new StringJoiner(", ", "Tuple.of(", ")");
+      StringJoiner bulkVersionedUpdateAssignments = new StringJoiner(", ");
+      int versionedUpdateParam = 0;
       for (int i = 0, j = 1; i < paramNames.length; ++i) {
         String name = paramNames[i];
         String columnName = camelToSnakeCase(name);
-        updateTupleSj.add("entity." + name + "()");
-        if (name.equals(idParamName)) {
-          updateIdPosition = i + 1;
-          continue;
-        }
+        String arrayType = name.equals(idParamName)
+            ? pgArrayType("java.lang." + idType)
+            : pgArrayType(parameters.get(i).asType().toString());
+        String value = name.equals(versionParamName) ? "versionOf(entity)" : "entity." + name + "()";
+        upsertKeys.add(columnName);
+        upsertValues.add("$" + (i + 1));
+        upsertTupleSj.add(value);
+        upsertUnnestParams.add("$" + (i + 1) + "::" + arrayType);
+        if (name.equals(idParamName)) continue;
         insertKeys.add(columnName);
         insertValues.add("$" + j);
-        insertTupleSj.add("entity." + name + "()");
-        updateAssignmentSj.add(columnName + " = $" + (i + 1));
+        insertTupleSj.add(value);
+        unnestParams.add("$" + j + "::" + arrayType);
+        upsertColumns.add("\"" + columnName + "\"");
         ++j;
+        if (name.equals(versionParamName)) continue;
+        updateAssignmentSj.add(columnName + " = EXCLUDED." + columnName);
+        updateColumns.add("\"" + columnName + "\"");
+        versionedUpdateAssignments.add(columnName + " = $" + ++versionedUpdateParam);
+        versionedUpdateTupleSj.add(value);
+        bulkVersionedUpdateAssignments.add(columnName + " = u." + columnName);
+      }
+      if (versionParamName != null) {
+        updateAssignmentSj.add(versionColumnName + " = " + tableName + "." + versionColumnName + " + 1");
+        versionedUpdateAssignments.add(versionColumnName + " = " + versionColumnName + " + 1");
+        versionedUpdateTupleSj.add(getId).add("versionOf(entity)");
+        bulkVersionedUpdateAssignments.add(versionColumnName + " = " + tableName + "." + versionColumnName + " + 1");
       }
       String insertQuery = "INSERT INTO " + tableName + " (" + insertKeys + ") VALUES ("
                            + insertValues + ") RETURNING " + idColumnName;
-      String updateQuery = "UPDATE " + tableName + " SET " + updateAssignmentSj +
-                           " WHERE " + idColumnName + " = $" + updateIdPosition;
+      // RETURNING order is unspecified, so ids are drawn from the id column's sequence up front and
+      // returned with each row's ordinal. String ids have no sequence, and are returned in insert order.
+      String ordinalUnnest = unnestParams + " WITH ORDINALITY AS a(" + insertKeys + ", insert_ordinal)";
+      String bulkInsertQuery = idType.equals("String")
+          ? "INSERT INTO " + tableName + " (" + insertKeys + ") SELECT " + insertKeys + " FROM " + ordinalUnnest +
+            " ORDER BY insert_ordinal RETURNING " + idColumnName
+          : "WITH u AS (SELECT nextval(pg_get_serial_sequence('" + tableName + "', '" + idColumnName + "'))::" +
+            pgArrayType("java.lang." + idType).replace("[]", "") + " AS " + idColumnName + ", a.* FROM " +
+            ordinalUnnest + "), i AS (INSERT INTO " + tableName + " (" + idColumnName + ", " + insertKeys +
+            ") OVERRIDING SYSTEM VALUE SELECT " + idColumnName + ", " + insertKeys + " FROM u) SELECT " +
+            idColumnName + ", insert_ordinal FROM u";
+      String upsertQuery = "INSERT INTO " + tableName + " (" + upsertKeys + ") VALUES (" + upsertValues + ")";
+      String bulkUpsertQuery = "INSERT INTO " + tableName + " (" + upsertKeys + ") SELECT * FROM "
+                               + upsertUnnestParams;
+      String doUpdateClause = " ON CONFLICT (" + idColumnName + ") DO UPDATE SET " + updateAssignmentSj;
+      // versioned upserts return the written version, which the update path increments
+      String upsertReturning = versionParamName == null ? "" : " RETURNING " + versionColumnName;
+      String bulkUpsertReturning = versionParamName == null
+          ? ""
+          : " RETURNING " + tableName + "." + idColumnName + ", " + tableName + "." + versionColumnName;
 
       String insertTuple = insertTupleSj.toString();
-      String updateTuple = updateTupleSj.toString();
+      String upsertTuple = upsertTupleSj.toString();
+      String versionedUpdateQuery = "UPDATE " + tableName + " SET " + versionedUpdateAssignments + " WHERE " +
+                                    idColumnName + " = $" + (versionedUpdateParam + 1) + " AND " +
+                                    versionColumnName + " = $" + (versionedUpdateParam + 2);
+      String bulkVersionedUpdateQuery = "UPDATE " + tableName + " SET " + bulkVersionedUpdateAssignments +
+                                        " FROM " + upsertUnnestParams + " AS u(" + upsertKeys + ") WHERE " +
+                                        tableName + "." + idColumnName + " = u." + idColumnName + " AND " +
+                                        tableName + "." + versionColumnName + " = u." + versionColumnName +
+                                        " RETURNING " + tableName + "." + idColumnName;
+
+      out.println("  private static final String[] UPSERT_COLUMNS = " + upsertColumns + ";");
+      out.println();
+      out.println("  private static final String[] UPDATE_COLUMNS = " + updateColumns + ";");
+      out.println();
+
+      out.println("  private static String onConflictSql(OnConflict onConflict) {");
+      out.println("    return onConflict == OnConflict.DO_UPDATE");
+      out.println("        ? \"" + doUpdateClause + "\"");
+      if (versionParamName == null) {
+        out.println("        : onConflict.sql(\"" + idColumnName + "\", UPSERT_COLUMNS);");
+      } else {
+        out.println("        : onConflict.sql(\"" + tableName + "\", \"" + idColumnName + "\", UPSERT_COLUMNS, \"" +
+                    versionColumnName + "\");");
+      }
+      out.println("  }");
+      out.println();
 
       out.println("  @Override");
       out.println("  public final Future<" + simpleClassName + "> save(" + simpleClassName + " entity) {");
-      out.println("    return save(sql, entity);");
+      out.println("    if (metrics.isNoop()) return wrote(save(sql, entity));");
+      out.println("    return wrote(metrics.withConnection(sql, \"save\", con -> save(con, entity)));");
       out.println("  }");
       out.println();
       out.println("  @Override");
       out.println("  public Future<" + simpleClassName + "> save(SqlClient sql, " + simpleClassName + " entity) {");
       out.println("    if (" + getId + " == null) {");
-      out.println("      return sql.preparedQuery(\"" + insertQuery + "\")");
-      out.println("          .execute(" + insertTuple + ")");
-      out.println("          .map(rs -> withId(rs.iterator().next(), entity));");
-      out.println("    } else {");
-      out.println("      return sql.preparedQuery(\"" + updateQuery + "\")");
-      out.println("          .execute(" + updateTuple + ")");
-      out.println("          .map(entity);");
-      out.println("    }");
+      out.println("      return metrics.start(\"save\")");
+      out.println("          .end(sql.preparedQuery(\"" + insertQuery + "\").execute(" + insertTuple + "))");
+      out.println("          .map(rs -> withReturnedId(rs.iterator().next(), entity));");
+      if (versionParamName == null) {
+        out.println("    } else {");
+        out.println("      return upsert(sql, entity, OnConflict.DO_UPDATE);");
+        out.println("    }");
+      } else {
+        out.println("    }");
+        out.println("    return metrics.start(\"save\")");
+        out.println("        .end(sql.preparedQuery(\"" + versionedUpdateQuery + "\").execute(" +
+                    versionedUpdateTupleSj + "))");
+        out.println("        .flatMap(rs -> rs.rowCount() == 1");
+        out.println("            ? Future.succeededFuture(withVersion(entity, versionOf(entity) + 1))");
+        out.println("            : Future.<" + simpleClassName + ">failedFuture(new VersionConflictException(List.of(entity))))");
+        out.println("        .onSuccess(v -> invalidate(" + getId + "));");
+      }
       out.println("  }");
       out.println();
 
       out.println("  @Override");
       out.println("  public final Future<List<" + simpleClassName + ">> saveAll(Collection<" + simpleClassName +
                   "> entities) {");
-      out.println("    return sql.withTransaction(con -> saveAll(con, entities));");
+      out.println("    if (metrics.isNoop()) return wrote(sql.withTransaction(con -> saveAll(con, entities)));");
+      out.println("    return wrote(metrics.withTransaction(sql, \"saveAll\", con -> saveAll(con, entities)));");
       out.println("  }");
       out.println();
       out.println("  @Override");
       out.println("  public Future<List<" + simpleClassName + ">> saveAll(SqlClient sql, Collection<"
                   + simpleClassName + "> entities) {");
-      out.println("    ArrayList<Tuple> insertBatch = new ArrayList<>();");
-      out.println("    ArrayList<TestPerson> entitiesToInsert = new ArrayList<>();");
-      out.println("    ArrayList<Tuple> updateBatch = new ArrayList<>();");
-      out.println("    ArrayList<" + simpleClassName + "> updatedEntities = new ArrayList<>();");
+      if (versionParamName == null) {
+        out.println("    // ON CONFLICT cannot update a row twice, so of Entities with equal Ids only the last");
+        out.println("    // is upserted, leaving the row as saving them one at a time would");
+        out.println("    ArrayList<" + simpleClassName + "> entitiesToSave = new ArrayList<>(entities.size());");
+        out.println("    LinkedHashMap<" + idType + ", " + simpleClassName + "> lastById = new LinkedHashMap<>();");
+        out.println("    for (" + simpleClassName + " entity : entities) {");
+        out.println("      if (" + getId + " == null) {");
+        out.println("        entitiesToSave.add(entity);");
+        out.println("      } else {");
+        out.println("        lastById.put(" + getId + ", entity);");
+        out.println("      }");
+        out.println("    }");
+        out.println("    if (entitiesToSave.size() + lastById.size() == entities.size()) {");
+        out.println("      return upsertAll(sql, entities, OnConflict.DO_UPDATE);");
+        out.println("    }");
+        out.println("    entitiesToSave.addAll(lastById.values());");
+        out.println("    return upsertAll(sql, entitiesToSave, OnConflict.DO_UPDATE).map(saved -> {");
+        out.println("      List<" + simpleClassName + "> res = new ArrayList<>(entities.size());");
+        out.println("      Iterator<" + simpleClassName + "> insertIter = saved.iterator();");
+        out.println("      for (" + simpleClassName + " entity : entities) {");
+        out.println("        res.add(" + getId + " == null ? insertIter.next() : entity);");
+        out.println("      }");
+        out.println("      return res;");
+        out.println("    });");
+      } else {
+        out.println("    ArrayList<" + simpleClassName + "> entitiesToInsert = new ArrayList<>();");
+        out.println("    ArrayList<" + simpleClassName + "> entitiesToUpdate = new ArrayList<>();");
+        out.println("    for (" + simpleClassName + " entity : entities) {");
+        out.println("      if (" + getId + " == null) {");
+        out.println("        entitiesToInsert.add(entity);");
+        out.println("      } else {");
+        out.println("        entitiesToUpdate.add(entity);");
+        out.println("      }");
+        out.println("    }");
+        out.println();
+        out.println("    return insertAll(sql, entitiesToInsert, \"saveAll\")");
+        out.println("        .flatMap(v -> entitiesToUpdate.isEmpty()");
+        out.println("            ? Future.<RowSet<Row>>succeededFuture()");
+        out.println("            : metrics.start(\"saveAll\").batchSize(entitiesToUpdate.size())");
+        out.println("                .end(sql.preparedQuery(\"" + bulkVersionedUpdateQuery + "\")");
+        out.println("                    .execute(upsertArrays(entitiesToUpdate))))");
+        out.println("        .flatMap(rs -> {");
+        out.println("          // rows whose version did not match are not returned");
+        out.println("          HashSet<" + idType + "> updatedIds = new HashSet<>();");
+        out.println("          if (rs != null) for (Row row : rs) updatedIds.add(row.get" + idType + "(0));");
+        out.println("          ArrayList<" + simpleClassName + "> conflicts = new ArrayList<>();");
+        out.println("          for (" + simpleClassName + " entity : entitiesToUpdate) {");
+        out.println("            if (!updatedIds.contains(" + getId + ")) conflicts.add(entity);");
+        out.println("          }");
+        out.println("          if (!conflicts.isEmpty()) {");
+        out.println("            return Future.<List<" + simpleClassName + ">>failedFuture(new VersionConflictException(conflicts));");
+        out.println("          }");
+        out.println("          List<" + simpleClassName + "> res = new ArrayList<>(entities.size());");
+        out.println("          Iterator<" + simpleClassName + "> insertIter = entitiesToInsert.iterator();");
+        out.println("          for (" + simpleClassName + " entity : entities) {");
+        out.println("            res.add(" + getId + " == null ? insertIter.next() : withVersion(entity, versionOf(entity) + 1));");
+        out.println("          }");
+        out.println("          return Future.succeededFuture(res);");
+        out.println("        })");
+        out.println("        .onSuccess(v -> {");
+        out.println("          if (cache == null) return;");
+        out.println("          for (" + simpleClassName + " entity : entitiesToUpdate) cache.invalidate(" + getId + ");");
+        out.println("        });");
+      }
+      out.println("  }");
+      out.println();
+
+      out.println("  @Override");
+      out.println("  public final Future<" + simpleClassName + "> upsert(" + simpleClassName + " entity) {");
+      out.println("    return upsert(entity, OnConflict.DO_UPDATE);");
+      out.println("  }");
+      out.println();
+      out.println("  @Override");
+      out.println("  public final Future<" + simpleClassName + "> upsert(" + simpleClassName +
+                  " entity, OnConflict onConflict) {");
+      out.println("    if (metrics.isNoop()) return wrote(upsert(sql, entity, onConflict));");
+      out.println("    return wrote(metrics.withConnection(sql, \"upsert\", con -> upsert(con, entity, onConflict)));");
+      out.println("  }");
+      out.println();
+      out.println("  @Override");
+      out.println("  public final Future<" + simpleClassName + "> upsert(SqlClient sql, " + simpleClassName +
+                  " entity) {");
+      out.println("    return upsert(sql, entity, OnConflict.DO_UPDATE);");
+      out.println("  }");
+      out.println();
+      out.println("  @Override");
+      out.println("  public Future<" + simpleClassName + "> upsert(SqlClient sql, " + simpleClassName +
+                  " entity, OnConflict onConflict) {");
+      out.println("    String onConflictSql;");
+      out.println("    try {");
+      out.println("      onConflictSql = onConflictSql(onConflict);");
+      out.println("    } catch (IllegalArgumentException e) {");
+      out.println("      return Future.failedFuture(e);");
+      out.println("    }");
+      out.println("    if (" + getId + " == null) return save(sql, entity);");
+      out.println("    return metrics.start(\"upsert\")");
+      if (versionParamName == null) {
+        out.println("        .end(sql.preparedQuery(\"" + upsertQuery + "\" + onConflictSql).execute(" +
+                    upsertTuple + "))");
+        out.println("        .map(entity)");
+      } else {
+        out.println("        .end(sql.preparedQuery(\"" + upsertQuery + "\" + onConflictSql + \"" + upsertReturning +
+                    "\").execute(" + upsertTuple + "))");
+        out.println("        // no row is returned when the existing row is left unchanged");
+        out.println("        .map(rs -> rs.size() == 0");
+        out.println("            ? entity");
+        out.println("            : withVersion(entity, rs.iterator().next().get" + versionType + "(0)))");
+      }
+      out.println("        .onSuccess(v -> invalidate(" + getId + "));");
+      out.println("  }");
+      out.println();
+
+      out.println("  @Override");
+      out.println("  public final Future<List<" + simpleClassName + ">> upsertAll(Collection<" + simpleClassName +
+                  "> entities) {");
+      out.println("    return upsertAll(entities, OnConflict.DO_UPDATE);");
+      out.println("  }");
+      out.println();
+      out.println("  @Override");
+      out.println("  public final Future<List<" + simpleClassName + ">> upsertAll(Collection<" + simpleClassName +
+                  "> entities, OnConflict onConflict) {");
+      out.println("    if (metrics.isNoop()) return wrote(sql.withTransaction(con -> upsertAll(con, entities, onConflict)));");
+      out.println("    return wrote(metrics.withTransaction(sql, \"upsertAll\", con -> upsertAll(con, entities, onConflict)));");
+      out.println("  }");
+      out.println();
+      out.println("  @Override");
+      out.println("  public final Future<List<" + simpleClassName + ">> upsertAll(SqlClient sql, Collection<" +
+                  simpleClassName + "> entities) {");
+      out.println("    return upsertAll(sql, entities, OnConflict.DO_UPDATE);");
+      out.println("  }");
+      out.println();
+      out.println("  @Override");
+      out.println("  public Future<List<" + simpleClassName + ">> upsertAll(SqlClient sql, Collection<"
+                  + simpleClassName + "> entities, OnConflict onConflict) {");
+      out.println("    String onConflictSql;");
+      out.println("    try {");
+      out.println("      onConflictSql = onConflictSql(onConflict);");
+      out.println("    } catch (IllegalArgumentException e) {");
+      out.println("      return Future.failedFuture(e);");
+      out.println("    }");
+      out.println("    ArrayList<" + simpleClassName + "> entitiesToInsert = new ArrayList<>();");
+      out.println("    ArrayList<" + simpleClassName + "> entitiesToUpsert = new ArrayList<>();");
       out.println("    for (" + simpleClassName + " entity : entities) {");
       out.println("      if (" + getId + " == null) {");
       out.println("        entitiesToInsert.add(entity);");
-      out.println("        insertBatch.add(" + insertTuple + ");");
       out.println("      } else {");
-      out.println("        updatedEntities.add(entity);");
-      out.println("        updateBatch.add(" + updateTuple + ");");
+      out.println("        entitiesToUpsert.add(entity);");
       out.println("      }");
       out.println("    }");
-      out.println("    Iterator<TestPerson> insertIter = entitiesToInsert.iterator();");
-      out.println("    int totalSize = insertBatch.size() + updateBatch.size();");
-      out.println("    boolean insertBatchBigger = insertBatch.size() > updateBatch.size();");
-      out.println("    int insertCollectorSize;");
-      out.println("    if (insertBatchBigger) {");
-      out.println("      insertCollectorSize = totalSize;");
-      out.println("    } else {");
-      out.println("      insertCollectorSize = insertBatch.size();");
-      out.println("      updateBatch.ensureCapacity(totalSize);");
+      out.println();
+      out.println("    return insertAll(sql, entitiesToInsert, \"upsertAll\")");
+      out.println("        .flatMap(v -> entitiesToUpsert.isEmpty()");
+      out.println("            ? Future.<RowSet<Row>>succeededFuture()");
+      out.println("            : metrics.start(\"upsertAll\").batchSize(entitiesToUpsert.size())");
+      if (versionParamName == null) {
+        out.println("                .end(sql.preparedQuery(\"" + bulkUpsertQuery + "\" + onConflictSql)");
+      } else {
+        out.println("                .end(sql.preparedQuery(\"" + bulkUpsertQuery + "\" + onConflictSql + \"" +
+                    bulkUpsertReturning + "\")");
+      }
+      out.println("                    .execute(upsertArrays(entitiesToUpsert))))");
+      out.println("        .map(rs -> {");
+      if (versionParamName != null) {
+        out.println("          // rows left unchanged are not returned");
+        out.println("          HashMap<" + idType + ", " + versionType + "> versions = new HashMap<>();");
+        out.println("          if (rs != null) for (Row row : rs) versions.put(row.get" + idType + "(0), row.get" +
+                    versionType + "(1));");
+      }
+      out.println("          List<" + simpleClassName + "> res = new ArrayList<>(entities.size());");
+      out.println("          Iterator<" + simpleClassName + "> insertIter = entitiesToInsert.iterator();");
+      out.println("          for (" + simpleClassName + " entity : entities) {");
+      if (versionParamName == null) {
+        out.println("            res.add(" + getId + " == null ? insertIter.next() : entity);");
+      } else {
+        out.println("            if (" + getId + " == null) res.add(insertIter.next());");
+        out.println("            else if (versions.containsKey(" + getId + ")) res.add(withVersion(entity, versions.get(" +
+                    getId + ")));");
+        out.println("            else res.add(entity);");
+      }
+      out.println("          }");
+      out.println("          return res;");
+      out.println("        })");
+      out.println("        .onSuccess(v -> {");
+      out.println("          if (cache == null) return;");
+      out.println("          for (" + simpleClassName + " entity : entitiesToUpsert) cache.invalidate(" + getId + ");");
+      out.println("        });");
+      out.println("  }");
+      out.println();
+
+      String sameIds = "after." + idParamName + "() != null && after." + idParamName + "().equals(before." +
+                       idParamName + "())";
+      String updated = versionParamName == null ? "after" : "withVersion(after, versionOf(before) + 1)";
+      out.println("  @Override");
+      out.println("  public final Future<" + simpleClassName + "> update(" + simpleClassName + " before, " +
+                  simpleClassName + " after) {");
+      out.println("    if (metrics.isNoop()) return wrote(update(sql, before, after));");
+      out.println("    return wrote(metrics.withConnection(sql, \"update\", con -> update(con, before, after)));");
+      out.println("  }");
+      out.println();
+      out.println("  @Override");
+      out.println("  public Future<" + simpleClassName + "> update(SqlClient sql, " + simpleClassName + " before, " +
+                  simpleClassName + " after) {");
+      out.println("    if (!(" + sameIds + ")) return Future.failedFuture(idMismatch(before, after));");
+      out.println("    long changed = changedColumns(before, after);");
+      out.println("    if (changed == 0) return Future.succeededFuture(after);");
+      out.println("    return metrics.start(\"update\")");
+      out.println("        .end(sql.preparedQuery(updateQuery(changed)).execute(updateTuple(changed, before, after)))");
+      out.println("        .flatMap(rs -> rs.rowCount() == 1");
+      out.println("            ? Future.succeededFuture(" + updated + ")");
+      out.println("            : Future.<" + simpleClassName + ">failedFuture(notUpdated(List.of(after))))");
+      out.println("        .onSuccess(v -> invalidate(after." + idParamName + "()));");
+      out.println("  }");
+      out.println();
+
+      out.println("  @Override");
+      out.println("  public final Future<List<" + simpleClassName + ">> updateAll(List<" + simpleClassName +
+                  "> befores, List<" + simpleClassName + "> afters) {");
+      out.println("    if (allUnchanged(befores, afters)) return Future.succeededFuture(afters);");
+      out.println("    if (metrics.isNoop()) return wrote(sql.withTransaction(con -> updateAll(con, befores, afters)));");
+      out.println("    return wrote(metrics.withTransaction(sql, \"updateAll\", con -> updateAll(con, befores, afters)));");
+      out.println("  }");
+      out.println();
+      out.println("  @Override");
+      out.println("  public Future<List<" + simpleClassName + ">> updateAll(SqlClient sql, List<" + simpleClassName +
+                  "> befores, List<" + simpleClassName + "> afters) {");
+      out.println("    if (befores.size() != afters.size()) {");
+      out.println("      return Future.failedFuture(new IllegalArgumentException(");
+      out.println("          \"Cannot update \" + befores.size() + \" Entities to \" + afters.size()));");
+      out.println("    }");
+      out.println("    // indexes of the Entities by changed columns; each group shares a statement and is one batch");
+      out.println("    LinkedHashMap<Long, List<Integer>> batches = new LinkedHashMap<>();");
+      out.println("    for (int i = 0; i < afters.size(); ++i) {");
+      out.println("      " + simpleClassName + " before = befores.get(i);");
+      out.println("      " + simpleClassName + " after = afters.get(i);");
+      out.println("      if (!(" + sameIds + ")) return Future.failedFuture(idMismatch(before, after));");
+      out.println("      long changed = changedColumns(before, after);");
+      out.println("      if (changed != 0) batches.computeIfAbsent(changed, k -> new ArrayList<>()).add(i);");
+      out.println("    }");
+      out.println("    if (batches.isEmpty()) return Future.succeededFuture(afters);");
+      out.println();
+      out.println("    ArrayList<Future> updates = new ArrayList<>(batches.size());");
+      out.println("    for (Map.Entry<Long, List<Integer>> batch : batches.entrySet()) {");
+      out.println("      long changed = batch.getKey();");
+      out.println("      ArrayList<Tuple> tuples = new ArrayList<>(batch.getValue().size());");
+      out.println("      for (int i : batch.getValue()) tuples.add(updateTuple(changed, befores.get(i), afters.get(i)));");
+      out.println("      updates.add(metrics.start(\"updateAll\").batchSize(tuples.size())");
+      out.println("          .end(sql.preparedQuery(updateQuery(changed)).executeBatch(tuples)));");
       out.println("    }");
+      out.println("    return CompositeFuture.all(updates)");
+      out.println("        .flatMap(cf -> {");
+      out.println("          ArrayList<" + simpleClassName + "> res = new ArrayList<>(afters);");
+      out.println("          ArrayList<Integer> notUpdated = new ArrayList<>();");
+      out.println("          int batchIndex = 0;");
+      out.println("          for (List<Integer> indexes : batches.values()) {");
+      out.println("            // a batch has one RowSet per Tuple, in order");
+      out.println("            RowSet<Row> rs = cf.resultAt(batchIndex++);");
+      out.println("            for (int i : indexes) {");
+      out.println("              if (rs.rowCount() == 0) notUpdated.add(i);");
+      if (versionParamName != null) {
+        out.println("              else res.set(i, withVersion(afters.get(i), versionOf(befores.get(i)) + 1));");
+      }
+      out.println("              rs = rs.next();");
+      out.println("            }");
+      out.println("          }");
+      out.println("          if (notUpdated.isEmpty()) return Future.succeededFuture(res);");
+      out.println("          Collections.sort(notUpdated);");
+      out.println("          ArrayList<" + simpleClassName + "> failed = new ArrayList<>(notUpdated.size());");
+      out.println("          for (int i : notUpdated) failed.add(afters.get(i));");
+      out.println("          return Future.<List<" + simpleClassName + ">>failedFuture(notUpdated(failed));");
+      out.println("        })");
+      out.println("        .onSuccess(v -> {");
+      out.println("          if (cache == null) return;");
+      out.println("          for (" + simpleClassName + " entity : afters) cache.invalidate(" + getId + ");");
+      out.println("        });");
+      out.println("  }");
+      out.println();
+
+      out.println("  /**");
+      out.println("   * True if there is nothing to update, so that no connection or transaction is needed.");
+      out.println("   */");
+      out.println("  private static boolean allUnchanged(List<" + simpleClassName + "> befores, List<" + simpleClassName +
+                  "> afters) {");
+      out.println("    if (befores.size() != afters.size()) return false;");
+      out.println("    for (int i = 0; i < afters.size(); ++i) {");
+      out.println("      " + simpleClassName + " before = befores.get(i);");
+      out.println("      " + simpleClassName + " after = afters.get(i);");
+      out.println("      if (!(" + sameIds + ") || changedColumns(before, after) != 0) return false;");
+      out.println("    }");
+      out.println("    return true;");
+      out.println("  }");
+      out.println();
+
+      out.println("  private static RuntimeException notUpdated(List<" + simpleClassName + "> entities) {");
+      if (versionParamName == null) {
+        out.println("    StringJoiner ids = new StringJoiner(\", \");");
+        out.println("    for (" + simpleClassName + " entity : entities) ids.add(String.valueOf(" + getId + "));");
+        out.println("    return new NoSuchElementException(\"No " + simpleClassName + " with id \" + ids);");
+      } else {
+        out.println("    return new VersionConflictException(entities);");
+      }
+      out.println("  }");
       out.println();
-      out.println("    return sql.preparedQuery(\"" + insertQuery + "\")");
-      out.println("        .collecting(Collectors.mapping(row -> withId(row, insertIter.next()), " +
-                  "CollectorUtil.toList(insertCollectorSize)))");
-      out.println("        .executeBatch(insertBatch)");
-      out.println("        .map(SqlResult::value)");
-      out.println("        .flatMap(insertedEntities -> sql");
-      out.println("            .preparedQuery(\"" + updateQuery + "\")");
-      out.println("            .executeBatch(updateBatch)");
-      out.println("            .map(rs -> {");
-      out.println("              if (insertBatchBigger) {");
-      out.println("                insertedEntities.addAll(updatedEntities);");
-      out.println("                return insertedEntities;");
-      out.println("              } else {");
-      out.println("                updatedEntities.addAll(insertedEntities);");
-      out.println("                return updatedEntities;");
-      out.println("              }");
-      out.println("            }));");
+
+      printUpdateHelpers(out, tableName, idColumnName, idParamName, versionParamName, versionColumnName,
+          simpleClassName, paramNames);
+
+      out.println("  /**");
+      out.println("   * Inserts the entities with one statement, replacing each with its copy with an id.");
+      out.println("   */");
+      out.println("  private Future<List<" + simpleClassName + ">> insertAll(SqlClient sql, List<" + simpleClassName +
+                  "> entitiesToInsert, String operation) {");
+      out.println("    if (entitiesToInsert.isEmpty()) return Future.succeededFuture(entitiesToInsert);");
+      out.println("    return metrics.start(operation).batchSize(entitiesToInsert.size())");
+      out.println("        .end(sql.preparedQuery(\"" + bulkInsertQuery + "\").execute(insertArrays(entitiesToInsert)))");
+      out.println("        .map(rs -> {");
+      if (idType.equals("String")) {
+        out.println("          // rows are inserted in ordinal order, and returned as they are inserted");
+        out.println("          int i = 0;");
+        out.println("          for (Row row : rs) {");
+        out.println("            entitiesToInsert.set(i, withReturnedId(row, entitiesToInsert.get(i)));");
+        out.println("            ++i;");
+        out.println("          }");
+      } else {
+        out.println("          for (Row row : rs) {");
+        out.println("            int i = (int) (row.getLong(1) - 1);");
+        out.println("            entitiesToInsert.set(i, withReturnedId(row, entitiesToInsert.get(i)));");
+        out.println("          }");
+      }
+      out.println("          return entitiesToInsert;");
+      out.println("        });");
+      out.println("  }");
+      out.println();
+
+      out.println("  private void invalidate(" + idType + " id) {");
+      out.println("    if (cache != null) cache.invalidate(id);");
+      out.println("  }");
+      out.println();
+      out.println("  private void invalidateAll(Collection<" + idType + "> ids) {");
+      out.println("    if (cache == null) return;");
+      out.println("    for (" + idType + " id : ids) cache.invalidate(id);");
+      out.println("  }");
+      out.println();
+
+      printColumnArrays(out, "insertArrays", "inserted", simpleClassName, paramNames, simpleParamTypes,
+          idParamName, versionParamName);
+      printColumnArrays(out, "upsertArrays", "upserted", simpleClassName, paramNames, simpleParamTypes, null,
+          versionParamName);
+
+      out.println("}");
+
+      if (entityAnnotation != null && entityAnnotation.sharded()) {
+        buildShardedRepo(packageName, simpleClassName, idParamName, idType);
+      }
+      if (blockingRepo) buildBlockingRepo(packageName, simpleClassName, idType, false);
+    }
+  }
+
+  /**
+   * Generates XxxBlockingRepo, a synchronous {@link com.augustnagro.vertx.repo.BlockingRepo}
+   * or {@link com.augustnagro.vertx.repo.BlockingImmutableRepo} over an XxxRepoBase.
+   */
+  private void buildBlockingRepo(String packageName, String simpleClassName, String idType,
+                                 boolean immutable) throws IOException {
+    String blockingSimpleClassName = simpleClassName + "BlockingRepo";
+    String repoSimpleClassName = simpleClassName + "RepoBase";
+    String blockingClassName = packageName == null ? blockingSimpleClassName : packageName + "." + blockingSimpleClassName;
+    String superSimpleClassName = immutable ? "BlockingImmutableRepo" : "BlockingRepo";
+
+    JavaFileObject src = processingEnv.getFiler().createSourceFile(blockingClassName);
+    try (PrintWriter out = new PrintWriter(src.openWriter(), false)) {
+      if (packageName != null) {
+        out.println("package " + packageName + ";");
+        out.println();
+      }
+      out.println("import com.augustnagro.vertx.repo." + superSimpleClassName + ";");
+      out.println();
+      out.println("/**");
+      out.println(" * Synchronous " + repoSimpleClassName + ", for callers on virtual threads or their own thread pools.");
+      out.println(" * See {@link " + superSimpleClassName + "}.");
+      out.println(" */");
+      out.println("public class " + blockingSimpleClassName + " extends " + superSimpleClassName + "<" +
+                  simpleClassName + ", " + idType + "> {");
+      out.println();
+      out.println("  private final " + repoSimpleClassName + " repo;");
+      out.println();
+      out.println("  public " + blockingSimpleClassName + "(" + repoSimpleClassName + " repo) {");
+      out.println("    super(repo);");
+      out.println("    this.repo = repo;");
       out.println("  }");
       out.println();
+      out.println("  /**");
+      out.println("   * The Repo every call is delegated to. Its own methods can be made blocking with {@link #await}.");
+      out.println("   */");
+      out.println("  @Override");
+      out.println("  public " + repoSimpleClassName + " repo() {");
+      out.println("    return repo;");
+      out.println("  }");
+      out.println("}");
+    }
+  }
+
+  /**
+   * Generates XxxShardedRepo, a {@link com.augustnagro.vertx.repo.pg.ShardedRepo} over one XxxRepoBase per shard.
+   */
+  private void buildShardedRepo(String packageName, String simpleClassName, String idParamName,
+                                String idType) throws IOException {
+    String shardedSimpleClassName = simpleClassName + "ShardedRepo";
+    String repoSimpleClassName = simpleClassName + "RepoBase";
+    String shardedClassName = packageName == null ? shardedSimpleClassName : packageName + "." + shardedSimpleClassName;
 
+    JavaFileObject src = processingEnv.getFiler().createSourceFile(shardedClassName);
+    try (PrintWriter out = new PrintWriter(src.openWriter(), false)) {
+      if (packageName != null) {
+        out.println("package " + packageName + ";");
+        out.println();
+      }
+      out.println("import java.util.List;");
+      out.println("import java.util.stream.Collector;");
+      out.println();
+      out.println("import io.vertx.sqlclient.Row;");
+      out.println();
+      out.println("import com.augustnagro.vertx.repo.ProjectionType;");
+      out.println("import com.augustnagro.vertx.repo.pg.ShardedRepo;");
+      out.println();
+      out.println("/**");
+      out.println(" * Repo over " + simpleClassName + "s hash partitioned by Id, with one " + repoSimpleClassName +
+                  " per shard. See {@link ShardedRepo}.");
+      out.println(" */");
+      out.println("public class " + shardedSimpleClassName + " extends ShardedRepo<" + simpleClassName + ", " +
+                  idType + "> {");
+      out.println();
+      out.println("  private static final ProjectionType<" + simpleClassName + "> ENTITY_TYPE = new ProjectionType<>() {");
+      out.println("    @Override");
+      out.println("    public String selectColumns() {");
+      out.println("      return " + repoSimpleClassName + ".SELECT_COLUMNS;");
+      out.println("    }");
+      out.println();
+      out.println("    @Override");
+      out.println("    public Collector<Row, ?, List<" + simpleClassName + ">> listCollector() {");
+      out.println("      return " + repoSimpleClassName + ".listCollector();");
+      out.println("    }");
+      out.println("  };");
+      out.println();
+      out.println("  /**");
+      out.println("   * @param shards one Repo per shard. The order determines the shard of each Id, and must not change.");
+      out.println("   */");
+      out.println("  public " + shardedSimpleClassName + "(List<? extends " + repoSimpleClassName + "> shards) {");
+      out.println("    super(shards, " + simpleClassName + "::" + idParamName + ", ENTITY_TYPE);");
+      out.println("  }");
       out.println("}");
     }
   }
 
+  /**
+   * Prints the helpers of update and updateAll. Bit i of a changed-column mask is set if the i-th
+   * non-id, non-version column changed. Columns from the 64th on share the last bit, and are written together.
+   */
+  private static void printUpdateHelpers(PrintWriter out, String tableName, String idColumnName,
+                                         String idParamName, String versionParamName, String versionColumnName,
+                                         String simpleClassName, String[] paramNames) {
+    out.println("  private static final int MAX_UPDATE_QUERIES = 1024;");
+    out.println();
+    out.println("  /**");
+    out.println("   * UPDATE statements by changed-column mask.");
+    out.println("   */");
+    out.println("  private static final ConcurrentHashMap<Long, String> UPDATE_QUERIES = new ConcurrentHashMap<>();");
+    out.println();
+    out.println("  private static long changedColumns(" + simpleClassName + " before, " + simpleClassName +
+                " after) {");
+    out.println("    long changed = 0;");
+    int bit = 0;
+    for (String paramName : paramNames) {
+      if (paramName.equals(idParamName) || paramName.equals(versionParamName)) continue;
+      out.println("    if (!Objects.equals(before." + paramName + "(), after." + paramName + "())) changed |= 1L << " +
+                  Math.min(bit, 63) + ";");
+      ++bit;
+    }
+    out.println("    return changed;");
+    out.println("  }");
+    out.println();
+    out.println("  private static String updateQuery(long changed) {");
+    out.println("    String query = UPDATE_QUERIES.get(changed);");
+    out.println("    if (query != null) return query;");
+    out.println("    StringJoiner assignments = new StringJoiner(\", \");");
+    out.println("    int param = 0;");
+    out.println("    for (int i = 0; i < UPDATE_COLUMNS.length; ++i) {");
+    out.println("      if ((changed & 1L << Math.min(i, 63)) != 0) assignments.add(UPDATE_COLUMNS[i] + \" = $\" + ++param);");
+    out.println("    }");
+    if (versionParamName == null) {
+      out.println("    query = \"UPDATE " + tableName + " SET \" + assignments + \" WHERE " + idColumnName +
+                  " = $\" + (param + 1);");
+    } else {
+      out.println("    assignments.add(\"" + versionColumnName + " = " + versionColumnName + " + 1\");");
+      out.println("    query = \"UPDATE " + tableName + " SET \" + assignments + \" WHERE " + idColumnName +
+                  " = $\" + (param + 1) + \" AND " + versionColumnName + " = $\" + (param + 2);");
+    }
+    out.println("    if (UPDATE_QUERIES.size() < MAX_UPDATE_QUERIES) UPDATE_QUERIES.putIfAbsent(changed, query);");
+    out.println("    return query;");
+    out.println("  }");
+    out.println();
+    out.println("  private static Tuple updateTuple(long changed, " + simpleClassName + " before, " + simpleClassName +
+                " after) {");
+    out.println("    Tuple tuple = Tuple.tuple();");
+    bit = 0;
+    for (String paramName : paramNames) {
+      if (paramName.equals(idParamName) || paramName.equals(versionParamName)) continue;
+      out.println("    if ((changed & 1L << " + Math.min(bit, 63) + ") != 0) tuple.addValue(after." + paramName + "());");
+      ++bit;
+    }
+    if (versionParamName == null) {
+      out.println("    return tuple.addValue(after." + idParamName + "());");
+    } else {
+      out.println("    return tuple.addValue(after." + idParamName + "()).addValue(versionOf(before));");
+    }
+    out.println("  }");
+    out.println();
+    out.println("  private static IllegalArgumentException idMismatch(" + simpleClassName + " before, " +
+                simpleClassName + " after) {");
+    out.println("    return new IllegalArgumentException(\"Cannot update \" + before + \" to \" + after +");
+    out.println("        \", their Ids must be equal and not null\");");
+    out.println("  }");
+    out.println();
+  }
+
+  /**
+   * Prints a method building one array per column of the entities, for binding to UNNEST parameters.
+   * The id column is skipped if idParamName is not null. Null versions are bound as 0.
+   */
+  private static void printColumnArrays(PrintWriter out, String methodName, String description,
+                                        String simpleClassName, String[] paramNames, String[] simpleParamTypes,
+                                        String idParamName, String versionParamName) {
+    // not Tuple.of, whose varargs would spread a single array argument
+    StringBuilder tuple = new StringBuilder("Tuple.tuple()");
+    out.println("  /**");
+    out.println("   * One array per " + description + " column, for binding to the UNNEST parameters of a bulk query.");
+    out.println("   */");
+    out.println("  private static Tuple " + methodName + "(List<" + simpleClassName + "> entities) {");
+    out.println("    int size = entities.size();");
+    for (int i = 0; i < paramNames.length; ++i) {
+      if (paramNames[i].equals(idParamName)) continue;
+      out.println("    " + simpleParamTypes[i] + "[] " + paramNames[i] + "Array = new " + simpleParamTypes[i] +
+                  "[size];");
+      tuple.append(".addValue(").append(paramNames[i]).append("Array)");
+    }
+    out.println("    for (int i = 0; i < size; ++i) {");
+    out.println("      " + simpleClassName + " entity = entities.get(i);");
+    for (int i = 0; i < paramNames.length; ++i) {
+      if (paramNames[i].equals(idParamName)) continue;
+      String value = paramNames[i].equals(versionParamName) ? "versionOf(entity)" : "entity." + paramNames[i] + "()";
+      out.println("      " + paramNames[i] + "Array[i] = " + value + ";");
+    }
+    out.println("    }");
+    out.println("    return " + tuple + ";");
+    out.println("  }");
+    out.println();
+  }
+
+  /**
+   * Counter table for {@link Entity#counterTable()}. Statement level triggers insert
+   * the number of inserted or deleted rows, read from transition tables, as a new
+   * row, so that concurrent writers never update the same row; the count is their sum.
+   * The entity's table is locked while the counter is initialized, so that no write is
+   * missed, and TRUNCATE is used to clear the counter since it waits for compactions.
+   */
+  private static String counterDdl(String tableName, String counterTableName) {
+    String function = counterTableName + "_trigger";
+    return "BEGIN;\n" +
+           "LOCK TABLE " + tableName + " IN SHARE ROW EXCLUSIVE MODE;\n" +
+           "CREATE TABLE IF NOT EXISTS " + counterTableName + " (n bigint NOT NULL);\n" +
+           "TRUNCATE " + counterTableName + ";\n" +
+           "INSERT INTO " + counterTableName + " SELECT COUNT(*) FROM " + tableName + ";\n" +
+           "CREATE OR REPLACE FUNCTION " + function + "() RETURNS trigger LANGUAGE plpgsql AS $$\n" +
+           "BEGIN\n" +
+           "  IF TG_OP = 'INSERT' THEN\n" +
+           "    INSERT INTO " + counterTableName + " (n) SELECT COUNT(*) FROM new_rows HAVING COUNT(*) > 0;\n" +
+           "  ELSIF TG_OP = 'DELETE' THEN\n" +
+           "    INSERT INTO " + counterTableName + " (n) SELECT -COUNT(*) FROM old_rows HAVING COUNT(*) > 0;\n" +
+           "  ELSE\n" +
+           "    TRUNCATE " + counterTableName + ";\n" +
+           "  END IF;\n" +
+           "  RETURN NULL;\n" +
+           "END $$;\n" +
+           "DROP TRIGGER IF EXISTS " + counterTableName + "_insert ON " + tableName + ";\n" +
+           "CREATE TRIGGER " + counterTableName + "_insert AFTER INSERT ON " + tableName +
+           " REFERENCING NEW TABLE AS new_rows FOR EACH STATEMENT EXECUTE PROCEDURE " + function + "();\n" +
+           "DROP TRIGGER IF EXISTS " + counterTableName + "_delete ON " + tableName + ";\n" +
+           "CREATE TRIGGER " + counterTableName + "_delete AFTER DELETE ON " + tableName +
+           " REFERENCING OLD TABLE AS old_rows FOR EACH STATEMENT EXECUTE PROCEDURE " + function + "();\n" +
+           "DROP TRIGGER IF EXISTS " + counterTableName + "_truncate ON " + tableName + ";\n" +
+           "CREATE TRIGGER " + counterTableName + "_truncate AFTER TRUNCATE ON " + tableName +
+           " FOR EACH STATEMENT EXECUTE PROCEDURE " + function + "();\n" +
+           "COMMIT;";
+  }
+
+  /**
+   * Statement-level triggers notifying the Ids in the transition table, in JSON arrays of at most 100
+   * (CacheInvalidationListener.MAX_IDS_PER_NOTIFICATION). NOTIFY payloads must be under 8000 bytes,
+   * so longer arrays notify '*' instead.
+   */
+  private static String invalidationDdl(String tableName, String idColumnName, String channel) {
+    String function = channel + "_trigger";
+    return "BEGIN;\n" +
+           "CREATE OR REPLACE FUNCTION " + function + "() RETURNS trigger LANGUAGE plpgsql AS $$\n" +
+           "DECLARE\n" +
+           "  ids text;\n" +
+           "BEGIN\n" +
+           "  IF TG_OP = 'TRUNCATE' THEN\n" +
+           "    PERFORM pg_notify('" + channel + "', '*');\n" +
+           "    RETURN NULL;\n" +
+           "  END IF;\n" +
+           "  FOR ids IN SELECT json_agg(id)::text FROM (\n" +
+           "      SELECT id, (row_number() OVER () - 1) / 100 AS chunk\n" +
+           "      FROM (SELECT DISTINCT " + idColumnName + "::text AS id FROM old_rows) d\n" +
+           "    ) c GROUP BY chunk LOOP\n" +
+           "    PERFORM pg_notify('" + channel + "', CASE WHEN octet_length(ids) < 7900 THEN ids ELSE '*' END);\n" +
+           "  END LOOP;\n" +
+           "  RETURN NULL;\n" +
+           "END $$;\n" +
+           "DROP TRIGGER IF EXISTS " + channel + "_update ON " + tableName + ";\n" +
+           "CREATE TRIGGER " + channel + "_update AFTER UPDATE ON " + tableName +
+           " REFERENCING OLD TABLE AS old_rows FOR EACH STATEMENT EXECUTE PROCEDURE " + function + "();\n" +
+           "DROP TRIGGER IF EXISTS " + channel + "_delete ON " + tableName + ";\n" +
+           "CREATE TRIGGER " + channel + "_delete AFTER DELETE ON " + tableName +
+           " REFERENCING OLD TABLE AS old_rows FOR EACH STATEMENT EXECUTE PROCEDURE " + function + "();\n" +
+           "DROP TRIGGER IF EXISTS " + channel + "_truncate ON " + tableName + ";\n" +
+           "CREATE TRIGGER " + channel + "_truncate AFTER TRUNCATE ON " + tableName +
+           " FOR EACH STATEMENT EXECUTE PROCEDURE " + function + "();\n" +
+           "COMMIT;";
+  }
+
   private void buildProjection(Element projection, RoundEnvironment roundEnv) throws IOException {
     if (!(projection instanceof TypeElement))
       throw new RuntimeException("@Projection annotation in wrong place for " + projection.getSimpleName());
@@ -502,6 +1604,7 @@ public class PgProcessor extends AbstractProcessor {
 
       out.println("import java.util.List;");
       out.println("import java.util.ArrayList;");
+      out.println("import java.util.function.Function;");
       out.println("import java.util.stream.Collector;");
       out.println("import java.util.stream.Collectors;");
       out.println();
@@ -527,6 +1630,7 @@ public class PgProcessor extends AbstractProcessor {
       out.println("import io.vertx.pgclient.data.Line;");
       out.println();
       out.println("import com.augustnagro.vertx.repo.CollectorUtil;");
+      out.println("import com.augustnagro.vertx.repo.ProjectionType;");
       out.println("import " + className + ";");
       out.println();
 
@@ -536,108 +1640,103 @@ public class PgProcessor extends AbstractProcessor {
       ExecutableElement constructor = constructor(projectionType);
       out.println(builderMethods(constructor, simpleClassName, projectionSimpleClassName));
 
+      out.println("  /**");
+      out.println("   * For findAll(Spec, ProjectionType), selecting only SELECT_COLUMNS.");
+      out.println("   */");
+      out.println("  public static final ProjectionType<" + simpleClassName + "> TYPE = new ProjectionType<" +
+                  simpleClassName + ">() {");
+      out.println("    @Override");
+      out.println("    public String selectColumns() {");
+      out.println("      return SELECT_COLUMNS;");
+      out.println("    }");
+      out.println();
+      out.println("    @Override");
+      out.println("    public Collector<Row, ?, List<" + simpleClassName + ">> listCollector() {");
+      out.println("      return " + projectionSimpleClassName + ".listCollector();");
+      out.println("    }");
+      out.println("  };");
+      out.println();
+
       out.println("}");
     }
   }
 
   /**
-   * If idType and idColumn are null, the withId helper is not generated.
+   * Comma separated column names of the constructor parameters, in order.
+   * Generated queries select exactly these columns, so that rows can be decoded by index.
    */
+  private static String selectColumns(ExecutableElement constructor) {
+    StringJoiner columns = new StringJoiner(", ");
+    for (VariableElement param : constructor.getParameters()) {
+      columns.add(camelToSnakeCase(param.getSimpleName().toString()));
+    }
+    return columns.toString();
+  }
+
   private static String builderMethods(ExecutableElement constructor, String simpleClassName,
                                        String simpleGeneratedClassName) {
 
-    // code to make a new instance from a Row
-    StringJoiner constructorParams = new StringJoiner(", ");
-    for (VariableElement param : constructor.getParameters()) {
+    // code to make a new instance from a Row, by column index and by column name
+    StringJoiner positionalParams = new StringJoiner(", ");
+    StringJoiner byNameParams = new StringJoiner(", ");
+    StringJoiner columnNames = new StringJoiner(", ", "{", "}");
+    List<? extends VariableElement> parameters = constructor.getParameters();
+    for (int i = 0; i < parameters.size(); ++i) {
+      VariableElement param = parameters.get(i);
       String columnName = camelToSnakeCase(param.getSimpleName().toString());
-      String paramType = param.asType().toString();
-      String methodPart;
-      switch (paramType) {
-        case "java.lang.Boolean":
-          methodPart = "getBoolean(";
-          break;
-        case "java.lang.Short":
-          methodPart = "getShort(";
-          break;
-        case "java.lang.Integer":
-          methodPart = "getInteger(";
-          break;
-        case "java.lang.Long":
-          methodPart = "getLong(";
-          break;
-        case "java.lang.Float":
-          methodPart = "getFloat(";
-          break;
-        case "java.lang.Double":
-          methodPart = "getDouble(";
-          break;
-        case "java.lang.String":
-          methodPart = "getString(";
-          break;
-        case "io.vertx.sqlclient.data.Numeric":
-        case "java.lang.Number":
-          methodPart = "get(Numeric.class, ";
-          break;
-        case "java.util.UUID":
-          methodPart = "getUUID(";
-          break;
-        case "java.time.LocalDate":
-          methodPart = "getLocalDate(";
-          break;
-        case "java.time.LocalTime":
-          methodPart = "getLocalTime(";
-          break;
-        case "java.time.OffsetTime":
-          methodPart = "getOffsetTime(";
-          break;
-        case "java.time.LocalDateTime":
-          methodPart = "getLocalDateTime(";
-          break;
-        case "java.time.OffsetDateTime":
-          methodPart = "getOffsetDateTime(";
-          break;
-        case "io.vertx.pgclient.data.Interval":
-          methodPart = "get(Interval.class, ";
-          break;
-        case "io.vertx.core.buffer.Buffer":
-          methodPart = "getBuffer(";
-          break;
-        case "io.vertx.core.json.JsonObject":
-          methodPart = "getJsonObject(";
-          break;
-        case "io.vertx.core.json.JsonArray":
-          methodPart = "getJsonArray(";
-          break;
-        case "io.vertx.pgclient.data.Point":
-          methodPart = "get(Point.class, ";
-          break;
-        case "io.vertx.pgclient.data.Line":
-          methodPart = "get(Line.class, ";
-          break;
-        case "io.vertx.pgclient.data.LineSegment":
-          methodPart = "get(LineSegment.class, ";
-          break;
-        case "io.vertx.pgclient.data.Box":
-          methodPart = "get(Box.class, ";
-          break;
-        case "io.vertx.pgclient.data.Path":
-          methodPart = "get(Path.class, ";
-          break;
-        case "io.vertx.pgclient.data.Polygon":
-          methodPart = "get(Polygon.class, ";
-          break;
-        case "io.vertx.pgclient.data.Circle":
-          methodPart = "get(Circle.class, ";
-          break;
-        default:
-          throw new RuntimeException("Unsupported param type of " + paramType);
-      }
-      constructorParams.add("row." + methodPart + "\"" + columnName + "\")");
+      String methodPart = rowGetter(param.asType().toString());
+      positionalParams.add("row." + methodPart + i + ")");
+      byNameParams.add("row." + methodPart + "\"" + columnName + "\")");
+      columnNames.add("\"" + columnName + "\"");
     }
-    String newInstanceCode = "new " + simpleClassName + "(" + constructorParams + ")";
+    String positionalInstanceCode = "new " + simpleClassName + "(" + positionalParams + ")";
+    String byNameInstanceCode = "new " + simpleClassName + "(" + byNameParams + ")";
 
-    return "  public static " + simpleClassName + " buildSingle(Row row) {\n" +
-           "    return " + newInstanceCode + ";\n" +
+    return "  public static final String SELECT_COLUMNS = \"" + selectColumns(constructor) + "\";\n" +
+           "\n" +
+           "  private static final String[] COLUMN_NAMES = " + columnNames + ";\n" +
+           "\n" +
+           "  /**\n" +
+           "   * True if the row's first columns are SELECT_COLUMNS, in order.\n" +
+           "   */\n" +
+           "  public static boolean hasColumnLayout(Row row) {\n" +
+           "    if (row.size() < COLUMN_NAMES.length) return false;\n" +
+           "    for (int i = 0; i < COLUMN_NAMES.length; ++i) {\n" +
+           "      if (!COLUMN_NAMES[i].equals(row.getColumnName(i))) return false;\n" +
+           "    }\n" +
+           "    return true;\n" +
+           "  }\n" +
+           "\n" +
+           "  private static boolean hasColumnLayout(List<String> columnsNames) {\n" +
+           "    if (columnsNames.size() < COLUMN_NAMES.length) return false;\n" +
+           "    for (int i = 0; i < COLUMN_NAMES.length; ++i) {\n" +
+           "      if (!COLUMN_NAMES[i].equals(columnsNames.get(i))) return false;\n" +
+           "    }\n" +
+           "    return true;\n" +
+           "  }\n" +
+           "\n" +
+           "  /**\n" +
+           "   * Builds from a row whose columns are SELECT_COLUMNS, in order. All generated queries\n" +
+           "   * return this layout.\n" +
+           "   */\n" +
+           "  public static " + simpleClassName + " buildPositional(Row row) {\n" +
+           "    return " + positionalInstanceCode + ";\n" +
+           "  }\n" +
+           "\n" +
+           "  /**\n" +
+           "   * Builds from a row with any column layout, looking up each column by name.\n" +
+           "   */\n" +
+           "  public static " + simpleClassName + " buildByName(Row row) {\n" +
+           "    return " + byNameInstanceCode + ";\n" +
+           "  }\n" +
+           "\n" +
+           "  private static Function<Row, " + simpleClassName + "> decoderFor(Row row) {\n" +
+           "    return hasColumnLayout(row) ? " + simpleGeneratedClassName + "::buildPositional : " +
+           simpleGeneratedClassName + "::buildByName;\n" +
+           "  }\n" +
+           "\n" +
+           "  public static " + simpleClassName + " buildSingle(Row row) {\n" +
+           "    return hasColumnLayout(row) ? buildPositional(row) : buildByName(row);\n" +
            "  }\n" +
            "\n" +
            "  public static " + simpleClassName + " buildSingle(RowSet<Row> rowSet) {\n" +
@@ -650,23 +1749,180 @@ public class PgProcessor extends AbstractProcessor {
            "  public static List<" + simpleClassName + "> build(RowSet<Row> rowSet) {\n" +
            "    ArrayList<" + simpleClassName + "> res = new ArrayList<>(rowSet.size());\n" +
            "    for (; rowSet != null; rowSet = rowSet.next()) {\n" +
+           "      boolean positional = hasColumnLayout(rowSet.columnsNames());\n" +
            "      for (Row row : rowSet) {\n" +
-           "        res.add(buildSingle(row));\n" +
+           "        res.add(positional ? buildPositional(row) : buildByName(row));\n" +
            "      }\n" +
            "    }\n" +
            "    return res;\n" +
            "  }\n" +
            "\n" +
+           "  /**\n" +
+           "   * Collects rows to a List. The column layout is checked once, on the first row.\n" +
+           "   */\n" +
            "  public static Collector<Row, ?, List<" + simpleClassName + ">> listCollector() {\n" +
-           "    return Collectors.mapping(" + simpleGeneratedClassName + "::buildSingle, Collectors.toList());\n" +
+           "    return CollectorUtil.mappingToList(" + simpleGeneratedClassName + "::decoderFor);\n" +
            "  }\n" +
            "\n" +
+           "  /**\n" +
+           "   * Collects rows to a List. The column layout is checked once, on the first row.\n" +
+           "   */\n" +
            "  public static Collector<Row, ?, List<" + simpleClassName + ">> listCollector(int expectedSize) {\n" +
-           "    return Collectors.mapping(" + simpleGeneratedClassName +
-           "::buildSingle, CollectorUtil.toList(expectedSize));\n" +
+           "    return CollectorUtil.mappingToList(expectedSize, " + simpleGeneratedClassName + "::decoderFor);\n" +
            "  }\n";
   }
 
+  /**
+   * The Row getter for a parameter type, up to and including the opening parenthesis
+   * and any leading arguments, like "get(Numeric.class, ".
+   */
+  private static String rowGetter(String paramType) {
+    String methodPart;
+    switch (paramType) {
+      case "java.lang.Boolean":
+        methodPart = "getBoolean(";
+        break;
+      case "java.lang.Short":
+        methodPart = "getShort(";
+        break;
+      case "java.lang.Integer":
+        methodPart = "getInteger(";
+        break;
+      case "java.lang.Long":
+        methodPart = "getLong(";
+        break;
+      case "java.lang.Float":
+        methodPart = "getFloat(";
+        break;
+      case "java.lang.Double":
+        methodPart = "getDouble(";
+        break;
+      case "java.lang.String":
+        methodPart = "getString(";
+        break;
+      case "io.vertx.sqlclient.data.Numeric":
+      case "java.lang.Number":
+        methodPart = "get(Numeric.class, ";
+        break;
+      case "java.util.UUID":
+        methodPart = "getUUID(";
+        break;
+      case "java.time.LocalDate":
+        methodPart = "getLocalDate(";
+        break;
+      case "java.time.LocalTime":
+        methodPart = "getLocalTime(";
+        break;
+      case "java.time.OffsetTime":
+        methodPart = "getOffsetTime(";
+        break;
+      case "java.time.LocalDateTime":
+        methodPart = "getLocalDateTime(";
+        break;
+      case "java.time.OffsetDateTime":
+        methodPart = "getOffsetDateTime(";
+        break;
+      case "io.vertx.pgclient.data.Interval":
+        methodPart = "get(Interval.class, ";
+        break;
+      case "io.vertx.core.buffer.Buffer":
+        methodPart = "getBuffer(";
+        break;
+      case "io.vertx.core.json.JsonObject":
+        methodPart = "getJsonObject(";
+        break;
+      case "io.vertx.core.json.JsonArray":
+        methodPart = "getJsonArray(";
+        break;
+      case "io.vertx.pgclient.data.Point":
+        methodPart = "get(Point.class, ";
+        break;
+      case "io.vertx.pgclient.data.Line":
+        methodPart = "get(Line.class, ";
+        break;
+      case "io.vertx.pgclient.data.LineSegment":
+        methodPart = "get(LineSegment.class, ";
+        break;
+      case "io.vertx.pgclient.data.Box":
+        methodPart = "get(Box.class, ";
+        break;
+      case "io.vertx.pgclient.data.Path":
+        methodPart = "get(Path.class, ";
+        break;
+      case "io.vertx.pgclient.data.Polygon":
+        methodPart = "get(Polygon.class, ";
+        break;
+      case "io.vertx.pgclient.data.Circle":
+        methodPart = "get(Circle.class, ";
+        break;
+      default:
+        throw new RuntimeException("Unsupported param type of " + paramType);
+    }
+    return methodPart;
+  }
+
+  /**
+   * The Postgres array type used to bind a column of this parameter type with UNNEST. UNNEST
+   * needs typed arrays, and the column's own type is unknown here, so Strings are bound as
+   * text[]. Their columns must accept text on assignment; an enum column, for example, does not.
+   */
+  private static String pgArrayType(String paramType) {
+    switch (paramType) {
+      case "java.lang.Boolean":
+        return "bool[]";
+      case "java.lang.Short":
+        return "int2[]";
+      case "java.lang.Integer":
+        return "int4[]";
+      case "java.lang.Long":
+        return "int8[]";
+      case "java.lang.Float":
+        return "float4[]";
+      case "java.lang.Double":
+        return "float8[]";
+      case "java.lang.String":
+        return "text[]";
+      case "io.vertx.sqlclient.data.Numeric":
+      case "java.lang.Number":
+        return "numeric[]";
+      case "java.util.UUID":
+        return "uuid[]";
+      case "java.time.LocalDate":
+        return "date[]";
+      case "java.time.LocalTime":
+        return "time[]";
+      case "java.time.OffsetTime":
+        return "timetz[]";
+      case "java.time.LocalDateTime":
+        return "timestamp[]";
+      case "java.time.OffsetDateTime":
+        return "timestamptz[]";
+      case "io.vertx.pgclient.data.Interval":
+        return "interval[]";
+      case "io.vertx.core.buffer.Buffer":
+        return "bytea[]";
+      case "io.vertx.core.json.JsonObject":
+      case "io.vertx.core.json.JsonArray":
+        return "jsonb[]";
+      case "io.vertx.pgclient.data.Point":
+        return "point[]";
+      case "io.vertx.pgclient.data.Line":
+        return "line[]";
+      case "io.vertx.pgclient.data.LineSegment":
+        return "lseg[]";
+      case "io.vertx.pgclient.data.Box":
+        return "box[]";
+      case "io.vertx.pgclient.data.Path":
+        return "path[]";
+      case "io.vertx.pgclient.data.Polygon":
+        return "polygon[]";
+      case "io.vertx.pgclient.data.Circle":
+        return "circle[]";
+      default:
+        throw new RuntimeException("Unsupported param type of " + paramType);
+    }
+  }
+
   private static ExecutableElement constructor(TypeElement projectionType) {
     ExecutableElement constructor = null;
     for (Element enclosedElement : projectionType.getEnclosedElements()) {
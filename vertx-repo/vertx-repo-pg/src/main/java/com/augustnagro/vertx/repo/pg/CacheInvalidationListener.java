@@ -0,0 +1,78 @@
+package com.augustnagro.vertx.repo.pg;
+
+import com.augustnagro.vertx.repo.EntityCache;
+import io.vertx.core.json.JsonArray;
+import io.vertx.pgclient.pubsub.PgSubscriber;
+
+import java.util.function.Function;
+
+/**
+ * Evicts Entities from local {@link EntityCache}s when they are written
+ * on any node, so that many instances can cache the same tables.
+ * <pre>{@code
+ * PgSubscriber subscriber = PgSubscriber.subscriber(vertx, connectOptions)
+ *     .reconnectPolicy(retries -> 1000L);
+ * new CacheInvalidationListener(subscriber)
+ *     .listen(PersonRepoBase.INVALIDATION_CHANNEL, personCache, PersonRepoBase::idFromText);
+ * subscriber.connect();
+ * }</pre>
+ * The notifications are sent by the triggers in a generated RepoBase's
+ * INVALIDATION_DDL, see {@code Entity#cacheInvalidation()}. Every UPDATE,
+ * DELETE or TRUNCATE of the table notifies its channel once per statement,
+ * with the changed Ids as a JSON array of strings, at most
+ * {@link #MAX_IDS_PER_NOTIFICATION} per notification. A TRUNCATE, or a
+ * payload too large for NOTIFY, sends {@link #INVALIDATE_ALL} instead.
+ * Postgres only delivers notifications once their transaction commits,
+ * so a rolled back write evicts nothing.
+ * <br>
+ * <br>
+ * Notifications sent while the subscriber is disconnected are lost, so
+ * each cache is cleared whenever its channel is (re)subscribed. Give the
+ * PgSubscriber a reconnect policy, or it stops listening after the first
+ * disconnect.
+ */
+public class CacheInvalidationListener {
+
+  /**
+   * Payload that evicts every Entity of the channel's caches.
+   */
+  public static final String INVALIDATE_ALL = "*";
+
+  /**
+   * Number of Ids the triggers put in one notification.
+   */
+  public static final int MAX_IDS_PER_NOTIFICATION = 100;
+
+  private final PgSubscriber subscriber;
+
+  public CacheInvalidationListener(PgSubscriber subscriber) {
+    this.subscriber = subscriber;
+  }
+
+  /**
+   * Evict the notified Ids from the cache.
+   * @param channel the RepoBase's INVALIDATION_CHANNEL
+   * @param idFromText parses an Id, like the RepoBase's idFromText
+   */
+  public <ID> CacheInvalidationListener listen(String channel, EntityCache<?, ID> cache,
+                                               Function<String, ID> idFromText) {
+    subscriber.channel(channel)
+        .subscribeHandler(v -> cache.invalidateAll())
+        .handler(payload -> invalidate(cache, idFromText, payload));
+    return this;
+  }
+
+  static <ID> void invalidate(EntityCache<?, ID> cache, Function<String, ID> idFromText, String payload) {
+    if (INVALIDATE_ALL.equals(payload)) {
+      cache.invalidateAll();
+      return;
+    }
+    try {
+      JsonArray ids = new JsonArray(payload);
+      for (int i = 0; i < ids.size(); ++i) cache.invalidate(idFromText.apply(ids.getString(i)));
+    } catch (RuntimeException e) {
+      // not sent by the generated triggers; evicting everything is always safe
+      cache.invalidateAll();
+    }
+  }
+}
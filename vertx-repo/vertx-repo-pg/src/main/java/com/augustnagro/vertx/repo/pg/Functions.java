@@ -119,8 +119,7 @@ public class Functions {
    * <a href="https://www.postgresql.org/docs/current/functions-math.html">https://www.postgresql.org/docs/current/functions-math.html</a>
    */
   public static <E> NumberExpression<E> trunc(NumberExpression<E> x, int y) {
-    String sql = TRUNC + "(" + x.sql() + ", " + y + ")";
-    return new WhereClauseHelper(sql, x.params());
+    return new WhereClauseHelper(new Object[] { TRUNC + "(", x, ", " + y + ")" }, NO_PARAMS);
   }
 
   /**
@@ -180,8 +179,8 @@ public class Functions {
    * <a href="https://www.postgresql.org/docs/current/functions-string.html">https://www.postgresql.org/docs/current/functions-string.html</a>
    */
   public static <E> StringExpression<E> trim(TrimType trimType, String trimChars, StringExpression<E> toTrim) {
-    String sql = TRIM + "(" + trimType + " '" + trimChars + "' FROM " + toTrim.sql() + ")";
-    return new WhereClauseHelper(sql, toTrim.params());
+    String start = TRIM + "(" + trimType + " '" + trimChars + "' FROM ";
+    return new WhereClauseHelper(new Object[] { start, toTrim, ")" }, NO_PARAMS);
   }
 
   /**
@@ -318,8 +317,8 @@ public class Functions {
    */
   public static <E> NumberExpression<E> extract(ExtractField field,
                                                 Expression<E, ? extends TemporalAccessor> temporalExpression) {
-    String sql = EXTRACT + "(" + field + " FROM " + temporalExpression.sql() + ")";
-    return new WhereClauseHelper(sql, temporalExpression.params());
+    String start = EXTRACT + "(" + field + " FROM ";
+    return new WhereClauseHelper(new Object[] { start, temporalExpression, ")" }, NO_PARAMS);
   }
 
   public enum TruncField {
@@ -357,8 +356,8 @@ public class Functions {
    */
   public static <E, T extends Temporal> Expression<E, T> dateTrunc(TruncField field,
                                                                    Expression<E, T> temporalExpression) {
-    String sql = DATE_TRUNC + "('" + field + "', " + temporalExpression.sql() + ")";
-    return new WhereClauseHelper(sql, temporalExpression.params());
+    String start = DATE_TRUNC + "('" + field + "', ";
+    return new WhereClauseHelper(new Object[] { start, temporalExpression, ")" }, NO_PARAMS);
   }
 
   /**
@@ -370,8 +369,8 @@ public class Functions {
   public static <E, T extends Temporal> Expression<E, T> dateTrunc(TruncField field,
                                                                    Expression<E, T> temporalExpression,
                                                                    ZoneId zoneId) {
-    String sql = DATE_TRUNC + "('" + field + "', " + temporalExpression.sql() + ", " + zoneId + ")";
-    return new WhereClauseHelper(sql, temporalExpression.params());
+    String start = DATE_TRUNC + "('" + field + "', ";
+    return new WhereClauseHelper(new Object[] { start, temporalExpression, ", " + zoneId + ")" }, NO_PARAMS);
   }
 
   /**
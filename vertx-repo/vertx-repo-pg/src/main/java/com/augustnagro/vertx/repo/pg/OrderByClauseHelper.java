@@ -2,32 +2,58 @@ package com.augustnagro.vertx.repo.pg;
 
 class OrderByClauseHelper implements Sort, Sort.Ascending, Sort.Descending {
   
-  final String sql;
+  final String direction;
   final Expression sortExpression;
   final Predicate seekPredicate;
+  // the value to seek past, or a SqlBuilder like a template param. Only set if seekPredicate is.
+  final Object seekValue;
+  final boolean seekGreaterThan;
   final boolean ascending;
   final boolean defaultNullHandling;
   
   OrderByClauseHelper(Expression sortExpression, boolean ascending) {
-    sql = sortExpression.sql() + (ascending ? " ASC" : " DESC");
+    direction = ascending ? " ASC" : " DESC";
     this.sortExpression = sortExpression;
     seekPredicate = null;
+    seekValue = null;
+    seekGreaterThan = false;
     this.ascending = ascending;
     defaultNullHandling = true;
   }
 
-  OrderByClauseHelper(String sql, Expression sortExpression, Predicate seekPredicate,
-                      boolean ascending, boolean defaultNullHandling) {
-    this.sql = sql;
+  OrderByClauseHelper(String direction, Expression sortExpression, Predicate seekPredicate, Object seekValue,
+                      boolean seekGreaterThan, boolean ascending, boolean defaultNullHandling) {
+    this.direction = direction;
     this.sortExpression = sortExpression;
     this.seekPredicate = seekPredicate;
+    this.seekValue = seekValue;
+    this.seekGreaterThan = seekGreaterThan;
     this.ascending = ascending;
     this.defaultNullHandling = defaultNullHandling;
   }
 
+  void writeTo(SqlWriter writer) {
+    writer.append(sortExpression).append(direction);
+  }
+
+  /**
+   * True if nulls are ordered before all values.
+   */
+  boolean nullsOrderedFirst() {
+    return ascending != defaultNullHandling;
+  }
+
+  /**
+   * True if the seek moves toward the nulls, so they are past the seek value.
+   */
+  boolean seeksTowardNulls() {
+    boolean forward = seekGreaterThan == ascending;
+    return forward != nullsOrderedFirst();
+  }
+
   @Override
   public String sql() {
-    return sql;
+    return sortExpression.sql() + direction;
   }
 
   @Override
@@ -48,26 +74,34 @@ class OrderByClauseHelper implements Sort, Sort.Ascending, Sort.Descending {
   @Override
   public Ascending nullsFirst() {
     if (!defaultNullHandling) return this;
-    String newSql = sql + " NULLS FIRST";
-    return new OrderByClauseHelper(newSql, sortExpression, seekPredicate, ascending, false);
+    String newDirection = direction + " NULLS FIRST";
+    return new OrderByClauseHelper(newDirection, sortExpression, seekPredicate, seekValue, seekGreaterThan,
+        ascending, false);
   }
 
   @Override
   public Descending nullsLast() {
     if (!defaultNullHandling) return this;
-    String newSql = sql + " NULLS LAST";
-    return new OrderByClauseHelper(newSql, sortExpression, seekPredicate, ascending, false);
+    String newDirection = direction + " NULLS LAST";
+    return new OrderByClauseHelper(newDirection, sortExpression, seekPredicate, seekValue, seekGreaterThan,
+        ascending, false);
   }
 
   @Override
   public Sort seekGreaterThan(Object value) {
-    Predicate newSeekPredicate = sortExpression.greaterThan(value);
-    return new OrderByClauseHelper(sql, sortExpression, newSeekPredicate, ascending, defaultNullHandling);
+    Predicate newSeekPredicate = value instanceof Expression
+        ? sortExpression.greaterThan((Expression) value)
+        : sortExpression.greaterThan(value);
+    return new OrderByClauseHelper(direction, sortExpression, newSeekPredicate, value, true,
+        ascending, defaultNullHandling);
   }
 
   @Override
   public Sort seekLessThan(Object value) {
-    Predicate newSeekPredicate = sortExpression.lessThan(value);
-    return new OrderByClauseHelper(sql, sortExpression, newSeekPredicate, ascending, defaultNullHandling);
+    Predicate newSeekPredicate = value instanceof Expression
+        ? sortExpression.lessThan((Expression) value)
+        : sortExpression.lessThan(value);
+    return new OrderByClauseHelper(direction, sortExpression, newSeekPredicate, value, false,
+        ascending, defaultNullHandling);
   }
 }
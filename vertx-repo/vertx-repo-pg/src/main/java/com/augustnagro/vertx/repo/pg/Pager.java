@@ -0,0 +1,397 @@
+package com.augustnagro.vertx.repo.pg;
+
+import com.augustnagro.vertx.repo.ImmutableRepo;
+import com.augustnagro.vertx.repo.Spec;
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonArray;
+import io.vertx.sqlclient.Tuple;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Keyset (seek) pagination over a Repo's findAll(Spec). The sort key of
+ * the last Entity on a page becomes the seek position of the next, so every
+ * page costs the same regardless of how deep it is.
+ * <pre>{@code
+ * Pager<Person> pager = Pager.builder(personRepo)
+ *     .where(FIRST_NAME.eq("John"))
+ *     .orderBy(LAST_NAME.asc(), Person::lastName)
+ *     .orderBy(ID.asc(), Person::id)
+ *     .pageSize(50)
+ *     .build();
+ *
+ * pager.page(request.getParam("next")).onSuccess(page ->
+ *     respond(page.items(), page.nextToken()));
+ * }</pre>
+ * The sorts must make the order total, normally by ending with the Id.
+ * Sort keys may only be null if the Sort sets NULLS FIRST or LAST. Seek
+ * values for several sorts are compared lexicographically, see
+ * {@link SpecBuilder#orderBy(Sort)}, so ties on the leading columns are
+ * paged correctly.
+ * <br>
+ * <br>
+ * {@link Page#nextToken()} is an opaque, URL-safe String holding the seek
+ * values, for clients that page over HTTP. Tokens are not encrypted or
+ * signed; their values are always bound as parameters. A token is only
+ * accepted by a Pager with the same where clause, including the values
+ * of its parameters, and sorts.
+ * <br>
+ * <br>
+ * With {@link Builder#prefetch(int)}, the next page is queried as soon as a
+ * page is returned, and handed to the caller asking for it by
+ * {@link Page#next()} or token. Pagers are immutable apart from their
+ * prefetched pages, and safe to share.
+ * @param <E> Entity type
+ */
+public final class Pager<E> {
+
+  private final Function<Spec<E>, Future<List<E>>> findAll;
+  private final List<Function<E, ?>> sortKeys;
+  private final boolean[] nullableKeys;
+  private final int pageSize;
+  private final Spec<E> firstPage;
+  private final SpecTemplate<E> nextPage;
+  private final String fingerprint;
+  private final Map<String, Future<Page<E>>> prefetched;
+
+  private Pager(Builder<E> builder) {
+    findAll = builder.findAll;
+    sortKeys = List.copyOf(builder.sortKeys);
+    pageSize = builder.pageSize;
+
+    SpecBuilder<E> first = new SpecBuilder<>();
+    SpecBuilder<E> next = new SpecBuilder<>();
+    for (Predicate<E> p : builder.predicates) {
+      first.where(p);
+      next.where(p);
+    }
+    nullableKeys = new boolean[builder.sorts.size()];
+    for (int i = 0; i < nullableKeys.length; ++i) {
+      OrderByClauseHelper sort = (OrderByClauseHelper) builder.sorts.get(i);
+      nullableKeys[i] = !sort.defaultNullHandling;
+      first.orderBy(sort);
+      // seek past the previous page in the direction of each sort
+      Expression seekValue = SpecTemplate.param("seek" + i);
+      next.orderBy(sort.ascending ? sort.seekGreaterThan(seekValue) : sort.seekLessThan(seekValue));
+    }
+    // one extra row tells if there is a next page
+    first.limit(pageSize + 1);
+    next.limit(pageSize + 1);
+    firstPage = first.build();
+    nextPage = next.buildTemplate();
+    fingerprint = fingerprint(nextPage.sql(), firstPage.tuple());
+
+    int maxPrefetched = builder.maxPrefetched;
+    prefetched = maxPrefetched == 0 ? null : Collections.synchronizedMap(
+        new LinkedHashMap<String, Future<Page<E>>>() {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<String, Future<Page<E>>> eldest) {
+            return size() > maxPrefetched;
+          }
+        });
+  }
+
+  /**
+   * Starts building a Pager over the Repo's findAll(Spec).
+   * @param <E> Entity type
+   */
+  public static <E> Builder<E> builder(ImmutableRepo<E, ?> repo) {
+    return new Builder<>(repo::findAll);
+  }
+
+  /**
+   * Starts building a Pager.
+   * @param findAll queries a Spec, for example in a transaction
+   * @param <E> Entity type
+   */
+  public static <E> Builder<E> builder(Function<Spec<E>, Future<List<E>>> findAll) {
+    return new Builder<>(findAll);
+  }
+
+  /**
+   * The first page.
+   */
+  public Future<Page<E>> first() {
+    return served(findAll.apply(firstPage).map(this::toPage));
+  }
+
+  /**
+   * The page continuing from a {@link Page#nextToken()}. The Future
+   * fails with IllegalArgumentException if the token is malformed or
+   * was issued by a different Pager.
+   * @param token a continuation token, or null for the first page
+   */
+  public Future<Page<E>> page(String token) {
+    if (token == null) return first();
+    if (prefetched != null) {
+      Future<Page<E>> page = prefetched.remove(token);
+      if (page != null) return served(page.recover(t -> load(token)));
+    }
+    return served(load(token));
+  }
+
+  /**
+   * Number of Entities on a full page.
+   */
+  public int pageSize() {
+    return pageSize;
+  }
+
+  private Future<Page<E>> load(String token) {
+    Object[] seekValues;
+    try {
+      seekValues = decodeToken(token);
+    } catch (RuntimeException e) {
+      return Future.failedFuture(new IllegalArgumentException("Invalid page token " + token, e));
+    }
+    return findAll.apply(nextPage.bind(seekValues)).map(this::toPage);
+  }
+
+  /*
+   * Starts prefetching the next page of every page handed to a caller.
+   * Prefetched pages do not prefetch again until they are served.
+   */
+  private Future<Page<E>> served(Future<Page<E>> page) {
+    if (prefetched == null) return page;
+    return page.onSuccess(p -> {
+      if (!p.hasNext()) return;
+      Future<Page<E>> next = load(p.nextToken);
+      p.prefetchedNext = next;
+      prefetched.put(p.nextToken, next);
+    });
+  }
+
+  private Page<E> toPage(List<E> entities) {
+    if (entities.size() <= pageSize) return new Page<>(this, entities, null);
+    List<E> items = entities.subList(0, pageSize);
+    E last = items.get(pageSize - 1);
+    Object[] seekValues = new Object[sortKeys.size()];
+    for (int i = 0; i < seekValues.length; ++i) {
+      seekValues[i] = sortKeys.get(i).apply(last);
+      if (seekValues[i] == null && !nullableKeys[i]) {
+        throw new IllegalStateException("Null sort key " + i + " in " + last + ", use NULLS FIRST or LAST");
+      }
+    }
+    return new Page<>(this, items, encodeToken(seekValues));
+  }
+
+  /*
+   * Hash of the SQL and the where clause's parameters, which firstPage binds
+   * in the same order as nextPage, without the seek values. Parameters are
+   * hashed by their type and String form, which unlike Object.hashCode is the
+   * same on every JVM, so tokens can be continued by another instance.
+   */
+  private static String fingerprint(String sql, Tuple params) {
+    StringBuilder key = new StringBuilder(sql);
+    for (int i = 0; i < params.size(); ++i) {
+      Object value = params.getValue(i);
+      key.append('\0');
+      if (value == null) {
+        key.append("null");
+      } else {
+        key.append(value.getClass().getName()).append(':');
+        // deepToString formats arrays of primitives as well, by wrapping them
+        key.append(value.getClass().isArray() ? Arrays.deepToString(new Object[] {value}) : value.toString());
+      }
+    }
+    return Integer.toHexString(key.toString().hashCode());
+  }
+
+  /*
+   * Base64url of a JSON array: the fingerprint, then a type tag and value for each seek value.
+   */
+  private String encodeToken(Object[] seekValues) {
+    JsonArray json = new JsonArray().add(fingerprint);
+    for (Object value : seekValues) {
+      if (value == null) {
+        json.add("null").addNull();
+        continue;
+      }
+      String type = value.getClass().getSimpleName();
+      switch (type) {
+        case "String":
+        case "Long":
+        case "Integer":
+        case "Short":
+        case "Double":
+        case "Float":
+        case "Boolean":
+        case "BigDecimal":
+        case "LocalDate":
+        case "LocalDateTime":
+        case "LocalTime":
+        case "OffsetDateTime":
+        case "UUID":
+          json.add(type).add(value.toString());
+          break;
+        default:
+          throw new IllegalStateException("Unsupported sort key type " + value.getClass().getName());
+      }
+    }
+    return Base64.getUrlEncoder().withoutPadding()
+        .encodeToString(json.encode().getBytes(StandardCharsets.UTF_8));
+  }
+
+  private Object[] decodeToken(String token) {
+    JsonArray json = new JsonArray(new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8));
+    if (!fingerprint.equals(json.getString(0)) || json.size() != 1 + 2 * sortKeys.size()) {
+      throw new IllegalArgumentException("Token was issued by a different Pager");
+    }
+    Object[] seekValues = new Object[sortKeys.size()];
+    for (int i = 0; i < seekValues.length; ++i) {
+      String value = json.getString(2 + 2 * i);
+      switch (json.getString(1 + 2 * i)) {
+        case "String": seekValues[i] = value; break;
+        case "Long": seekValues[i] = Long.valueOf(value); break;
+        case "Integer": seekValues[i] = Integer.valueOf(value); break;
+        case "Short": seekValues[i] = Short.valueOf(value); break;
+        case "Double": seekValues[i] = Double.valueOf(value); break;
+        case "Float": seekValues[i] = Float.valueOf(value); break;
+        case "Boolean": seekValues[i] = Boolean.valueOf(value); break;
+        case "BigDecimal": seekValues[i] = new BigDecimal(value); break;
+        case "LocalDate": seekValues[i] = LocalDate.parse(value); break;
+        case "LocalDateTime": seekValues[i] = LocalDateTime.parse(value); break;
+        case "LocalTime": seekValues[i] = LocalTime.parse(value); break;
+        case "OffsetDateTime": seekValues[i] = OffsetDateTime.parse(value); break;
+        case "UUID": seekValues[i] = UUID.fromString(value); break;
+        case "null": seekValues[i] = null; break;
+        default: throw new IllegalArgumentException("Unknown type " + json.getString(1 + 2 * i));
+      }
+    }
+    return seekValues;
+  }
+
+  /**
+   * One page of Entities.
+   * @param <E> Entity type
+   */
+  public static final class Page<E> {
+    private final Pager<E> pager;
+    private final List<E> items;
+    private final String nextToken;
+    private volatile Future<Page<E>> prefetchedNext;
+
+    private Page(Pager<E> pager, List<E> items, String nextToken) {
+      this.pager = pager;
+      this.items = items;
+      this.nextToken = nextToken;
+    }
+
+    /**
+     * The Entities on this page, at most {@link Pager#pageSize()}.
+     */
+    public List<E> items() {
+      return items;
+    }
+
+    public boolean hasNext() {
+      return nextToken != null;
+    }
+
+    /**
+     * Continuation token for {@link Pager#page(String)}, or null if this is the last page.
+     */
+    public String nextToken() {
+      return nextToken;
+    }
+
+    /**
+     * The next page. Fails with NoSuchElementException if this is the last page.
+     */
+    public Future<Page<E>> next() {
+      if (nextToken == null) return Future.failedFuture(new NoSuchElementException("No next page"));
+      Future<Page<E>> prefetched = prefetchedNext;
+      if (prefetched == null) return pager.page(nextToken);
+      prefetchedNext = null;
+      pager.prefetched.remove(nextToken, prefetched);
+      return pager.served(prefetched.recover(t -> pager.load(nextToken)));
+    }
+  }
+
+  /**
+   * Builder for {@link Pager}. Not thread-safe.
+   * @param <E> Entity type
+   */
+  public static final class Builder<E> {
+    private final Function<Spec<E>, Future<List<E>>> findAll;
+    private final ArrayList<Predicate<E>> predicates = new ArrayList<>();
+    private final ArrayList<Sort<E, ?>> sorts = new ArrayList<>();
+    private final ArrayList<Function<E, ?>> sortKeys = new ArrayList<>();
+    private int pageSize = 20;
+    private int maxPrefetched = 0;
+
+    private Builder(Function<Spec<E>, Future<List<E>>> findAll) {
+      this.findAll = findAll;
+    }
+
+    /**
+     * Filter every page by this Predicate.
+     * @return this
+     */
+    public Builder<E> where(Predicate<E> p) {
+      predicates.add(p);
+      return this;
+    }
+
+    /**
+     * Add a Sort, without a seek value.
+     * @param sort a Sort made by an Expression, like LAST_NAME.asc()
+     * @param sortKey reads the sorted value from an Entity, for example Person::lastName
+     * @return this
+     */
+    public <T> Builder<E> orderBy(Sort<E, T> sort, Function<E, T> sortKey) {
+      if (!(sort instanceof OrderByClauseHelper)) {
+        throw new IllegalArgumentException("Pager sorts must be made by an Expression, like LAST_NAME.asc()");
+      }
+      if (sort.seekPredicate() != null) throw new IllegalArgumentException("Pager sorts must not have a seek value");
+      sorts.add(sort);
+      sortKeys.add(sortKey);
+      return this;
+    }
+
+    /**
+     * Number of Entities per page. Default 20.
+     * @return this
+     */
+    public Builder<E> pageSize(int pageSize) {
+      if (pageSize < 1) throw new IllegalArgumentException("pageSize must be positive");
+      this.pageSize = pageSize;
+      return this;
+    }
+
+    /**
+     * Prefetch the next page of every page returned, keeping at most
+     * this many prefetched pages that were not asked for yet. Default 0,
+     * for no prefetching.
+     * @return this
+     */
+    public Builder<E> prefetch(int maxPrefetched) {
+      if (maxPrefetched < 0) throw new IllegalArgumentException("maxPrefetched must not be negative");
+      this.maxPrefetched = maxPrefetched;
+      return this;
+    }
+
+    /**
+     * @throws IllegalStateException if there are no sorts
+     */
+    public Pager<E> build() {
+      if (sorts.isEmpty()) throw new IllegalStateException("Pager requires at least one orderBy");
+      return new Pager<>(this);
+    }
+  }
+}
@@ -0,0 +1,71 @@
+package com.augustnagro.vertx.repo.pg;
+
+import io.vertx.sqlclient.Tuple;
+
+/**
+ * The select list of a column-pruned query, like {@code id, LOWER(last_name)}.
+ * Pass to a generated Repo's select method, which returns only these columns:
+ * <pre>{@code
+ * static final SelectList<Person> NAMES = SelectList.of(ID, LAST_NAME);
+ *
+ * personRepo.select(spec, NAMES).onSuccess(rows -> rows.forEach(row ->
+ *     System.out.println(row.getLong(0) + " " + row.getString(1))));
+ * }</pre>
+ * If every column is selected by an index, Postgres can answer the query
+ * with an index-only scan. SelectLists are immutable and may be shared
+ * between threads.
+ * @param <E> Entity type
+ */
+public final class SelectList<E> {
+
+  private final WhereClauseHelper columns;
+  // the rendered SQL, when it has no params to number
+  private final String sql;
+
+  private SelectList(WhereClauseHelper columns) {
+    this.columns = columns;
+    this.sql = columns.paramCount() == 0 ? columns.sql() : null;
+  }
+
+  /**
+   * SelectList of the expressions, in order.
+   * @throws IllegalArgumentException if there are no expressions
+   */
+  @SafeVarargs
+  public static <E> SelectList<E> of(Expression<E, ?>... expressions) {
+    if (expressions.length == 0) throw new IllegalArgumentException("SelectList needs at least one expression");
+    Object[] parts = new Object[expressions.length * 2 - 1];
+    for (int i = 0; i < expressions.length; ++i) {
+      if (i > 0) parts[i * 2 - 1] = ", ";
+      parts[i * 2] = expressions[i];
+    }
+    return new SelectList<>(new WhereClauseHelper(parts, WhereClauseHelper.NO_PARAMS));
+  }
+
+  /**
+   * The SQL, with parameters numbered after the Spec's.
+   * @param specParamCount number of parameters in the Spec this is selected with
+   */
+  public String sql(int specParamCount) {
+    if (sql != null) return sql;
+    return new SqlWriter(columns.paramCount(), specParamCount).append(columns).toString();
+  }
+
+  /**
+   * The Spec's parameters followed by this SelectList's.
+   */
+  public Tuple tuple(Tuple specTuple) {
+    if (columns.paramCount() == 0) return specTuple;
+    int specParamCount = specTuple.size();
+    Object[] params = columns.params();
+    Object[] res = new Object[specParamCount + params.length];
+    for (int i = 0; i < specParamCount; ++i) res[i] = specTuple.getValue(i);
+    System.arraycopy(params, 0, res, specParamCount, params.length);
+    return Tuple.wrap(res);
+  }
+
+  @Override
+  public String toString() {
+    return "SelectList{" + columns.sql() + '}';
+  }
+}
@@ -0,0 +1,679 @@
+package com.augustnagro.vertx.repo.pg;
+
+import com.augustnagro.vertx.repo.EntityStream;
+import com.augustnagro.vertx.repo.OnConflict;
+import com.augustnagro.vertx.repo.ProjectionType;
+import com.augustnagro.vertx.repo.Repo;
+import com.augustnagro.vertx.repo.Spec;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.SqlClient;
+import io.vertx.sqlclient.SqlConnection;
+import io.vertx.sqlclient.Tuple;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Collector;
+
+/**
+ * A Repo for Entities that are hash partitioned over several databases,
+ * each with a Repo of its own. Generated for Entities with
+ * {@code @Entity(sharded = true)} as XxxShardedRepo, which is constructed
+ * from one XxxRepoBase per shard.
+ * <br>
+ * <br>
+ * An Entity lives on shard {@link #shardOf(Object)} of its Id. Methods
+ * given Ids or Entities run on their shards, and so Entities need an Id
+ * before they are saved; a null Id fails with IllegalArgumentException.
+ * The Ids' hashCode must not change between JVMs, as is the case for
+ * Long, Integer, String and UUID. Batch writes run one transaction per
+ * shard, so they are not atomic across shards.
+ * <br>
+ * <br>
+ * findAll(Spec) queries every shard concurrently, each for at most
+ * LIMIT + OFFSET rows, and merges the sorted results. The Spec must be built
+ * by a SpecBuilder or SpecTemplate. The sort values are compared in Java,
+ * so text sorts merge in the order of the "C" collation. count and
+ * estimatedCount sum the counts of all shards.
+ * <br>
+ * <br>
+ * Methods taking a SqlClient run only on that client, which must be
+ * connected to the Entities' shard. Streaming a Spec over every shard is
+ * not supported; stream the shards with {@link #shard(int)}.
+ * @param <E> Entity
+ * @param <ID> Entity's Primary Key
+ */
+public class ShardedRepo<E, ID> implements Repo<E, ID> {
+
+  private final List<Repo<E, ID>> shards;
+  private final Function<E, ID> idOf;
+  private final ProjectionType<E> entityType;
+
+  /**
+   * @param shards one Repo per shard. The order determines the shard of each Id, and must not change.
+   * @param idOf gets an Entity's Id
+   * @param entityType the Entity's columns and decoder
+   */
+  public ShardedRepo(List<? extends Repo<E, ID>> shards, Function<E, ID> idOf, ProjectionType<E> entityType) {
+    if (shards.isEmpty()) throw new IllegalArgumentException("shards must not be empty");
+    this.shards = List.copyOf(shards);
+    this.idOf = idOf;
+    this.entityType = entityType;
+  }
+
+  public int shardCount() {
+    return shards.size();
+  }
+
+  public Repo<E, ID> shard(int index) {
+    return shards.get(index);
+  }
+
+  /**
+   * Index of the shard holding the Entity with this Id.
+   */
+  public int shardOf(ID id) {
+    if (id == null) {
+      throw new IllegalArgumentException("Sharded Entities need an Id before they are written, to pick their shard");
+    }
+    // spreads sequential Ids evenly
+    int h = id.hashCode() * 0x9E3779B9;
+    return Math.floorMod(h ^ (h >>> 16), shards.size());
+  }
+
+  private Repo<E, ID> shardFor(ID id) {
+    return shards.get(shardOf(id));
+  }
+
+  @Override
+  public Future<Long> count() {
+    return onEveryShard(Repo::count).map(ShardedRepo::sum);
+  }
+
+  @Override
+  public Future<Long> count(SqlClient sql) {
+    return shards.get(0).count(sql);
+  }
+
+  @Override
+  public Future<Long> count(Spec<E> spec) {
+    SpecShape shape;
+    try {
+      shape = shape(spec);
+    } catch (IllegalArgumentException e) {
+      return Future.failedFuture(e);
+    }
+    if (shape.limit == null && shape.offset == null) {
+      return onEveryShard(shard -> shard.count(spec)).map(ShardedRepo::sum);
+    }
+    Spec<E> unlimited = new ShardSpec<>(spec.sql().substring(0, shape.limitStart), spec.tuple());
+    return onEveryShard(shard -> shard.count(unlimited)).map(counts -> {
+      long count = Math.max(0, sum(counts) - (shape.offset == null ? 0 : shape.offset));
+      return shape.limit == null ? count : Math.min(count, shape.limit);
+    });
+  }
+
+  @Override
+  public Future<Long> count(SqlClient sql, Spec<E> spec) {
+    return shards.get(0).count(sql, spec);
+  }
+
+  @Override
+  public Future<Boolean> exists(Spec<E> spec) {
+    if (spec instanceof SpecImpl && ((SpecImpl<?>) spec).shape.offset != null) {
+      return count(spec).map(count -> count > 0);
+    }
+    return onEveryShard(shard -> shard.exists(spec)).map(exists -> exists.contains(true));
+  }
+
+  @Override
+  public Future<Boolean> exists(SqlClient sql, Spec<E> spec) {
+    return shards.get(0).exists(sql, spec);
+  }
+
+  /**
+   * The sum of the shards' estimates, or null if any shard has no statistics.
+   */
+  @Override
+  public Future<Long> estimatedCount() {
+    return onEveryShard(Repo::estimatedCount).map(ShardedRepo::sumEstimates);
+  }
+
+  @Override
+  public Future<Long> estimatedCount(SqlClient sql) {
+    return shards.get(0).estimatedCount(sql);
+  }
+
+  /**
+   * The sum of the shards' estimates, or null if any shard has no statistics.
+   */
+  @Override
+  public Future<Long> estimatedCount(Spec<E> spec) {
+    return onEveryShard(shard -> shard.estimatedCount(spec)).map(ShardedRepo::sumEstimates);
+  }
+
+  @Override
+  public Future<Long> estimatedCount(SqlClient sql, Spec<E> spec) {
+    return shards.get(0).estimatedCount(sql, spec);
+  }
+
+  @Override
+  public Future<Boolean> existsById(ID id) {
+    return route(id, shard -> shard.existsById(id));
+  }
+
+  @Override
+  public Future<Boolean> existsById(SqlClient sql, ID id) {
+    return route(id, shard -> shard.existsById(sql, id));
+  }
+
+  @Override
+  public Future<List<E>> findAll() {
+    return onEveryShard(Repo::findAll).map(ShardedRepo::concat);
+  }
+
+  @Override
+  public Future<List<E>> findAll(SqlClient sql) {
+    return shards.get(0).findAll(sql);
+  }
+
+  @Override
+  public Future<List<E>> findAll(Spec<E> spec) {
+    return scatterGather(spec, entityType);
+  }
+
+  @Override
+  public Future<List<E>> findAll(SqlClient sql, Spec<E> spec) {
+    return shards.get(0).findAll(sql, spec);
+  }
+
+  @Override
+  public <P> Future<List<P>> findAll(Spec<E> spec, ProjectionType<P> projection) {
+    return scatterGather(spec, projection);
+  }
+
+  @Override
+  public <P> Future<List<P>> findAll(SqlClient sql, Spec<E> spec, ProjectionType<P> projection) {
+    return shards.get(0).findAll(sql, spec, projection);
+  }
+
+  @Override
+  public Future<EntityStream<E>> stream(Spec<E> spec) {
+    return Future.failedFuture(new UnsupportedOperationException("Cannot stream all shards, stream each shard"));
+  }
+
+  @Override
+  public Future<EntityStream<E>> stream(Spec<E> spec, int fetchSize) {
+    return stream(spec);
+  }
+
+  @Override
+  public Future<EntityStream<E>> stream(SqlConnection sql, Spec<E> spec) {
+    return shards.get(0).stream(sql, spec);
+  }
+
+  @Override
+  public Future<EntityStream<E>> stream(SqlConnection sql, Spec<E> spec, int fetchSize) {
+    return shards.get(0).stream(sql, spec, fetchSize);
+  }
+
+  @Override
+  public Future<Optional<E>> findById(ID id) {
+    return route(id, shard -> shard.findById(id));
+  }
+
+  @Override
+  public Future<Optional<E>> findById(SqlClient sql, ID id) {
+    return route(id, shard -> shard.findById(sql, id));
+  }
+
+  @Override
+  public Future<List<E>> findAllById(Collection<ID> ids) {
+    return routeAll(new ArrayList<>(ids), Function.identity(), Repo::findAllById)
+        .map(ShardedRepo::concat);
+  }
+
+  @Override
+  public Future<List<E>> findAllById(SqlClient sql, Collection<ID> ids) {
+    return shards.get(0).findAllById(sql, ids);
+  }
+
+  @Override
+  public Future<Void> delete(E entity) {
+    return route(idOf.apply(entity), shard -> shard.delete(entity));
+  }
+
+  @Override
+  public Future<Void> delete(SqlClient sql, E entity) {
+    return route(idOf.apply(entity), shard -> shard.delete(sql, entity));
+  }
+
+  @Override
+  public Future<Void> deleteAll() {
+    return onEveryShard(Repo::deleteAll).mapEmpty();
+  }
+
+  @Override
+  public Future<Void> deleteAll(SqlClient sql) {
+    return shards.get(0).deleteAll(sql);
+  }
+
+  @Override
+  public Future<Void> deleteAll(Collection<E> entities) {
+    return routeAll(new ArrayList<>(entities), idOf, Repo::deleteAll).mapEmpty();
+  }
+
+  @Override
+  public Future<Void> deleteAll(SqlClient sql, Collection<E> entities) {
+    return shards.get(0).deleteAll(sql, entities);
+  }
+
+  @Override
+  public Future<Void> deleteAllById(Collection<ID> ids) {
+    return routeAll(new ArrayList<>(ids), Function.identity(), Repo::deleteAllById).mapEmpty();
+  }
+
+  @Override
+  public Future<Void> deleteAllById(SqlClient sql, Collection<ID> ids) {
+    return shards.get(0).deleteAllById(sql, ids);
+  }
+
+  @Override
+  public Future<E> save(E entity) {
+    return route(idOf.apply(entity), shard -> shard.save(entity));
+  }
+
+  @Override
+  public Future<E> save(SqlClient sql, E entity) {
+    return route(idOf.apply(entity), shard -> shard.save(sql, entity));
+  }
+
+  @Override
+  public Future<List<E>> saveAll(Collection<E> entities) {
+    List<E> list = new ArrayList<>(entities);
+    return routeAll(list, idOf, Repo::saveAll).map(saved -> inInputOrder(list, saved));
+  }
+
+  @Override
+  public Future<List<E>> saveAll(SqlClient sql, Collection<E> entities) {
+    return shards.get(0).saveAll(sql, entities);
+  }
+
+  @Override
+  public Future<E> upsert(E entity) {
+    return route(idOf.apply(entity), shard -> shard.upsert(entity));
+  }
+
+  @Override
+  public Future<E> upsert(E entity, OnConflict onConflict) {
+    return route(idOf.apply(entity), shard -> shard.upsert(entity, onConflict));
+  }
+
+  @Override
+  public Future<E> upsert(SqlClient sql, E entity) {
+    return route(idOf.apply(entity), shard -> shard.upsert(sql, entity));
+  }
+
+  @Override
+  public Future<E> upsert(SqlClient sql, E entity, OnConflict onConflict) {
+    return route(idOf.apply(entity), shard -> shard.upsert(sql, entity, onConflict));
+  }
+
+  @Override
+  public Future<List<E>> upsertAll(Collection<E> entities) {
+    return upsertAll(entities, OnConflict.DO_UPDATE);
+  }
+
+  @Override
+  public Future<List<E>> upsertAll(Collection<E> entities, OnConflict onConflict) {
+    List<E> list = new ArrayList<>(entities);
+    return routeAll(list, idOf, (shard, onShard) -> shard.upsertAll(onShard, onConflict))
+        .map(upserted -> inInputOrder(list, upserted));
+  }
+
+  @Override
+  public Future<List<E>> upsertAll(SqlClient sql, Collection<E> entities) {
+    return shards.get(0).upsertAll(sql, entities);
+  }
+
+  @Override
+  public Future<List<E>> upsertAll(SqlClient sql, Collection<E> entities, OnConflict onConflict) {
+    return shards.get(0).upsertAll(sql, entities, onConflict);
+  }
+
+  @Override
+  public Future<E> update(E before, E after) {
+    return route(idOf.apply(after), shard -> shard.update(before, after));
+  }
+
+  @Override
+  public Future<E> update(SqlClient sql, E before, E after) {
+    return route(idOf.apply(after), shard -> shard.update(sql, before, after));
+  }
+
+  @Override
+  public Future<List<E>> updateAll(List<E> befores, List<E> afters) {
+    if (befores.size() != afters.size()) {
+      return Future.failedFuture(new IllegalArgumentException(
+          "Cannot update " + befores.size() + " Entities to " + afters.size()));
+    }
+    List<List<Integer>> indexes;
+    try {
+      indexes = indexesByShard(afters, idOf);
+    } catch (IllegalArgumentException e) {
+      return Future.failedFuture(e);
+    }
+    ArrayList<Future> updates = new ArrayList<>();
+    for (int shard = 0; shard < indexes.size(); ++shard) {
+      List<Integer> onShard = indexes.get(shard);
+      if (onShard.isEmpty()) continue;
+      ArrayList<E> shardBefores = new ArrayList<>(onShard.size());
+      ArrayList<E> shardAfters = new ArrayList<>(onShard.size());
+      for (int i : onShard) {
+        shardBefores.add(befores.get(i));
+        shardAfters.add(afters.get(i));
+      }
+      updates.add(shards.get(shard).updateAll(shardBefores, shardAfters));
+    }
+    return CompositeFuture.all(updates).map(cf -> {
+      ArrayList<E> res = new ArrayList<>(afters);
+      int updateIndex = 0;
+      for (List<Integer> onShard : indexes) {
+        if (onShard.isEmpty()) continue;
+        List<E> updated = cf.resultAt(updateIndex++);
+        for (int i = 0; i < onShard.size(); ++i) res.set(onShard.get(i), updated.get(i));
+      }
+      return res;
+    });
+  }
+
+  @Override
+  public Future<List<E>> updateAll(SqlClient sql, List<E> befores, List<E> afters) {
+    return shards.get(0).updateAll(sql, befores, afters);
+  }
+
+  private <T> Future<T> route(ID id, Function<Repo<E, ID>, Future<T>> query) {
+    Repo<E, ID> shard;
+    try {
+      shard = shardFor(id);
+    } catch (IllegalArgumentException e) {
+      return Future.failedFuture(e);
+    }
+    return query.apply(shard);
+  }
+
+  /*
+   * The results of every shard, in shard order.
+   */
+  private <T> Future<List<T>> onEveryShard(Function<Repo<E, ID>, Future<T>> query) {
+    ArrayList<Future> results = new ArrayList<>(shards.size());
+    for (Repo<E, ID> shard : shards) results.add(query.apply(shard));
+    return CompositeFuture.all(results).map(CompositeFuture::list);
+  }
+
+  /*
+   * Runs query on every shard holding any of the items, with those items, in their order.
+   * The results are in shard order.
+   */
+  private <T, R> Future<List<R>> routeAll(List<T> items, Function<T, ID> idOf,
+                                          BiFunction<Repo<E, ID>, List<T>, Future<R>> query) {
+    List<List<Integer>> indexes;
+    try {
+      indexes = indexesByShard(items, idOf);
+    } catch (IllegalArgumentException e) {
+      return Future.failedFuture(e);
+    }
+    ArrayList<Future> results = new ArrayList<>();
+    for (int shard = 0; shard < indexes.size(); ++shard) {
+      List<Integer> onShard = indexes.get(shard);
+      if (onShard.isEmpty()) continue;
+      ArrayList<T> shardItems = new ArrayList<>(onShard.size());
+      for (int i : onShard) shardItems.add(items.get(i));
+      results.add(query.apply(shards.get(shard), shardItems));
+    }
+    return CompositeFuture.all(results).map(CompositeFuture::list);
+  }
+
+  private <T> List<List<Integer>> indexesByShard(List<T> items, Function<T, ID> idOf) {
+    ArrayList<List<Integer>> indexes = new ArrayList<>(shards.size());
+    for (int i = 0; i < shards.size(); ++i) indexes.add(new ArrayList<>());
+    for (int i = 0; i < items.size(); ++i) indexes.get(shardOf(idOf.apply(items.get(i)))).add(i);
+    return indexes;
+  }
+
+  /*
+   * Reorders the results of routeAll, which are grouped by shard, to the order of entities.
+   */
+  private List<E> inInputOrder(List<E> entities, List<List<E>> byShard) {
+    List<List<Integer>> indexes = indexesByShard(entities, idOf);
+    ArrayList<E> res = new ArrayList<>(entities);
+    int resultIndex = 0;
+    for (List<Integer> onShard : indexes) {
+      if (onShard.isEmpty()) continue;
+      List<E> shardResult = byShard.get(resultIndex++);
+      for (int i = 0; i < onShard.size(); ++i) res.set(onShard.get(i), shardResult.get(i));
+    }
+    return res;
+  }
+
+  private static long sum(List<Long> counts) {
+    long sum = 0;
+    for (Long count : counts) sum += count;
+    return sum;
+  }
+
+  private static Long sumEstimates(List<Long> estimates) {
+    return estimates.contains(null) ? null : sum(estimates);
+  }
+
+  private static <T> List<T> concat(List<List<T>> lists) {
+    int size = 0;
+    for (List<T> list : lists) size += list.size();
+    ArrayList<T> res = new ArrayList<>(size);
+    for (List<T> list : lists) res.addAll(list);
+    return res;
+  }
+
+  private static SpecShape shape(Spec<?> spec) {
+    if (spec instanceof SpecImpl) return ((SpecImpl<?>) spec).shape;
+    throw new IllegalArgumentException("ShardedRepo needs a Spec built by SpecBuilder or SpecTemplate, " +
+                                       "to merge by its ORDER BY, LIMIT and OFFSET");
+  }
+
+  /*
+   * Selects the sort values along with each row, so that the sorted
+   * results of every shard can be merged.
+   */
+  private <P> Future<List<P>> scatterGather(Spec<E> spec, ProjectionType<P> type) {
+    SpecShape shape;
+    Spec<E> shardSpec;
+    String keyColumns = null;
+    try {
+      shape = shape(spec);
+      if (shape.sorts == null) {
+        throw new IllegalArgumentException("ShardedRepo cannot merge by Sorts implemented outside vertx-repo-pg");
+      }
+      String sql = spec.sql().substring(0, shape.limitStart);
+      // each shard may hold every row up to the end of the merged page
+      if (shape.limit != null) {
+        sql += " LIMIT " + ((long) shape.limit + (shape.offset == null ? 0 : shape.offset));
+      }
+      Tuple tuple = spec.tuple();
+      if (!shape.sorts.isEmpty()) {
+        @SuppressWarnings("unchecked")
+        Expression<E, ?>[] keys = new Expression[shape.sorts.size()];
+        for (int i = 0; i < keys.length; ++i) keys[i] = shape.sorts.get(i).sortExpression;
+        SelectList<E> keyList = SelectList.of(keys);
+        keyColumns = keyList.sql(tuple.size());
+        tuple = keyList.tuple(tuple);
+        for (int i = 0; i < tuple.size(); ++i) {
+          if (tuple.getValue(i) instanceof SpecTemplate.TemplateParam) {
+            throw new IllegalArgumentException("Cannot merge a Spec sorted by a template param");
+          }
+        }
+      }
+      shardSpec = new ShardSpec<>(sql, tuple);
+    } catch (IllegalArgumentException e) {
+      return Future.failedFuture(e);
+    }
+
+    KeyedType<P> keyedType = new KeyedType<>(type, keyColumns, shape.sorts.size());
+    return onEveryShard(shard -> shard.findAll(shardSpec, keyedType))
+        .map(results -> merge(results, shape));
+  }
+
+  private static <P> List<P> merge(List<List<Keyed<P>>> results, SpecShape shape) {
+    List<OrderByClauseHelper> sorts = shape.sorts;
+    PriorityQueue<Cursor<P>> cursors = new PriorityQueue<>(Math.max(1, results.size()), (a, b) -> {
+      int c = compareKeys(a.current().keys, b.current().keys, sorts);
+      return c != 0 ? c : Integer.compare(a.shard, b.shard);
+    });
+    for (int shard = 0; shard < results.size(); ++shard) {
+      if (!results.get(shard).isEmpty()) cursors.add(new Cursor<>(results.get(shard), shard));
+    }
+    long skip = shape.offset == null ? 0 : shape.offset;
+    long limit = shape.limit == null ? Long.MAX_VALUE : shape.limit;
+    ArrayList<P> res = new ArrayList<>();
+    while (!cursors.isEmpty() && res.size() < limit) {
+      Cursor<P> cursor = cursors.poll();
+      if (skip > 0) --skip;
+      else res.add(cursor.current().value);
+      if (++cursor.position < cursor.items.size()) cursors.add(cursor);
+    }
+    return res;
+  }
+
+  /*
+   * Compares sort values as the ORDER BY does.
+   */
+  private static int compareKeys(Object[] a, Object[] b, List<OrderByClauseHelper> sorts) {
+    for (int i = 0; i < a.length; ++i) {
+      OrderByClauseHelper sort = sorts.get(i);
+      Object x = a[i];
+      Object y = b[i];
+      if (x == null || y == null) {
+        if (x == y) continue;
+        boolean nullsFirst = sort.nullsOrderedFirst();
+        return (x == null) == nullsFirst ? -1 : 1;
+      }
+      int c = compareValues(x, y);
+      if (c != 0) return sort.ascending ? c : -c;
+    }
+    return 0;
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static int compareValues(Object x, Object y) {
+    if (x instanceof Number && y instanceof Number && (x.getClass() != y.getClass() || !(x instanceof Comparable))) {
+      return new BigDecimal(x.toString()).compareTo(new BigDecimal(y.toString()));
+    }
+    if (x instanceof Comparable) return ((Comparable) x).compareTo(y);
+    throw new IllegalArgumentException("Cannot merge shards sorted by values of " + x.getClass());
+  }
+
+  private static final class ShardSpec<E> implements Spec<E> {
+    private final String sql;
+    private final Tuple tuple;
+
+    ShardSpec(String sql, Tuple tuple) {
+      this.sql = sql;
+      this.tuple = tuple;
+    }
+
+    @Override
+    public String sql() {
+      return sql;
+    }
+
+    @Override
+    public Tuple tuple() {
+      return tuple;
+    }
+  }
+
+  private static final class Keyed<P> {
+    final P value;
+    final Object[] keys;
+
+    Keyed(P value, Object[] keys) {
+      this.value = value;
+      this.keys = keys;
+    }
+  }
+
+  private static final class Cursor<P> {
+    final List<Keyed<P>> items;
+    final int shard;
+    int position = 0;
+
+    Cursor(List<Keyed<P>> items, int shard) {
+      this.items = items;
+      this.shard = shard;
+    }
+
+    Keyed<P> current() {
+      return items.get(position);
+    }
+  }
+
+  /*
+   * The columns of type, followed by the sort values.
+   */
+  private static final class KeyedType<P> implements ProjectionType<Keyed<P>> {
+    private final ProjectionType<P> type;
+    private final String selectColumns;
+    private final int keyCount;
+
+    KeyedType(ProjectionType<P> type, String keyColumns, int keyCount) {
+      this.type = type;
+      this.selectColumns = keyColumns == null ? type.selectColumns() : type.selectColumns() + ", " + keyColumns;
+      this.keyCount = keyCount;
+    }
+
+    @Override
+    public String selectColumns() {
+      return selectColumns;
+    }
+
+    @Override
+    public Collector<Row, ?, List<Keyed<P>>> listCollector() {
+      return keyed(type.listCollector(), keyCount);
+    }
+
+    private static <P, A> Collector<Row, ?, List<Keyed<P>>> keyed(Collector<Row, A, List<P>> values, int keyCount) {
+      class Acc {
+        final A values;
+        final ArrayList<Object[]> keys = new ArrayList<>();
+
+        Acc(A values) {
+          this.values = values;
+        }
+      }
+      return Collector.of(
+          () -> new Acc(values.supplier().get()),
+          (acc, row) -> {
+            values.accumulator().accept(acc.values, row);
+            Object[] keys = new Object[keyCount];
+            int first = row.size() - keyCount;
+            for (int i = 0; i < keyCount; ++i) keys[i] = row.getValue(first + i);
+            acc.keys.add(keys);
+          },
+          (a, b) -> {
+            throw new UnsupportedOperationException("Shard results are collected sequentially");
+          },
+          acc -> {
+            List<P> list = values.finisher().apply(acc.values);
+            ArrayList<Keyed<P>> res = new ArrayList<>(list.size());
+            for (int i = 0; i < list.size(); ++i) res.add(new Keyed<>(list.get(i), acc.keys.get(i)));
+            return res;
+          });
+    }
+  }
+}
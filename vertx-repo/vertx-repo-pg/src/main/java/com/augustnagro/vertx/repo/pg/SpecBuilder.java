@@ -3,20 +3,18 @@ package com.augustnagro.vertx.repo.pg;
 import com.augustnagro.vertx.repo.Spec;
 
 import java.util.ArrayList;
-import java.util.StringJoiner;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.List;
 
 /**
  * Builder class for {@link Spec}. This class is not thread-safe.
  * @param <E> Entity type
  */
 public class SpecBuilder<E> {
-  private static final Pattern PARAM_PLACEHOLDER_PATTERN =
-      Pattern.compile(Expression.PARAM_PLACEHOLDER, Pattern.LITERAL);
-
   private final ArrayList<Predicate<E>> predicates = new ArrayList<>();
   private final ArrayList<Sort<E, ?>> sorts = new ArrayList<>();
+  private final ArrayList<OrderByClauseHelper> seekSorts = new ArrayList<>();
+  // index in predicates where the combined seek predicate is written, or -1
+  private int seekPosition = -1;
   private int totalParams = 0;
   private Integer limit = null;
   private Integer offset = null;
@@ -32,15 +30,36 @@ public class SpecBuilder<E> {
   }
 
   /**
-   * Add a new Sort to the Spec. If {@link Sort#seekPredicate()} is not null, it is added
-   * to the builder as well.
+   * Add a new Sort to the Spec. If {@link Sort#seekPredicate()} is not null, the Spec
+   * seeks past it as well.
+   * <br>
+   * <br>
+   * The seeks of several Sorts are combined into one predicate that compares
+   * lexicographically, in the order of the Sorts, as the ORDER BY does. If every
+   * seek is greater than, or every seek is less than, and no Sort sets
+   * NULLS FIRST or LAST, this is a row value comparison like
+   * {@code (last_name, id) > ($1, $2)}, which Postgres answers with a range scan of a
+   * (last_name, id) index. Otherwise it is expanded to
+   * {@code (last_name > $1) OR (last_name = $2 AND id < $3)}. Sorts with explicit
+   * NULLS FIRST or LAST treat nulls as ordered, and their seek value may be null;
+   * with the default null handling, rows with null sort values are never seeked to.
+   * <br>
+   * <br>
+   * Sorts implemented outside this library are not combined; their seek
+   * predicate is added to the where clause on its own.
    * @return this
    */
   public SpecBuilder<E> orderBy(Sort<E, ?> sort) {
     sorts.add(sort);
     totalParams += sort.paramCount();
     Predicate<E> seekPredicate = sort.seekPredicate();
-    if (seekPredicate != null) where(seekPredicate);
+    if (seekPredicate == null) return this;
+    if (sort instanceof OrderByClauseHelper) {
+      if (seekPosition == -1) seekPosition = predicates.size();
+      seekSorts.add((OrderByClauseHelper) sort);
+    } else {
+      where(seekPredicate);
+    }
     return this;
   }
 
@@ -65,47 +84,162 @@ public class SpecBuilder<E> {
 
   /**
    * Builds the Spec
+   * @throws IllegalStateException if a {@link SpecTemplate#param(String)} was used
    */
   public Spec<E> build() {
-    Object[] allParams = new Object[totalParams];
-    int insertPos = 0;
-
-    StringJoiner whereClause = new StringJoiner(" AND ", "WHERE ", "").setEmptyValue("");
-    for (Predicate<E> p : predicates) {
-      whereClause.add(p.sql());
-      Object[] params = p.params();
-      System.arraycopy(params, 0, allParams, insertPos, params.length);
-      insertPos += params.length;
+    SqlWriter writer = render();
+    Object[] allParams = writer.params();
+    for (Object param : allParams) {
+      if (param instanceof SpecTemplate.TemplateParam) {
+        throw new IllegalStateException("Spec has template param " + param + ", use buildTemplate()");
+      }
     }
+    return new SpecImpl<>(writer.toString(), allParams, shape(writer));
+  }
 
-    StringJoiner orderByClause = new StringJoiner(", ", " ORDER BY ", "").setEmptyValue("");
-    for (Sort<E, ?> sort : sorts) {
-      orderByClause.add(sort.sql());
-      Object[] sortParams = sort.params();
-      System.arraycopy(sortParams, 0, allParams, insertPos, sortParams.length);
-      insertPos += sortParams.length;
+  /**
+   * Compiles a SpecTemplate, whose {@link SpecTemplate#param(String)}s
+   * are bound per use.
+   */
+  public SpecTemplate<E> buildTemplate() {
+    SqlWriter writer = render();
+    return new SpecTemplate<>(writer.toString(), writer.params(), shape(writer));
+  }
+
+  @SuppressWarnings("unchecked")
+  private SpecShape shape(SqlWriter writer) {
+    int limitStart = writer.sql.length();
+    if (limit != null) limitStart -= (" LIMIT " + limit).length();
+    if (offset != null) limitStart -= (" OFFSET " + offset).length();
+    boolean knownSorts = sorts.stream().allMatch(sort -> sort instanceof OrderByClauseHelper);
+    List<OrderByClauseHelper> shapeSorts = knownSorts ? (List<OrderByClauseHelper>) (List<?>) List.copyOf(sorts) : null;
+    return new SpecShape(shapeSorts, limit, offset, limitStart);
+  }
+
+  /*
+   * Renders the SQL and params in one pass.
+   */
+  private SqlWriter render() {
+    Predicate<E> seekPredicate = seekSorts.isEmpty() ? null : seekPredicate(seekSorts);
+    SqlWriter writer = new SqlWriter(seekPredicate == null ? totalParams : totalParams + seekPredicate.paramCount());
+
+    String separator = "WHERE ";
+    for (int i = 0; i <= predicates.size(); ++i) {
+      if (i == seekPosition) {
+        writer.append(separator).append(seekPredicate);
+        separator = " AND ";
+      }
+      if (i == predicates.size()) break;
+      writer.append(separator).append(predicates.get(i));
+      separator = " AND ";
     }
 
-    String sql = whereClause.toString() + orderByClause.toString();
+    separator = " ORDER BY ";
+    for (Sort<E, ?> sort : sorts) {
+      writer.append(separator).append(sort);
+      separator = ", ";
+    }
 
     if (limit != null) {
-      sql += " LIMIT " + limit;
+      writer.append(" LIMIT ").append(limit.toString());
     }
 
     if (offset != null) {
-      sql += " OFFSET " + offset;
+      writer.append(" OFFSET ").append(offset.toString());
+    }
+
+    return writer;
+  }
+
+  /*
+   * One predicate seeking past all the sorts, compared lexicographically.
+   */
+  @SuppressWarnings("unchecked")
+  private static <E> Predicate<E> seekPredicate(List<OrderByClauseHelper> sorts) {
+    OrderByClauseHelper first = sorts.get(0);
+    boolean sameDirection = true;
+    boolean defaultNulls = true;
+    for (OrderByClauseHelper sort : sorts) {
+      sameDirection &= sort.seekGreaterThan == first.seekGreaterThan;
+      defaultNulls &= sort.defaultNullHandling;
+    }
+    if (sorts.size() == 1 && defaultNulls) return first.seekPredicate;
+
+    if (sameDirection && defaultNulls) {
+      // (a, b) > ($1, $2)
+      ArrayList<Object> parts = new ArrayList<>();
+      parts.add("((");
+      for (int i = 0; i < sorts.size(); ++i) {
+        if (i > 0) parts.add(", ");
+        parts.add(sorts.get(i).sortExpression);
+      }
+      parts.add(first.seekGreaterThan ? ") > (" : ") < (");
+      for (int i = 0; i < sorts.size(); ++i) {
+        if (i > 0) parts.add(", ");
+        parts.add(seekValue(sorts.get(i)));
+      }
+      parts.add("))");
+      return new WhereClauseHelper(parts.toArray(), WhereClauseHelper.NO_PARAMS);
     }
 
-    // replace parameter placeholders with proper values
-    Matcher m = PARAM_PLACEHOLDER_PATTERN.matcher(sql);
-    StringBuilder sb = new StringBuilder();
-    int p = 1;
-    while (m.find()) {
-      m.appendReplacement(sb, "\\$" + p);
-      ++p;
+    // (a > $1) OR (a = $2 AND b < $3) OR ...
+    ArrayList<Object> parts = new ArrayList<>();
+    parts.add("(");
+    if (first.defaultNullHandling) {
+      // bounding the leading column lets an index on it narrow the scan
+      parts.add(first.sortExpression);
+      parts.add(first.seekGreaterThan ? " >= " : " <= ");
+      parts.add(seekValue(first));
+      parts.add(" AND (");
+    }
+    for (int i = 0; i < sorts.size(); ++i) {
+      if (i > 0) parts.add(" OR ");
+      parts.add("(");
+      for (int j = 0; j < i; ++j) {
+        addEqualTerm(parts, sorts.get(j));
+        parts.add(" AND ");
+      }
+      addPastTerm(parts, sorts.get(i));
+      parts.add(")");
     }
-    m.appendTail(sb);
+    if (first.defaultNullHandling) parts.add(")");
+    parts.add(")");
+    return new WhereClauseHelper(parts.toArray(), WhereClauseHelper.NO_PARAMS);
+  }
 
-    return new SpecImpl<>(sb.toString(), allParams);
+  private static SqlBuilder seekValue(OrderByClauseHelper sort) {
+    if (sort.seekValue instanceof SqlBuilder) return (SqlBuilder) sort.seekValue;
+    return WhereClauseHelper.param(sort.seekValue);
+  }
+
+  /*
+   * The sort value equals the seek value. Explicit null handling makes null equal null.
+   */
+  private static void addEqualTerm(ArrayList<Object> parts, OrderByClauseHelper sort) {
+    parts.add(sort.sortExpression);
+    parts.add(sort.defaultNullHandling ? " = " : " IS NOT DISTINCT FROM ");
+    parts.add(seekValue(sort));
+  }
+
+  /*
+   * The sort value is past the seek value. With explicit null handling, nulls
+   * are past every value if the seek moves toward them, and every value is
+   * past null otherwise. The null checks on the seek value are written so its
+   * type is inferred from the sort expression, since it may be a template param.
+   */
+  private static void addPastTerm(ArrayList<Object> parts, OrderByClauseHelper sort) {
+    Expression c = sort.sortExpression;
+    SqlBuilder v = seekValue(sort);
+    String operator = sort.seekGreaterThan ? " > " : " < ";
+    if (sort.defaultNullHandling) {
+      parts.addAll(List.of(c, operator, v));
+    } else if (sort.seeksTowardNulls()) {
+      // c > v OR (c IS NULL AND v IS NOT NULL)
+      parts.addAll(List.of("(", c, operator, v, " OR (", c, " IS NULL AND COALESCE(", v, ", ", c,
+          ") IS NOT NULL))"));
+    } else {
+      // c > v OR (c IS NOT NULL AND v IS NULL)
+      parts.addAll(List.of("(", c, operator, v, " OR (", c, " IS NOT NULL AND (", c, " = ", v, ") IS NULL))"));
+    }
   }
 }
@@ -6,10 +6,12 @@ import io.vertx.sqlclient.Tuple;
 class SpecImpl<E> implements Spec<E> {
   private final String sql;
   private final Tuple tuple;
+  final SpecShape shape;
 
-  SpecImpl(String sql, Object[] parameters) {
+  SpecImpl(String sql, Object[] parameters, SpecShape shape) {
     this.sql = sql;
     tuple = Tuple.wrap(parameters);
+    this.shape = shape;
   }
 
   @Override
@@ -0,0 +1,24 @@
+package com.augustnagro.vertx.repo.pg;
+
+import java.util.List;
+
+/**
+ * The ORDER BY, LIMIT and OFFSET of a built Spec, which {@link ShardedRepo}
+ * needs to merge the results of several shards.
+ */
+final class SpecShape {
+
+  // null if a Sort was implemented outside this library
+  final List<OrderByClauseHelper> sorts;
+  final Integer limit;
+  final Integer offset;
+  // length of the Spec's SQL without its LIMIT and OFFSET
+  final int limitStart;
+
+  SpecShape(List<OrderByClauseHelper> sorts, Integer limit, Integer offset, int limitStart) {
+    this.sorts = sorts;
+    this.limit = limit;
+    this.offset = offset;
+    this.limitStart = limitStart;
+  }
+}
@@ -0,0 +1,152 @@
+package com.augustnagro.vertx.repo.pg;
+
+import com.augustnagro.vertx.repo.Spec;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A Spec compiled once, whose parameters are bound per use. Build with
+ * {@link SpecBuilder#buildTemplate()}, using {@link #param(String)} in
+ * place of the values that vary:
+ * <pre>{@code
+ * static final SpecTemplate<Person> BY_LAST_NAME = new SpecBuilder<Person>()
+ *     .where(LAST_NAME.eq(SpecTemplate.param("lastName")))
+ *     .limit(10)
+ *     .buildTemplate();
+ *
+ * personRepo.findAll(BY_LAST_NAME.bind("Washington"));
+ * }</pre>
+ * Binding copies the parameter array and wraps it in a new Tuple; the SQL
+ * is never rebuilt, so every bound Spec shares one prepared statement.
+ * SpecTemplates are immutable and may be shared between threads.
+ * @param <E> Entity type
+ */
+public final class SpecTemplate<E> {
+
+  private final String sql;
+  private final Object[] params;
+  private final List<String> paramNames;
+  // for every param index, the index into paramNames, or -1 if a constant
+  private final int[] bindings;
+  private final SpecShape shape;
+
+  SpecTemplate(String sql, Object[] params, SpecShape shape) {
+    this.sql = sql;
+    this.params = params;
+    this.shape = shape;
+    ArrayList<String> names = new ArrayList<>();
+    bindings = new int[params.length];
+    for (int i = 0; i < params.length; ++i) {
+      if (params[i] instanceof TemplateParam) {
+        String name = ((TemplateParam) params[i]).name;
+        int nameIndex = names.indexOf(name);
+        if (nameIndex == -1) {
+          nameIndex = names.size();
+          names.add(name);
+        }
+        bindings[i] = nameIndex;
+        params[i] = null;
+      } else {
+        bindings[i] = -1;
+      }
+    }
+    paramNames = List.copyOf(names);
+  }
+
+  /**
+   * A named parameter, to be bound with {@link #bind(Object...)} or
+   * {@link #bind(Map)}. The same name may be used more than once.
+   * @param name parameter name
+   * @param <E> Entity type
+   * @param <T> Parameter type
+   */
+  public static <E, T> Expression<E, T> param(String name) {
+    return templateParam(name);
+  }
+
+  /**
+   * Like {@link #param(String)}, for use in String functions.
+   */
+  public static <E> StringExpression<E> stringParam(String name) {
+    return templateParam(name);
+  }
+
+  /**
+   * Like {@link #param(String)}, for use in arithmetic.
+   */
+  public static <E> NumberExpression<E> numberParam(String name) {
+    return templateParam(name);
+  }
+
+  private static WhereClauseHelper templateParam(String name) {
+    return WhereClauseHelper.param(new TemplateParam(name));
+  }
+
+  /**
+   * The compiled SQL, shared by every bound Spec.
+   */
+  public String sql() {
+    return sql;
+  }
+
+  /**
+   * The parameter names, in order of their first appearance.
+   */
+  public List<String> paramNames() {
+    return paramNames;
+  }
+
+  /**
+   * Bind the parameters, in the order of {@link #paramNames()}.
+   */
+  public Spec<E> bind(Object... values) {
+    if (values.length != paramNames.size()) {
+      throw new IllegalArgumentException("Expected " + paramNames.size() + " values for " + paramNames +
+                                         ", but got " + values.length);
+    }
+    Object[] boundParams = params.clone();
+    for (int i = 0; i < bindings.length; ++i) {
+      int binding = bindings[i];
+      if (binding != -1) boundParams[i] = values[binding];
+    }
+    return new SpecImpl<>(sql, boundParams, shape);
+  }
+
+  /**
+   * Bind the parameters by name.
+   */
+  public Spec<E> bind(Map<String, ?> values) {
+    Object[] orderedValues = new Object[paramNames.size()];
+    for (int i = 0; i < orderedValues.length; ++i) {
+      String name = paramNames.get(i);
+      if (!values.containsKey(name)) throw new IllegalArgumentException("No value for param " + name);
+      orderedValues[i] = values.get(name);
+    }
+    return bind(orderedValues);
+  }
+
+  @Override
+  public String toString() {
+    return "SpecTemplate{" +
+        "sql='" + sql + '\'' +
+        ", params=" + Arrays.toString(params) +
+        ", paramNames=" + paramNames +
+        '}';
+  }
+
+  static final class TemplateParam {
+    final String name;
+
+    TemplateParam(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public String toString() {
+      return ":" + name;
+    }
+  }
+}
@@ -0,0 +1,90 @@
+package com.augustnagro.vertx.repo.pg;
+
+/**
+ * Renders a tree of {@link SqlBuilder}s in one pass, appending SQL to a
+ * single StringBuilder and parameters to a single array.
+ */
+final class SqlWriter {
+
+  final StringBuilder sql = new StringBuilder(64);
+  private final Object[] params;
+  private final boolean numbered;
+  private final int paramOffset;
+  private int paramIndex = 0;
+
+  /**
+   * Writer numbering placeholders like '$1', and collecting paramCount params.
+   */
+  SqlWriter(int paramCount) {
+    this(paramCount, 0);
+  }
+
+  /**
+   * Writer numbering placeholders from '$(paramOffset + 1)', for SQL
+   * that precedes paramOffset other parameters in the statement.
+   */
+  SqlWriter(int paramCount, int paramOffset) {
+    this.params = new Object[paramCount];
+    this.numbered = true;
+    this.paramOffset = paramOffset;
+  }
+
+  /**
+   * Writer using {@link Expression#PARAM_PLACEHOLDER} and discarding params.
+   */
+  SqlWriter() {
+    this.params = null;
+    this.numbered = false;
+    this.paramOffset = 0;
+  }
+
+  SqlWriter append(String s) {
+    sql.append(s);
+    return this;
+  }
+
+  SqlWriter append(SqlBuilder builder) {
+    if (builder instanceof WhereClauseHelper) {
+      ((WhereClauseHelper) builder).writeTo(this);
+    } else if (builder instanceof OrderByClauseHelper) {
+      ((OrderByClauseHelper) builder).writeTo(this);
+    } else {
+      appendRendered(builder.sql(), builder.params());
+    }
+    return this;
+  }
+
+  SqlWriter appendParam(Object value) {
+    if (numbered) sql.append('$').append(paramOffset + paramIndex + 1);
+    else sql.append(Expression.PARAM_PLACEHOLDER);
+    if (params != null) params[paramIndex] = value;
+    ++paramIndex;
+    return this;
+  }
+
+  Object[] params() {
+    return params;
+  }
+
+  @Override
+  public String toString() {
+    return sql.toString();
+  }
+
+  /*
+   * For SqlBuilders outside this package, whose sql is already rendered.
+   */
+  private void appendRendered(String builderSql, Object[] builderParams) {
+    String placeholder = Expression.PARAM_PLACEHOLDER;
+    int start = 0;
+    int builderParamIndex = 0;
+    int found;
+    while ((found = builderSql.indexOf(placeholder, start)) != -1) {
+      sql.append(builderSql, start, found);
+      appendParam(builderParams[builderParamIndex]);
+      ++builderParamIndex;
+      start = found + placeholder.length();
+    }
+    sql.append(builderSql, start, builderSql.length());
+  }
+}
@@ -1,8 +1,5 @@
 package com.augustnagro.vertx.repo.pg;
 
-import java.util.Arrays;
-import java.util.StringJoiner;
-
 class WhereClauseHelper implements SqlBuilder, Expression, NumberExpression, StringExpression, Predicate, Between {
 
   static final String LESS_THAN = " < ";
@@ -59,32 +56,102 @@ class WhereClauseHelper implements SqlBuilder, Expression, NumberExpression, Str
   static final String NOW = "NOW";
   static final String COALESCE = "COALESCE";
 
-  final String sql;
-  final Object[] params;
+  /*
+   * Marks where the next of this node's own params is written.
+   */
+  private static final Object PARAM = new Object();
+  static final Object[] NO_PARAMS = new Object[0];
+
+  /*
+   * Each part is a literal String, a child SqlBuilder, or PARAM.
+   */
+  private final Object[] parts;
+  private final Object[] params;
+  private final int paramCount;
 
   WhereClauseHelper(String columnOrNoArgFunction) {
-    sql = columnOrNoArgFunction;
-    params = new Object[0];
+    parts = new Object[] { columnOrNoArgFunction };
+    params = NO_PARAMS;
+    paramCount = 0;
   }
 
-  WhereClauseHelper(String sql, Object[] params) {
-    this.sql = sql;
+  /**
+   * @param parts literal Strings, child SqlBuilders, or {@link #PARAM}
+   * @param params this node's own params, in order of the PARAM parts
+   */
+  WhereClauseHelper(Object[] parts, Object[] params) {
+    this.parts = parts;
     this.params = params;
+    int count = params.length;
+    for (Object part : parts) {
+      if (part instanceof SqlBuilder) count += ((SqlBuilder) part).paramCount();
+    }
+    paramCount = count;
+  }
+
+  /**
+   * Node that is a single parameter.
+   */
+  static WhereClauseHelper param(Object value) {
+    return new WhereClauseHelper(new Object[] { PARAM }, new Object[] { value });
+  }
+
+  void writeTo(SqlWriter writer) {
+    int paramIndex = 0;
+    for (Object part : parts) {
+      if (part == PARAM) {
+        writer.appendParam(params[paramIndex]);
+        ++paramIndex;
+      } else if (part instanceof String) {
+        writer.append((String) part);
+      } else {
+        writer.append((SqlBuilder) part);
+      }
+    }
   }
 
   @Override
   public String sql() {
-    return sql;
+    if (parts.length == 1 && parts[0] instanceof String) return (String) parts[0];
+    SqlWriter writer = new SqlWriter();
+    writeTo(writer);
+    return writer.toString();
   }
 
   @Override
   public Object[] params() {
-    return params;
+    if (paramCount == params.length) return params;
+    Object[] res = new Object[paramCount];
+    copyParams(res, 0);
+    return res;
+  }
+
+  private int copyParams(Object[] dest, int pos) {
+    int paramIndex = 0;
+    for (Object part : parts) {
+      if (part == PARAM) {
+        dest[pos] = params[paramIndex];
+        ++pos;
+        ++paramIndex;
+      } else if (part instanceof WhereClauseHelper) {
+        pos = ((WhereClauseHelper) part).copyParams(dest, pos);
+      } else if (part instanceof SqlBuilder) {
+        Object[] childParams = ((SqlBuilder) part).params();
+        System.arraycopy(childParams, 0, dest, pos, childParams.length);
+        pos += childParams.length;
+      }
+    }
+    return pos;
   }
 
   @Override
   public int paramCount() {
-    return params.length;
+    return paramCount;
+  }
+
+  @Override
+  public String toString() {
+    return sql();
   }
 
   @Override
@@ -179,14 +246,12 @@ class WhereClauseHelper implements SqlBuilder, Expression, NumberExpression, Str
 
   @Override
   public Predicate and(Expression y) {
-    String newSql = sql + AND + y.sql() + ")";
-    return new WhereClauseHelper(newSql, mergeParams(params, y.params()));
+    return new WhereClauseHelper(new Object[] { this, AND, y, ")" }, NO_PARAMS);
   }
 
   @Override
   public Predicate and(Object y) {
-    String newSql = sql + AND + PARAM_PLACEHOLDER + ")";
-    return new WhereClauseHelper(newSql, mergeParams(params, y));
+    return new WhereClauseHelper(new Object[] { this, AND, PARAM, ")" }, new Object[] { y });
   }
 
   @Override
@@ -350,124 +415,81 @@ class WhereClauseHelper implements SqlBuilder, Expression, NumberExpression, Str
   }
 
   static WhereClauseHelper likePredicate(String function, SqlBuilder string, String pattern, Character escapeCharacter) {
-    String sql = "(" + string.sql() + function + PARAM_PLACEHOLDER;
-    if (escapeCharacter != null) {
-      sql += " ESCAPE '" + escapeCharacter + "'";
-    }
-    sql += ")";
-    return new WhereClauseHelper(sql, mergeParams(string.params(), pattern));
+    String end = escapeCharacter == null ? ")" : " ESCAPE '" + escapeCharacter + "')";
+    return new WhereClauseHelper(new Object[] { "(", string, function, PARAM, end }, new Object[] { pattern });
   }
 
   static WhereClauseHelper binaryInfixExp(String function, SqlBuilder lhs, SqlBuilder rhs) {
-    String sql = "(" + lhs.sql() + function + rhs.sql() + ")";
-    return new WhereClauseHelper(sql, mergeParams(lhs.params(), rhs.params()));
+    return new WhereClauseHelper(new Object[] { "(", lhs, function, rhs, ")" }, NO_PARAMS);
   }
 
   static WhereClauseHelper binaryInfixExp(String function, SqlBuilder lhs, Object rhs) {
-    String sql = "(" + lhs.sql() + function + PARAM_PLACEHOLDER + ")";
-    return new WhereClauseHelper(sql, mergeParams(lhs.params(), rhs));
+    return new WhereClauseHelper(new Object[] { "(", lhs, function, PARAM, ")" }, new Object[] { rhs });
   }
 
   static WhereClauseHelper betweenPart1(String function, SqlBuilder lhs, SqlBuilder x) {
-    String sql = "(" + lhs.sql() + function + x.sql();
-    return new WhereClauseHelper(sql, mergeParams(lhs.params(), x.params()));
+    return new WhereClauseHelper(new Object[] { "(", lhs, function, x }, NO_PARAMS);
   }
 
   static WhereClauseHelper betweenPart1(String function, SqlBuilder lhs, Object x) {
-    String sql = "(" + lhs.sql() + function + PARAM_PLACEHOLDER;
-    return new WhereClauseHelper(sql, mergeParams(lhs.params(), x));
+    return new WhereClauseHelper(new Object[] { "(", lhs, function, PARAM }, new Object[] { x });
   }
 
   static WhereClauseHelper rightInfix(String function, SqlBuilder lhs) {
-    String sql = "(" + lhs.sql() + function + ")";
-    return new WhereClauseHelper(sql, lhs.params());
+    return new WhereClauseHelper(new Object[] { "(", lhs, function + ")" }, NO_PARAMS);
   }
 
   static WhereClauseHelper function(String function, SqlBuilder x) {
-    String sql = function + "(" + x.sql() + ")";
-    return new WhereClauseHelper(sql, x.params());
+    return new WhereClauseHelper(new Object[] { function + "(", x, ")" }, NO_PARAMS);
   }
 
   static WhereClauseHelper function(String function, Object x) {
-    String sql = function + "(" + PARAM_PLACEHOLDER + ")";
-    return new WhereClauseHelper(sql, new Object[] { x });
+    return new WhereClauseHelper(new Object[] { function + "(", PARAM, ")" }, new Object[] { x });
   }
 
   static WhereClauseHelper function(String function, SqlBuilder x, SqlBuilder y) {
-    String sql = function + "(" + x.sql() + ", " + y.sql() + ")";
-    return new WhereClauseHelper(sql, mergeParams(x.params(), y.params()));
+    return new WhereClauseHelper(new Object[] { function + "(", x, ", ", y, ")" }, NO_PARAMS);
   }
 
   static WhereClauseHelper function(String function, SqlBuilder x, Object y) {
-    String sql = function + "(" + x.sql() + ", " + PARAM_PLACEHOLDER + ")";
-    return new WhereClauseHelper(sql, mergeParams(x.params(), y));
+    return new WhereClauseHelper(new Object[] { function + "(", x, ", ", PARAM, ")" }, new Object[] { y });
   }
 
   static WhereClauseHelper function(String function, SqlBuilder x, SqlBuilder y, Object z) {
-    String sql = function + "(" + x.sql() + ", " + y.sql() + ", " + PARAM_PLACEHOLDER + ")";
-    Object[] params = Arrays.copyOf(x.params(), x.paramCount() + y.paramCount() + 1);
-    Object[] yParams = y.params();
-    System.arraycopy(yParams, 0, params, x.paramCount(), yParams.length);
-    params[params.length - 1] = z;
-    return new WhereClauseHelper(sql, params);
+    return new WhereClauseHelper(new Object[] { function + "(", x, ", ", y, ", ", PARAM, ")" }, new Object[] { z });
   }
 
+  /**
+   * Function whose arguments are SqlBuilders or params, optionally
+   * preceded by a literal firstArg.
+   */
   static WhereClauseHelper varArgsFunction(String function, String firstArg, Object... args) {
-    StringJoiner sql = new StringJoiner(", ", function + "(", ")");
-    if (firstArg != null) sql.add(firstArg);
+    if (args.length == 0) return new WhereClauseHelper(function + "(" + (firstArg == null ? "" : firstArg) + ")");
+
     int paramSize = 0;
     for (Object arg : args) {
-      if (arg instanceof SqlBuilder) {
-        SqlBuilder sqlBuilder = (SqlBuilder) arg;
-        sql.add(sqlBuilder.sql());
-        paramSize += sqlBuilder.paramCount();
-      } else {
-        sql.add(PARAM_PLACEHOLDER);
-        ++paramSize;
-      }
+      if (!(arg instanceof SqlBuilder)) ++paramSize;
     }
 
-    Object[] params = new Object[paramSize];
-    int insertIndex = 0;
-    for (Object arg : args) {
+    // function name, firstArg, and a separator or closing paren after each arg
+    Object[] parts = new Object[2 + 2 * args.length];
+    Object[] params = paramSize == 0 ? NO_PARAMS : new Object[paramSize];
+    int partIndex = 0;
+    int paramIndex = 0;
+    parts[partIndex++] = function + "(";
+    parts[partIndex++] = firstArg == null ? "" : firstArg + ", ";
+    for (int i = 0; i < args.length; ++i) {
+      Object arg = args[i];
       if (arg instanceof SqlBuilder) {
-        SqlBuilder sqlBuilder = (SqlBuilder) arg;
-        Object[] builderParams = sqlBuilder.params();
-        System.arraycopy(builderParams, 0, params, insertIndex, builderParams.length);
-        insertIndex += builderParams.length;
+        parts[partIndex++] = arg;
       } else {
-        params[insertIndex] = arg;
-        ++insertIndex;
+        parts[partIndex++] = PARAM;
+        params[paramIndex++] = arg;
       }
+      parts[partIndex++] = i == args.length - 1 ? ")" : ", ";
     }
 
-    return new WhereClauseHelper(sql.toString(), params);
-  }
-
-  static Object[] mergeParams(Object[] lhs, Object rhs) {
-    Object[] res = Arrays.copyOf(lhs, lhs.length + 1);
-    res[res.length - 1] = rhs;
-    return res;
-  }
-
-  static Object[] mergeParams(Object lhs, Object[] rhs) {
-    Object[] res = new Object[rhs.length + 1];
-    System.arraycopy(rhs, 0, res, 1, rhs.length);
-    res[0] = lhs;
-    return res;
-  }
-
-  static Object[] mergeParams(Object[] lhs, Object[] rhs) {
-    Object[] res = Arrays.copyOf(lhs, lhs.length + rhs.length);
-    System.arraycopy(rhs, 0, res, lhs.length, rhs.length);
-    return res;
-  }
-
-  static Object[] mergeParams(Object[] lhs, Object[] mid, Object[] rhs) {
-    Object[] res = Arrays.copyOf(lhs, lhs.length + mid.length + rhs.length);
-    System.arraycopy(mid, 0, res, lhs.length, mid.length);
-    System.arraycopy(rhs, 0, res, lhs.length + mid.length, rhs.length);
-    return res;
+    return new WhereClauseHelper(parts, params);
   }
 
 }
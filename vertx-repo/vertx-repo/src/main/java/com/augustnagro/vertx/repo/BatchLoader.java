@@ -0,0 +1,115 @@
+package com.augustnagro.vertx.repo;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Coalesces Entity lookups by Id into batches, one per Vert.x Context.
+ * <br>
+ * <br>
+ * The first {@link #load(Object)} on a Context starts a batch, which is
+ * dispatched as one call to loadAll after the current event loop task,
+ * or after a window of milliseconds, or when it reaches the maximum batch
+ * size. Lookups of the same Id in a batch share one Future. Outside of a
+ * Vert.x Context, every lookup is dispatched immediately.
+ * @param <E> Entity
+ * @param <ID> Entity's Primary Key
+ */
+public class BatchLoader<E, ID> {
+
+  private final Function<List<ID>, Future<List<E>>> loadAll;
+  private final Function<E, ID> idOf;
+  private final long windowMillis;
+  private final int maxBatchSize;
+  private final ConcurrentHashMap<Context, Batch> batches = new ConcurrentHashMap<>();
+
+  /**
+   * @param loadAll selects the Entities having any of the Ids
+   * @param idOf gets an Entity's Id
+   * @param windowMillis how long a batch collects Ids, or 0 to dispatch after the current task
+   * @param maxBatchSize dispatch a batch once it has this many distinct Ids
+   */
+  public BatchLoader(Function<List<ID>, Future<List<E>>> loadAll,
+                     Function<E, ID> idOf,
+                     long windowMillis,
+                     int maxBatchSize) {
+    if (windowMillis < 0) throw new IllegalArgumentException("windowMillis must be non-negative");
+    if (maxBatchSize <= 0) throw new IllegalArgumentException("maxBatchSize must be positive");
+    this.loadAll = loadAll;
+    this.idOf = idOf;
+    this.windowMillis = windowMillis;
+    this.maxBatchSize = maxBatchSize;
+  }
+
+  /**
+   * The Entity with this Id, or empty if there is none.
+   */
+  public Future<Optional<E>> load(ID id) {
+    Context context = Vertx.currentContext();
+    if (context == null) {
+      return dispatch(List.of(id)).map(entities -> Optional.ofNullable(entities.get(id)));
+    }
+
+    Batch batch = batches.get(context);
+    if (batch == null) {
+      Batch newBatch = new Batch();
+      batch = newBatch;
+      batches.put(context, newBatch);
+      if (windowMillis == 0) {
+        context.runOnContext(v -> flush(context, newBatch));
+      } else {
+        context.owner().setTimer(windowMillis, timerId -> flush(context, newBatch));
+      }
+    }
+
+    Promise<Optional<E>> promise = batch.promises.get(id);
+    if (promise == null) {
+      promise = Promise.promise();
+      batch.promises.put(id, promise);
+      if (batch.promises.size() >= maxBatchSize) flush(context, batch);
+    }
+    return promise.future();
+  }
+
+  private void flush(Context context, Batch batch) {
+    if (!batches.remove(context, batch)) return;
+    Map<ID, Promise<Optional<E>>> promises = batch.promises;
+    dispatch(new ArrayList<>(promises.keySet())).onComplete(ar -> {
+      if (ar.failed()) {
+        for (Promise<Optional<E>> promise : promises.values()) promise.fail(ar.cause());
+        return;
+      }
+      Map<ID, E> entities = ar.result();
+      for (Map.Entry<ID, Promise<Optional<E>>> entry : promises.entrySet()) {
+        entry.getValue().complete(Optional.ofNullable(entities.get(entry.getKey())));
+      }
+    });
+  }
+
+  private Future<Map<ID, E>> dispatch(List<ID> ids) {
+    return loadAll.apply(ids).map(entities -> {
+      HashMap<ID, E> byId = new HashMap<>(entities.size() * 2);
+      for (E entity : entities) byId.put(idOf.apply(entity), entity);
+      return byId;
+    });
+  }
+
+  /*
+   * Batches are only read and written on their own Context,
+   * so need no synchronization.
+   */
+  private class Batch {
+    final LinkedHashMap<ID, Promise<Optional<E>>> promises = new LinkedHashMap<>();
+  }
+}
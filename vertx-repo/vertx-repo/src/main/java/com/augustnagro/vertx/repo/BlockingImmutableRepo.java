@@ -0,0 +1,272 @@
+package com.augustnagro.vertx.repo;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.sqlclient.SqlClient;
+import io.vertx.sqlclient.SqlConnection;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Synchronous view of an {@link ImmutableRepo}, for code that runs on its
+ * own threads, like virtual threads or a thread-per-request server. Every
+ * method calls the Repo and waits for its Future with {@link #await(Future)}.
+ * <br>
+ * <br>
+ * Waiting parks the calling thread with {@link java.util.concurrent.locks.LockSupport}
+ * and never holds a monitor, so a virtual thread unmounts from its carrier
+ * while the query runs on the Vert.x event loop. The methods throw
+ * IllegalStateException when called on an event loop thread, since blocking
+ * it would stop the very connection being waited on.
+ * <br>
+ * <br>
+ * A failed Future is rethrown as is when it is a RuntimeException or Error,
+ * and wrapped in a CompletionException otherwise.
+ * @param <E> Entity
+ * @param <ID> Entity's Primary Key, annotated with {@link Id}
+ */
+public class BlockingImmutableRepo<E, ID> {
+
+  private final ImmutableRepo<E, ID> repo;
+
+  public BlockingImmutableRepo(ImmutableRepo<E, ID> repo) {
+    this.repo = repo;
+  }
+
+  /**
+   * The Repo every call is delegated to.
+   */
+  public ImmutableRepo<E, ID> repo() {
+    return repo;
+  }
+
+  /**
+   * Waits for the Future to complete, and returns its result.
+   * @throws IllegalStateException if called on an event loop thread
+   * @throws CompletionException wrapping the Future's failure if it is a checked exception,
+   * or the calling thread's InterruptedException
+   */
+  public static <T> T await(Future<T> future) {
+    if (Context.isOnEventLoopThread()) {
+      throw new IllegalStateException("Blocking Repo methods cannot be called on an event loop thread");
+    }
+    if (!future.isComplete()) {
+      try {
+        return future.toCompletionStage().toCompletableFuture().get();
+      } catch (ExecutionException e) {
+        throw propagate(e.getCause());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new CompletionException(e);
+      }
+    }
+    if (future.succeeded()) return future.result();
+    throw propagate(future.cause());
+  }
+
+  static RuntimeException propagate(Throwable failure) {
+    if (failure instanceof RuntimeException) return (RuntimeException) failure;
+    if (failure instanceof Error) throw (Error) failure;
+    return new CompletionException(failure);
+  }
+
+  /**
+   * See {@link ImmutableRepo#count()}.
+   */
+  public long count() {
+    return await(repo.count());
+  }
+
+  /**
+   * See {@link ImmutableRepo#count(SqlClient)}.
+   */
+  public long count(SqlClient sql) {
+    return await(repo.count(sql));
+  }
+
+  /**
+   * See {@link ImmutableRepo#count(Spec)}.
+   */
+  public long count(Spec<E> spec) {
+    return await(repo.count(spec));
+  }
+
+  /**
+   * See {@link ImmutableRepo#count(SqlClient, Spec)}.
+   */
+  public long count(SqlClient sql, Spec<E> spec) {
+    return await(repo.count(sql, spec));
+  }
+
+  /**
+   * See {@link ImmutableRepo#exists(Spec)}.
+   */
+  public boolean exists(Spec<E> spec) {
+    return await(repo.exists(spec));
+  }
+
+  /**
+   * See {@link ImmutableRepo#exists(SqlClient, Spec)}.
+   */
+  public boolean exists(SqlClient sql, Spec<E> spec) {
+    return await(repo.exists(sql, spec));
+  }
+
+  /**
+   * See {@link ImmutableRepo#estimatedCount()}.
+   */
+  public long estimatedCount() {
+    return await(repo.estimatedCount());
+  }
+
+  /**
+   * See {@link ImmutableRepo#estimatedCount(SqlClient)}.
+   */
+  public long estimatedCount(SqlClient sql) {
+    return await(repo.estimatedCount(sql));
+  }
+
+  /**
+   * See {@link ImmutableRepo#estimatedCount(Spec)}.
+   */
+  public long estimatedCount(Spec<E> spec) {
+    return await(repo.estimatedCount(spec));
+  }
+
+  /**
+   * See {@link ImmutableRepo#estimatedCount(SqlClient, Spec)}.
+   */
+  public long estimatedCount(SqlClient sql, Spec<E> spec) {
+    return await(repo.estimatedCount(sql, spec));
+  }
+
+  /**
+   * See {@link ImmutableRepo#existsById(Object)}.
+   */
+  public boolean existsById(ID id) {
+    return await(repo.existsById(id));
+  }
+
+  /**
+   * See {@link ImmutableRepo#existsById(SqlClient, Object)}.
+   */
+  public boolean existsById(SqlClient sql, ID id) {
+    return await(repo.existsById(sql, id));
+  }
+
+  /**
+   * See {@link ImmutableRepo#findAll()}.
+   */
+  public List<E> findAll() {
+    return await(repo.findAll());
+  }
+
+  /**
+   * See {@link ImmutableRepo#findAll(SqlClient)}.
+   */
+  public List<E> findAll(SqlClient sql) {
+    return await(repo.findAll(sql));
+  }
+
+  /**
+   * See {@link ImmutableRepo#findAll(Spec)}.
+   */
+  public List<E> findAll(Spec<E> spec) {
+    return await(repo.findAll(spec));
+  }
+
+  /**
+   * See {@link ImmutableRepo#findAll(SqlClient, Spec)}.
+   */
+  public List<E> findAll(SqlClient sql, Spec<E> spec) {
+    return await(repo.findAll(sql, spec));
+  }
+
+  /**
+   * See {@link ImmutableRepo#findAll(Spec, ProjectionType)}.
+   */
+  public <P> List<P> findAll(Spec<E> spec, ProjectionType<P> projection) {
+    return await(repo.findAll(spec, projection));
+  }
+
+  /**
+   * See {@link ImmutableRepo#findAll(SqlClient, Spec, ProjectionType)}.
+   */
+  public <P> List<P> findAll(SqlClient sql, Spec<E> spec, ProjectionType<P> projection) {
+    return await(repo.findAll(sql, spec, projection));
+  }
+
+  /**
+   * Entities conforming the Spec, read lazily from a cursor, see {@link ImmutableRepo#stream(Spec)}.
+   * The Stream holds a connection until it is exhausted or fails, so close it if it may not be,
+   * for example with try-with-resources.
+   */
+  public Stream<E> stream(Spec<E> spec) {
+    return stream(spec, EntityStream.DEFAULT_FETCH_SIZE);
+  }
+
+  /**
+   * See {@link #stream(Spec)}.
+   * @param fetchSize rows read per round trip, and the most buffered ahead of the caller
+   */
+  public Stream<E> stream(Spec<E> spec, int fetchSize) {
+    return toStream(repo.stream(spec, fetchSize), fetchSize);
+  }
+
+  /**
+   * See {@link #stream(Spec)} and {@link ImmutableRepo#stream(SqlConnection, Spec)}.
+   */
+  public Stream<E> stream(SqlConnection sql, Spec<E> spec) {
+    return stream(sql, spec, EntityStream.DEFAULT_FETCH_SIZE);
+  }
+
+  /**
+   * See {@link #stream(Spec, int)} and {@link ImmutableRepo#stream(SqlConnection, Spec, int)}.
+   */
+  public Stream<E> stream(SqlConnection sql, Spec<E> spec, int fetchSize) {
+    return toStream(repo.stream(sql, spec, fetchSize), fetchSize);
+  }
+
+  private static <E> Stream<E> toStream(Future<EntityStream<E>> stream, int fetchSize) {
+    EntityStreamIterator<E> iterator = await(stream.map(s -> new EntityStreamIterator<>(s, fetchSize)));
+    Spliterator<E> spliterator = Spliterators.spliteratorUnknownSize(
+        iterator, Spliterator.ORDERED | Spliterator.NONNULL);
+    return StreamSupport.stream(spliterator, false).onClose(iterator::close);
+  }
+
+  /**
+   * See {@link ImmutableRepo#findById(Object)}.
+   */
+  public Optional<E> findById(ID id) {
+    return await(repo.findById(id));
+  }
+
+  /**
+   * See {@link ImmutableRepo#findById(SqlClient, Object)}.
+   */
+  public Optional<E> findById(SqlClient sql, ID id) {
+    return await(repo.findById(sql, id));
+  }
+
+  /**
+   * See {@link ImmutableRepo#findAllById(Collection)}.
+   */
+  public List<E> findAllById(Collection<ID> ids) {
+    return await(repo.findAllById(ids));
+  }
+
+  /**
+   * See {@link ImmutableRepo#findAllById(SqlClient, Collection)}.
+   */
+  public List<E> findAllById(SqlClient sql, Collection<ID> ids) {
+    return await(repo.findAllById(sql, ids));
+  }
+}
@@ -0,0 +1,194 @@
+package com.augustnagro.vertx.repo;
+
+import io.vertx.sqlclient.SqlClient;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Synchronous view of a {@link Repo}. See {@link BlockingImmutableRepo}.
+ * @param <E> Entity
+ * @param <ID> Entity's Primary Key, annotated with {@link Id}
+ */
+public class BlockingRepo<E, ID> extends BlockingImmutableRepo<E, ID> {
+
+  private final Repo<E, ID> repo;
+
+  public BlockingRepo(Repo<E, ID> repo) {
+    super(repo);
+    this.repo = repo;
+  }
+
+  @Override
+  public Repo<E, ID> repo() {
+    return repo;
+  }
+
+  /**
+   * See {@link Repo#delete(Object)}.
+   */
+  public void delete(E entity) {
+    await(repo.delete(entity));
+  }
+
+  /**
+   * See {@link Repo#delete(SqlClient, Object)}.
+   */
+  public void delete(SqlClient sql, E entity) {
+    await(repo.delete(sql, entity));
+  }
+
+  /**
+   * See {@link Repo#deleteAll()}.
+   */
+  public void deleteAll() {
+    await(repo.deleteAll());
+  }
+
+  /**
+   * See {@link Repo#deleteAll(SqlClient)}.
+   */
+  public void deleteAll(SqlClient sql) {
+    await(repo.deleteAll(sql));
+  }
+
+  /**
+   * See {@link Repo#deleteAll(Collection)}.
+   */
+  public void deleteAll(Collection<E> entities) {
+    await(repo.deleteAll(entities));
+  }
+
+  /**
+   * See {@link Repo#deleteAll(SqlClient, Collection)}.
+   */
+  public void deleteAll(SqlClient sql, Collection<E> entities) {
+    await(repo.deleteAll(sql, entities));
+  }
+
+  /**
+   * See {@link Repo#deleteAllById(Collection)}.
+   */
+  public void deleteAllById(Collection<ID> ids) {
+    await(repo.deleteAllById(ids));
+  }
+
+  /**
+   * See {@link Repo#deleteAllById(SqlClient, Collection)}.
+   */
+  public void deleteAllById(SqlClient sql, Collection<ID> ids) {
+    await(repo.deleteAllById(sql, ids));
+  }
+
+  /**
+   * See {@link Repo#save(Object)}.
+   */
+  public E save(E entity) {
+    return await(repo.save(entity));
+  }
+
+  /**
+   * See {@link Repo#save(SqlClient, Object)}.
+   */
+  public E save(SqlClient sql, E entity) {
+    return await(repo.save(sql, entity));
+  }
+
+  /**
+   * See {@link Repo#saveAll(Collection)}.
+   */
+  public List<E> saveAll(Collection<E> entities) {
+    return await(repo.saveAll(entities));
+  }
+
+  /**
+   * See {@link Repo#saveAll(SqlClient, Collection)}.
+   */
+  public List<E> saveAll(SqlClient sql, Collection<E> entities) {
+    return await(repo.saveAll(sql, entities));
+  }
+
+  /**
+   * See {@link Repo#upsert(Object)}.
+   */
+  public E upsert(E entity) {
+    return await(repo.upsert(entity));
+  }
+
+  /**
+   * See {@link Repo#upsert(Object, OnConflict)}.
+   */
+  public E upsert(E entity, OnConflict onConflict) {
+    return await(repo.upsert(entity, onConflict));
+  }
+
+  /**
+   * See {@link Repo#upsert(SqlClient, Object)}.
+   */
+  public E upsert(SqlClient sql, E entity) {
+    return await(repo.upsert(sql, entity));
+  }
+
+  /**
+   * See {@link Repo#upsert(SqlClient, Object, OnConflict)}.
+   */
+  public E upsert(SqlClient sql, E entity, OnConflict onConflict) {
+    return await(repo.upsert(sql, entity, onConflict));
+  }
+
+  /**
+   * See {@link Repo#upsertAll(Collection)}.
+   */
+  public List<E> upsertAll(Collection<E> entities) {
+    return await(repo.upsertAll(entities));
+  }
+
+  /**
+   * See {@link Repo#upsertAll(Collection, OnConflict)}.
+   */
+  public List<E> upsertAll(Collection<E> entities, OnConflict onConflict) {
+    return await(repo.upsertAll(entities, onConflict));
+  }
+
+  /**
+   * See {@link Repo#upsertAll(SqlClient, Collection)}.
+   */
+  public List<E> upsertAll(SqlClient sql, Collection<E> entities) {
+    return await(repo.upsertAll(sql, entities));
+  }
+
+  /**
+   * See {@link Repo#upsertAll(SqlClient, Collection, OnConflict)}.
+   */
+  public List<E> upsertAll(SqlClient sql, Collection<E> entities, OnConflict onConflict) {
+    return await(repo.upsertAll(sql, entities, onConflict));
+  }
+
+  /**
+   * See {@link Repo#update(Object, Object)}.
+   */
+  public E update(E before, E after) {
+    return await(repo.update(before, after));
+  }
+
+  /**
+   * See {@link Repo#update(SqlClient, Object, Object)}.
+   */
+  public E update(SqlClient sql, E before, E after) {
+    return await(repo.update(sql, before, after));
+  }
+
+  /**
+   * See {@link Repo#updateAll(List, List)}.
+   */
+  public List<E> updateAll(List<E> before, List<E> after) {
+    return await(repo.updateAll(before, after));
+  }
+
+  /**
+   * See {@link Repo#updateAll(SqlClient, List, List)}.
+   */
+  public List<E> updateAll(SqlClient sql, List<E> before, List<E> after) {
+    return await(repo.updateAll(sql, before, after));
+  }
+}
@@ -0,0 +1,55 @@
+package com.augustnagro.vertx.repo;
+
+/**
+ * Immutable snapshot of {@link EntityCache} statistics.
+ */
+public final class CacheStats {
+
+  private final long hitCount;
+  private final long missCount;
+  private final long evictionCount;
+
+  public CacheStats(long hitCount, long missCount, long evictionCount) {
+    this.hitCount = hitCount;
+    this.missCount = missCount;
+    this.evictionCount = evictionCount;
+  }
+
+  /**
+   * Number of lookups that returned a cached Entity.
+   */
+  public long hitCount() {
+    return hitCount;
+  }
+
+  /**
+   * Number of lookups that found no Entity, or an expired one.
+   */
+  public long missCount() {
+    return missCount;
+  }
+
+  /**
+   * Number of Entities removed to stay within the maximum size.
+   */
+  public long evictionCount() {
+    return evictionCount;
+  }
+
+  /**
+   * Ratio of hits to lookups, or 1.0 if there were no lookups.
+   */
+  public double hitRate() {
+    long lookups = hitCount + missCount;
+    return lookups == 0 ? 1.0 : (double) hitCount / lookups;
+  }
+
+  @Override
+  public String toString() {
+    return "CacheStats{" +
+        "hitCount=" + hitCount +
+        ", missCount=" + missCount +
+        ", evictionCount=" + evictionCount +
+        '}';
+  }
+}
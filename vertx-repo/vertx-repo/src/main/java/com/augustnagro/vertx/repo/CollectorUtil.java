@@ -2,6 +2,7 @@ package com.augustnagro.vertx.repo;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Function;
 import java.util.stream.Collector;
 import java.util.stream.Collectors;
 
@@ -23,4 +24,50 @@ public class CollectorUtil {
         (left, right) -> { left.addAll(right); return left; }
     );
   }
+
+  /**
+   * Like {@link Collectors#mapping(Function, Collector)} into a List, except the
+   * mapping function is chosen once, from the first element. Useful when every
+   * element shares a layout that is expensive to check, like the columns of a Row.
+   * @param mapperFor returns the mapping function for all elements, given the first
+   * @param <T> Input type
+   * @param <E> Element type
+   * @return List Collector
+   */
+  public static <T, E> Collector<T, ?, List<E>> mappingToList(Function<T, Function<T, E>> mapperFor) {
+    return mappingToList(10, mapperFor);
+  }
+
+  /**
+   * Like {@link #mappingToList(Function)}, but with an initial capacity.
+   * @param expectedSize size of initial collection
+   * @param mapperFor returns the mapping function for all elements, given the first
+   * @param <T> Input type
+   * @param <E> Element type
+   * @return List Collector
+   */
+  public static <T, E> Collector<T, ?, List<E>> mappingToList(int expectedSize,
+                                                             Function<T, Function<T, E>> mapperFor) {
+    return Collector.of(
+        () -> new MappingList<>(expectedSize, mapperFor),
+        MappingList::map,
+        (left, right) -> { left.addAll(right); return left; },
+        left -> left
+    );
+  }
+
+  private static class MappingList<T, E> extends ArrayList<E> {
+    private final Function<T, Function<T, E>> mapperFor;
+    private Function<T, E> mapper;
+
+    MappingList(int expectedSize, Function<T, Function<T, E>> mapperFor) {
+      super(expectedSize);
+      this.mapperFor = mapperFor;
+    }
+
+    void map(T t) {
+      if (mapper == null) mapper = mapperFor.apply(t);
+      add(mapper.apply(t));
+    }
+  }
 }
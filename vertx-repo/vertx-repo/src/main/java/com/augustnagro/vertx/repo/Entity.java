@@ -30,4 +30,44 @@ import java.lang.annotation.Target;
 @Documented
 @Target(ElementType.TYPE)
 public @interface Entity {
+
+  /**
+   * If true, the generated Repo's count() reads an exact count from
+   * a counter table instead of scanning the entity's table. The counter
+   * table and the triggers that maintain it are created by running the
+   * generated RepoBase's COUNTER_DDL, for example in a migration.
+   * <br>
+   * <br>
+   * The triggers fire once per statement, and each inserts the change
+   * in row count as a new row of the counter table, so concurrent
+   * writing transactions never wait on each other. count() sums those
+   * rows; call the generated compactCounter() periodically to replace
+   * them with their total.
+   */
+  boolean counterTable() default false;
+
+  /**
+   * If true, an XxxShardedRepo is generated as well, which hash partitions
+   * the entities by Id over several databases, with one XxxRepoBase per
+   * shard. findAll(Spec) queries every shard and merges the results in
+   * the Spec's order. See ShardedRepo in vertx-repo-pg.
+   */
+  boolean sharded() default false;
+
+  /**
+   * If true, an XxxBlockingRepo is generated as well, a synchronous
+   * {@link BlockingRepo} over the XxxRepoBase for callers on virtual
+   * threads or their own thread pools.
+   */
+  boolean blockingRepo() default false;
+
+  /**
+   * If true, the generated RepoBase has an INVALIDATION_DDL, which creates
+   * triggers that NOTIFY its INVALIDATION_CHANNEL with the Ids of every
+   * updated or deleted row, once the transaction commits. Run it, for example
+   * in a migration, and use CacheInvalidationListener from vertx-repo-pg to
+   * evict those Ids from the EntityCache on every node, including for writes
+   * not made through a Repo.
+   */
+  boolean cacheInvalidation() default false;
 }
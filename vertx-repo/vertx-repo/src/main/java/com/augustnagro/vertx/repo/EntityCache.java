@@ -0,0 +1,48 @@
+package com.augustnagro.vertx.repo;
+
+/**
+ * Read-through cache for Entities by Id, used by a generated RepoBase
+ * when passed to its constructor.
+ * <br>
+ * <br>
+ * findById populates the cache, findAllById only queries the ids
+ * that are missing, and every write through the same repo invalidates
+ * the Ids it touches. Writes made elsewhere, and reads that race with a
+ * write, are only corrected once the entry expires, so choose the
+ * time-to-live accordingly. For Entities with
+ * {@link Entity#cacheInvalidation()}, writes made elsewhere can be
+ * evicted as they commit instead, with CacheInvalidationListener.
+ * <br>
+ * <br>
+ * Implementations must be thread safe. {@link LruEntityCache} is
+ * provided; other libraries may be adapted by implementing this interface.
+ * @param <E> Entity
+ * @param <ID> Entity's Primary Key
+ */
+public interface EntityCache<E, ID> {
+
+  /**
+   * The cached Entity, or null if absent or expired.
+   */
+  E get(ID id);
+
+  /**
+   * Cache an Entity, replacing any previous Entity with the same Id.
+   */
+  void put(ID id, E entity);
+
+  /**
+   * Remove the Entity with this Id, if present.
+   */
+  void invalidate(ID id);
+
+  /**
+   * Remove every Entity.
+   */
+  void invalidateAll();
+
+  /**
+   * Snapshot of the cache's statistics.
+   */
+  CacheStats stats();
+}
@@ -0,0 +1,180 @@
+package com.augustnagro.vertx.repo;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.sqlclient.Pool;
+import io.vertx.sqlclient.SqlConnection;
+import io.vertx.sqlclient.SqlResult;
+import io.vertx.sqlclient.TransactionRollbackException;
+
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.stream.Collector;
+
+/**
+ * {@link RepoMetrics} bound to one Entity, used by generated Repos
+ * to measure their statements.
+ */
+public final class EntityMetrics {
+
+  private static final Sample NOOP_SAMPLE = new Sample(null, null);
+
+  private final RepoMetrics metrics;
+  private final String entity;
+
+  private EntityMetrics(RepoMetrics metrics, String entity) {
+    this.metrics = metrics;
+    this.entity = entity;
+  }
+
+  /**
+   * @param metrics the listener, or null for {@link RepoMetrics#NOOP}
+   * @param entity the Entity's simple name
+   */
+  public static EntityMetrics of(RepoMetrics metrics, String entity) {
+    return new EntityMetrics(metrics == null ? RepoMetrics.NOOP : metrics, entity);
+  }
+
+  /**
+   * True if nothing is reported, so callers can skip measurement entirely.
+   */
+  public boolean isNoop() {
+    return metrics == RepoMetrics.NOOP;
+  }
+
+  /**
+   * Starts measuring one statement of this operation. When {@link #isNoop()}
+   * a shared Sample is returned that measures nothing.
+   */
+  public Sample start(String operation) {
+    if (isNoop()) return NOOP_SAMPLE;
+    return new Sample(this, operation);
+  }
+
+  /**
+   * Acquires a connection from the pool, reporting the time waited.
+   */
+  public Future<SqlConnection> getConnection(Pool pool, String operation) {
+    if (isNoop()) return pool.getConnection();
+    long start = System.nanoTime();
+    return pool.getConnection()
+        .onSuccess(con -> metrics.poolWait(entity, operation, System.nanoTime() - start));
+  }
+
+  /**
+   * Like {@link Pool#withConnection(Function)}, reporting the time waited for the connection.
+   */
+  public <T> Future<T> withConnection(Pool pool, String operation, Function<SqlConnection, Future<T>> function) {
+    return getConnection(pool, operation)
+        .flatMap(con -> apply(function, con).onComplete(ar -> con.close()));
+  }
+
+  /*
+   * A function that throws fails its Future instead, so that the connection is still closed.
+   */
+  private static <T> Future<T> apply(Function<SqlConnection, Future<T>> function, SqlConnection con) {
+    try {
+      return function.apply(con);
+    } catch (Throwable t) {
+      return Future.failedFuture(t);
+    }
+  }
+
+  /**
+   * Like {@link Pool#withTransaction(Function)}, reporting the time waited for the connection.
+   */
+  public <T> Future<T> withTransaction(Pool pool, String operation, Function<SqlConnection, Future<T>> function) {
+    return getConnection(pool, operation).flatMap(con -> con.begin()
+        .flatMap(tx -> function.apply(con).compose(
+            res -> tx.commit().map(res),
+            err -> {
+              if (err instanceof TransactionRollbackException) return Future.<T>failedFuture(err);
+              return tx.rollback().compose(v -> Future.<T>failedFuture(err), t -> Future.<T>failedFuture(err));
+            }))
+        .onComplete(ar -> con.close()));
+  }
+
+  /**
+   * Measures one statement. Decode time is accumulated by
+   * {@link #timed(Collector)} or {@link #decodeStart()} and
+   * {@link #decodeEnd(long, int)}, and is subtracted from the
+   * execution time reported by {@link #end(Future)}.
+   */
+  public static final class Sample {
+    private final EntityMetrics metrics;
+    private final String operation;
+    private final long start;
+    private long decodeNanos;
+    private long decodedRows;
+
+    private Sample(EntityMetrics metrics, String operation) {
+      this.metrics = metrics;
+      this.operation = operation;
+      this.start = metrics == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Reports the number of Entities or Ids sent in this statement.
+     */
+    public Sample batchSize(int size) {
+      if (metrics != null) metrics.metrics.batchSize(metrics.entity, operation, size);
+      return this;
+    }
+
+    /**
+     * The collector, timing each accumulated row as decoding.
+     */
+    public <T, R> Collector<T, ?, R> timed(Collector<T, ?, R> collector) {
+      if (metrics == null) return collector;
+      return timedCollector(collector);
+    }
+
+    private <T, A, R> Collector<T, A, R> timedCollector(Collector<T, A, R> collector) {
+      BiConsumer<A, T> accumulator = collector.accumulator();
+      return Collector.of(
+          collector.supplier(),
+          (container, row) -> {
+            long decodeStart = System.nanoTime();
+            accumulator.accept(container, row);
+            decodeNanos += System.nanoTime() - decodeStart;
+            ++decodedRows;
+          },
+          collector.combiner(),
+          collector.finisher(),
+          collector.characteristics().toArray(new Collector.Characteristics[0])
+      );
+    }
+
+    /**
+     * Reports the statement when the result completes.
+     * @return result
+     */
+    public <R extends SqlResult<?>> Future<R> end(Future<R> result) {
+      if (metrics == null) return result;
+      return result.onComplete(this::report);
+    }
+
+    private void report(AsyncResult<? extends SqlResult<?>> ar) {
+      long nanos = System.nanoTime() - start - decodeNanos;
+      long rows = ar.succeeded() ? ar.result().rowCount() : 0;
+      metrics.metrics.executed(metrics.entity, operation, nanos, rows, ar.succeeded());
+      if (decodedRows > 0) metrics.metrics.decoded(metrics.entity, operation, decodeNanos, decodedRows);
+    }
+
+    /**
+     * Start of decoding outside of a collector, after {@link #end(Future)}.
+     * @return token for {@link #decodeEnd(long, int)}
+     */
+    public long decodeStart() {
+      return metrics == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Reports decoding since {@link #decodeStart()}.
+     */
+    public void decodeEnd(long decodeStart, int rows) {
+      if (metrics == null) return;
+      metrics.metrics.decoded(metrics.entity, operation, System.nanoTime() - decodeStart, rows);
+    }
+  }
+}
@@ -0,0 +1,131 @@
+package com.augustnagro.vertx.repo;
+
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.streams.ReadStream;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.RowStream;
+
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * A {@link ReadStream} of Entities, decoded one at a time from
+ * a cursor-backed {@link RowStream}. Back-pressure (pause, resume
+ * and fetch) is delegated to the underlying RowStream, so rows are
+ * only read from the database as fast as they are consumed.
+ * <br>
+ * <br>
+ * When the RowStream ends or fails, the onTerminate Future is
+ * run before the end or exception handlers are called. Repos use
+ * this to commit the transaction and release pooled connections.
+ * @param <E> Entity
+ */
+public class EntityStream<E> implements ReadStream<E> {
+
+  /**
+   * Number of rows fetched per round trip when no fetch size is given.
+   */
+  public static final int DEFAULT_FETCH_SIZE = 100;
+
+  private final RowStream<Row> rows;
+  private final Function<Row, E> decoder;
+  private final Supplier<Future<Void>> onTerminate;
+  private Handler<Throwable> exceptionHandler;
+  private Handler<Void> endHandler;
+  private boolean terminated = false;
+
+  /**
+   * @param rows the RowStream to decode
+   * @param decoder builds an Entity from a single Row
+   */
+  public EntityStream(RowStream<Row> rows, Function<Row, E> decoder) {
+    this(rows, decoder, Future::succeededFuture);
+  }
+
+  /**
+   * @param rows the RowStream to decode
+   * @param decoder builds an Entity from a single Row
+   * @param onTerminate called once, when the RowStream ends or fails
+   */
+  public EntityStream(RowStream<Row> rows, Function<Row, E> decoder, Supplier<Future<Void>> onTerminate) {
+    this.rows = rows;
+    this.decoder = decoder;
+    this.onTerminate = onTerminate;
+    rows.endHandler(v -> terminate(null));
+    rows.exceptionHandler(this::terminate);
+  }
+
+  @Override
+  public EntityStream<E> exceptionHandler(Handler<Throwable> handler) {
+    exceptionHandler = handler;
+    return this;
+  }
+
+  @Override
+  public EntityStream<E> handler(Handler<E> handler) {
+    if (handler == null) {
+      rows.handler(null);
+      return this;
+    }
+    rows.handler(row -> {
+      E entity;
+      try {
+        entity = decoder.apply(row);
+      } catch (Throwable t) {
+        rows.close();
+        terminate(t);
+        return;
+      }
+      handler.handle(entity);
+    });
+    return this;
+  }
+
+  @Override
+  public EntityStream<E> pause() {
+    rows.pause();
+    return this;
+  }
+
+  @Override
+  public EntityStream<E> resume() {
+    rows.resume();
+    return this;
+  }
+
+  @Override
+  public EntityStream<E> fetch(long amount) {
+    rows.fetch(amount);
+    return this;
+  }
+
+  @Override
+  public EntityStream<E> endHandler(Handler<Void> handler) {
+    endHandler = handler;
+    return this;
+  }
+
+  /**
+   * Close the underlying RowStream before it has ended,
+   * running onTerminate. The end handler is not called.
+   */
+  public Future<Void> close() {
+    if (terminated) return Future.succeededFuture();
+    terminated = true;
+    return rows.close().eventually(v -> onTerminate.get());
+  }
+
+  private void terminate(Throwable cause) {
+    if (terminated) return;
+    terminated = true;
+    onTerminate.get().onComplete(ar -> {
+      Throwable failure = cause != null ? cause : ar.cause();
+      if (failure != null) {
+        if (exceptionHandler != null) exceptionHandler.handle(failure);
+      } else if (endHandler != null) {
+        endHandler.handle(null);
+      }
+    });
+  }
+}
@@ -0,0 +1,138 @@
+package com.augustnagro.vertx.repo;
+
+import io.vertx.core.Context;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Blocking Iterator over an {@link EntityStream}. The stream is paused, and
+ * fetchSize Entities are requested whenever fewer than half that many are
+ * buffered, so at most 1.5 * fetchSize are held in memory. Requests and close
+ * run on the stream's Context. A ReentrantLock guards the buffer instead of
+ * synchronized, so that waiting virtual threads do not pin their carrier.
+ */
+class EntityStreamIterator<E> implements Iterator<E> {
+
+  private final EntityStream<E> stream;
+  private final Context context;
+  private final int fetchSize;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition changed = lock.newCondition();
+  private final ArrayDeque<E> buffer = new ArrayDeque<>();
+  private long demand = 0;
+  private boolean ended = false;
+  private boolean closed = false;
+  private Throwable failure = null;
+
+  /**
+   * Must be called on the stream's Context, before it emits any Entity.
+   */
+  EntityStreamIterator(EntityStream<E> stream, int fetchSize) {
+    if (fetchSize <= 0) throw new IllegalArgumentException("fetchSize must be positive");
+    this.stream = stream;
+    this.context = Vertx.currentContext();
+    this.fetchSize = fetchSize;
+    stream.pause();
+    stream.exceptionHandler(t -> {
+      lock.lock();
+      try {
+        failure = t;
+        changed.signalAll();
+      } finally {
+        lock.unlock();
+      }
+    });
+    stream.endHandler(v -> {
+      lock.lock();
+      try {
+        ended = true;
+        changed.signalAll();
+      } finally {
+        lock.unlock();
+      }
+    });
+    stream.handler(entity -> {
+      lock.lock();
+      try {
+        buffer.add(entity);
+        --demand;
+        changed.signalAll();
+      } finally {
+        lock.unlock();
+      }
+    });
+  }
+
+  @Override
+  public boolean hasNext() {
+    lock.lock();
+    try {
+      while (buffer.isEmpty()) {
+        if (failure != null) throw BlockingImmutableRepo.propagate(failure);
+        if (ended || closed) return false;
+        if (Context.isOnEventLoopThread()) {
+          throw new IllegalStateException("Blocking Repo methods cannot be called on an event loop thread");
+        }
+        requestIfLow();
+        try {
+          changed.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new CompletionException(e);
+        }
+      }
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public E next() {
+    if (!hasNext()) throw new NoSuchElementException();
+    lock.lock();
+    try {
+      E entity = buffer.poll();
+      requestIfLow();
+      return entity;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Closes the stream if it has not ended, releasing its connection.
+   */
+  void close() {
+    lock.lock();
+    try {
+      if (closed || ended || failure != null) return;
+      closed = true;
+      buffer.clear();
+    } finally {
+      lock.unlock();
+    }
+    Promise<Void> streamClosed = Promise.promise();
+    runOnContext(() -> stream.close().onComplete(streamClosed));
+    BlockingImmutableRepo.await(streamClosed.future());
+  }
+
+  // called holding the lock
+  private void requestIfLow() {
+    if (demand > 0 || ended || closed || failure != null || buffer.size() * 2 >= fetchSize) return;
+    demand = fetchSize;
+    runOnContext(() -> stream.fetch(fetchSize));
+  }
+
+  private void runOnContext(Runnable action) {
+    if (context == null) action.run();
+    else context.runOnContext(v -> action.run());
+  }
+}
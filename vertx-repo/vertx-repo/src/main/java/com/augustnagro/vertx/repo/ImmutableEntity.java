@@ -10,4 +10,11 @@ import java.lang.annotation.Target;
 @Documented
 @Target(ElementType.TYPE)
 public @interface ImmutableEntity {
+
+  /**
+   * If true, an XxxBlockingRepo is generated as well, a synchronous
+   * {@link BlockingImmutableRepo} over the XxxRepoBase for callers on
+   * virtual threads or their own thread pools.
+   */
+  boolean blockingRepo() default false;
 }
@@ -2,6 +2,7 @@ package com.augustnagro.vertx.repo;
 
 import io.vertx.core.Future;
 import io.vertx.sqlclient.SqlClient;
+import io.vertx.sqlclient.SqlConnection;
 
 import java.util.Collection;
 import java.util.List;
@@ -24,6 +25,56 @@ public interface ImmutableRepo<E, ID> {
    */
   Future<Long> count(SqlClient sql);
 
+  /**
+   * Count of Entities conforming the Spec. Its limit and offset
+   * are applied before counting.
+   */
+  Future<Long> count(Spec<E> spec);
+
+  /**
+   * Count of Entities conforming the Spec. Its limit and offset
+   * are applied before counting.
+   */
+  Future<Long> count(SqlClient sql, Spec<E> spec);
+
+  /**
+   * True if any Entity conforms the Spec. The query stops
+   * at the first matching row.
+   */
+  Future<Boolean> exists(Spec<E> spec);
+
+  /**
+   * True if any Entity conforms the Spec. The query stops
+   * at the first matching row.
+   */
+  Future<Boolean> exists(SqlClient sql, Spec<E> spec);
+
+  /**
+   * Postgres' estimate of the Entity count, from the table statistics
+   * in pg_class. It costs the same on any table size, but is only as
+   * accurate as the last VACUUM or ANALYZE.
+   */
+  Future<Long> estimatedCount();
+
+  /**
+   * Postgres' estimate of the Entity count, from the table statistics
+   * in pg_class. It costs the same on any table size, but is only as
+   * accurate as the last VACUUM or ANALYZE.
+   */
+  Future<Long> estimatedCount(SqlClient sql);
+
+  /**
+   * The query planner's estimate of the Entities conforming the Spec,
+   * read from EXPLAIN without executing the query.
+   */
+  Future<Long> estimatedCount(Spec<E> spec);
+
+  /**
+   * The query planner's estimate of the Entities conforming the Spec,
+   * read from EXPLAIN without executing the query.
+   */
+  Future<Long> estimatedCount(SqlClient sql, Spec<E> spec);
+
   /**
    * True if an Entity with id exists.
    */
@@ -54,6 +105,64 @@ public interface ImmutableRepo<E, ID> {
    */
   Future<List<E>> findAll(SqlClient sql, Spec<E> spec);
 
+  /**
+   * Select the Projection's columns of all Entities conforming the Spec.
+   * Only those columns are read and sent, so a Projection of indexed
+   * columns may be answered with an index-only scan.
+   * @param projection the TYPE field of a generated Projection class
+   */
+  <P> Future<List<P>> findAll(Spec<E> spec, ProjectionType<P> projection);
+
+  /**
+   * Select the Projection's columns of all Entities conforming the Spec.
+   * Only those columns are read and sent, so a Projection of indexed
+   * columns may be answered with an index-only scan.
+   * @param projection the TYPE field of a generated Projection class
+   */
+  <P> Future<List<P>> findAll(SqlClient sql, Spec<E> spec, ProjectionType<P> projection);
+
+  /**
+   * Stream all Entities conforming the Spec, using a cursor that fetches
+   * {@link EntityStream#DEFAULT_FETCH_SIZE} rows at a time.
+   * <br>
+   * <br>
+   * A connection is taken from the pool and a transaction begun for the
+   * lifetime of the stream. Both are released when the stream ends, fails,
+   * or is closed with {@link EntityStream#close()}.
+   */
+  Future<EntityStream<E>> stream(Spec<E> spec);
+
+  /**
+   * Stream all Entities conforming the Spec, using a cursor that fetches
+   * fetchSize rows at a time.
+   * <br>
+   * <br>
+   * A connection is taken from the pool and a transaction begun for the
+   * lifetime of the stream. Both are released when the stream ends, fails,
+   * or is closed with {@link EntityStream#close()}.
+   */
+  Future<EntityStream<E>> stream(Spec<E> spec, int fetchSize);
+
+  /**
+   * Stream all Entities conforming the Spec, using a cursor that fetches
+   * {@link EntityStream#DEFAULT_FETCH_SIZE} rows at a time.
+   * <br>
+   * <br>
+   * Postgres cursors only live inside a transaction, so the connection must
+   * have one open until the stream ends.
+   */
+  Future<EntityStream<E>> stream(SqlConnection sql, Spec<E> spec);
+
+  /**
+   * Stream all Entities conforming the Spec, using a cursor that fetches
+   * fetchSize rows at a time.
+   * <br>
+   * <br>
+   * Postgres cursors only live inside a transaction, so the connection must
+   * have one open until the stream ends.
+   */
+  Future<EntityStream<E>> stream(SqlConnection sql, Spec<E> spec, int fetchSize);
+
   /**
    * Select an Entity by Id.
    */
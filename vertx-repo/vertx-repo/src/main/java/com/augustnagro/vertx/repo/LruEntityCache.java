@@ -0,0 +1,164 @@
+package com.augustnagro.vertx.repo;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Size-bounded {@link EntityCache} that evicts Entities which are rarely
+ * used, and expires Entities a fixed time after they were cached.
+ * <br>
+ * <br>
+ * Entities are held in a ConcurrentHashMap, so lookups take no lock and
+ * may be shared by many event loops. Eviction approximates LRU with a
+ * CLOCK: every lookup bumps the Entity's small usage counter, and when the
+ * cache is full a hand sweeps the map, decrementing counters and evicting
+ * the first Entity it finds unused. New Entities start unused, so an
+ * Entity read once, like those of a large findAllById, is evicted before
+ * one that is read repeatedly. Only one thread sweeps at a time; others
+ * skip eviction, so the size may briefly exceed the maximum under
+ * concurrent puts.
+ * @param <E> Entity
+ * @param <ID> Entity's Primary Key
+ */
+public class LruEntityCache<E, ID> implements EntityCache<E, ID> {
+
+  /*
+   * Lookups an Entity can bank against eviction. Caps how many sweeps of
+   * the hand a once-hot Entity survives after it is no longer read.
+   */
+  private static final int MAX_USES = 3;
+
+  private final int maximumSize;
+  private final long expireAfterWriteNanos;
+  private final ConcurrentHashMap<ID, CachedEntity<E>> entries = new ConcurrentHashMap<>();
+
+  private final ReentrantLock evictionLock = new ReentrantLock();
+  // guarded by evictionLock
+  private Iterator<Map.Entry<ID, CachedEntity<E>>> hand = null;
+
+  private final LongAdder hitCount = new LongAdder();
+  private final LongAdder missCount = new LongAdder();
+  private final LongAdder evictionCount = new LongAdder();
+
+  /**
+   * Cache without expiry.
+   * @param maximumSize maximum number of Entities held
+   */
+  public LruEntityCache(int maximumSize) {
+    this(maximumSize, null);
+  }
+
+  /**
+   * @param maximumSize maximum number of Entities held
+   * @param expireAfterWrite how long an Entity is served after being cached, or null for no expiry
+   */
+  public LruEntityCache(int maximumSize, Duration expireAfterWrite) {
+    if (maximumSize <= 0) throw new IllegalArgumentException("maximumSize must be positive");
+    if (expireAfterWrite != null && (expireAfterWrite.isNegative() || expireAfterWrite.isZero()))
+      throw new IllegalArgumentException("expireAfterWrite must be positive");
+    this.maximumSize = maximumSize;
+    this.expireAfterWriteNanos = expireAfterWrite == null ? Long.MAX_VALUE : expireAfterWrite.toNanos();
+  }
+
+  @Override
+  public E get(ID id) {
+    CachedEntity<E> cached = entries.get(id);
+    if (cached == null) {
+      missCount.increment();
+      return null;
+    }
+    if (isExpired(cached, System.nanoTime())) {
+      entries.remove(id, cached);
+      missCount.increment();
+      return null;
+    }
+    // racing lookups may lose an increment, which only makes eviction slightly less precise
+    int uses = cached.uses;
+    if (uses < MAX_USES) cached.uses = uses + 1;
+    hitCount.increment();
+    return cached.entity;
+  }
+
+  @Override
+  public void put(ID id, E entity) {
+    entries.put(id, new CachedEntity<>(entity, System.nanoTime()));
+    while (entries.size() > maximumSize && evictionLock.tryLock()) {
+      try {
+        while (entries.size() > maximumSize) evictOne();
+      } finally {
+        evictionLock.unlock();
+      }
+    }
+  }
+
+  @Override
+  public void invalidate(ID id) {
+    entries.remove(id);
+  }
+
+  @Override
+  public void invalidateAll() {
+    entries.clear();
+  }
+
+  /**
+   * Remove expired Entities. Expired Entities are otherwise removed
+   * lazily, when looked up or evicted.
+   */
+  public void cleanUp() {
+    long now = System.nanoTime();
+    entries.values().removeIf(cached -> isExpired(cached, now));
+  }
+
+  /**
+   * Number of Entities held, including any that have expired
+   * but not yet been removed.
+   */
+  public int size() {
+    return entries.size();
+  }
+
+  @Override
+  public CacheStats stats() {
+    return new CacheStats(hitCount.sum(), missCount.sum(), evictionCount.sum());
+  }
+
+  // called holding evictionLock
+  private void evictOne() {
+    long now = System.nanoTime();
+    // every full sweep decrements each counter, so this ends within MAX_USES + 1 sweeps
+    while (true) {
+      if (hand == null || !hand.hasNext()) {
+        hand = entries.entrySet().iterator();
+        if (!hand.hasNext()) return;
+      }
+      Map.Entry<ID, CachedEntity<E>> entry = hand.next();
+      CachedEntity<E> cached = entry.getValue();
+      if (cached.uses > 0 && !isExpired(cached, now)) {
+        --cached.uses;
+      } else if (entries.remove(entry.getKey(), cached)) {
+        evictionCount.increment();
+        return;
+      }
+    }
+  }
+
+  private boolean isExpired(CachedEntity<E> cached, long now) {
+    return now - cached.writeNanos >= expireAfterWriteNanos;
+  }
+
+  private static class CachedEntity<E> {
+    final E entity;
+    final long writeNanos;
+    volatile int uses = 0;
+
+    CachedEntity(E entity, long writeNanos) {
+      this.entity = entity;
+      this.writeNanos = writeNanos;
+    }
+  }
+}
@@ -0,0 +1,86 @@
+package com.augustnagro.vertx.repo;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.StringJoiner;
+
+/**
+ * What an upsert does when an Entity with the same Id
+ * already exists. See {@link Repo#upsert(Object, OnConflict)}.
+ */
+public final class OnConflict {
+
+  /**
+   * Update every column of the existing row.
+   */
+  public static final OnConflict DO_UPDATE = new OnConflict(false, Set.of());
+
+  /**
+   * Leave the existing row unchanged.
+   */
+  public static final OnConflict DO_NOTHING = new OnConflict(true, Set.of());
+
+  private final boolean doNothing;
+  private final Set<String> excludedColumns;
+
+  private OnConflict(boolean doNothing, Set<String> excludedColumns) {
+    this.doNothing = doNothing;
+    this.excludedColumns = excludedColumns;
+  }
+
+  /**
+   * Update every column of the existing row, except these. If every
+   * column is excluded, this behaves like {@link #DO_NOTHING}. Upserts
+   * fail with IllegalArgumentException if a name is not a column of
+   * the Entity's table.
+   * @param columnNames column names, like "first_name"
+   */
+  public static OnConflict doUpdateExcept(String... columnNames) {
+    return new OnConflict(false, Set.of(columnNames));
+  }
+
+  /**
+   * The ON CONFLICT clause for a table, beginning with a space.
+   * @param idColumn the primary key column
+   * @param columns the non-id columns that are inserted
+   * @throws IllegalArgumentException if an excluded column is not the id or one of columns
+   */
+  public String sql(String idColumn, String[] columns) {
+    return sql(null, idColumn, columns, null);
+  }
+
+  /**
+   * The ON CONFLICT clause for a table with a {@link Version} column, beginning
+   * with a space. The version is never copied from the inserted row. If any other
+   * column is updated, the existing row's version is incremented.
+   * @param table the table name
+   * @param idColumn the primary key column
+   * @param columns the non-id columns that are inserted
+   * @param versionColumn the version column, or null if there is none
+   * @throws IllegalArgumentException if an excluded column is not the id or one of columns
+   */
+  public String sql(String table, String idColumn, String[] columns, String versionColumn) {
+    String onConflict = " ON CONFLICT (" + idColumn + ")";
+    if (doNothing) return onConflict + " DO NOTHING";
+    List<String> columnList = Arrays.asList(columns);
+    for (String excluded : excludedColumns) {
+      if (!excluded.equals(idColumn) && !columnList.contains(excluded)) {
+        throw new IllegalArgumentException("doUpdateExcept column " + excluded + " is not one of " +
+                                           idColumn + ", " + String.join(", ", columns));
+      }
+    }
+    StringJoiner assignments = new StringJoiner(", ", onConflict + " DO UPDATE SET ", "")
+        .setEmptyValue(onConflict + " DO NOTHING");
+    boolean updatesColumn = false;
+    for (String column : columns) {
+      if (excludedColumns.contains(column) || column.equals(versionColumn)) continue;
+      assignments.add(column + " = EXCLUDED." + column);
+      updatesColumn = true;
+    }
+    if (versionColumn != null && updatesColumn) {
+      assignments.add(versionColumn + " = " + table + "." + versionColumn + " + 1");
+    }
+    return assignments.toString();
+  }
+}
@@ -0,0 +1,25 @@
+package com.augustnagro.vertx.repo;
+
+import io.vertx.sqlclient.Row;
+
+import java.util.List;
+import java.util.stream.Collector;
+
+/**
+ * The columns and decoder of a {@link Projection}, for
+ * {@link ImmutableRepo#findAll(Spec, ProjectionType)}. Every generated
+ * Projection class has one, as its public static TYPE field.
+ * @param <P> Projection type
+ */
+public interface ProjectionType<P> {
+
+  /**
+   * Comma separated column names of the Projection's constructor parameters.
+   */
+  String selectColumns();
+
+  /**
+   * Collects rows whose columns are {@link #selectColumns()} to a List.
+   */
+  Collector<Row, ?, List<P>> listCollector();
+}
@@ -0,0 +1,189 @@
+package com.augustnagro.vertx.repo;
+
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.sqlclient.Pool;
+import io.vertx.sqlclient.Row;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * Postgres read replicas, for the read methods of generated Repos. See
+ * {@link RepoOptions#setReadReplicas(ReadReplicas)}.
+ * <br>
+ * <br>
+ * Reads are spread round-robin over the healthy replicas. A replica is
+ * unhealthy if its last lag check failed, found it more than
+ * {@link #setMaxLagMillis(long)} behind the primary, or found it not
+ * streaming WAL from the primary. Lag checks run when
+ * {@link #checkLag()} is called, or periodically after
+ * {@link #startLagChecks(Vertx, long)}. Until its first check, a replica
+ * is considered healthy. When no replica is healthy, reads go to the writer.
+ * <br>
+ * <br>
+ * With {@link #setReadYourWritesMillis(long)}, reads go to the writer for
+ * a while after every write made through a Repo's methods that do not take
+ * a SqlClient. Writes made with your own SqlClient should call
+ * {@link #wrote()}. Share one ReadReplicas between Repos whose Entities are
+ * read together, so that a write through any of them pins all their reads.
+ * Thread safe.
+ */
+public class ReadReplicas {
+
+  /**
+   * Lag in milliseconds, or 0 if the server is not a replica, or is streaming from the
+   * primary and has replayed everything it received. Null if the replica is not streaming,
+   * since it cannot know how far behind it is, or has not replayed any transaction. Roles
+   * without pg_read_all_stats cannot see the WAL receiver's status, only that it is running.
+   */
+  static final String LAG_QUERY = "SELECT CASE " +
+      "WHEN NOT pg_is_in_recovery() THEN 0 " +
+      "WHEN NOT EXISTS (SELECT 1 FROM pg_stat_wal_receiver WHERE status = 'streaming' OR status IS NULL) " +
+      "THEN NULL " +
+      "WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 " +
+      "ELSE (EXTRACT(EPOCH FROM clock_timestamp() - pg_last_xact_replay_timestamp()) * 1000)::bigint END";
+
+  /**
+   * Default for {@link #setMaxLagMillis(long)}.
+   */
+  public static final long DEFAULT_MAX_LAG_MILLIS = 5_000;
+
+  private final List<Pool> readers;
+  // written only by lag checks, holding its monitor
+  private final boolean[] healthy;
+  // immutable snapshot of the indexes where healthy is true, so that reads take no lock
+  private volatile int[] healthyIndexes;
+  private final AtomicInteger next = new AtomicInteger();
+  private volatile long maxLagMillis = DEFAULT_MAX_LAG_MILLIS;
+  private volatile long readYourWritesNanos = 0;
+  private volatile long pinnedUntilNanos = System.nanoTime();
+  private Vertx timerVertx = null;
+  private long timerId = -1;
+
+  public ReadReplicas(List<? extends Pool> readers) {
+    if (readers.isEmpty()) throw new IllegalArgumentException("readers must not be empty");
+    this.readers = List.copyOf(readers);
+    healthy = new boolean[readers.size()];
+    Arrays.fill(healthy, true);
+    healthyIndexes = IntStream.range(0, readers.size()).toArray();
+  }
+
+  public long getMaxLagMillis() {
+    return maxLagMillis;
+  }
+
+  /**
+   * Replicas further behind the primary than this are not read from, until a
+   * later lag check finds them caught up. Defaults to {@link #DEFAULT_MAX_LAG_MILLIS}.
+   */
+  public ReadReplicas setMaxLagMillis(long maxLagMillis) {
+    if (maxLagMillis < 0) throw new IllegalArgumentException("maxLagMillis must be non-negative");
+    this.maxLagMillis = maxLagMillis;
+    return this;
+  }
+
+  public long getReadYourWritesMillis() {
+    return readYourWritesNanos / 1_000_000;
+  }
+
+  /**
+   * How long reads go to the writer after a write, so that they see it.
+   * The default, 0, always reads from a healthy replica.
+   */
+  public ReadReplicas setReadYourWritesMillis(long readYourWritesMillis) {
+    if (readYourWritesMillis < 0) throw new IllegalArgumentException("readYourWritesMillis must be non-negative");
+    this.readYourWritesNanos = readYourWritesMillis * 1_000_000;
+    return this;
+  }
+
+  /**
+   * The replicas, in the order they were given.
+   */
+  public List<Pool> readers() {
+    return readers;
+  }
+
+  /**
+   * True if reads may go to the replica at this index.
+   */
+  public boolean isHealthy(int index) {
+    Objects.checkIndex(index, readers.size());
+    return Arrays.binarySearch(healthyIndexes, index) >= 0;
+  }
+
+  /**
+   * The pool to read from: the next healthy replica, or the writer if none is
+   * healthy, or if there was a write in the read-your-writes window.
+   */
+  public Pool reader(Pool writer) {
+    if (readYourWritesNanos != 0 && System.nanoTime() - pinnedUntilNanos < 0) return writer;
+    int[] indexes = healthyIndexes;
+    if (indexes.length == 0) return writer;
+    return readers.get(indexes[Math.floorMod(next.getAndIncrement(), indexes.length)]);
+  }
+
+  /**
+   * Records a write, starting a read-your-writes window.
+   */
+  public void wrote() {
+    long window = readYourWritesNanos;
+    if (window != 0) pinnedUntilNanos = System.nanoTime() + window;
+  }
+
+  /**
+   * Records the write when it completes. Returns the same Future.
+   */
+  public <T> Future<T> wrote(Future<T> write) {
+    if (readYourWritesNanos == 0) return write;
+    return write.onComplete(ar -> wrote());
+  }
+
+  /**
+   * Checks the replay lag of every replica, with {@code pg_last_xact_replay_timestamp()}.
+   * Replicas that lag too much, or fail the query, are not read from until the next check.
+   */
+  public Future<Void> checkLag() {
+    ArrayList<Future> checks = new ArrayList<>(readers.size());
+    for (int i = 0; i < readers.size(); ++i) {
+      int index = i;
+      checks.add(readers.get(i).query(LAG_QUERY).execute()
+          .map(rs -> {
+            Row row = rs.iterator().next();
+            Long lag = row.getLong(0);
+            return lag != null && lag <= maxLagMillis;
+          })
+          .otherwise(false)
+          .onSuccess(isHealthy -> {
+            synchronized (healthy) {
+              if (healthy[index] == isHealthy) return;
+              healthy[index] = isHealthy;
+              healthyIndexes = IntStream.range(0, healthy.length).filter(r -> healthy[r]).toArray();
+            }
+          }));
+    }
+    return CompositeFuture.join(checks).mapEmpty();
+  }
+
+  /**
+   * Runs {@link #checkLag()} every intervalMillis, until {@link #stopLagChecks()}.
+   */
+  public synchronized ReadReplicas startLagChecks(Vertx vertx, long intervalMillis) {
+    stopLagChecks();
+    timerVertx = vertx;
+    timerId = vertx.setPeriodic(intervalMillis, id -> checkLag());
+    return this;
+  }
+
+  public synchronized void stopLagChecks() {
+    if (timerVertx == null) return;
+    timerVertx.cancelTimer(timerId);
+    timerVertx = null;
+    timerId = -1;
+  }
+}
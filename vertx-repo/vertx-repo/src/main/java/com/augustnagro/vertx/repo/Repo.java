@@ -56,29 +56,147 @@ public interface Repo<E, ID> extends ImmutableRepo<E, ID> {
   /**
    * Save this entity. If the Entity's Id is null, it will be
    * inserted. Otherwise, it will be either updated or inserted
-   * (upserted).
+   * (upserted) with {@link OnConflict#DO_UPDATE}.
    */
   Future<E> save(E entity);
 
   /**
    * Save this entity. If the Entity's Id is null, it will be
    * inserted. Otherwise, it will be either updated or inserted
-   * (upserted).
+   * (upserted) with {@link OnConflict#DO_UPDATE}.
    */
   Future<E> save(SqlClient sql, E entity);
 
   /**
    * Save all Entities in the Collection. If an Entity's Id is null,
    * it will be inserted. Otherwise, it will be either updated or inserted
-   * (upserted).
+   * (upserted) with {@link OnConflict#DO_UPDATE}. If Entities without a
+   * {@link Version} have equal Ids, only the last is written. The returned
+   * List is in the Collection's iteration order.
    */
   Future<List<E>> saveAll(Collection<E> entities);
 
   /**
    * Save all Entities in the Collection. If an Entity's Id is null,
    * it will be inserted. Otherwise, it will be either updated or inserted
-   * (upserted).
+   * (upserted) with {@link OnConflict#DO_UPDATE}. If Entities without a
+   * {@link Version} have equal Ids, only the last is written. The returned
+   * List is in the Collection's iteration order.
    */
   Future<List<E>> saveAll(SqlClient sql, Collection<E> entities);
 
+  /**
+   * Insert this entity, or update it if an Entity with the same Id already
+   * exists, in a single INSERT ... ON CONFLICT statement. Equivalent to
+   * {@link #save(Object)}.
+   */
+  Future<E> upsert(E entity);
+
+  /**
+   * Insert this entity, or resolve the conflict with onConflict if an Entity
+   * with the same Id already exists, in a single INSERT ... ON CONFLICT statement.
+   */
+  Future<E> upsert(E entity, OnConflict onConflict);
+
+  /**
+   * Insert this entity, or update it if an Entity with the same Id already
+   * exists, in a single INSERT ... ON CONFLICT statement. Equivalent to
+   * {@link #save(SqlClient, Object)}.
+   */
+  Future<E> upsert(SqlClient sql, E entity);
+
+  /**
+   * Insert this entity, or resolve the conflict with onConflict if an Entity
+   * with the same Id already exists, in a single INSERT ... ON CONFLICT statement.
+   */
+  Future<E> upsert(SqlClient sql, E entity, OnConflict onConflict);
+
+  /**
+   * Upsert all Entities in the Collection. Entities with a null Id are inserted
+   * with one statement, and the rest are upserted with another, binding one
+   * array per column. Equivalent to {@link #saveAll(Collection)}.
+   */
+  Future<List<E>> upsertAll(Collection<E> entities);
+
+  /**
+   * Upsert all Entities in the Collection, resolving conflicts with onConflict.
+   * Entities with a null Id are inserted with one statement, and the rest are
+   * upserted with another, binding one array per column.
+   */
+  Future<List<E>> upsertAll(Collection<E> entities, OnConflict onConflict);
+
+  /**
+   * Upsert all Entities in the Collection. Entities with a null Id are inserted
+   * with one statement, and the rest are upserted with another, binding one
+   * array per column. Equivalent to {@link #saveAll(SqlClient, Collection)}.
+   */
+  Future<List<E>> upsertAll(SqlClient sql, Collection<E> entities);
+
+  /**
+   * Upsert all Entities in the Collection, resolving conflicts with onConflict.
+   * Entities with a null Id are inserted with one statement, and the rest are
+   * upserted with another, binding one array per column.
+   * <br>
+   * <br>
+   * Postgres rejects an ON CONFLICT DO UPDATE statement that affects the same row
+   * twice, so the non-null Ids in the Collection must be distinct.
+   */
+  Future<List<E>> upsertAll(SqlClient sql, Collection<E> entities, OnConflict onConflict);
+
+  /**
+   * Update the Entity, writing only the columns that differ between before
+   * and after. Unchanged columns are not rewritten, which keeps large values
+   * in place and lets Postgres make HOT updates. If nothing changed, the
+   * database is not queried.
+   * <br>
+   * <br>
+   * Fails with IllegalArgumentException if the Ids differ or are null, and with
+   * NoSuchElementException if there is no Entity with that Id.
+   * @param before the Entity as it was read
+   * @param after the Entity to write
+   * @return after
+   */
+  Future<E> update(E before, E after);
+
+  /**
+   * Update the Entity, writing only the columns that differ between before
+   * and after. Unchanged columns are not rewritten, which keeps large values
+   * in place and lets Postgres make HOT updates. If nothing changed, the
+   * database is not queried.
+   * <br>
+   * <br>
+   * Fails with IllegalArgumentException if the Ids differ or are null, and with
+   * NoSuchElementException if there is no Entity with that Id.
+   * @param before the Entity as it was read
+   * @param after the Entity to write
+   * @return after
+   */
+  Future<E> update(SqlClient sql, E before, E after);
+
+  /**
+   * Update each Entity, pairing before and after by index, and writing only
+   * their changed columns. Entities that changed the same columns are updated
+   * with one batched statement. Unchanged Entities are skipped.
+   * <br>
+   * <br>
+   * Fails with IllegalArgumentException if the Lists differ in size or a pair's
+   * Ids differ or are null, and with NoSuchElementException if an Entity does
+   * not exist.
+   * @return after
+   */
+  Future<List<E>> updateAll(List<E> before, List<E> after);
+
+  /**
+   * Update each Entity, pairing before and after by index, and writing only
+   * their changed columns. Entities that changed the same columns are updated
+   * with one batched statement. Unchanged Entities are skipped.
+   * <br>
+   * <br>
+   * Fails with IllegalArgumentException if the Lists differ in size or a pair's
+   * Ids differ or are null, and with NoSuchElementException if an Entity does
+   * not exist.
+   * @return after
+   */
+  Future<List<E>> updateAll(SqlClient sql, List<E> before, List<E> after);
+
 }
@@ -0,0 +1,165 @@
+package com.augustnagro.vertx.repo;
+
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.sqlclient.Pool;
+import io.vertx.sqlclient.SqlClient;
+import io.vertx.sqlclient.SqlConnection;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Reads from any number of Repos, sent together on one connection.
+ * <pre>{@code
+ * RepoBatch batch = new RepoBatch();
+ * Future<Optional<Person>> person = batch.findById(personRepo, id);
+ * Future<List<Car>> cars = batch.findAll(carRepo, spec);
+ * Future<Long> dealerships = batch.count(dealershipRepo);
+ * batch.execute(pool).onSuccess(v -> render(person.result(), cars.result(), dealerships.result()));
+ * }</pre>
+ * Every query is written to the connection before any result is read, so
+ * the Postgres client pipelines them, and the batch takes about one round
+ * trip instead of one per query. At most
+ * {@code PgConnectOptions#setPipeliningLimit} queries are in flight at
+ * once; the default, 256, is high enough for most batches.
+ * <br>
+ * <br>
+ * The Futures returned when adding a query complete once the batch is
+ * executed. The queries do not share a transaction. A RepoBatch can be
+ * executed once, and is not thread safe.
+ */
+public class RepoBatch {
+
+  private final ArrayList<Query<?>> queries = new ArrayList<>();
+  private boolean executed = false;
+
+  /**
+   * Add a query, given the batch's SqlClient. It should start its
+   * queries before returning, so that they are pipelined.
+   * @return the query's result, once the batch is executed
+   */
+  public <T> Future<T> add(Function<SqlClient, Future<T>> query) {
+    if (executed) throw new IllegalStateException("RepoBatch was already executed");
+    Query<T> q = new Query<>(query);
+    queries.add(q);
+    return q.promise.future();
+  }
+
+  /**
+   * See {@link ImmutableRepo#findById(SqlClient, Object)}.
+   */
+  public <E, ID> Future<Optional<E>> findById(ImmutableRepo<E, ID> repo, ID id) {
+    return add(sql -> repo.findById(sql, id));
+  }
+
+  /**
+   * See {@link ImmutableRepo#findAllById(SqlClient, Collection)}.
+   */
+  public <E, ID> Future<List<E>> findAllById(ImmutableRepo<E, ID> repo, Collection<ID> ids) {
+    return add(sql -> repo.findAllById(sql, ids));
+  }
+
+  /**
+   * See {@link ImmutableRepo#findAll(SqlClient)}.
+   */
+  public <E> Future<List<E>> findAll(ImmutableRepo<E, ?> repo) {
+    return add(sql -> repo.findAll(sql));
+  }
+
+  /**
+   * See {@link ImmutableRepo#findAll(SqlClient, Spec)}.
+   */
+  public <E> Future<List<E>> findAll(ImmutableRepo<E, ?> repo, Spec<E> spec) {
+    return add(sql -> repo.findAll(sql, spec));
+  }
+
+  /**
+   * See {@link ImmutableRepo#findAll(SqlClient, Spec, ProjectionType)}.
+   */
+  public <E, P> Future<List<P>> findAll(ImmutableRepo<E, ?> repo, Spec<E> spec, ProjectionType<P> projection) {
+    return add(sql -> repo.findAll(sql, spec, projection));
+  }
+
+  /**
+   * See {@link ImmutableRepo#count(SqlClient)}.
+   */
+  public Future<Long> count(ImmutableRepo<?, ?> repo) {
+    return add(sql -> repo.count(sql));
+  }
+
+  /**
+   * See {@link ImmutableRepo#count(SqlClient, Spec)}.
+   */
+  public <E> Future<Long> count(ImmutableRepo<E, ?> repo, Spec<E> spec) {
+    return add(sql -> repo.count(sql, spec));
+  }
+
+  /**
+   * See {@link ImmutableRepo#existsById(SqlClient, Object)}.
+   */
+  public <ID> Future<Boolean> existsById(ImmutableRepo<?, ID> repo, ID id) {
+    return add(sql -> repo.existsById(sql, id));
+  }
+
+  /**
+   * Number of queries added.
+   */
+  public int size() {
+    return queries.size();
+  }
+
+  /**
+   * Execute the queries on one connection from the pool,
+   * which is closed after every query has completed.
+   * @return fails if any query failed
+   */
+  public Future<CompositeFuture> execute(Pool pool) {
+    if (queries.isEmpty()) return execute((SqlClient) pool);
+    return pool.getConnection()
+        .flatMap(con -> execute(con).onComplete(ar -> con.close()));
+  }
+
+  /**
+   * Execute the queries on this connection. A Pool would spread them
+   * over several connections, see {@link #execute(Pool)}.
+   * @return completes when every query has completed, with their results in the order they were added.
+   * Fails if any query failed.
+   */
+  public Future<CompositeFuture> execute(SqlConnection con) {
+    return execute((SqlClient) con);
+  }
+
+  private Future<CompositeFuture> execute(SqlClient sql) {
+    if (executed) return Future.failedFuture(new IllegalStateException("RepoBatch was already executed"));
+    executed = true;
+    ArrayList<Future> results = new ArrayList<>(queries.size());
+    for (Query<?> query : queries) results.add(query.start(sql));
+    // join, not all, so that a connection is never closed with queries in flight
+    return CompositeFuture.join(results);
+  }
+
+  private static class Query<T> {
+    final Function<SqlClient, Future<T>> query;
+    final Promise<T> promise = Promise.promise();
+
+    Query(Function<SqlClient, Future<T>> query) {
+      this.query = query;
+    }
+
+    Future<T> start(SqlClient sql) {
+      Future<T> result;
+      try {
+        result = query.apply(sql);
+      } catch (Throwable t) {
+        result = Future.failedFuture(t);
+      }
+      result.onComplete(promise);
+      return promise.future();
+    }
+  }
+}
@@ -0,0 +1,45 @@
+package com.augustnagro.vertx.repo;
+
+/**
+ * Listener for the cost of generated Repo methods. Every method is
+ * tagged with the Entity's simple name and the Repo operation, like
+ * "findById" or "saveAll". Implementations can forward these to a
+ * metrics library; all methods default to doing nothing.
+ * <br>
+ * <br>
+ * Methods are called on event loop threads, so implementations must
+ * be thread safe and must not block. Pass an instance to
+ * {@link RepoOptions#setMetrics(RepoMetrics)}.
+ */
+public interface RepoMetrics {
+
+  /**
+   * Reports nothing. Repos using it skip all measurement.
+   */
+  RepoMetrics NOOP = new RepoMetrics() {};
+
+  /**
+   * Time spent waiting for a pooled connection. Only reported by the methods
+   * that acquire their own connection, not those taking a SqlClient.
+   */
+  default void poolWait(String entity, String operation, long nanos) {}
+
+  /**
+   * A statement completed or failed.
+   * @param nanos time from sending the statement to its result, excluding
+   *              any decoding reported by {@link #decoded}
+   * @param rows rows returned or affected, or 0 if it failed
+   */
+  default void executed(String entity, String operation, long nanos, long rows, boolean succeeded) {}
+
+  /**
+   * Time spent building Entities from rows.
+   */
+  default void decoded(String entity, String operation, long nanos, long rows) {}
+
+  /**
+   * Number of Entities or Ids sent in one statement, by the
+   * operations taking a Collection.
+   */
+  default void batchSize(String entity, String operation, int size) {}
+}
@@ -0,0 +1,130 @@
+package com.augustnagro.vertx.repo;
+
+import java.util.List;
+
+/**
+ * Options for a generated RepoBase, passed to its constructor.
+ * @param <E> Entity
+ * @param <ID> Entity's Primary Key
+ */
+public class RepoOptions<E, ID> {
+
+  /**
+   * Default maximum number of Ids in a batched findById query.
+   */
+  public static final int DEFAULT_MAX_BATCH_SIZE = 1000;
+
+  private EntityCache<E, ID> entityCache = null;
+  private boolean batchFindById = false;
+  private long batchWindowMillis = 0;
+  private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+  private SingleFlight<List<E>> specSingleFlight = null;
+  private RepoMetrics metrics = RepoMetrics.NOOP;
+  private SlowSpecLog slowSpecLog = null;
+  private ReadReplicas readReplicas = null;
+
+  public EntityCache<E, ID> getEntityCache() {
+    return entityCache;
+  }
+
+  /**
+   * Read-through cache for findById and findAllById, or null for none.
+   * See {@link EntityCache}.
+   */
+  public RepoOptions<E, ID> setEntityCache(EntityCache<E, ID> entityCache) {
+    this.entityCache = entityCache;
+    return this;
+  }
+
+  public boolean isBatchFindById() {
+    return batchFindById;
+  }
+
+  /**
+   * If true, calls to findById(ID) on the same Vert.x Context are
+   * coalesced into one findAllById query. Calls taking a SqlClient
+   * are never batched. See {@link BatchLoader}.
+   */
+  public RepoOptions<E, ID> setBatchFindById(boolean batchFindById) {
+    this.batchFindById = batchFindById;
+    return this;
+  }
+
+  public long getBatchWindowMillis() {
+    return batchWindowMillis;
+  }
+
+  /**
+   * How long a findById batch collects Ids. The default, 0,
+   * dispatches the batch after the current event loop task.
+   */
+  public RepoOptions<E, ID> setBatchWindowMillis(long batchWindowMillis) {
+    this.batchWindowMillis = batchWindowMillis;
+    return this;
+  }
+
+  public int getMaxBatchSize() {
+    return maxBatchSize;
+  }
+
+  /**
+   * A findById batch is dispatched early once it has this many distinct Ids.
+   */
+  public RepoOptions<E, ID> setMaxBatchSize(int maxBatchSize) {
+    this.maxBatchSize = maxBatchSize;
+    return this;
+  }
+
+  public RepoMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Listener for the latency, row counts and batch sizes of every
+   * Repo method. Defaults to {@link RepoMetrics#NOOP}.
+   */
+  public RepoOptions<E, ID> setMetrics(RepoMetrics metrics) {
+    this.metrics = metrics;
+    return this;
+  }
+
+  public SingleFlight<List<E>> getSpecSingleFlight() {
+    return specSingleFlight;
+  }
+
+  /**
+   * If not null, concurrent findAll(Spec) calls with equal SQL and
+   * parameters share one query. Every caller receives its own List.
+   * Calls taking a SqlClient are never deduplicated.
+   */
+  public RepoOptions<E, ID> setSpecSingleFlight(SingleFlight<List<E>> specSingleFlight) {
+    this.specSingleFlight = specSingleFlight;
+    return this;
+  }
+
+  public SlowSpecLog getSlowSpecLog() {
+    return slowSpecLog;
+  }
+
+  /**
+   * If not null, findAll(Spec) queries slower than its threshold are
+   * reported, optionally with their query plan. See {@link SlowSpecLog}.
+   */
+  public RepoOptions<E, ID> setSlowSpecLog(SlowSpecLog slowSpecLog) {
+    this.slowSpecLog = slowSpecLog;
+    return this;
+  }
+
+  public ReadReplicas getReadReplicas() {
+    return readReplicas;
+  }
+
+  /**
+   * If not null, methods that only read and do not take a SqlClient
+   * query a read replica. See {@link ReadReplicas}.
+   */
+  public RepoOptions<E, ID> setReadReplicas(ReadReplicas readReplicas) {
+    this.readReplicas = readReplicas;
+    return this;
+  }
+}
@@ -0,0 +1,126 @@
+package com.augustnagro.vertx.repo;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.sqlclient.Tuple;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Deduplicates identical in-flight queries. While a query is running,
+ * callers with an equal key are given its Future instead of starting
+ * another query.
+ * <br>
+ * <br>
+ * The key is removed before the Future completes, so a caller arriving
+ * after completion always starts a fresh query and never sees a stale
+ * result. Callers that join from a Vert.x Context are completed on that
+ * Context, not on the one running the original query, so they may be on
+ * different event loops. Thread safe.
+ * @param <T> Query result
+ */
+public class SingleFlight<T> {
+
+  private final ConcurrentHashMap<Object, Future<T>> inFlight = new ConcurrentHashMap<>();
+  private final LongAdder executedCount = new LongAdder();
+  private final LongAdder deduplicatedCount = new LongAdder();
+
+  /**
+   * The result of query, or of an in-flight query with an equal key.
+   * @param key see {@link #key(String, Tuple)}
+   * @param query started if there is no in-flight query with this key
+   */
+  public Future<T> execute(Object key, Supplier<Future<T>> query) {
+    Promise<T> promise = Promise.promise();
+    Future<T> existing = inFlight.putIfAbsent(key, promise.future());
+    if (existing != null) {
+      deduplicatedCount.increment();
+      return onCurrentContext(existing);
+    }
+    executedCount.increment();
+
+    Future<T> result;
+    try {
+      result = query.get();
+    } catch (Throwable t) {
+      result = Future.failedFuture(t);
+    }
+    result.onComplete(ar -> {
+      inFlight.remove(key, promise.future());
+      promise.handle(ar);
+    });
+    return promise.future();
+  }
+
+  private static <T> Future<T> onCurrentContext(Future<T> future) {
+    Context context = Vertx.currentContext();
+    if (context == null) return future;
+    Promise<T> promise = Promise.promise();
+    future.onComplete(ar -> {
+      if (Vertx.currentContext() == context) promise.handle(ar);
+      else context.runOnContext(v -> promise.handle(ar));
+    });
+    return promise.future();
+  }
+
+  /**
+   * A key that is equal for equal SQL and parameter values.
+   */
+  public static Object key(String sql, Tuple tuple) {
+    int size = tuple.size();
+    Object[] values = new Object[size];
+    for (int i = 0; i < size; ++i) values[i] = tuple.getValue(i);
+    return new Key(sql, values);
+  }
+
+  /**
+   * Number of queries started.
+   */
+  public long executedCount() {
+    return executedCount.sum();
+  }
+
+  /**
+   * Number of calls that joined an in-flight query instead of starting one.
+   */
+  public long deduplicatedCount() {
+    return deduplicatedCount.sum();
+  }
+
+  /**
+   * Number of queries currently in flight.
+   */
+  public int inFlightCount() {
+    return inFlight.size();
+  }
+
+  private static final class Key {
+    private final String sql;
+    private final Object[] values;
+    private final int hash;
+
+    Key(String sql, Object[] values) {
+      this.sql = sql;
+      this.values = values;
+      this.hash = 31 * sql.hashCode() + Arrays.deepHashCode(values);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof Key)) return false;
+      Key key = (Key) o;
+      return hash == key.hash && sql.equals(key.sql) && Arrays.deepEquals(values, key.values);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+}
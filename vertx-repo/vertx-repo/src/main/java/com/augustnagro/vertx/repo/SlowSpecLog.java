@@ -0,0 +1,243 @@
+package com.augustnagro.vertx.repo;
+
+import io.vertx.core.Handler;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.RowIterator;
+import io.vertx.sqlclient.SqlClient;
+import io.vertx.sqlclient.Tuple;
+
+import java.lang.reflect.Array;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reports findAll(Spec) queries slower than a threshold, whether they
+ * succeeded or failed, as a timed out query is often the slowest. By default
+ * each {@link SlowSpec} is logged as a WARNING with
+ * {@link System.Logger}, named after this class.
+ * <br>
+ * <br>
+ * With {@link #setExplain(boolean)}, the query plan is captured with
+ * Postgres' EXPLAIN (FORMAT JSON), on a separate connection of the
+ * Repo's pool. Plans are captured at most once per
+ * {@link #setExplainInterval(Duration)} for each distinct SQL string;
+ * since Spec parameters are always bound, the SQL string identifies the
+ * query shape. Slow queries reported in between have no plan.
+ * <br>
+ * <br>
+ * Configure before passing to {@link RepoOptions#setSlowSpecLog(SlowSpecLog)}.
+ * One instance may be shared by many Repos. Thread safe.
+ */
+public class SlowSpecLog {
+
+  private static final System.Logger LOGGER = System.getLogger(SlowSpecLog.class.getName());
+
+  /**
+   * Once this many distinct queries were explained, the rate limiting history is reset.
+   */
+  private static final int MAX_TRACKED_QUERIES = 10_000;
+
+  private final long thresholdNanos;
+  private boolean explain = false;
+  private boolean explainAnalyze = false;
+  private long explainIntervalNanos = Duration.ofMinutes(1).toNanos();
+  private Handler<SlowSpec> handler = SlowSpecLog::log;
+  private final ConcurrentHashMap<String, Long> lastExplainNanos = new ConcurrentHashMap<>();
+
+  /**
+   * @param threshold queries taking at least this long are reported
+   */
+  public SlowSpecLog(Duration threshold) {
+    if (threshold.isNegative()) throw new IllegalArgumentException("threshold must not be negative");
+    this.thresholdNanos = threshold.toNanos();
+  }
+
+  /**
+   * If true, capture query plans of slow queries. Default false.
+   */
+  public SlowSpecLog setExplain(boolean explain) {
+    this.explain = explain;
+    return this;
+  }
+
+  /**
+   * If true, plans are captured with EXPLAIN (ANALYZE, BUFFERS, FORMAT JSON),
+   * which executes the query a second time to include actual timings and
+   * buffer usage. Default false.
+   */
+  public SlowSpecLog setExplainAnalyze(boolean explainAnalyze) {
+    this.explainAnalyze = explainAnalyze;
+    return this;
+  }
+
+  /**
+   * Minimum time between two plans of the same SQL. Default one minute.
+   */
+  public SlowSpecLog setExplainInterval(Duration explainInterval) {
+    this.explainIntervalNanos = explainInterval.toNanos();
+    return this;
+  }
+
+  /**
+   * Receives slow queries instead of the default logger.
+   */
+  public SlowSpecLog setHandler(Handler<SlowSpec> handler) {
+    this.handler = handler;
+    return this;
+  }
+
+  /**
+   * True if a query taking this long should be reported.
+   */
+  public boolean isSlow(long nanos) {
+    return nanos >= thresholdNanos;
+  }
+
+  /**
+   * Reports the query if it is slow, capturing its plan if enabled.
+   * @param explainClient used to run EXPLAIN, normally the Repo's pool
+   * @param entity the Entity's simple name
+   * @param sql the full query, with numbered parameters
+   * @param tuple the query's parameters
+   * @param nanos how long the query took
+   */
+  public void record(SqlClient explainClient, String entity, String sql, Tuple tuple, long nanos) {
+    record(explainClient, entity, sql, tuple, nanos, null);
+  }
+
+  /**
+   * Reports the query if it is slow, capturing its plan if enabled.
+   * @param explainClient used to run EXPLAIN, normally the Repo's pool
+   * @param entity the Entity's simple name
+   * @param sql the full query, with numbered parameters
+   * @param tuple the query's parameters
+   * @param nanos how long the query took
+   * @param failure why the query failed, or null if it succeeded
+   */
+  public void record(SqlClient explainClient, String entity, String sql, Tuple tuple, long nanos,
+                     Throwable failure) {
+    if (!isSlow(nanos)) return;
+    List<String> parameterTypes = parameterTypes(tuple);
+    if (!explain || !tryAcquireExplain(sql)) {
+      handler.handle(new SlowSpec(entity, sql, parameterTypes, nanos, null, failure));
+      return;
+    }
+    String explainSql = (explainAnalyze ? "EXPLAIN (ANALYZE, BUFFERS, FORMAT JSON) " : "EXPLAIN (FORMAT JSON) ") + sql;
+    explainClient.preparedQuery(explainSql).execute(tuple).onComplete(ar -> {
+      String plan;
+      if (ar.failed()) {
+        plan = "EXPLAIN failed: " + ar.cause().getMessage();
+      } else {
+        RowIterator<Row> rows = ar.result().iterator();
+        plan = rows.hasNext() ? String.valueOf(rows.next().getValue(0)) : null;
+      }
+      handler.handle(new SlowSpec(entity, sql, parameterTypes, nanos, plan, failure));
+    });
+  }
+
+  /*
+   * Rate limits plans per SQL string. Returns true if the caller should explain.
+   */
+  private boolean tryAcquireExplain(String sql) {
+    long now = System.nanoTime();
+    Long last = lastExplainNanos.get(sql);
+    if (last == null) {
+      if (lastExplainNanos.size() >= MAX_TRACKED_QUERIES) lastExplainNanos.clear();
+      return lastExplainNanos.putIfAbsent(sql, now) == null;
+    }
+    return now - last >= explainIntervalNanos && lastExplainNanos.replace(sql, last, now);
+  }
+
+  /*
+   * Types of the parameters, without their values, which may be sensitive.
+   */
+  private static List<String> parameterTypes(Tuple tuple) {
+    int size = tuple.size();
+    ArrayList<String> types = new ArrayList<>(size);
+    for (int i = 0; i < size; ++i) {
+      Object value = tuple.getValue(i);
+      if (value == null) {
+        types.add("null");
+      } else if (value.getClass().isArray()) {
+        types.add(value.getClass().getComponentType().getSimpleName() + "[" +
+                  Array.getLength(value) + "]");
+      } else {
+        types.add(value.getClass().getSimpleName());
+      }
+    }
+    return types;
+  }
+
+  private static void log(SlowSpec slowSpec) {
+    LOGGER.log(System.Logger.Level.WARNING, slowSpec.toString());
+  }
+
+  /**
+   * A slow findAll(Spec) query.
+   */
+  public static final class SlowSpec {
+    private final String entity;
+    private final String sql;
+    private final List<String> parameterTypes;
+    private final long nanos;
+    private final String plan;
+    private final Throwable failure;
+
+    SlowSpec(String entity, String sql, List<String> parameterTypes, long nanos, String plan, Throwable failure) {
+      this.entity = entity;
+      this.sql = sql;
+      this.parameterTypes = parameterTypes;
+      this.nanos = nanos;
+      this.plan = plan;
+      this.failure = failure;
+    }
+
+    /**
+     * The Entity's simple name.
+     */
+    public String entity() {
+      return entity;
+    }
+
+    /**
+     * The full query, with numbered parameters.
+     */
+    public String sql() {
+      return sql;
+    }
+
+    /**
+     * The simple class name of each parameter, like "String" or "Long[3]".
+     */
+    public List<String> parameterTypes() {
+      return parameterTypes;
+    }
+
+    public Duration latency() {
+      return Duration.ofNanos(nanos);
+    }
+
+    /**
+     * The JSON query plan, or null if it was not captured.
+     */
+    public String plan() {
+      return plan;
+    }
+
+    /**
+     * Why the query failed, or null if it succeeded.
+     */
+    public Throwable failure() {
+      return failure;
+    }
+
+    @Override
+    public String toString() {
+      String res = "Slow " + entity + " Spec (" + nanos / 1_000_000 + " ms): " + sql + " parameters " + parameterTypes;
+      if (failure != null) res += " failed " + failure;
+      return plan == null ? res : res + " plan " + plan;
+    }
+  }
+}
@@ -0,0 +1,29 @@
+package com.augustnagro.vertx.repo;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Target;
+
+/**
+ * An {@link Entity}'s version, for optimistic locking. At most
+ * one of the target constructor's parameters may be annotated
+ * with this, and it must be a Long or Integer.
+ * <br>
+ * <br>
+ * Entities with a non-null Id are then saved with
+ * {@code UPDATE ... SET version = version + 1 WHERE id = $n AND version = $m},
+ * so a write based on a stale read fails with a
+ * {@link VersionConflictException} instead of overwriting the newer
+ * row. Saved Entities are returned with their incremented version.
+ * The same applies to update and updateAll. Entities that no longer
+ * exist are reported as conflicts too, and are not re-inserted.
+ * <br>
+ * <br>
+ * New Entities are inserted with version 0 if their version is null.
+ * Upserts that update an existing row increment its version without
+ * checking it.
+ */
+@Documented
+@Target(ElementType.PARAMETER)
+public @interface Version {
+}
@@ -0,0 +1,26 @@
+package com.augustnagro.vertx.repo;
+
+import java.util.List;
+
+/**
+ * Failure of a save or update of {@link Version}ed Entities, when the
+ * row's version no longer matches the Entity's, or the row was deleted.
+ * saveAll and updateAll report every conflicting Entity, and since
+ * they run in a transaction, write none of them.
+ */
+public class VersionConflictException extends RuntimeException {
+
+  private final List<?> conflicts;
+
+  public VersionConflictException(List<?> conflicts) {
+    super(conflicts.size() + " Entities were modified or deleted concurrently: " + conflicts);
+    this.conflicts = List.copyOf(conflicts);
+  }
+
+  /**
+   * The Entities that were not written, in the order they were given.
+   */
+  public List<?> conflicts() {
+    return conflicts;
+  }
+}